@@ -0,0 +1,472 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.ext.crypto;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.AuthenticationInfo;
+import org.restlet.data.ChallengeRequest;
+import org.restlet.data.ChallengeResponse;
+import org.restlet.data.ChallengeScheme;
+import org.restlet.data.Reference;
+import org.restlet.data.Status;
+import org.restlet.ext.crypto.internal.DigestSession;
+import org.restlet.routing.Filter;
+
+/**
+ * Client-side filter reusing HTTP DIGEST sessions across requests, so that
+ * only the first request to a server pays for a "401 Unauthorized" (or "407
+ * Proxy Authentication Required") challenge and its retry.<br>
+ * <br>
+ * Requests are given their credentials as usual, with the
+ * {@link ChallengeScheme#HTTP_DIGEST} scheme, the user identifier and the
+ * secret. The first request to a host is sent without credentials, and its
+ * challenge starts a session for the host and the realm of the challenge: the
+ * request is sent again, authorized with the server nonce. The following
+ * requests to the host are authorized preemptively with the same nonce and an
+ * incrementing nonce count. Proxy credentials share one session per realm for
+ * all hosts.<br>
+ * <br>
+ * A host may protect its resources with several realms. A request is
+ * authorized with the session of the realm of its credentials if they give
+ * one, or else with the session of the realm that last challenged the host. A
+ * challenge from another realm starts a session for that realm, and the
+ * request is sent again.<br>
+ * <br>
+ * Only a challenge saying that the nonce is stale, or an "Authentication-Info"
+ * header giving the next nonce, renews a session. Any other challenge from the
+ * realm of a preemptive request means that the credentials were rejected: the
+ * session is dropped and the response is returned. Requests with a transient
+ * entity are never sent twice.<br>
+ * <br>
+ * The filter counts preemptive authorizations, challenges, stale nonces and
+ * the round-trips that preemptive authorizations avoided.
+ */
+public class DigestSessionFilter extends Filter {
+
+    /** The protection space of the proxy sessions. */
+    private static final String PROXY_SPACE = "proxy";
+
+    /**
+     * Returns the first HTTP DIGEST challenge of a list.
+     * 
+     * @param challenges
+     *            The challenges.
+     * @return The first HTTP DIGEST challenge or null.
+     */
+    private static ChallengeRequest getDigestChallenge(
+            List<ChallengeRequest> challenges) {
+        for (ChallengeRequest challenge : challenges) {
+            if (ChallengeScheme.HTTP_DIGEST.equals(challenge.getScheme())) {
+                return challenge;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the key of a session.
+     * 
+     * @param space
+     *            The host identifier, or the proxy protection space.
+     * @param realm
+     *            The realm or null.
+     * @return The key of the session.
+     */
+    private static String getKey(String space, String realm) {
+        return (realm == null) ? space : space + ' ' + realm;
+    }
+
+    /**
+     * Indicates if credentials are HTTP DIGEST credentials that this filter
+     * should authorize, as opposed to credentials already computed for a
+     * challenge.
+     * 
+     * @param credentials
+     *            The credentials or null.
+     * @return True if the credentials should be authorized by this filter.
+     */
+    private static boolean isDigest(ChallengeResponse credentials) {
+        return (credentials != null)
+                && ChallengeScheme.HTTP_DIGEST.equals(credentials.getScheme())
+                && (credentials.getServerNonce() == null)
+                && (credentials.getIdentifier() != null)
+                && (credentials.getSecret() != null);
+    }
+
+    /** The number of requests authorized preemptively. */
+    private final AtomicLong authorizations;
+
+    /** The number of HTTP DIGEST challenges received. */
+    private final AtomicLong challenges;
+
+    /**
+     * The keys of the sessions of the realms that last challenged each host,
+     * and the proxy.
+     */
+    private final ConcurrentMap<String, String> lastKeys;
+
+    /** The number of preemptive authorizations that weren't challenged. */
+    private final AtomicLong roundTripsSaved;
+
+    /** The sessions by host identifier and realm, and the proxy sessions. */
+    private final ConcurrentMap<String, DigestSession> sessions;
+
+    /** The number of challenges saying that the nonce was stale. */
+    private final AtomicLong staleNonces;
+
+    /**
+     * Constructor.
+     * 
+     * @param context
+     *            The context.
+     */
+    public DigestSessionFilter(Context context) {
+        super(context);
+        this.authorizations = new AtomicLong();
+        this.challenges = new AtomicLong();
+        this.lastKeys = new ConcurrentHashMap<String, String>();
+        this.roundTripsSaved = new AtomicLong();
+        this.sessions = new ConcurrentHashMap<String, DigestSession>();
+        this.staleNonces = new AtomicLong();
+    }
+
+    /**
+     * Authorizes a request preemptively, replacing its HTTP DIGEST
+     * credentials and proxy credentials by the ones of the current sessions.
+     * This lets requests that don't go through the filter, such as pipelined
+     * ones, reuse the sessions.
+     * 
+     * @param request
+     *            The request to authorize.
+     * @return True if every HTTP DIGEST credentials of the request were
+     *         authorized.
+     */
+    public boolean authorize(Request request) {
+        final DigestSession session = isDigest(request.getChallengeResponse()) ? getSession(
+                request.getResourceRef().getHostIdentifier(), request
+                        .getChallengeResponse())
+                : null;
+        final DigestSession proxySession = isDigest(request
+                .getProxyChallengeResponse()) ? getSession(PROXY_SPACE, request
+                .getProxyChallengeResponse()) : null;
+        return authorize(request, session, proxySession);
+    }
+
+    /**
+     * Replaces the HTTP DIGEST credentials and proxy credentials of a request
+     * by the ones of the given sessions, or removes them if there is no
+     * session, so that the secret itself is never sent.
+     * 
+     * @param request
+     *            The request to authorize.
+     * @param session
+     *            The session of the host or null.
+     * @param proxySession
+     *            The proxy session or null.
+     * @return True if every HTTP DIGEST credentials of the request were
+     *         authorized.
+     */
+    private boolean authorize(Request request, DigestSession session,
+            DigestSession proxySession) {
+        boolean result = true;
+
+        if (isDigest(request.getChallengeResponse())) {
+            result = (session != null);
+            request.setChallengeResponse((session == null) ? null : session
+                    .authorize(request.getMethod(), request.getResourceRef()));
+        }
+
+        if (isDigest(request.getProxyChallengeResponse())) {
+            result = result && (proxySession != null);
+            request.setProxyChallengeResponse((proxySession == null) ? null
+                    : proxySession.authorize(request.getMethod(), request
+                            .getResourceRef()));
+        }
+
+        return result;
+    }
+
+    /**
+     * Updates the session of a challenged request.
+     * 
+     * @param challenge
+     *            The HTTP DIGEST challenge.
+     * @param space
+     *            The host identifier, or the proxy protection space.
+     * @param session
+     *            The session the request was authorized with, or null.
+     * @param credentials
+     *            The credentials of the request.
+     * @return True if the request should be sent again with the new session.
+     */
+    private boolean challenged(ChallengeRequest challenge, String space,
+            DigestSession session, ChallengeResponse credentials) {
+        this.challenges.incrementAndGet();
+        final String key = getKey(space, challenge.getRealm());
+
+        if ((session != null)
+                && key.equals(getKey(space, session.getRealm()))) {
+            if (!challenge.isStale()) {
+                // The credentials were rejected, not the nonce
+                this.sessions.remove(key, session);
+                return false;
+            }
+
+            this.staleNonces.incrementAndGet();
+        }
+
+        final DigestSession created = DigestSession.create(challenge,
+                credentials.getIdentifier(), credentials.getSecret());
+
+        if (created == null) {
+            getLogger().fine(
+                    "Unsupported HTTP DIGEST challenge: "
+                            + challenge.getRawValue());
+            this.sessions.remove(key);
+            return false;
+        }
+
+        this.sessions.put(key, created);
+        this.lastKeys.put(space, key);
+        return true;
+    }
+
+    @Override
+    protected int doHandle(Request request, Response response) {
+        final ChallengeResponse credentials = request.getChallengeResponse();
+        final ChallengeResponse proxyCredentials = request
+                .getProxyChallengeResponse();
+
+        if (!isDigest(credentials) && !isDigest(proxyCredentials)) {
+            return super.doHandle(request, response);
+        }
+
+        try {
+            if (send(request, response, false)
+                    && ((request.getEntity() == null) || !request.getEntity()
+                            .isTransient())) {
+                // Challenged, send the request again with the new session
+                reset(response);
+                request.setChallengeResponse(credentials);
+                request.setProxyChallengeResponse(proxyCredentials);
+                send(request, response, true);
+            }
+        } finally {
+            // The caller keeps the credentials it gave
+            request.setChallengeResponse(credentials);
+            request.setProxyChallengeResponse(proxyCredentials);
+        }
+
+        return CONTINUE;
+    }
+
+    /**
+     * Returns the number of requests authorized preemptively.
+     * 
+     * @return The number of requests authorized preemptively.
+     */
+    public long getAuthorizations() {
+        return this.authorizations.get();
+    }
+
+    /**
+     * Returns the number of HTTP DIGEST challenges received, including the
+     * first one of each session.
+     * 
+     * @return The number of HTTP DIGEST challenges received.
+     */
+    public long getChallenges() {
+        return this.challenges.get();
+    }
+
+    /**
+     * Returns the number of round-trips that preemptive authorizations
+     * avoided, that is the number of preemptively authorized requests that
+     * weren't challenged.
+     * 
+     * @return The number of round-trips avoided.
+     */
+    public long getRoundTripsSaved() {
+        return this.roundTripsSaved.get();
+    }
+
+    /**
+     * Returns the session of the realm of the credentials, or else of the
+     * realm that last challenged, if it was created with the given
+     * credentials.
+     * 
+     * @param space
+     *            The host identifier, or the proxy protection space.
+     * @param credentials
+     *            The credentials of the request.
+     * @return The session or null.
+     */
+    private DigestSession getSession(String space, ChallengeResponse credentials) {
+        final String key = (credentials.getRealm() != null) ? getKey(space,
+                credentials.getRealm()) : this.lastKeys.get(space);
+        final DigestSession result = (key == null) ? null : this.sessions
+                .get(key);
+
+        if ((result != null)
+                && !result.matches(credentials.getIdentifier(), credentials
+                        .getSecret())) {
+            return null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of challenges saying that the nonce was stale.
+     * 
+     * @return The number of challenges saying that the nonce was stale.
+     */
+    public long getStaleNonces() {
+        return this.staleNonces.get();
+    }
+
+    /**
+     * Indicates if there is a session for the realm that last challenged the
+     * host of a resource. Requests to the host will be authorized
+     * preemptively if their credentials are the ones of the session.
+     * 
+     * @param resourceRef
+     *            A resource reference of the host.
+     * @return True if there is a session for the host.
+     */
+    public boolean hasSession(Reference resourceRef) {
+        final String key = this.lastKeys.get(resourceRef.getHostIdentifier());
+        return (key != null) && this.sessions.containsKey(key);
+    }
+
+    /**
+     * Reads and releases the entity of a challenge response, so that the
+     * connection can be reused, and clears the response before the request
+     * is sent again.
+     * 
+     * @param response
+     *            The challenge response.
+     */
+    private void reset(Response response) {
+        if (response.getEntity() != null) {
+            try {
+                response.getEntity().exhaust();
+            } catch (IOException ioe) {
+                getLogger().log(Level.FINE,
+                        "Unable to read the entity of the challenge", ioe);
+            }
+
+            response.getEntity().release();
+            response.setEntity(null);
+        }
+
+        response.getChallengeRequests().clear();
+        response.getProxyChallengeRequests().clear();
+        response.setAuthenticationInfo(null);
+    }
+
+    /**
+     * Sends a request once, authorized with the current sessions if there are
+     * any, and updates the sessions according to the response.
+     * 
+     * @param request
+     *            The request to send, with the credentials given by the
+     *            caller.
+     * @param response
+     *            The response to update.
+     * @param retry
+     *            Indicates if the request is sent again after a challenge.
+     * @return True if the request was challenged and should be sent again
+     *         with the new session.
+     */
+    private boolean send(Request request, Response response, boolean retry) {
+        final ChallengeResponse credentials = request.getChallengeResponse();
+        final ChallengeResponse proxyCredentials = request
+                .getProxyChallengeResponse();
+        final String host = request.getResourceRef().getHostIdentifier();
+        final DigestSession session = isDigest(credentials) ? getSession(host,
+                credentials) : null;
+        final DigestSession proxySession = isDigest(proxyCredentials) ? getSession(
+                PROXY_SPACE, proxyCredentials)
+                : null;
+        final boolean preemptive = !retry
+                && ((session != null) || (proxySession != null));
+        authorize(request, session, proxySession);
+
+        if (preemptive) {
+            this.authorizations.incrementAndGet();
+        }
+
+        super.doHandle(request, response);
+        ChallengeRequest challenge = null;
+        boolean result = false;
+
+        if (isDigest(credentials)
+                && Status.CLIENT_ERROR_UNAUTHORIZED
+                        .equals(response.getStatus())
+                && ((challenge = getDigestChallenge(response
+                        .getChallengeRequests())) != null)) {
+            result = challenged(challenge, host, session, credentials);
+        } else if (isDigest(proxyCredentials)
+                && Status.CLIENT_ERROR_PROXY_AUTHENTIFICATION_REQUIRED
+                        .equals(response.getStatus())
+                && ((challenge = getDigestChallenge(response
+                        .getProxyChallengeRequests())) != null)) {
+            result = challenged(challenge, PROXY_SPACE, proxySession,
+                    proxyCredentials);
+        } else if (preemptive) {
+            this.roundTripsSaved.incrementAndGet();
+        }
+
+        final AuthenticationInfo info = response.getAuthenticationInfo();
+
+        if ((session != null) && (challenge == null) && (info != null)
+                && (info.getNextServerNonce() != null)
+                && !info.getNextServerNonce().equals(session.getNonce())) {
+            this.sessions.replace(getKey(host, session.getRealm()), session,
+                    session.renew(info.getNextServerNonce()));
+        }
+
+        return result;
+    }
+
+}
@@ -57,6 +57,36 @@ public class DigestUtils {
      */
     private static final char[] HEXDIGITS = "0123456789abcdef".toCharArray();
 
+    /**
+     * The MD5 message digest of each thread. Digests aren't thread-safe, and
+     * looking one up through the security providers for each hash costs more
+     * than hashing a short string.
+     */
+    private static final ThreadLocal<MessageDigest> MD5 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException nsae) {
+                throw new RuntimeException(
+                        "No MD5 algorithm, unable to compute MD5");
+            }
+        }
+    };
+
+    /** The SHA1 message digest of each thread. */
+    private static final ThreadLocal<MessageDigest> SHA1 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA1");
+            } catch (NoSuchAlgorithmException nsae) {
+                throw new RuntimeException(
+                        "No SHA1 algorithm, unable to compute SHA1");
+            }
+        }
+    };
+
     /**
      * Converts a source string to its HMAC/SHA-1 value.
      * 
@@ -221,20 +251,15 @@ public class DigestUtils {
      */
     public static String toMd5(String target, String charsetName)
             throws UnsupportedEncodingException {
-        try {
-            final byte[] md5 = MessageDigest.getInstance("MD5").digest(
-                    target.getBytes(charsetName));
-            final char[] md5Chars = new char[32];
-            int i = 0;
-            for (final byte b : md5) {
-                md5Chars[i++] = HEXDIGITS[(b >> 4) & 0xF];
-                md5Chars[i++] = HEXDIGITS[b & 0xF];
-            }
-            return new String(md5Chars);
-        } catch (NoSuchAlgorithmException nsae) {
-            throw new RuntimeException(
-                    "No MD5 algorithm, unable to compute MD5");
+        // digest() resets the message digest for the next call
+        final byte[] md5 = MD5.get().digest(target.getBytes(charsetName));
+        final char[] md5Chars = new char[32];
+        int i = 0;
+        for (final byte b : md5) {
+            md5Chars[i++] = HEXDIGITS[(b >> 4) & 0xF];
+            md5Chars[i++] = HEXDIGITS[b & 0xF];
         }
+        return new String(md5Chars);
     }
 
     /**
@@ -303,13 +328,8 @@ public class DigestUtils {
      */
     public static String toSha1(String target, String charsetName)
             throws UnsupportedEncodingException {
-        try {
-            return Base64.encode(MessageDigest.getInstance("SHA1").digest(
-                    target.getBytes(charsetName)), false);
-        } catch (NoSuchAlgorithmException nsae) {
-            throw new RuntimeException(
-                    "No SHA1 algorithm, unable to compute SHA1");
-        }
+        return Base64.encode(SHA1.get().digest(target.getBytes(charsetName)),
+                false);
     }
 
     /**
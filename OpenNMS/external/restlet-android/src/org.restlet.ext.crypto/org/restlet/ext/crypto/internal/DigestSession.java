@@ -0,0 +1,294 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+
+package org.restlet.ext.crypto.internal;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.restlet.data.ChallengeMessage;
+import org.restlet.data.ChallengeRequest;
+import org.restlet.data.ChallengeResponse;
+import org.restlet.data.ChallengeScheme;
+import org.restlet.data.Digest;
+import org.restlet.data.Method;
+import org.restlet.data.Reference;
+import org.restlet.engine.security.AuthenticatorUtils;
+import org.restlet.ext.crypto.DigestUtils;
+
+/**
+ * Client side state of the HTTP DIGEST authentication with one server nonce.
+ * The hash of the credentials is computed once for the session, and each
+ * request is then authorized without a new challenge, with the next nonce
+ * count and a client nonce of its own. A new server nonce, after a stale
+ * challenge or from an "Authentication-Info" header, starts a new session
+ * with {@link #renew(String)}.<br>
+ * <br>
+ * The "MD5" and "MD5-sess" algorithms and the "auth" quality of protection
+ * are supported. This class is thread-safe.
+ * 
+ * @see <a href="http://www.ietf.org/rfc/rfc2617.txt">RFC 2617</a>
+ */
+public class DigestSession {
+
+    /** The algorithm of session keys. */
+    public static final String ALGORITHM_MD5_SESS = "MD5-sess";
+
+    /** The source of client nonces. */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Creates a session from a challenge, or returns null if the challenge
+     * uses an algorithm or a quality of protection that isn't supported.
+     * 
+     * @param challenge
+     *            The HTTP DIGEST challenge.
+     * @param identifier
+     *            The user identifier.
+     * @param secret
+     *            The user secret.
+     * @return The new session or null.
+     */
+    public static DigestSession create(ChallengeRequest challenge,
+            String identifier, char[] secret) {
+        String algorithm = challenge.getDigestAlgorithm();
+        String quality = null;
+
+        if ((algorithm != null) && !Digest.ALGORITHM_MD5.equals(algorithm)
+                && !ALGORITHM_MD5_SESS.equals(algorithm)) {
+            return null;
+        }
+
+        if (challenge.getQualityOptions().contains(
+                ChallengeMessage.QUALITY_AUTHENTICATION)) {
+            quality = ChallengeMessage.QUALITY_AUTHENTICATION;
+        } else if (!challenge.getQualityOptions().isEmpty()) {
+            // Only "auth-int", which would hash every request entity
+            return null;
+        }
+
+        if ((identifier == null) || (secret == null)
+                || (challenge.getServerNonce() == null)) {
+            return null;
+        }
+
+        return new DigestSession(identifier, secret, challenge.getRealm(),
+                challenge.getServerNonce(), challenge.getOpaque(), algorithm,
+                quality, DigestUtils.toHttpDigest(identifier, secret,
+                        challenge.getRealm()));
+    }
+
+    /** The digest algorithm, or null for the default MD5. */
+    private final String algorithm;
+
+    /** The client nonce of a "MD5-sess" session. */
+    private final String clientNonce;
+
+    /** The hash of the credentials, A1 in RFC 2617. */
+    private final String ha1;
+
+    /** The user identifier. */
+    private final String identifier;
+
+    /** The server nonce. */
+    private final String nonce;
+
+    /** The number of requests sent with the server nonce. */
+    private final AtomicInteger nonceCount;
+
+    /** The opaque value to send back. */
+    private final String opaque;
+
+    /** The quality of protection, or null if the server gave none. */
+    private final String quality;
+
+    /** The realm. */
+    private final String realm;
+
+    /** The user secret. */
+    private final char[] secret;
+
+    /** The hash of the user identifier, realm and secret. */
+    private final String userHash;
+
+    /**
+     * Constructor.
+     * 
+     * @param identifier
+     *            The user identifier.
+     * @param secret
+     *            The user secret.
+     * @param realm
+     *            The realm.
+     * @param nonce
+     *            The server nonce.
+     * @param opaque
+     *            The opaque value to send back.
+     * @param algorithm
+     *            The digest algorithm, or null for the default MD5.
+     * @param quality
+     *            The quality of protection, or null.
+     * @param userHash
+     *            The hash of the user identifier, realm and secret.
+     */
+    private DigestSession(String identifier, char[] secret, String realm,
+            String nonce, String opaque, String algorithm, String quality,
+            String userHash) {
+        this.algorithm = algorithm;
+        this.identifier = identifier;
+        this.nonce = nonce;
+        this.nonceCount = new AtomicInteger();
+        this.opaque = opaque;
+        this.quality = quality;
+        this.realm = realm;
+        this.secret = secret.clone();
+        this.userHash = userHash;
+
+        if (ALGORITHM_MD5_SESS.equals(algorithm)) {
+            this.clientNonce = newClientNonce();
+            this.ha1 = DigestUtils.toMd5(userHash + ":" + nonce + ":"
+                    + this.clientNonce);
+        } else {
+            this.clientNonce = null;
+            this.ha1 = userHash;
+        }
+    }
+
+    /**
+     * Returns the credentials of a request, with the next nonce count.
+     * 
+     * @param method
+     *            The request method.
+     * @param resourceRef
+     *            The request resource reference.
+     * @return The credentials of the request.
+     */
+    public ChallengeResponse authorize(Method method, Reference resourceRef) {
+        final String uri = (resourceRef.getQuery() == null) ? resourceRef
+                .getPath() : resourceRef.getPath() + "?"
+                + resourceRef.getQuery();
+        final String ha2 = DigestUtils.toMd5(method.getName() + ":" + uri);
+        final StringBuilder sb = new StringBuilder(128).append(this.ha1)
+                .append(':').append(this.nonce).append(':');
+        final ChallengeResponse result = new ChallengeResponse(
+                ChallengeScheme.HTTP_DIGEST);
+        result.setIdentifier(this.identifier);
+        result.setRealm(this.realm);
+        result.setServerNonce(this.nonce);
+        result.setOpaque(this.opaque);
+        result.setDigestAlgorithm(this.algorithm);
+        result.setDigestRef(new Reference(uri));
+
+        if (this.quality != null) {
+            final int count = this.nonceCount.incrementAndGet();
+            final String cnonce = (this.clientNonce != null) ? this.clientNonce
+                    : newClientNonce();
+            sb.append(AuthenticatorUtils.formatNonceCount(count)).append(':')
+                    .append(cnonce).append(':').append(this.quality)
+                    .append(':');
+            result.setServerNounceCount(count);
+            result.setClientNonce(cnonce);
+            result.setQuality(this.quality);
+        } else if (this.clientNonce != null) {
+            result.setClientNonce(this.clientNonce);
+        }
+
+        sb.append(ha2);
+        result.setSecret(DigestUtils.toMd5(sb.toString()));
+        return result;
+    }
+
+    /**
+     * Returns the server nonce.
+     * 
+     * @return The server nonce.
+     */
+    public String getNonce() {
+        return this.nonce;
+    }
+
+    /**
+     * Returns the number of requests sent with the server nonce.
+     * 
+     * @return The number of requests sent with the server nonce.
+     */
+    public int getNonceCount() {
+        return this.nonceCount.get();
+    }
+
+    /**
+     * Returns the realm.
+     * 
+     * @return The realm.
+     */
+    public String getRealm() {
+        return this.realm;
+    }
+
+    /**
+     * Indicates if the session was created with the given credentials.
+     * 
+     * @param identifier
+     *            The user identifier.
+     * @param secret
+     *            The user secret.
+     * @return True if the session was created with the given credentials.
+     */
+    public boolean matches(String identifier, char[] secret) {
+        return this.identifier.equals(identifier)
+                && Arrays.equals(this.secret, secret);
+    }
+
+    /**
+     * Returns a random client nonce.
+     * 
+     * @return A random client nonce.
+     */
+    private static String newClientNonce() {
+        return Long.toHexString(RANDOM.nextLong());
+    }
+
+    /**
+     * Returns a session with the same credentials and a new server nonce, its
+     * nonce count starting over.
+     * 
+     * @param nonce
+     *            The new server nonce.
+     * @return The new session.
+     */
+    public DigestSession renew(String nonce) {
+        return new DigestSession(this.identifier, this.secret, this.realm,
+                nonce, this.opaque, this.algorithm, this.quality,
+                this.userHash);
+    }
+
+}
@@ -396,6 +396,8 @@ public class HttpDigestHelper extends AuthenticatorHelper {
                     .getRawValue());
 
             try {
+                // Only the options offered by the challenge, if any
+                challenge.getQualityOptions().clear();
                 Parameter param = hr.readParameter();
 
                 while (param != null) {
@@ -415,7 +417,12 @@ public class HttpDigestHelper extends AuthenticatorHelper {
                         } else if ("algorithm".equals(param.getName())) {
                             challenge.setDigestAlgorithm(param.getValue());
                         } else if ("qop".equals(param.getName())) {
-                            // challenge.setDigestAlgorithm(param.getValue());
+                            for (String quality : param.getValue().split(",")) {
+                                if (quality.trim().length() > 0) {
+                                    challenge.getQualityOptions().add(
+                                            quality.trim());
+                                }
+                            }
                         } else {
                             challenge.getParameters().add(param);
                         }
@@ -62,6 +62,8 @@ import org.restlet.data.Protocol;
 import org.restlet.data.Status;
 import org.restlet.engine.http.ClientCall;
 import org.restlet.engine.http.header.HeaderConstants;
+import org.restlet.engine.http.timing.CallTimer;
+import org.restlet.engine.http.timing.Phase;
 import org.restlet.ext.httpclient.HttpClientHelper;
 import org.restlet.representation.Representation;
 import org.restlet.util.Series;
@@ -327,10 +329,21 @@ public class HttpMethodCall extends ClientCall {
                 });
             }
 
-            // Ensure that the connection is active
+            // Ensure that the connection is active. HttpClient connects,
+            // sends the request and waits for the response in one step, timed
+            // as a whole.
+            CallTimer timer = CallTimer.get(request);
+            if (timer != null) {
+                timer.mark();
+            }
+
             this.httpResponse = this.clientHelper.getHttpClient().execute(
                     getHttpRequest());
 
+            if (timer != null) {
+                timer.lap(Phase.FIRST_BYTE);
+            }
+
             // Now we can access the status code, this MUST happen after closing
             // any open request stream.
             result = new Status(getStatusCode(), null, getReasonPhrase(), null);
@@ -53,6 +53,8 @@ import org.restlet.data.Parameter;
 import org.restlet.data.Status;
 import org.restlet.engine.Edition;
 import org.restlet.engine.http.ClientCall;
+import org.restlet.engine.http.timing.CallTimer;
+import org.restlet.engine.http.timing.Phase;
 import org.restlet.engine.security.SslContextFactory;
 import org.restlet.engine.security.SslUtils;
 import org.restlet.engine.util.SystemUtils;
@@ -343,9 +345,20 @@ public class HttpUrlConnectionCall extends ClientCall {
                         header.getValue());
             }
 
-            // Ensure that the connection is active
+            // Ensure that the connection is active, timing the resolution,
+            // connection and TLS negotiation together as the JDK doesn't tell
+            // them apart
+            CallTimer timer = CallTimer.get(request);
+            if (timer != null) {
+                timer.mark();
+            }
+
             getConnection().connect();
 
+            if (timer != null) {
+                timer.lap(Phase.CONNECT);
+            }
+
             // Send the optional entity
             result = super.sendRequest(request);
         } catch (ConnectException ce) {
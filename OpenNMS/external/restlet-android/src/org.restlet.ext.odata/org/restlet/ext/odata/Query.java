@@ -30,12 +30,18 @@
 
 package org.restlet.ext.odata;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.restlet.Application;
 import org.restlet.Context;
 import org.restlet.data.MediaType;
 import org.restlet.data.Parameter;
@@ -54,6 +60,7 @@ import org.restlet.resource.ClientResource;
 import org.restlet.resource.ResourceException;
 import org.restlet.routing.Template;
 import org.restlet.routing.Variable;
+import org.restlet.service.TaskService;
 import org.restlet.util.Series;
 
 /**
@@ -150,6 +157,291 @@ public class Query<T> implements Iterable<T> {
         }
     }
 
+    /**
+     * Marks the end of the entities queued for a streaming iterator when the
+     * query failed.
+     */
+    private static class Failure {
+
+        /** The error to report to the iterator's caller. */
+        private final ResourceException exception;
+
+        /**
+         * Constructor.
+         * 
+         * @param cause
+         *            The cause of the failure.
+         */
+        public Failure(Exception cause) {
+            if (cause instanceof ResourceException) {
+                this.exception = (ResourceException) cause;
+            } else {
+                this.exception = new ResourceException(cause);
+            }
+        }
+    }
+
+    /**
+     * Task fetching the pages of a streaming query. Each page is parsed as it
+     * is received and its entities are queued one by one, waiting while the
+     * queue is full. The next page is requested as soon as the current one is
+     * parsed, while the iterator consumes the queued entities. The task stops
+     * if the iterator is garbage collected before reaching the end.
+     */
+    private class PageFetcher implements Runnable {
+
+        /** Indicates if the iterator was garbage collected. */
+        private boolean abandoned;
+
+        /** The iterator consuming the entities. */
+        private final WeakReference<StreamIterator> consumer;
+
+        /** The queue of entities, ended by {@link Query#END_OF_STREAM}. */
+        private final BlockingQueue<Object> queue;
+
+        /** The number of entities read from the current page. */
+        private int read;
+
+        /** The task service running the task, to stop at the end, if any. */
+        private final TaskService taskService;
+
+        /**
+         * Constructor.
+         * 
+         * @param consumer
+         *            The iterator consuming the entities.
+         * @param queue
+         *            The queue of entities.
+         * @param taskService
+         *            The task service created to run the task only, to stop
+         *            once it ends, or null.
+         */
+        public PageFetcher(StreamIterator consumer,
+                BlockingQueue<Object> queue, TaskService taskService) {
+            this.abandoned = false;
+            this.consumer = new WeakReference<StreamIterator>(consumer);
+            this.queue = queue;
+            this.read = 0;
+            this.taskService = taskService;
+        }
+
+        /**
+         * Fetches and parses one page, queuing its entities.
+         * 
+         * @param targetUri
+         *            The URI of the page.
+         * @param metadata
+         *            The metadata of the service.
+         * @return The reference to the next page announced by the feed, if
+         *         any.
+         * @throws Exception
+         */
+        private Reference fetch(String targetUri, Metadata metadata)
+                throws Exception {
+            ClientResource resource = service.createResource(new Reference(
+                    targetUri));
+            Representation result = null;
+
+            try {
+                result = resource.get(MediaType.APPLICATION_ATOM);
+            } catch (ResourceException e) {
+                getLogger().warning(
+                        "Can't execute the query for the following reference: "
+                                + targetUri + " due to " + e.getMessage());
+                throw e;
+            }
+
+            service.setLatestRequest(resource.getRequest());
+            service.setLatestResponse(resource.getResponse());
+
+            final Feed[] feed = new Feed[1];
+            this.read = 0;
+            FeedContentHandler<T> handler = new FeedContentHandler<T>(
+                    entityClass, entityType, metadata, getLogger()) {
+                @Override
+                public void endEntry(Entry entry) {
+                    super.endEntry(entry);
+
+                    // Only keep the entities until they are queued
+                    feed[0].getEntries().remove(entry);
+                    for (T entity : getEntities()) {
+                        if (!PageFetcher.this.put(entity)) {
+                            throw new IllegalStateException(
+                                    "The iterator was abandoned.");
+                        }
+                        PageFetcher.this.read++;
+                    }
+                    getEntities().clear();
+                }
+
+                @Override
+                public void startFeed(Feed f) {
+                    super.startFeed(f);
+                    feed[0] = f;
+                }
+            };
+
+            try {
+                if (resource.getStatus().isSuccess() && (result != null)) {
+                    new Feed(result, handler);
+                }
+            } finally {
+                if (result != null) {
+                    result.release();
+                }
+            }
+
+            Reference nextPage = null;
+            if (feed[0] != null) {
+                for (Link link : feed[0].getLinks()) {
+                    if (Relation.NEXT.equals(link.getRel())) {
+                        nextPage = link.getHref();
+                        if (nextPage.isRelative()) {
+                            nextPage = new Reference(new Reference(targetUri),
+                                    nextPage).getTargetRef();
+                        }
+                        break;
+                    }
+                }
+            }
+
+            return nextPage;
+        }
+
+        /**
+         * Queues an item, waiting while the queue is full.
+         * 
+         * @param item
+         *            The item to queue.
+         * @return False if the iterator was abandoned or the task interrupted.
+         */
+        private boolean put(Object item) {
+            try {
+                while (!this.queue.offer(item, 1, TimeUnit.SECONDS)) {
+                    if (this.consumer.get() == null) {
+                        this.abandoned = true;
+                        return false;
+                    }
+                }
+            } catch (InterruptedException e) {
+                this.abandoned = true;
+                return false;
+            }
+
+            return true;
+        }
+
+        public void run() {
+            Object end = END_OF_STREAM;
+
+            try {
+                Metadata metadata = (Metadata) service.getMetadata();
+                if (metadata == null) {
+                    throw new Exception(
+                            "Can't execute the query without the service's metadata.");
+                }
+
+                int skip = 0;
+                String targetUri = createPageUri(skip);
+                while (targetUri != null) {
+                    Reference nextPage = fetch(targetUri, metadata);
+
+                    if (nextPage != null) {
+                        // Server-side paging
+                        targetUri = nextPage.toString();
+                    } else if ((pageSize > 0) && (this.read == pageSize)) {
+                        // Client-side paging, the set may have more entities
+                        skip += pageSize;
+                        targetUri = createPageUri(skip);
+                    } else {
+                        targetUri = null;
+                    }
+                }
+            } catch (Exception e) {
+                if (!this.abandoned) {
+                    getLogger().log(Level.FINE,
+                            "Can't parse the content of " + createTargetUri(),
+                            e);
+                    end = new Failure(e);
+                }
+            } finally {
+                if (!this.abandoned) {
+                    put(end);
+                }
+
+                if (this.taskService != null) {
+                    try {
+                        this.taskService.stop();
+                    } catch (Exception e) {
+                        getLogger().log(Level.FINE,
+                                "Can't stop the task service", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterator over the entities of a streaming query, as they are queued by a
+     * {@link PageFetcher}. If the query fails, {@link #hasNext()} and
+     * {@link #next()} throw the {@link ResourceException} that stopped it once
+     * the entities received before are consumed.
+     */
+    private class StreamIterator implements Iterator<T> {
+
+        /** The next item, taken from the queue but not returned yet. */
+        private Object next;
+
+        /**
+         * The queue of entities, ended by {@link Query#END_OF_STREAM} or a
+         * {@link Failure}.
+         */
+        private final BlockingQueue<Object> queue;
+
+        /**
+         * Constructor.
+         * 
+         * @param queue
+         *            The queue of entities.
+         */
+        public StreamIterator(BlockingQueue<Object> queue) {
+            this.next = null;
+            this.queue = queue;
+        }
+
+        public boolean hasNext() {
+            if (this.next == null) {
+                try {
+                    this.next = this.queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.next = END_OF_STREAM;
+                }
+            }
+
+            if (this.next instanceof Failure) {
+                throw ((Failure) this.next).exception;
+            }
+
+            return this.next != END_OF_STREAM;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            T result = (T) this.next;
+            this.next = null;
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     // Defines the type of the current query. It has an impact on how to parse
     // the result.
     /** Type of query: complex type or property. */
@@ -176,6 +468,12 @@ public class Query<T> implements Iterable<T> {
     /** Type of query: unknown. */
     public static final int TYPE_UNKNOWN = 0;
 
+    /** Number of entities queued ahead of a streaming iterator by default. */
+    private static final int DEFAULT_STREAM_CAPACITY = 100;
+
+    /** Marks the end of the entities queued for a streaming iterator. */
+    private static final Object END_OF_STREAM = new Object();
+
     /** The number of entities. */
     private int count;
 
@@ -202,12 +500,18 @@ public class Query<T> implements Iterable<T> {
     /** The reference to the next page (used in server-paging mode). */
     private Reference nextPage;
 
+    /** The number of entities requested per page when streaming, if any. */
+    private int pageSize;
+
     /** The query string. */
     private String query;
 
     /** The parent client service. */
     private Service service;
 
+    /** Is the entity set streamed? */
+    private boolean streaming;
+
     /** The path of the targeted entity relatively to the data service URI. */
     private String subpath;
 
@@ -263,6 +567,8 @@ public class Query<T> implements Iterable<T> {
         } else {
             result.setQuery(getQuery() + "&" + name + "=" + value);
         }
+        result.streaming = this.streaming;
+        result.pageSize = this.pageSize;
 
         return result;
     }
@@ -296,6 +602,68 @@ public class Query<T> implements Iterable<T> {
         } else {
             result.setQuery(getQuery() + "&" + builder.toString());
         }
+        result.streaming = this.streaming;
+        result.pageSize = this.pageSize;
+
+        return result;
+    }
+
+    /**
+     * Returns the target URI of a page of a streaming query. Without a page
+     * size, it is the target URI of the query, the server may still split the
+     * entity set into pages. Otherwise, the pages are taken within the range
+     * set by the query's own $skip and $top options, if any, which are
+     * replaced by the ones of the page.
+     * 
+     * @param skip
+     *            The number of entities in the previous pages.
+     * @return The target URI of the page, or null if the range set by the
+     *         query's $top option is exhausted.
+     */
+    private String createPageUri(int skip) {
+        String result = null;
+
+        if (this.pageSize > 0) {
+            int top = getIntegerOption("$top");
+            int count = (top < 0) ? this.pageSize : Math.min(this.pageSize,
+                    top - skip);
+
+            if (count > 0) {
+                int offset = Math.max(0, getIntegerOption("$skip")) + skip;
+                Query<T> page = removeOptions("$top", "$skip").top(count);
+                if (offset > 0) {
+                    page = page.skip(offset);
+                }
+                result = page.createTargetUri();
+            }
+        } else {
+            result = createTargetUri();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns an iterator over the entities of a streaming query, fetched by a
+     * background task.
+     * 
+     * @return The iterator.
+     */
+    private Iterator<T> createStreamIterator() {
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(
+                (this.pageSize > 0) ? this.pageSize : DEFAULT_STREAM_CAPACITY);
+        StreamIterator result = new StreamIterator(queue);
+        Application application = Application.getCurrent();
+
+        if (application == null) {
+            // Outside an application, use a task service for this iterator
+            // only, stopped by the fetcher when it ends
+            TaskService taskService = new TaskService();
+            taskService.execute(new PageFetcher(result, queue, taskService));
+        } else {
+            application.getTaskService().execute(
+                    new PageFetcher(result, queue, null));
+        }
 
         return result;
     }
@@ -382,11 +750,15 @@ public class Query<T> implements Iterable<T> {
                     break;
                 case TYPE_UNKNOWN:
                     // Guess the type of query based on the returned
-                    // representation
-                    Representation rep = new StringRepresentation(result
-                            .getText());
-                    String string = rep.getText().substring(0,
-                            Math.min(100, rep.getText().length()));
+                    // representation, read only once
+                    String text = result.getText();
+                    if (text == null) {
+                        break;
+                    }
+                    Representation rep = new StringRepresentation(text,
+                            result.getMediaType());
+                    String string = text.substring(0, Math.min(100, text
+                            .length()));
                     if (string.contains("<feed")) {
                         feedContentHandler = new FeedContentHandler<T>(
                                 entityClass, entityType, metadata, getLogger());
@@ -405,6 +777,7 @@ public class Query<T> implements Iterable<T> {
                             entities.add(entryContentHandler.getEntity());
                         }
                     }
+                    break;
                 default:
                     // Can only guess entity and entity set, a priori.
                     // TODO May we go a step further by analyzing the metadata
@@ -504,6 +877,33 @@ public class Query<T> implements Iterable<T> {
         return feed;
     }
 
+    /**
+     * Returns the integer value of a query string option.
+     * 
+     * @param name
+     *            The name of the option.
+     * @return The value of the option, or -1 if it is missing or isn't a
+     *         positive integer.
+     */
+    private int getIntegerOption(String name) {
+        int result = -1;
+
+        if (getQuery() != null) {
+            for (String option : getQuery().split("&")) {
+                if (option.startsWith(name + "=")) {
+                    try {
+                        result = Integer.parseInt(option.substring(name
+                                .length() + 1));
+                    } catch (NumberFormatException e) {
+                        result = -1;
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Returns the current logger.
      * 
@@ -631,13 +1031,19 @@ public class Query<T> implements Iterable<T> {
 
     /**
      * Returns an iterator over a set of elements of type T. It returns null if
-     * the query does not retrieve elements.
+     * the query does not retrieve elements. When the query is streaming and
+     * does not target a single entity, the iterator returns the entities while they are fetched,
+     * see {@link #streaming(int)}.
      * 
      * @return an Iterator or null if the query does not retrieve elements.
      */
     public Iterator<T> iterator() {
         Iterator<T> result = null;
 
+        if (this.streaming && (guessType(createTargetUri()) != TYPE_ENTITY)) {
+            return createStreamIterator();
+        }
+
         try {
             execute();
             result = entities.iterator();
@@ -678,6 +1084,43 @@ public class Query<T> implements Iterable<T> {
         return addParameter("$orderby", criteria);
     }
 
+    /**
+     * Creates a new Query<T> without the given query string options.
+     * 
+     * @param names
+     *            The names of the options to remove.
+     * @return A new Query<T> without the options.
+     */
+    @SuppressWarnings("unchecked")
+    private Query<T> removeOptions(String... names) {
+        Query<T> result = new Query<T>(this.getService(), this.getSubpath(),
+                (Class<T>) this.entityClass);
+        StringBuilder builder = new StringBuilder();
+
+        if (getQuery() != null) {
+            for (String option : getQuery().split("&")) {
+                boolean removed = (option.length() == 0);
+                for (int i = 0; !removed && (i < names.length); i++) {
+                    removed = option.startsWith(names[i] + "=");
+                }
+
+                if (!removed) {
+                    if (builder.length() > 0) {
+                        builder.append("&");
+                    }
+                    builder.append(option);
+                }
+            }
+        }
+
+        result.setQuery((builder.length() == 0) ? null : builder.toString());
+        result.inlineCount = this.inlineCount;
+        result.streaming = this.streaming;
+        result.pageSize = this.pageSize;
+
+        return result;
+    }
+
     /**
      * Creates a new Query<T> with the $select option set in the URI generated
      * by the returned query.
@@ -747,6 +1190,37 @@ public class Query<T> implements Iterable<T> {
         return addParameter("$skiptoken", token);
     }
 
+    /**
+     * Creates a new Query<T> that streams the entity set instead of fetching
+     * it at once. Its iterator returns each entity as soon as its entry is
+     * parsed from the Atom feed, while a background task reads the feed and
+     * requests the next page before the current one is consumed. At most one
+     * page of entities is held in memory, whatever the size of the set.<br>
+     * <br>
+     * The pages announced by the server with "next" links are followed. With
+     * a positive page size, the pages are also requested with the $top and
+     * $skip options until a page is not full, within the range set by the
+     * query's own $skip and $top options. If fetching or parsing a page
+     * fails, the iterator throws a {@link ResourceException} after returning
+     * the entities already received.
+     * 
+     * @param pageSize
+     *            The number of entities requested per page, or 0 to let the
+     *            server decide.
+     * @return A new Query<T> that streams the entity set.
+     */
+    @SuppressWarnings("unchecked")
+    public Query<T> streaming(int pageSize) {
+        Query<T> result = new Query<T>(this.getService(), this.getSubpath(),
+                (Class<T>) this.entityClass);
+        result.setQuery(getQuery());
+        result.inlineCount = this.inlineCount;
+        result.streaming = true;
+        result.pageSize = pageSize;
+
+        return result;
+    }
+
     /**
      * Creates a new Query<T> with the $top option set in the URI generated by
      * the returned query.
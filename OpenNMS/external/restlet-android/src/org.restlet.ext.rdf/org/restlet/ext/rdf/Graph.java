@@ -30,25 +30,304 @@
 
 package org.restlet.ext.rdf;
 
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
+import org.restlet.data.Language;
 import org.restlet.data.MediaType;
 import org.restlet.data.Reference;
 import org.restlet.representation.Representation;
 
 /**
  * Graph composed of links. This also called a set of RDF statements or a RDF
- * model.
+ * model.<br>
+ * <br>
+ * Links are not stored as objects. Each distinct node (source, type or target)
+ * is stored once in a dictionary, and each link as the three identifiers of
+ * its nodes. Links are chained by source, by type and by target, so that
+ * {@link #find(Object, Reference, Object)} only visits the links sharing the
+ * most selective of the given nodes. References and literals are compared by
+ * value, graphs and links used as nodes by identity. Adding a link takes
+ * amortized constant time, which lets the parsers fill large graphs in bulk.<br>
+ * <br>
+ * The graph keeps the contract of the copy-on-write set it used to extend.
+ * It is thread-safe, its methods synchronizing on the graph. Iterators work
+ * on a snapshot of the links taken at their creation, so they never throw a
+ * {@link java.util.ConcurrentModificationException} and don't see later
+ * changes; their remove method removes the last link returned from the graph.
+ * The same {@link Link} instance is returned for a stored link each time, the
+ * one given to {@link #add(Link)} if any, otherwise one created on first
+ * access. As for the elements of any set, a link must not be modified while
+ * it is in the graph.<br>
+ * <br>
+ * The graph is serialized as its nodes and links. References and literals
+ * are written by value and links used as nodes by their nodes, since they
+ * aren't serializable themselves; graphs and other nodes must be
+ * serializable.
  * 
  * @author Jerome Louvel
  */
-public class Graph extends CopyOnWriteArraySet<Link> {
+public class Graph extends AbstractSet<Link> implements Serializable {
+
+    /**
+     * Iterator over a snapshot of the links of the graph, in insertion order.
+     */
+    private class LinkIterator implements Iterator<Link> {
+
+        /** The link last returned or null. */
+        private Link last;
+
+        /** The index of the next link to return. */
+        private int next;
+
+        /** The links of the graph at creation time. */
+        private final Link[] snapshot;
+
+        /**
+         * Constructor.
+         * 
+         * @param snapshot
+         *            The links of the graph.
+         */
+        public LinkIterator(Link[] snapshot) {
+            this.last = null;
+            this.next = 0;
+            this.snapshot = snapshot;
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasNext() {
+            return this.next < this.snapshot.length;
+        }
+
+        /** {@inheritDoc} */
+        public Link next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            this.last = this.snapshot[this.next++];
+            return this.last;
+        }
+
+        /** {@inheritDoc} */
+        public void remove() {
+            if (this.last == null) {
+                throw new IllegalStateException();
+            }
+
+            Graph.this.remove(this.last);
+            this.last = null;
+        }
+    }
+
+    /** The initial number of links and nodes stored without growing. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The serialized form tag of a link node, followed by its nodes. */
+    private static final byte LINK_NODE = 3;
+
+    /** The serialized form tag of a literal node. */
+    private static final byte LITERAL_NODE = 2;
+
+    /** The serialized form tag of a null node. */
+    private static final byte NULL_NODE = 0;
+
+    /** The serialized form tag of any other node, written as an object. */
+    private static final byte OBJECT_NODE = 4;
+
+    /** The serialized form tag of a reference node. */
+    private static final byte REFERENCE_NODE = 1;
 
     /** The serialization unique identifier. */
     private static final long serialVersionUID = 1L;
 
+    /** The position of the source node in a link. */
+    private static final int SOURCE = 0;
+
+    /** The position of the target node in a link. */
+    private static final int TARGET = 2;
+
+    /** The position of the type node in a link. */
+    private static final int TYPE = 1;
+
+    /**
+     * Returns the hash code of a link given the identifiers of its nodes.
+     * 
+     * @param sourceId
+     *            The source identifier.
+     * @param typeId
+     *            The type identifier.
+     * @param targetId
+     *            The target identifier.
+     * @return The hash code of the link.
+     */
+    private static int hash(int sourceId, int typeId, int targetId) {
+        return spread((((sourceId * 31) + typeId) * 31) + targetId);
+    }
+
+    /**
+     * Returns the hash code of a node. References and literals are hashed by
+     * value, other nodes by identity.
+     * 
+     * @param node
+     *            The node.
+     * @return The hash code of the node.
+     */
+    private static int hash(Object node) {
+        boolean byValue = (node instanceof Reference)
+                || (node instanceof Literal);
+        return spread(byValue ? node.hashCode() : System
+                .identityHashCode(node));
+    }
+
+    /**
+     * Indicates if two nodes are the same. References and literals are
+     * compared by value, other nodes by identity.
+     * 
+     * @param node
+     *            The node stored in the dictionary.
+     * @param other
+     *            The node to compare.
+     * @return True if both nodes are the same.
+     */
+    private static boolean matches(Object node, Object other) {
+        return (node == other)
+                || (((node instanceof Reference) || (node instanceof Literal)) && node
+                        .equals(other));
+    }
+
+    /**
+     * Reads a node written by {@link #writeNode(ObjectOutputStream, Object)}.
+     * 
+     * @param in
+     *            The input stream.
+     * @return The node.
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private static Object readNode(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        Object result = null;
+        byte tag = in.readByte();
+
+        if (tag == REFERENCE_NODE) {
+            result = new Reference((String) in.readObject());
+        } else if (tag == LITERAL_NODE) {
+            String value = (String) in.readObject();
+            Reference datatypeRef = (Reference) readNode(in);
+            String language = (String) in.readObject();
+            result = new Literal(value, datatypeRef,
+                    (language == null) ? null : Language.valueOf(language));
+        } else if (tag == LINK_NODE) {
+            Object source = readNode(in);
+            Reference typeRef = (Reference) readNode(in);
+            result = new Link(source, typeRef, readNode(in));
+        } else if (tag == OBJECT_NODE) {
+            result = in.readObject();
+        } else if (tag != NULL_NODE) {
+            throw new IOException("Unknown node tag " + tag);
+        }
+
+        return result;
+    }
+
+    /**
+     * Mixes the high bits of a hash code into the low ones used to index the
+     * tables.
+     * 
+     * @param hash
+     *            The hash code.
+     * @return The spread hash code.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16) ^ (hash >>> 7);
+    }
+
+    /**
+     * Writes a node of the serialized form of the graph.
+     * 
+     * @param out
+     *            The output stream.
+     * @param node
+     *            The node.
+     * @throws IOException
+     */
+    private static void writeNode(ObjectOutputStream out, Object node)
+            throws IOException {
+        if (node == null) {
+            out.writeByte(NULL_NODE);
+        } else if (node instanceof Reference) {
+            out.writeByte(REFERENCE_NODE);
+            out.writeObject(node.toString());
+        } else if (node instanceof Literal) {
+            Literal literal = (Literal) node;
+            out.writeByte(LITERAL_NODE);
+            out.writeObject(literal.getValue());
+            writeNode(out, literal.getDatatypeRef());
+            out.writeObject((literal.getLanguage() == null) ? null : literal
+                    .getLanguage().getName());
+        } else if (node instanceof Link) {
+            Link link = (Link) node;
+            out.writeByte(LINK_NODE);
+            writeNode(out, link.getSource());
+            writeNode(out, link.getTypeRef());
+            writeNode(out, link.getTarget());
+        } else {
+            out.writeByte(OBJECT_NODE);
+            out.writeObject(node);
+        }
+    }
+
+    /** The number of links stored, including the removed ones. */
+    private transient int count;
+
+    /** The number of live links by position and node identifier. */
+    private transient int[][] counts;
+
     /** The default link that is used to complete new links. */
-    private Link defaultLink;
+    private transient Link defaultLink;
+
+    /** The first link by position and node identifier, or -1. */
+    private transient int[][] heads;
+
+    /** The link instances by link index, or null until first needed. */
+    private transient Link[] links;
+
+    /** The open addressing table of link indexes plus one. */
+    private transient int[] linkTable;
+
+    /** The next link sharing the same node, by position and link index. */
+    private transient int[][] nexts;
+
+    /** The number of node identifiers used, including the null one. */
+    private transient int nodeCount;
+
+    /** The nodes, by identifier. The identifier 0 stands for null. */
+    private transient Object[] nodeDictionary;
+
+    /** The hash codes of the nodes, by identifier. */
+    private transient int[] nodeHashes;
+
+    /** The identifiers of the nodes by position and link index. */
+    private transient int[][] nodes;
+
+    /** The open addressing table of node identifiers. */
+    private transient int[] nodeTable;
+
+    /** The number of removed links. */
+    private transient int removed;
+
+    /** The last link by position and node identifier, or -1. */
+    private transient int[][] tails;
 
     /**
      * Default constructor.
@@ -65,6 +344,8 @@ public class Graph extends CopyOnWriteArraySet<Link> {
      */
     public Graph(Link defaultLink) {
         this.defaultLink = defaultLink;
+        allocateNodes(INITIAL_CAPACITY);
+        allocateLinks(INITIAL_CAPACITY);
     }
 
     /**
@@ -105,6 +386,19 @@ public class Graph extends CopyOnWriteArraySet<Link> {
         return result;
     }
 
+    /**
+     * Adds a link, unless the graph already contains the same one.
+     * 
+     * @param link
+     *            The link to add.
+     * @return True if the link was added.
+     */
+    @Override
+    public synchronized boolean add(Link link) {
+        return addLink(link.getSource(), link.getTypeRef(), link.getTarget(),
+                link);
+    }
+
     /**
      * Creates then adds a link. If one of the parameter is null, the value from
      * {@link #getDefaultLink()} is used instead if possible.
@@ -143,6 +437,237 @@ public class Graph extends CopyOnWriteArraySet<Link> {
         return result;
     }
 
+    /**
+     * Adds a link given its nodes, without creating a {@link Link} instance.
+     * Used by {@link GraphBuilder} when parsing.
+     * 
+     * @param source
+     *            The source node.
+     * @param typeRef
+     *            The type reference.
+     * @param target
+     *            The target node.
+     * @return True if the link was added, false if the graph already
+     *         contained it.
+     */
+    synchronized boolean addLink(Object source, Reference typeRef,
+            Object target) {
+        return addLink(source, typeRef, target, null);
+    }
+
+    /**
+     * Adds a link given its nodes, unless the graph already contains it.
+     * 
+     * @param source
+     *            The source node.
+     * @param typeRef
+     *            The type reference.
+     * @param target
+     *            The target node.
+     * @param link
+     *            The link instance to return for it or null.
+     * @return True if the link was added.
+     */
+    private boolean addLink(Object source, Reference typeRef, Object target,
+            Link link) {
+        int sourceId = putNode(source);
+        int typeId = putNode(typeRef);
+        int targetId = putNode(target);
+
+        if (indexOf(sourceId, typeId, targetId) >= 0) {
+            return false;
+        }
+
+        if (this.count == this.nodes[SOURCE].length) {
+            // Drop the removed links if that leaves enough room
+            allocateLinks((this.removed > (this.count / 2)) ? this.count
+                    : this.count * 2);
+        }
+
+        insert(sourceId, typeId, targetId, link);
+        return true;
+    }
+
+    /**
+     * Allocates the link storage with the given capacity, keeping the live
+     * links. Removed links are dropped.
+     * 
+     * @param capacity
+     *            The number of links that can be stored without growing.
+     */
+    private void allocateLinks(int capacity) {
+        int[][] oldNodes = this.nodes;
+        int[][] oldNexts = this.nexts;
+        Link[] oldLinks = this.links;
+        int oldCount = this.count;
+
+        this.linkTable = new int[capacity * 2];
+        this.links = new Link[capacity];
+        this.nodes = new int[3][];
+        this.nexts = new int[3][];
+
+        if ((oldNodes != null) && (this.removed == 0)) {
+            // The chains are still valid, only the link table is rebuilt
+            for (int position = 0; position < 3; position++) {
+                this.nodes[position] = Arrays.copyOf(oldNodes[position],
+                        capacity);
+                this.nexts[position] = Arrays.copyOf(oldNexts[position],
+                        capacity);
+            }
+
+            System.arraycopy(oldLinks, 0, this.links, 0, oldCount);
+
+            for (int i = 0; i < oldCount; i++) {
+                putLinkSlot(i);
+            }
+        } else {
+            for (int position = 0; position < 3; position++) {
+                this.nodes[position] = new int[capacity];
+                this.nexts[position] = new int[capacity];
+                Arrays.fill(this.heads[position], -1);
+                Arrays.fill(this.tails[position], -1);
+                Arrays.fill(this.counts[position], 0);
+            }
+
+            this.count = 0;
+            this.removed = 0;
+
+            for (int i = 0; i < oldCount; i++) {
+                if (oldNodes[SOURCE][i] >= 0) {
+                    insert(oldNodes[SOURCE][i], oldNodes[TYPE][i],
+                            oldNodes[TARGET][i], oldLinks[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Allocates the node dictionary with the given capacity, keeping the
+     * nodes already stored.
+     * 
+     * @param capacity
+     *            The number of nodes that can be stored without growing.
+     */
+    private void allocateNodes(int capacity) {
+        if (this.nodeDictionary == null) {
+            this.nodeDictionary = new Object[capacity];
+            this.nodeHashes = new int[capacity];
+            this.heads = new int[3][capacity];
+            this.tails = new int[3][capacity];
+            this.counts = new int[3][capacity];
+            this.nodeCount = 1;
+
+            for (int position = 0; position < 3; position++) {
+                Arrays.fill(this.heads[position], -1);
+                Arrays.fill(this.tails[position], -1);
+            }
+        } else {
+            int oldCapacity = this.nodeDictionary.length;
+            this.nodeDictionary = Arrays.copyOf(this.nodeDictionary, capacity);
+            this.nodeHashes = Arrays.copyOf(this.nodeHashes, capacity);
+
+            for (int position = 0; position < 3; position++) {
+                this.heads[position] = Arrays.copyOf(this.heads[position],
+                        capacity);
+                this.tails[position] = Arrays.copyOf(this.tails[position],
+                        capacity);
+                this.counts[position] = Arrays.copyOf(this.counts[position],
+                        capacity);
+                Arrays.fill(this.heads[position], oldCapacity, capacity, -1);
+                Arrays.fill(this.tails[position], oldCapacity, capacity, -1);
+            }
+        }
+
+        this.nodeTable = new int[capacity * 2];
+        int mask = this.nodeTable.length - 1;
+        for (int id = 1; id < this.nodeCount; id++) {
+            int slot = this.nodeHashes[id] & mask;
+            while (this.nodeTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.nodeTable[slot] = id;
+        }
+    }
+
+    /**
+     * Removes all the links and nodes.
+     */
+    @Override
+    public synchronized void clear() {
+        this.nodeDictionary = null;
+        this.nodes = null;
+        this.count = 0;
+        this.removed = 0;
+        allocateNodes(INITIAL_CAPACITY);
+        allocateLinks(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Indicates if the graph contains a link with the same nodes.
+     * 
+     * @param object
+     *            The link to look for.
+     * @return True if the graph contains the link.
+     */
+    @Override
+    public synchronized boolean contains(Object object) {
+        return indexOf(object) >= 0;
+    }
+
+    /**
+     * Returns the links matching a pattern, in insertion order. A null node
+     * matches any node.
+     * 
+     * @param source
+     *            The source node or null.
+     * @param typeRef
+     *            The type reference or null.
+     * @param target
+     *            The target node or null.
+     * @return The matching links.
+     */
+    public synchronized List<Link> find(Object source, Reference typeRef,
+            Object target) {
+        List<Link> result = new ArrayList<Link>();
+        int[] ids = new int[3];
+        int position = -1;
+
+        ids[SOURCE] = (source == null) ? -1 : getNodeId(source);
+        ids[TYPE] = (typeRef == null) ? -1 : getNodeId(typeRef);
+        ids[TARGET] = (target == null) ? -1 : getNodeId(target);
+
+        // Walk the shortest chain among the given nodes
+        for (int i = 0; i < 3; i++) {
+            if ((i == SOURCE) ? (source != null)
+                    : (i == TYPE) ? (typeRef != null) : (target != null)) {
+                if (ids[i] < 0) {
+                    // Unknown node, nothing can match
+                    return result;
+                } else if ((position < 0)
+                        || (this.counts[i][ids[i]] < this.counts[position][ids[position]])) {
+                    position = i;
+                }
+            }
+        }
+
+        if (position < 0) {
+            for (int i = nextIndex(0); i < this.count; i = nextIndex(i + 1)) {
+                result.add(getLink(i));
+            }
+        } else {
+            for (int i = this.heads[position][ids[position]]; i >= 0; i = this.nexts[position][i]) {
+                if ((this.nodes[SOURCE][i] >= 0)
+                        && ((source == null) || (this.nodes[SOURCE][i] == ids[SOURCE]))
+                        && ((typeRef == null) || (this.nodes[TYPE][i] == ids[TYPE]))
+                        && ((target == null) || (this.nodes[TARGET][i] == ids[TARGET]))) {
+                    result.add(getLink(i));
+                }
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Returns the default link that is used to complete new links.
      * 
@@ -152,6 +677,56 @@ public class Graph extends CopyOnWriteArraySet<Link> {
         return defaultLink;
     }
 
+    /**
+     * Returns the link stored at the given index, creating its instance on
+     * first access.
+     * 
+     * @param index
+     *            The index of the link.
+     * @return The link.
+     */
+    private Link getLink(int index) {
+        Link result = this.links[index];
+
+        if (result == null) {
+            result = new Link(this.nodeDictionary[this.nodes[SOURCE][index]],
+                    (Reference) this.nodeDictionary[this.nodes[TYPE][index]],
+                    this.nodeDictionary[this.nodes[TARGET][index]]);
+            this.links[index] = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the identifier of a node in the dictionary.
+     * 
+     * @param node
+     *            The node.
+     * @return The identifier of the node, 0 if it is null, or -1 if it is not
+     *         in the dictionary.
+     */
+    private int getNodeId(Object node) {
+        if (node == null) {
+            return 0;
+        }
+
+        int hash = hash(node);
+        int mask = this.nodeTable.length - 1;
+
+        for (int slot = hash & mask; this.nodeTable[slot] != 0; slot = (slot + 1)
+                & mask) {
+            int id = this.nodeTable[slot];
+
+            if ((this.nodeHashes[id] == hash)
+                    && matches(this.nodeDictionary[id], node)) {
+                return id;
+            }
+        }
+
+        return -1;
+    }
+
     /**
      * Returns a representation in the RDF/n3 format.
      * 
@@ -278,6 +853,242 @@ public class Graph extends CopyOnWriteArraySet<Link> {
         return result;
     }
 
+    /**
+     * Returns the index of the link with the same nodes as the given object.
+     * 
+     * @param object
+     *            The link to look for.
+     * @return The index of the link or -1.
+     */
+    private int indexOf(Object object) {
+        int result = -1;
+
+        if (object instanceof Link) {
+            Link link = (Link) object;
+            int sourceId = getNodeId(link.getSource());
+            int typeId = getNodeId(link.getTypeRef());
+            int targetId = getNodeId(link.getTarget());
+
+            if ((sourceId >= 0) && (typeId >= 0) && (targetId >= 0)) {
+                result = indexOf(sourceId, typeId, targetId);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the index of a live link given the identifiers of its nodes.
+     * 
+     * @param sourceId
+     *            The source identifier.
+     * @param typeId
+     *            The type identifier.
+     * @param targetId
+     *            The target identifier.
+     * @return The index of the link or -1.
+     */
+    private int indexOf(int sourceId, int typeId, int targetId) {
+        int mask = this.linkTable.length - 1;
+
+        for (int slot = hash(sourceId, typeId, targetId) & mask; this.linkTable[slot] != 0; slot = (slot + 1)
+                & mask) {
+            int index = this.linkTable[slot] - 1;
+
+            // Removed links have a negative source identifier
+            if ((this.nodes[SOURCE][index] == sourceId)
+                    && (this.nodes[TYPE][index] == typeId)
+                    && (this.nodes[TARGET][index] == targetId)) {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Stores a new link, chaining it after the last links sharing its nodes.
+     * The storage must have room for it.
+     * 
+     * @param sourceId
+     *            The source identifier.
+     * @param typeId
+     *            The type identifier.
+     * @param targetId
+     *            The target identifier.
+     * @param link
+     *            The link instance or null.
+     */
+    private void insert(int sourceId, int typeId, int targetId, Link link) {
+        int index = this.count++;
+        this.links[index] = link;
+        this.nodes[SOURCE][index] = sourceId;
+        this.nodes[TYPE][index] = typeId;
+        this.nodes[TARGET][index] = targetId;
+
+        for (int position = 0; position < 3; position++) {
+            int id = this.nodes[position][index];
+            int tail = this.tails[position][id];
+
+            if (tail < 0) {
+                this.heads[position][id] = index;
+            } else {
+                this.nexts[position][tail] = index;
+            }
+
+            this.nexts[position][index] = -1;
+            this.tails[position][id] = index;
+            this.counts[position][id]++;
+        }
+
+        putLinkSlot(index);
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the links, in insertion order.
+     * 
+     * @return An iterator over the links.
+     */
+    @Override
+    public synchronized Iterator<Link> iterator() {
+        Link[] snapshot = new Link[size()];
+        int n = 0;
+
+        for (int i = nextIndex(0); i < this.count; i = nextIndex(i + 1)) {
+            snapshot[n++] = getLink(i);
+        }
+
+        return new LinkIterator(snapshot);
+    }
+
+    /**
+     * Returns the index of the first live link at or after the given index.
+     * 
+     * @param index
+     *            The index to start from.
+     * @return The index of the next live link, or the number of links stored.
+     */
+    private int nextIndex(int index) {
+        int result = index;
+
+        while ((result < this.count) && (this.nodes[SOURCE][result] < 0)) {
+            result++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds a stored link to the link table.
+     * 
+     * @param index
+     *            The index of the link.
+     */
+    private void putLinkSlot(int index) {
+        int mask = this.linkTable.length - 1;
+        int slot = hash(this.nodes[SOURCE][index], this.nodes[TYPE][index],
+                this.nodes[TARGET][index])
+                & mask;
+
+        while (this.linkTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        this.linkTable[slot] = index + 1;
+    }
+
+    /**
+     * Returns the identifier of a node, adding it to the dictionary if needed.
+     * 
+     * @param node
+     *            The node.
+     * @return The identifier of the node.
+     */
+    private int putNode(Object node) {
+        int result = getNodeId(node);
+
+        if (result < 0) {
+            if (this.nodeCount == this.nodeDictionary.length) {
+                allocateNodes(this.nodeCount * 2);
+            }
+
+            result = this.nodeCount++;
+            this.nodeDictionary[result] = node;
+            this.nodeHashes[result] = hash(node);
+
+            int mask = this.nodeTable.length - 1;
+            int slot = this.nodeHashes[result] & mask;
+            while (this.nodeTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.nodeTable[slot] = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads the serialized form of the graph.
+     * 
+     * @param in
+     *            The input stream.
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        this.defaultLink = (Link) readNode(in);
+        allocateNodes(INITIAL_CAPACITY);
+        allocateLinks(INITIAL_CAPACITY);
+
+        Object[] dictionary = new Object[in.readInt()];
+        for (int id = 1; id < dictionary.length; id++) {
+            dictionary[id] = readNode(in);
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            Object source = dictionary[in.readInt()];
+            Reference typeRef = (Reference) dictionary[in.readInt()];
+            addLink(source, typeRef, dictionary[in.readInt()], null);
+        }
+    }
+
+    /**
+     * Removes the link with the same nodes as the given object.
+     * 
+     * @param object
+     *            The link to remove.
+     * @return True if a link was removed.
+     */
+    @Override
+    public synchronized boolean remove(Object object) {
+        int index = indexOf(object);
+
+        if (index >= 0) {
+            removeLink(index);
+        }
+
+        return index >= 0;
+    }
+
+    /**
+     * Marks the link at the given index as removed. It stays in the chains
+     * until the next compaction.
+     * 
+     * @param index
+     *            The index of the link.
+     */
+    private void removeLink(int index) {
+        for (int position = 0; position < 3; position++) {
+            this.counts[position][this.nodes[position][index]]--;
+        }
+
+        this.nodes[SOURCE][index] = -1;
+        this.links[index] = null;
+        this.removed++;
+    }
+
     /**
      * Sets the default link that is used to complete new links.
      * 
@@ -288,4 +1099,41 @@ public class Graph extends CopyOnWriteArraySet<Link> {
         this.defaultLink = defaultLink;
     }
 
+    /**
+     * Returns the number of links.
+     * 
+     * @return The number of links.
+     */
+    @Override
+    public synchronized int size() {
+        return this.count - this.removed;
+    }
+
+    /**
+     * Writes the serialized form of the graph: the default link, the node
+     * dictionary and the identifiers of the nodes of each link.
+     * 
+     * @param out
+     *            The output stream.
+     * @throws IOException
+     */
+    private synchronized void writeObject(ObjectOutputStream out)
+            throws IOException {
+        out.defaultWriteObject();
+        writeNode(out, this.defaultLink);
+        out.writeInt(this.nodeCount);
+
+        for (int id = 1; id < this.nodeCount; id++) {
+            writeNode(out, this.nodeDictionary[id]);
+        }
+
+        out.writeInt(size());
+
+        for (int i = nextIndex(0); i < this.count; i = nextIndex(i + 1)) {
+            out.writeInt(this.nodes[SOURCE][i]);
+            out.writeInt(this.nodes[TYPE][i]);
+            out.writeInt(this.nodes[TARGET][i]);
+        }
+    }
+
 }
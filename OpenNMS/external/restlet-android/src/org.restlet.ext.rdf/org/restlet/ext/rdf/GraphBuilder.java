@@ -4,7 +4,8 @@ import org.restlet.data.Reference;
 
 /**
  * Graph handler used when parsing an RDF representation. It completes the inner
- * set of links with all detected ones.
+ * set of links with all detected ones, without creating a {@link Link} for
+ * each of them.
  */
 public class GraphBuilder extends GraphHandler {
 
@@ -24,28 +25,28 @@ public class GraphBuilder extends GraphHandler {
     @Override
     public void link(Graph source, Reference typeRef, Literal target) {
         if (source != null && typeRef != null && target != null) {
-            this.linkSet.add(source, typeRef, target);
+            this.linkSet.addLink(source, typeRef, target);
         }
     }
 
     @Override
     public void link(Graph source, Reference typeRef, Reference target) {
         if (source != null && typeRef != null && target != null) {
-            this.linkSet.add(source, typeRef, target);
+            this.linkSet.addLink(source, typeRef, target);
         }
     }
 
     @Override
     public void link(Reference source, Reference typeRef, Literal target) {
         if (source != null && typeRef != null && target != null) {
-            this.linkSet.add(source, typeRef, target);
+            this.linkSet.addLink(source, typeRef, target);
         }
     }
 
     @Override
     public void link(Reference source, Reference typeRef, Reference target) {
         if (source != null && typeRef != null && target != null) {
-            this.linkSet.add(source, typeRef, target);
+            this.linkSet.addLink(source, typeRef, target);
         }
     }
 
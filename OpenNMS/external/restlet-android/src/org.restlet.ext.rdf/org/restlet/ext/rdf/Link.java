@@ -138,7 +138,7 @@ public class Link extends Triple<Object, Reference, Object> {
      * @param target
      *            The target node or object in RDF terminology.
      */
-    private Link(Object source, Reference typeRef, Object target) {
+    Link(Object source, Reference typeRef, Object target) {
         super(source, typeRef, target);
     }
 
@@ -32,6 +32,7 @@ package org.restlet.ext.rdf;
 
 import org.restlet.data.Language;
 import org.restlet.data.Reference;
+import org.restlet.engine.util.SystemUtils;
 
 /**
  * Literal as defined by RDF. Composed of the literal value, optional datatype
@@ -90,6 +91,33 @@ public class Literal {
         this.language = language;
     }
 
+    /**
+     * Indicates if this literal is equal to another one, comparing the value,
+     * the datatype reference and the language.
+     * 
+     * @param other
+     *            The other literal.
+     * @return True if this literal is equal to the other one.
+     */
+    @Override
+    public boolean equals(Object other) {
+        boolean result = (this == other);
+
+        if (!result && (other instanceof Literal)) {
+            Literal literal = (Literal) other;
+
+            result = ((getValue() == null) ? (literal.getValue() == null)
+                    : getValue().equals(literal.getValue()))
+                    && ((getDatatypeRef() == null) ? (literal
+                            .getDatatypeRef() == null) : getDatatypeRef()
+                            .equals(literal.getDatatypeRef()))
+                    && ((getLanguage() == null) ? (literal.getLanguage() == null)
+                            : getLanguage().equals(literal.getLanguage()));
+        }
+
+        return result;
+    }
+
     /**
      * Returns the optional datatype reference.
      * 
@@ -117,6 +145,13 @@ public class Literal {
         return value;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return SystemUtils.hashCode(getValue(), getDatatypeRef(),
+                getLanguage());
+    }
+
     /**
      * Indicates if the literal is plain. Plain literals have a value and an
      * optional language tag.
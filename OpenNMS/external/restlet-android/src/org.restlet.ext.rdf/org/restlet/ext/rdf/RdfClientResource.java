@@ -231,6 +231,24 @@ public class RdfClientResource extends ClientResource {
         super(uri);
     }
 
+    /**
+     * Adds the resources targeted by the given links to a set.
+     * 
+     * @param links
+     *            The links to follow.
+     * @param linked
+     *            The set of linked resources to complete.
+     */
+    private void addLinked(Collection<Link> links,
+            Set<RdfClientResource> linked) {
+        for (Link link : links) {
+            if (link.hasReferenceTarget()) {
+                linked.add(new RdfClientResource(getContext(), link
+                        .getTargetAsReference()));
+            }
+        }
+    }
+
     /**
      * Returns all the linked resources, based on the RDF representation
      * exposed.
@@ -259,13 +277,11 @@ public class RdfClientResource extends ClientResource {
         if (links != null) {
             result = new HashSet<RdfClientResource>();
 
-            for (Link link : links) {
-                if (link.hasReferenceTarget()) {
-                    if ((typeRefs == null)
-                            || typeRefs.contains(link.getTypeRef())) {
-                        result.add(new RdfClientResource(getContext(), link
-                                .getTargetAsReference()));
-                    }
+            if (typeRefs == null) {
+                addLinked(links, result);
+            } else {
+                for (Reference typeRef : typeRefs) {
+                    addLinked(links.find(null, typeRef, null), result);
                 }
             }
         }
@@ -389,11 +405,9 @@ public class RdfClientResource extends ClientResource {
         if (links != null) {
             result = new HashSet<Literal>();
 
-            for (Link link : links) {
+            for (Link link : links.find(null, typeRef, null)) {
                 if (link.hasLiteralTarget()) {
-                    if ((typeRef == null) || typeRef.equals(link.getTypeRef())) {
-                        result.add(link.getTargetAsLiteral());
-                    }
+                    result.add(link.getTargetAsLiteral());
                 }
             }
         }
@@ -62,6 +62,9 @@ public class RdfNTriplesReader extends RdfReader {
     /** End of reading buffer marker. */
     public final int EOF = 0;
 
+    /** Start index of the part of the buffer filled last. */
+    private int filledPart;
+
     /**
      * Index that discovers the end of the current token and the beginning of
      * the futur one.
@@ -90,6 +93,7 @@ public class RdfNTriplesReader extends RdfReader {
         this.buffer[BUFFER_SIZE] = this.buffer[2 * BUFFER_SIZE + 1] = EOF;
         this.scoutIndex = 2 * BUFFER_SIZE;
         this.startTokenIndex = 0;
+        this.filledPart = BUFFER_SIZE + 1;
 
         this.br = new BufferedReader(getRdfRepresentation().getReader(),
                 IoUtils.getBufferSize());
@@ -134,6 +138,30 @@ public class RdfNTriplesReader extends RdfReader {
         startTokenIndex = scoutIndex;
     }
 
+    /**
+     * Reads the next characters into one part of the buffer and marks their
+     * end. The reader is read until the part is full, so that only the end of
+     * the stream leaves a part incomplete.
+     * 
+     * @param offset
+     *            The index of the part to fill.
+     * @throws IOException
+     */
+    private void fill(int offset) throws IOException {
+        int len = 0;
+        int read = 0;
+
+        while ((read != -1) && (len < BUFFER_SIZE)) {
+            read = this.br.read(buffer, offset + len, BUFFER_SIZE - len);
+            if (read > 0) {
+                len += read;
+            }
+        }
+
+        buffer[offset + len] = EOF;
+        filledPart = offset;
+    }
+
     /**
      * Returns the current parsed character.
      * 
@@ -151,37 +179,27 @@ public class RdfNTriplesReader extends RdfReader {
     protected String getCurrentToken() {
         StringBuilder builder = new StringBuilder();
         if (startTokenIndex <= scoutIndex) {
-            if (scoutIndex <= BUFFER_SIZE) {
-                for (int i = startTokenIndex; i < scoutIndex; i++) {
-                    builder.append(buffer[i]);
-                }
+            if ((startTokenIndex <= BUFFER_SIZE) && (scoutIndex > BUFFER_SIZE)) {
+                // The token spans both parts, skip the marker between them
+                builder.append(buffer, startTokenIndex, BUFFER_SIZE
+                        - startTokenIndex);
+                builder.append(buffer, BUFFER_SIZE + 1, scoutIndex
+                        - BUFFER_SIZE - 1);
             } else {
-                for (int i = startTokenIndex; i < BUFFER_SIZE; i++) {
-                    builder.append(buffer[i]);
-                }
-                for (int i = BUFFER_SIZE + 1; i < scoutIndex; i++) {
-                    builder.append(buffer[i]);
-                }
+                builder.append(buffer, startTokenIndex, scoutIndex
+                        - startTokenIndex);
             }
         } else {
+            // The token wraps around the end of the buffer
             if (startTokenIndex <= BUFFER_SIZE) {
-                for (int i = startTokenIndex; i < BUFFER_SIZE; i++) {
-                    builder.append(buffer[i]);
-                }
-                for (int i = BUFFER_SIZE + 1; i < (2 * BUFFER_SIZE + 1); i++) {
-                    builder.append(buffer[i]);
-                }
-                for (int i = 0; i < scoutIndex; i++) {
-                    builder.append(buffer[i]);
-                }
+                builder.append(buffer, startTokenIndex, BUFFER_SIZE
+                        - startTokenIndex);
+                builder.append(buffer, BUFFER_SIZE + 1, BUFFER_SIZE);
             } else {
-                for (int i = startTokenIndex; i < (2 * BUFFER_SIZE + 1); i++) {
-                    builder.append(buffer[i]);
-                }
-                for (int i = 0; i < scoutIndex; i++) {
-                    builder.append(buffer[i]);
-                }
+                builder.append(buffer, startTokenIndex, (2 * BUFFER_SIZE + 1)
+                        - startTokenIndex);
             }
+            builder.append(buffer, 0, scoutIndex);
         }
         // the current token is consumed.
         startTokenIndex = scoutIndex;
@@ -414,25 +432,17 @@ public class RdfNTriplesReader extends RdfReader {
         if (buffer[scoutIndex] == EOF) {
             if (scoutIndex == BUFFER_SIZE) {
                 // Reached the end of the first part of the buffer, read into
-                // the second one.
+                // the second one, unless it was read before stepping back.
                 scoutIndex++;
-                int len = this.br.read(buffer, 0, BUFFER_SIZE);
-                if (len == -1) {
-                    // End of the stream reached
-                    buffer[scoutIndex] = EOF;
-                } else {
-                    buffer[BUFFER_SIZE + len + 1] = EOF;
+                if (filledPart != BUFFER_SIZE + 1) {
+                    fill(BUFFER_SIZE + 1);
                 }
             } else if (scoutIndex == (2 * BUFFER_SIZE + 1)) {
                 scoutIndex = 0;
                 // Reached the end of the second part of the buffer, read into
-                // the first one.
-                int len = this.br.read(buffer, 0, BUFFER_SIZE);
-                if (len == -1) {
-                    // End of the stream reached
-                    buffer[scoutIndex] = EOF;
-                } else {
-                    buffer[len] = EOF;
+                // the first one, unless it was read before stepping back.
+                if (filledPart != 0) {
+                    fill(0);
                 }
             } else {
                 // Reached the end of the stream.
@@ -470,9 +480,14 @@ public class RdfNTriplesReader extends RdfReader {
      *            The number of steps to go back.
      */
     protected void stepBack(int n) {
-        scoutIndex -= n;
-        if (scoutIndex < 0) {
-            scoutIndex = BUFFER_SIZE * 2 + 1 - scoutIndex;
+        for (int i = 0; i < n; i++) {
+            scoutIndex--;
+            if (scoutIndex == BUFFER_SIZE) {
+                // Skip the marker between both parts of the buffer
+                scoutIndex--;
+            } else if (scoutIndex < 0) {
+                scoutIndex = 2 * BUFFER_SIZE;
+            }
         }
     }
 
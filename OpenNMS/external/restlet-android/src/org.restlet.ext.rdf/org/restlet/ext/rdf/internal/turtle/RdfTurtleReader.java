@@ -292,7 +292,6 @@ public class RdfTurtleReader extends RdfNTriplesReader {
                         new ListToken(this, this.context));
                 break;
             case '<':
-                stepBack();
                 blankNode.getLexicalUnits().add(
                         new UriToken(this, this.context));
                 break;
@@ -392,7 +391,6 @@ public class RdfTurtleReader extends RdfNTriplesReader {
                         new ListToken(this, this.context));
                 break;
             case '<':
-                stepBack();
                 listToken.getLexicalUnits().add(
                         new UriToken(this, this.context));
                 break;
@@ -440,7 +438,6 @@ public class RdfTurtleReader extends RdfNTriplesReader {
                 lexicalUnits.add(new ListToken(this, context));
                 break;
             case '<':
-                stepBack();
                 lexicalUnits.add(new UriToken(this, context));
                 break;
             case '_':
@@ -33,12 +33,11 @@ package org.restlet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
-import org.restlet.data.Form;
 import org.restlet.data.Parameter;
 import org.restlet.engine.Engine;
+import org.restlet.engine.util.IndexedForm;
 import org.restlet.util.Series;
 
 /**
@@ -142,7 +141,7 @@ public class Context {
     public Context(Logger logger) {
         this.attributes = new ConcurrentHashMap<String, Object>();
         this.logger = logger;
-        this.parameters = new Form(new CopyOnWriteArrayList<Parameter>());
+        this.parameters = new IndexedForm(true);
         this.clientDispatcher = null;
 
         this.defaultEnroler = null;
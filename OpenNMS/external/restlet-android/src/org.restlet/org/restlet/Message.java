@@ -143,6 +143,12 @@ public abstract class Message {
      * <td>For requests received via a secure connector, indicates the ordered
      * list of client certificates, if they are available and accessible.</td>
      * </tr>
+     * <tr>
+     * <td>org.restlet.engine.http.timing.callTimer</td>
+     * <td>org.restlet.engine.http.timing.CallTimer</td>
+     * <td>For client requests, while the default latency recorder is enabled,
+     * times the phases of the call.</td>
+     * </tr>
      * </table>
      * <br>
      * Most of the standard HTTP headers are directly supported via the Restlet
@@ -664,6 +664,31 @@ public class ComponentXmlParser {
                             getComponent().getLogService().setIdentityCheck(
                                     getBoolean(item, true));
                         }
+
+                        item = childNode.getAttributes().getNamedItem(
+                                "asynchronous");
+
+                        if (item != null) {
+                            getComponent().getLogService().setAsynchronous(
+                                    getBoolean(item, true));
+                        }
+
+                        item = childNode.getAttributes().getNamedItem(
+                                "blockingOnOverflow");
+
+                        if (item != null) {
+                            getComponent().getLogService()
+                                    .setBlockingOnOverflow(
+                                            getBoolean(item, true));
+                        }
+
+                        item = childNode.getAttributes().getNamedItem(
+                                "bufferSize");
+
+                        if (item != null) {
+                            getComponent().getLogService().setBufferSize(
+                                    getInt(item, 1024));
+                        }
                     } else if ("statusService".equals(childNode.getNodeName())) {
                         Node item = childNode.getAttributes().getNamedItem(
                                 "contactEmail");
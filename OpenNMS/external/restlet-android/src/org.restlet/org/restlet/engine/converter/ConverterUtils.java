@@ -32,9 +32,16 @@ package org.restlet.engine.converter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import org.restlet.Context;
+import org.restlet.data.CharacterSet;
+import org.restlet.data.Encoding;
+import org.restlet.data.Language;
+import org.restlet.data.MediaType;
 import org.restlet.engine.Engine;
 import org.restlet.engine.resource.VariantInfo;
 import org.restlet.representation.Representation;
@@ -42,12 +49,245 @@ import org.restlet.representation.Variant;
 import org.restlet.resource.UniformResource;
 
 /**
- * Utilities for the converter service.
+ * Utilities for the converter service.<br>
+ * <br>
+ * The best converter helpers are memoized: the registered converters score a
+ * conversion from the class of the source object or representation, the
+ * metadata of the variant and the target class, so the helper selected for
+ * these is cached until the list of registered converters changes.
  * 
  * @author Jerome Louvel
  */
 public class ConverterUtils {
 
+    /**
+     * Key of a cached selection. Holds the source class, the target class and
+     * the metadata of the variant that converter helpers score, but not the
+     * source or the variant themselves.
+     */
+    private static final class SelectionKey {
+
+        /** The character set of the variant. */
+        private final CharacterSet characterSet;
+
+        /** The encodings of the variant, or null if there are none. */
+        private final List<Encoding> encodings;
+
+        /** The hash code. */
+        private final int hashCode;
+
+        /** The languages of the variant, or null if there are none. */
+        private final List<Language> languages;
+
+        /** The media type of the variant. */
+        private final MediaType mediaType;
+
+        /** The class of the source object or representation. */
+        private final Class<?> sourceClass;
+
+        /** The target class. */
+        private final Class<?> targetClass;
+
+        /**
+         * Constructor.
+         * 
+         * @param sourceClass
+         *            The class of the source object or representation.
+         * @param variant
+         *            The source or target variant.
+         * @param targetClass
+         *            The target class.
+         */
+        private SelectionKey(Class<?> sourceClass, Variant variant,
+                Class<?> targetClass) {
+            this.sourceClass = sourceClass;
+            this.targetClass = targetClass;
+
+            if (variant == null) {
+                this.characterSet = null;
+                this.encodings = null;
+                this.languages = null;
+                this.mediaType = null;
+            } else {
+                this.characterSet = variant.getCharacterSet();
+                this.encodings = variant.getEncodings().isEmpty() ? null
+                        : new ArrayList<Encoding>(variant.getEncodings());
+                this.languages = variant.getLanguages().isEmpty() ? null
+                        : new ArrayList<Language>(variant.getLanguages());
+                this.mediaType = variant.getMediaType();
+            }
+
+            // Hash the media type name as parameters are rarely set and
+            // costly to hash
+            int hash = hashCode(this.sourceClass);
+            hash = 31 * hash + hashCode(this.targetClass);
+            hash = 31 * hash
+                    + ((this.mediaType == null) ? 0 : hashCode(this.mediaType
+                            .getName()));
+            hash = 31 * hash + hashCode(this.characterSet);
+            hash = 31 * hash + hashCode(this.encodings);
+            this.hashCode = 31 * hash + hashCode(this.languages);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) {
+                return true;
+            }
+
+            if (!(object instanceof SelectionKey)) {
+                return false;
+            }
+
+            final SelectionKey other = (SelectionKey) object;
+            return (this.hashCode == other.hashCode)
+                    && (this.sourceClass == other.sourceClass)
+                    && (this.targetClass == other.targetClass)
+                    && equals(this.mediaType, other.mediaType)
+                    && equals(this.characterSet, other.characterSet)
+                    && equals(this.encodings, other.encodings)
+                    && equals(this.languages, other.languages);
+        }
+
+        /**
+         * Indicates if two objects are the same, equal or both null.
+         * 
+         * @param object1
+         *            The first object.
+         * @param object2
+         *            The second object.
+         * @return True if the objects are the same, equal or both null.
+         */
+        private boolean equals(Object object1, Object object2) {
+            return (object1 == object2)
+                    || ((object1 != null) && object1.equals(object2));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        /**
+         * Returns the hash code of an object, or 0 if it is null.
+         * 
+         * @param object
+         *            The object.
+         * @return The hash code.
+         */
+        private int hashCode(Object object) {
+            return (object == null) ? 0 : object.hashCode();
+        }
+    }
+
+    /**
+     * Converter helpers selected among a given list of registered converters.
+     */
+    private static final class Selections {
+
+        /** The registered converters the helpers were selected among. */
+        private final ConverterHelper[] converters;
+
+        /** The helpers selected to convert representations into objects. */
+        private final ConcurrentMap<SelectionKey, Object> toObject;
+
+        /** The helpers selected to convert objects into representations. */
+        private final ConcurrentMap<SelectionKey, Object> toRepresentation;
+
+        /**
+         * Constructor.
+         * 
+         * @param converters
+         *            The registered converters.
+         */
+        private Selections(List<ConverterHelper> converters) {
+            this.converters = converters
+                    .toArray(new ConverterHelper[converters.size()]);
+            this.toObject = new ConcurrentHashMap<SelectionKey, Object>();
+            this.toRepresentation = new ConcurrentHashMap<SelectionKey, Object>();
+        }
+
+        /**
+         * Returns a cached selection.
+         * 
+         * @param selections
+         *            The map of selections.
+         * @param key
+         *            The selection key.
+         * @return The cached selection, {@link ConverterUtils#NO_HELPER} if
+         *         no helper was found or null if nothing is cached.
+         */
+        private Object get(ConcurrentMap<SelectionKey, Object> selections,
+                SelectionKey key) {
+            final Object result = selections.get(key);
+
+            if (result == null) {
+                cacheMisses.incrementAndGet();
+            } else {
+                cacheHits.incrementAndGet();
+            }
+
+            return result;
+        }
+
+        /**
+         * Indicates if the helpers were selected among the current list of
+         * registered converters.
+         * 
+         * @param converters
+         *            The registered converters.
+         * @return True if the cached selections can be used.
+         */
+        private boolean isCurrent(List<ConverterHelper> converters) {
+            int i = 0;
+
+            for (ConverterHelper ch : converters) {
+                if ((i == this.converters.length)
+                        || (ch != this.converters[i])) {
+                    return false;
+                }
+
+                i++;
+            }
+
+            return i == this.converters.length;
+        }
+
+        /**
+         * Caches a selection, unless the cache is full.
+         * 
+         * @param selections
+         *            The map of selections.
+         * @param key
+         *            The selection key.
+         * @param helper
+         *            The selected helper or null.
+         */
+        private void put(ConcurrentMap<SelectionKey, Object> selections,
+                SelectionKey key, ConverterHelper helper) {
+            if (selections.size() < CACHE_CAPACITY) {
+                selections.put(key, (helper == null) ? NO_HELPER : helper);
+            }
+        }
+    }
+
+    /** The maximum number of selections cached for each direction. */
+    private static final int CACHE_CAPACITY = 256;
+
+    /** Cached selection of a conversion that no helper can do. */
+    private static final Object NO_HELPER = new Object();
+
+    /** The number of selections found in the cache. */
+    private static final AtomicLong cacheHits = new AtomicLong();
+
+    /** The number of selections that had to score each converter. */
+    private static final AtomicLong cacheMisses = new AtomicLong();
+
+    /** The cached selections. */
+    private static volatile Selections selections;
+
     /**
      * Returns the list of variants that can be converted from a given object
      * class.
@@ -116,12 +356,21 @@ public class ConverterUtils {
      */
     public static ConverterHelper getBestHelper(Object source, Variant target,
             UniformResource resource) {
+        final Selections selections = getSelections();
+        final SelectionKey key = new SelectionKey((source == null) ? null
+                : source.getClass(), target, null);
+        final Object cached = selections.get(selections.toRepresentation, key);
+
+        if (cached != null) {
+            return (cached == NO_HELPER) ? null : (ConverterHelper) cached;
+        }
+
         ConverterHelper result = null;
         float bestScore = -1.0F;
         float currentScore;
+        boolean scored = true;
 
-        for (ConverterHelper ch : Engine.getInstance()
-                .getRegisteredConverters()) {
+        for (ConverterHelper ch : selections.converters) {
             try {
                 currentScore = ch.score(source, target, resource);
 
@@ -130,6 +379,7 @@ public class ConverterUtils {
                     result = ch;
                 }
             } catch (Exception e) {
+                scored = false;
                 Context.getCurrentLogger().log(
                         Level.SEVERE,
                         "Unable get the score of the " + ch
@@ -137,6 +387,10 @@ public class ConverterUtils {
             }
         }
 
+        if (scored) {
+            selections.put(selections.toRepresentation, key, result);
+        }
+
         return result;
     }
 
@@ -155,12 +409,20 @@ public class ConverterUtils {
      */
     public static <T> ConverterHelper getBestHelper(Representation source,
             Class<T> target, UniformResource resource) {
+        final Selections selections = getSelections();
+        final SelectionKey key = new SelectionKey((source == null) ? null
+                : source.getClass(), source, target);
+        final Object cached = selections.get(selections.toObject, key);
+
+        if (cached != null) {
+            return (cached == NO_HELPER) ? null : (ConverterHelper) cached;
+        }
+
         ConverterHelper result = null;
         float bestScore = -1.0F;
         float currentScore;
 
-        for (ConverterHelper ch : Engine.getInstance()
-                .getRegisteredConverters()) {
+        for (ConverterHelper ch : selections.converters) {
             currentScore = ch.score(source, target, resource);
 
             if (currentScore > bestScore) {
@@ -169,6 +431,56 @@ public class ConverterUtils {
             }
         }
 
+        selections.put(selections.toObject, key, result);
+        return result;
+    }
+
+    /**
+     * Returns the ratio of converter helper selections found in the cache.
+     * 
+     * @return The hit ratio, between 0 and 1.
+     */
+    public static double getCacheHitRatio() {
+        final long hits = cacheHits.get();
+        final long lookups = hits + cacheMisses.get();
+        return (lookups == 0) ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Returns the number of converter helper selections found in the cache.
+     * 
+     * @return The number of selections found in the cache.
+     */
+    public static long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Returns the number of converter helper selections that had to score
+     * each registered converter.
+     * 
+     * @return The number of selections not found in the cache.
+     */
+    public static long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * Returns the selections cached for the current list of registered
+     * converters, dropping the previous ones if the list changed.
+     * 
+     * @return The cached selections.
+     */
+    private static Selections getSelections() {
+        final List<ConverterHelper> converters = Engine.getInstance()
+                .getRegisteredConverters();
+        Selections result = selections;
+
+        if ((result == null) || !result.isCurrent(converters)) {
+            result = new Selections(converters);
+            selections = result;
+        }
+
         return result;
     }
 
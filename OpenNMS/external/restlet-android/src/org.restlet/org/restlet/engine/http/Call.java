@@ -35,10 +35,10 @@ import java.io.InputStream;
 import java.util.logging.Logger;
 
 import org.restlet.Context;
-import org.restlet.data.Form;
 import org.restlet.data.Parameter;
 import org.restlet.data.Protocol;
 import org.restlet.engine.http.header.HeaderUtils;
+import org.restlet.engine.util.IndexedForm;
 import org.restlet.representation.InputRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.util.Series;
@@ -132,9 +132,9 @@ public abstract class Call {
         this.method = null;
         this.protocol = null;
         this.reasonPhrase = "";
-        this.requestHeaders = new Form();
+        this.requestHeaders = new IndexedForm();
         this.requestUri = null;
-        this.responseHeaders = new Form();
+        this.responseHeaders = new IndexedForm();
         this.serverAddress = null;
         this.serverPort = -1;
         this.statusCode = 200;
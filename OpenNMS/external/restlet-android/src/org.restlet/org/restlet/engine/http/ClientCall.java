@@ -45,6 +45,8 @@ import org.restlet.engine.ConnectorHelper;
 import org.restlet.engine.http.header.DispositionReader;
 import org.restlet.engine.http.header.HeaderConstants;
 import org.restlet.engine.http.header.HeaderUtils;
+import org.restlet.engine.http.timing.CallTimer;
+import org.restlet.engine.http.timing.Phase;
 import org.restlet.representation.Representation;
 import org.restlet.util.Series;
 
@@ -191,6 +193,11 @@ public abstract class ClientCall extends Call {
             // while the stream is closed.
             InputStream stream = getUnClosedResponseEntityStream(getResponseEntityStream(size));
             java.nio.channels.ReadableByteChannel channel = getResponseEntityChannel(size);
+            CallTimer timer = CallTimer.get(response.getRequest());
+
+            if ((stream != null) && (timer != null)) {
+                stream = timer.wrap(stream);
+            }
 
             if (stream != null) {
                 result = getRepresentation(stream);
@@ -294,6 +301,11 @@ public abstract class ClientCall extends Call {
         Status result = null;
         Representation entity = request.isEntityAvailable() ? request
                 .getEntity() : null;
+        CallTimer timer = CallTimer.get(request);
+
+        if (timer != null) {
+            timer.mark();
+        }
 
         // Get the connector service to callback
         org.restlet.service.ConnectorService connectorService = ConnectorHelper
@@ -324,9 +336,17 @@ public abstract class ClientCall extends Call {
                 }
             }
 
+            if (timer != null) {
+                timer.lap(Phase.SEND);
+            }
+
             // Now we can access the status code, this MUST happen after closing
             // any open request stream.
             result = new Status(getStatusCode(), null, getReasonPhrase(), null);
+
+            if (timer != null) {
+                timer.lap(Phase.FIRST_BYTE);
+            }
         } catch (IOException ioe) {
             getHelper()
                     .getLogger()
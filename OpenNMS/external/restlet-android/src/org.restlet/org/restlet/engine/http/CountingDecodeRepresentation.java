@@ -0,0 +1,315 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.restlet.data.Encoding;
+import org.restlet.data.Reference;
+import org.restlet.engine.application.DecodeRepresentation;
+import org.restlet.engine.io.IoUtils;
+import org.restlet.representation.Representation;
+
+/**
+ * Representation decoding a "gzip" or "deflate" response entity while it is
+ * read, without buffering it. The number of encoded bytes received and of
+ * decoded bytes returned are counted, and reported to the
+ * {@link ResponseDecoder} once the end of the entity is reached.<br>
+ * <br>
+ * When the decoded content ends, the rest of the encoded content is drained
+ * so that the connection that carried it can be reused. The "deflate" decoder
+ * accepts both the zlib format mandated by HTTP and the raw deflate format
+ * that some servers send instead.
+ */
+public class CountingDecodeRepresentation extends DecodeRepresentation {
+
+    /**
+     * Input stream counting the decoded bytes, and completing the entity when
+     * they are exhausted.
+     */
+    private class DecodedStream extends FilterInputStream {
+
+        /** The encoded stream, drained once the decoded one ends. */
+        private final InputStream encodedStream;
+
+        /**
+         * Constructor.
+         * 
+         * @param in
+         *            The decoded input stream.
+         * @param encodedStream
+         *            The encoded stream, drained once the decoded one ends.
+         */
+        public DecodedStream(InputStream in, InputStream encodedStream) {
+            super(in);
+            this.encodedStream = encodedStream;
+        }
+
+        /**
+         * Drains the encoded stream and reports the entity as complete.
+         * 
+         * @throws IOException
+         */
+        private void complete() throws IOException {
+            if (!completed) {
+                completed = true;
+                byte[] buffer = new byte[IoUtils.BUFFER_SIZE];
+
+                while (this.encodedStream.read(buffer) != -1) {
+                    // Discard trailing content
+                }
+
+                decoder.record(CountingDecodeRepresentation.this);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+
+            if (result == -1) {
+                complete();
+            } else {
+                decodedSize++;
+            }
+
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+
+            if (result == -1) {
+                complete();
+            } else {
+                decodedSize += result;
+            }
+
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            decodedSize += result;
+            return result;
+        }
+    }
+
+    /**
+     * Input stream counting the encoded bytes read from the wrapped entity.
+     */
+    private class EncodedStream extends FilterInputStream {
+
+        /**
+         * Constructor.
+         * 
+         * @param in
+         *            The encoded input stream.
+         */
+        public EncodedStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+
+            if (result != -1) {
+                encodedSize++;
+            }
+
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+
+            if (result > 0) {
+                encodedSize += result;
+            }
+
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            encodedSize += result;
+            return result;
+        }
+    }
+
+    /**
+     * Returns a stream decoding the "deflate" encoding, either in the zlib
+     * format or in the raw deflate format.
+     * 
+     * @param encodedStream
+     *            The encoded stream.
+     * @return The decoded stream.
+     * @throws IOException
+     */
+    private static InputStream getInflatedStream(InputStream encodedStream)
+            throws IOException {
+        PushbackInputStream in = new PushbackInputStream(encodedStream, 2);
+        byte[] header = new byte[2];
+        int length = 0;
+
+        int read = 0;
+
+        while ((read != -1) && (length < header.length)) {
+            read = in.read(header, length, header.length - length);
+
+            if (read > 0) {
+                length += read;
+            }
+        }
+
+        in.unread(header, 0, length);
+
+        // A zlib header declares the deflate method and is a multiple of 31
+        boolean zlib = (length == 2) && ((header[0] & 0x0f) == 8)
+                && ((((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0);
+        final Inflater inflater = new Inflater(!zlib);
+
+        return new InflaterInputStream(in, inflater, IoUtils.BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /** Indicates if the end of the entity was reported. */
+    private volatile boolean completed;
+
+    /** Number of decoded bytes returned. */
+    private volatile long decodedSize;
+
+    /** The decoder to report to. */
+    private final ResponseDecoder decoder;
+
+    /** Number of encoded bytes received. */
+    private volatile long encodedSize;
+
+    /** The reference of the requested resource. */
+    private final Reference resourceRef;
+
+    /**
+     * Constructor.
+     * 
+     * @param wrappedRepresentation
+     *            The encoded representation.
+     * @param decoder
+     *            The decoder to report to.
+     * @param resourceRef
+     *            The reference of the requested resource.
+     */
+    public CountingDecodeRepresentation(Representation wrappedRepresentation,
+            ResponseDecoder decoder, Reference resourceRef) {
+        super(wrappedRepresentation);
+        this.completed = false;
+        this.decodedSize = 0;
+        this.decoder = decoder;
+        this.encodedSize = 0;
+        this.resourceRef = resourceRef;
+    }
+
+    /**
+     * Returns the number of decoded bytes read so far.
+     * 
+     * @return The number of decoded bytes read so far.
+     */
+    public long getDecodedSize() {
+        return this.decodedSize;
+    }
+
+    /**
+     * Returns the number of encoded bytes received so far.
+     * 
+     * @return The number of encoded bytes received so far.
+     */
+    public long getEncodedSize() {
+        return this.encodedSize;
+    }
+
+    /**
+     * Returns the reference of the requested resource.
+     * 
+     * @return The reference of the requested resource.
+     */
+    public Reference getResourceRef() {
+        return this.resourceRef;
+    }
+
+    /**
+     * Returns a stream decoding the wrapped entity as it is read. Must only be
+     * called once.
+     * 
+     * @return A stream with the decoded content.
+     */
+    @Override
+    public InputStream getStream() throws IOException {
+        InputStream wrappedStream = getWrappedRepresentation().getStream();
+
+        if (wrappedStream == null) {
+            return null;
+        }
+
+        InputStream encodedStream = new EncodedStream(wrappedStream);
+        InputStream result = encodedStream;
+        List<Encoding> encodings = getWrappedRepresentation().getEncodings();
+
+        for (int i = encodings.size() - 1; i >= 0; i--) {
+            if (Encoding.GZIP.equals(encodings.get(i))) {
+                result = new GZIPInputStream(result, IoUtils.BUFFER_SIZE);
+            } else if (Encoding.DEFLATE.equals(encodings.get(i))) {
+                result = getInflatedStream(result);
+            }
+        }
+
+        return new DecodedStream(result, encodedStream);
+    }
+
+}
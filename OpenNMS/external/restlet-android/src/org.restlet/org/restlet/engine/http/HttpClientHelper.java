@@ -36,9 +36,11 @@ import org.restlet.Client;
 import org.restlet.Context;
 import org.restlet.Request;
 import org.restlet.Response;
+import org.restlet.Uniform;
 import org.restlet.data.Status;
 import org.restlet.engine.ClientHelper;
 import org.restlet.engine.http.adapter.ClientAdapter;
+import org.restlet.engine.http.timing.CallTimer;
 
 /**
  * Base HTTP client connector. Here is the list of parameters that are
@@ -57,6 +59,14 @@ import org.restlet.engine.http.adapter.ClientAdapter;
  * <td>Class name of the adapter of low-level HTTP calls into high level
  * requests and responses.</td>
  * </tr>
+ * <tr>
+ * <td>decodingResponse</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Indicates if the "gzip" and "deflate" encodings should be accepted for
+ * requests that don't specify their accepted encodings, and the matching
+ * response entities transparently decoded. See {@link ResponseDecoder}.</td>
+ * </tr>
  * </table>
  * 
  * @author Jerome Louvel
@@ -66,6 +76,9 @@ public abstract class HttpClientHelper extends ClientHelper {
     /** The adapter from uniform calls to HTTP calls. */
     private volatile ClientAdapter adapter;
 
+    /** The decoder of compressed response entities. */
+    private final ResponseDecoder decoder;
+
     /**
      * Constructor.
      * 
@@ -75,6 +88,7 @@ public abstract class HttpClientHelper extends ClientHelper {
     public HttpClientHelper(Client client) {
         super(client);
         this.adapter = null;
+        this.decoder = new ResponseDecoder();
     }
 
     /**
@@ -103,11 +117,43 @@ public abstract class HttpClientHelper extends ClientHelper {
         return this.adapter;
     }
 
+    /**
+     * Returns the decoder of compressed response entities. Its statistics are
+     * only updated when the "decodingResponse" parameter is set.
+     * 
+     * @return The decoder of compressed response entities.
+     */
+    public ResponseDecoder getDecoder() {
+        return this.decoder;
+    }
+
     @Override
     public void handle(Request request, Response response) {
         try {
+            // Time the call if it wasn't made through a timed client resource
+            CallTimer.start(request);
+
+            if (isDecodingResponse()) {
+                getDecoder().negotiate(request);
+
+                if (request.getOnResponse() != null) {
+                    // Decode the response before the asynchronous callback
+                    final Uniform onResponse = request.getOnResponse();
+                    request.setOnResponse(new Uniform() {
+                        public void handle(Request request, Response response) {
+                            getDecoder().decode(response);
+                            onResponse.handle(request, response);
+                        }
+                    });
+                }
+            }
+
             ClientCall clientCall = getAdapter().toSpecific(this, request);
             getAdapter().commit(clientCall, request, response);
+
+            if (isDecodingResponse() && (request.getOnResponse() == null)) {
+                getDecoder().decode(response);
+            }
         } catch (Exception e) {
             getLogger().log(Level.INFO,
                     "Error while handling an HTTP client call", e);
@@ -115,6 +161,17 @@ public abstract class HttpClientHelper extends ClientHelper {
         }
     }
 
+    /**
+     * Indicates if compressed response entities should be negotiated and
+     * transparently decoded.
+     * 
+     * @return True if compressed response entities should be decoded.
+     */
+    public boolean isDecodingResponse() {
+        return Boolean.parseBoolean(getHelpedParameters().getFirstValue(
+                "decodingResponse", "false"));
+    }
+
     /**
      * Sets the adapter from uniform calls to HTTP calls.
      * 
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.ClientInfo;
+import org.restlet.data.Encoding;
+import org.restlet.data.Preference;
+import org.restlet.representation.Representation;
+
+/**
+ * Negotiates compressed response entities on behalf of a client connector and
+ * transparently decodes them. The "gzip" and "deflate" encodings are only
+ * advertised for requests that don't state their own accepted encodings, and
+ * only the responses to those requests are decoded, so a caller asking for a
+ * specific encoding still receives the entity as it was sent.<br>
+ * <br>
+ * Decoding happens while the entity is read, see
+ * {@link CountingDecodeRepresentation}, which also reports the encoded and
+ * decoded sizes of each response. Those sizes are summed up here for all the
+ * responses of the connector.
+ */
+public class ResponseDecoder {
+
+    /** Request attribute marking the requests negotiated by a decoder. */
+    private static final String ATTRIBUTE_NEGOTIATED = "org.restlet.engine.http.decoder.negotiated";
+
+    /**
+     * Indicates if all the encodings of a representation can be decoded by a
+     * {@link CountingDecodeRepresentation}, and at least one of them is not
+     * the identity.
+     * 
+     * @param encodings
+     *            The encodings applied to the representation.
+     * @return True if the representation should be decoded.
+     */
+    private static boolean isDecodable(List<Encoding> encodings) {
+        boolean result = false;
+
+        for (Encoding encoding : encodings) {
+            if (Encoding.GZIP.equals(encoding)
+                    || Encoding.DEFLATE.equals(encoding)) {
+                result = true;
+            } else if (!Encoding.IDENTITY.equals(encoding)) {
+                return false;
+            }
+        }
+
+        return result;
+    }
+
+    /** Number of responses entirely decoded. */
+    private final AtomicLong decodedCount;
+
+    /** Total number of bytes obtained by decoding the responses. */
+    private final AtomicLong decodedSize;
+
+    /** Total number of encoded bytes received. */
+    private final AtomicLong encodedSize;
+
+    /**
+     * Constructor.
+     */
+    public ResponseDecoder() {
+        this.decodedCount = new AtomicLong();
+        this.decodedSize = new AtomicLong();
+        this.encodedSize = new AtomicLong();
+    }
+
+    /**
+     * Replaces the entity of a response by a decoding wrapper if its encoding
+     * was negotiated by {@link #negotiate(Request)} and can be decoded.
+     * 
+     * @param response
+     *            The response to update.
+     */
+    public void decode(Response response) {
+        Representation entity = response.getEntity();
+
+        if ((entity != null)
+                && (response.getRequest() != null)
+                && Boolean.TRUE.equals(response.getRequest().getAttributes()
+                        .get(ATTRIBUTE_NEGOTIATED))
+                && isDecodable(entity.getEncodings())) {
+            response.setEntity(new CountingDecodeRepresentation(entity, this,
+                    response.getRequest().getResourceRef()));
+        }
+    }
+
+    /**
+     * Returns the number of responses entirely decoded.
+     * 
+     * @return The number of responses entirely decoded.
+     */
+    public long getDecodedCount() {
+        return this.decodedCount.get();
+    }
+
+    /**
+     * Returns the total number of bytes obtained by decoding the responses.
+     * 
+     * @return The total number of decoded bytes.
+     */
+    public long getDecodedSize() {
+        return this.decodedSize.get();
+    }
+
+    /**
+     * Returns the total number of encoded bytes received.
+     * 
+     * @return The total number of encoded bytes.
+     */
+    public long getEncodedSize() {
+        return this.encodedSize.get();
+    }
+
+    /**
+     * Advertises the "gzip" and "deflate" encodings, unless the request
+     * already states which encodings it accepts. Must be called before the
+     * request headers are written.
+     * 
+     * @param request
+     *            The request to update.
+     */
+    public void negotiate(Request request) {
+        ClientInfo clientInfo = request.getClientInfo();
+
+        if (clientInfo.getAcceptedEncodings().isEmpty()) {
+            clientInfo.getAcceptedEncodings().add(
+                    new Preference<Encoding>(Encoding.GZIP));
+            clientInfo.getAcceptedEncodings().add(
+                    new Preference<Encoding>(Encoding.DEFLATE));
+            request.getAttributes().put(ATTRIBUTE_NEGOTIATED, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Records the sizes of a response entity that was entirely read.
+     * 
+     * @param entity
+     *            The decoded entity.
+     */
+    protected void record(CountingDecodeRepresentation entity) {
+        this.decodedCount.incrementAndGet();
+        this.decodedSize.addAndGet(entity.getDecodedSize());
+        this.encodedSize.addAndGet(entity.getEncodedSize());
+
+        if (Context.getCurrentLogger().isLoggable(Level.FINE)) {
+            Context.getCurrentLogger().fine(
+                    "Decoded " + entity.getEncodedSize() + " bytes into "
+                            + entity.getDecodedSize() + " bytes for "
+                            + entity.getResourceRef());
+        }
+    }
+
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.restlet.data.CharacterSet;
+import org.restlet.data.Encoding;
+import org.restlet.data.Language;
+import org.restlet.data.MediaType;
+import org.restlet.data.Tag;
+import org.restlet.representation.InputRepresentation;
+import org.restlet.representation.Representation;
+
+/**
+ * Cached response entity with its metadata, validators and freshness
+ * lifetime.
+ */
+public class CacheEntry {
+
+    /** Version of the serialized form. */
+    private static final int VERSION = 1;
+
+    /**
+     * Reads an entry from a stream.
+     * 
+     * @param in
+     *            The stream to read.
+     * @return The entry read or null if the stream uses another version.
+     * @throws IOException
+     */
+    public static CacheEntry read(DataInputStream in) throws IOException {
+        if (in.readInt() != VERSION) {
+            return null;
+        }
+
+        CacheEntry result = new CacheEntry(in.readUTF());
+        result.freshUntil = in.readLong();
+        result.storedAt = in.readLong();
+        String mediaType = readMetadata(in);
+        result.mediaType = (mediaType == null) ? null : MediaType
+                .valueOf(mediaType);
+        String characterSet = readMetadata(in);
+        result.characterSet = (characterSet == null) ? null : CharacterSet
+                .valueOf(characterSet);
+
+        for (int i = in.readInt(); i > 0; i--) {
+            result.encodings.add(Encoding.valueOf(in.readUTF()));
+        }
+
+        for (int i = in.readInt(); i > 0; i--) {
+            result.languages.add(Language.valueOf(in.readUTF()));
+        }
+
+        String tag = readMetadata(in);
+        result.tag = (tag == null) ? null : Tag.parse(tag);
+        long modificationDate = in.readLong();
+        result.modificationDate = (modificationDate < 0) ? null : new Date(
+                modificationDate);
+        long expirationDate = in.readLong();
+        result.expirationDate = (expirationDate < 0) ? null : new Date(
+                expirationDate);
+        result.content = new byte[in.readInt()];
+        in.readFully(result.content);
+        return result;
+    }
+
+    /**
+     * Reads an optional metadata name.
+     * 
+     * @param in
+     *            The stream to read.
+     * @return The name read or null.
+     * @throws IOException
+     */
+    private static String readMetadata(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /** The character set of the entity. */
+    private volatile CharacterSet characterSet;
+
+    /** The entity content. */
+    private volatile byte[] content;
+
+    /** The encodings of the entity. */
+    private final List<Encoding> encodings;
+
+    /** The expiration date of the entity. */
+    private volatile Date expirationDate;
+
+    /** The time until which the entry can be used without revalidation. */
+    private volatile long freshUntil;
+
+    /** The key of the entry. */
+    private final String key;
+
+    /** The languages of the entity. */
+    private final List<Language> languages;
+
+    /** The media type of the entity. */
+    private volatile MediaType mediaType;
+
+    /** The modification date of the entity. */
+    private volatile Date modificationDate;
+
+    /** The time at which the entry was stored or last revalidated. */
+    private volatile long storedAt;
+
+    /** The tag of the entity. */
+    private volatile Tag tag;
+
+    /**
+     * Constructor.
+     * 
+     * @param key
+     *            The key of the entry.
+     */
+    private CacheEntry(String key) {
+        this.key = key;
+        this.encodings = new ArrayList<Encoding>();
+        this.languages = new ArrayList<Language>();
+    }
+
+    /**
+     * Constructor copying the metadata of a representation.
+     * 
+     * @param key
+     *            The key of the entry.
+     * @param entity
+     *            The representation whose metadata is copied.
+     * @param content
+     *            The content of the representation.
+     * @param freshUntil
+     *            The time until which the entry can be used without
+     *            revalidation.
+     */
+    public CacheEntry(String key, Representation entity, byte[] content,
+            long freshUntil) {
+        this(key);
+        this.characterSet = entity.getCharacterSet();
+        this.content = content;
+        this.encodings.addAll(entity.getEncodings());
+        this.expirationDate = entity.getExpirationDate();
+        this.freshUntil = freshUntil;
+        this.languages.addAll(entity.getLanguages());
+        this.mediaType = entity.getMediaType();
+        this.modificationDate = entity.getModificationDate();
+        this.storedAt = System.currentTimeMillis();
+        this.tag = entity.getTag();
+    }
+
+    /**
+     * Creates a new representation of the cached entity.
+     * 
+     * @return A new representation of the cached entity.
+     */
+    public Representation createRepresentation() {
+        Representation result = new InputRepresentation(
+                new ByteArrayInputStream(this.content), this.mediaType,
+                this.content.length);
+        result.setCharacterSet(this.characterSet);
+        result.getEncodings().addAll(this.encodings);
+        result.getLanguages().addAll(this.languages);
+        result.setTag(this.tag);
+        result.setModificationDate(this.modificationDate);
+        result.setExpirationDate(this.expirationDate);
+        return result;
+    }
+
+    /**
+     * Returns the age of the entry in seconds.
+     * 
+     * @return The age of the entry in seconds.
+     */
+    public int getAge() {
+        return (int) ((System.currentTimeMillis() - this.storedAt) / 1000L);
+    }
+
+    /**
+     * Returns the key of the entry.
+     * 
+     * @return The key of the entry.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the modification date of the entity.
+     * 
+     * @return The modification date of the entity.
+     */
+    public Date getModificationDate() {
+        return modificationDate;
+    }
+
+    /**
+     * Returns the size of the entity content.
+     * 
+     * @return The size of the entity content.
+     */
+    public int getSize() {
+        return this.content.length;
+    }
+
+    /**
+     * Returns the tag of the entity.
+     * 
+     * @return The tag of the entity.
+     */
+    public Tag getTag() {
+        return tag;
+    }
+
+    /**
+     * Indicates if the entry can be used without revalidation.
+     * 
+     * @return True if the entry can be used without revalidation.
+     */
+    public boolean isFresh() {
+        return System.currentTimeMillis() < this.freshUntil;
+    }
+
+    /**
+     * Indicates if the entry has a tag or a modification date to revalidate
+     * it.
+     * 
+     * @return True if the entry can be revalidated.
+     */
+    public boolean isRevalidable() {
+        return (this.tag != null) || (this.modificationDate != null);
+    }
+
+    /**
+     * Updates the freshness of the entry after a successful revalidation.
+     * 
+     * @param freshUntil
+     *            The time until which the entry can be used without
+     *            revalidation.
+     * @param expirationDate
+     *            The new expiration date of the entity or null.
+     */
+    public void revalidated(long freshUntil, Date expirationDate) {
+        this.freshUntil = freshUntil;
+        this.storedAt = System.currentTimeMillis();
+
+        if (expirationDate != null) {
+            this.expirationDate = expirationDate;
+        }
+    }
+
+    /**
+     * Writes the entry to a stream.
+     * 
+     * @param out
+     *            The stream to write.
+     * @throws IOException
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(VERSION);
+        out.writeUTF(this.key);
+        out.writeLong(this.freshUntil);
+        out.writeLong(this.storedAt);
+        writeMetadata(out, (this.mediaType == null) ? null : this.mediaType
+                .getName());
+        writeMetadata(out, (this.characterSet == null) ? null
+                : this.characterSet.getName());
+        out.writeInt(this.encodings.size());
+
+        for (Encoding encoding : this.encodings) {
+            out.writeUTF(encoding.getName());
+        }
+
+        out.writeInt(this.languages.size());
+
+        for (Language language : this.languages) {
+            out.writeUTF(language.getName());
+        }
+
+        writeMetadata(out, (this.tag == null) ? null : this.tag.format());
+        out.writeLong((this.modificationDate == null) ? -1
+                : this.modificationDate.getTime());
+        out.writeLong((this.expirationDate == null) ? -1
+                : this.expirationDate.getTime());
+        out.writeInt(this.content.length);
+        out.write(this.content);
+    }
+
+    /**
+     * Writes an optional metadata name.
+     * 
+     * @param out
+     *            The stream to write.
+     * @param name
+     *            The name to write or null.
+     * @throws IOException
+     */
+    private void writeMetadata(DataOutputStream out, String name)
+            throws IOException {
+        out.writeBoolean(name != null);
+
+        if (name != null) {
+            out.writeUTF(name);
+        }
+    }
+}
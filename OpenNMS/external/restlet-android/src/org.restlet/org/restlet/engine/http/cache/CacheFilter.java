@@ -0,0 +1,656 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Uniform;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.Conditions;
+import org.restlet.data.Method;
+import org.restlet.data.Status;
+import org.restlet.engine.http.header.HeaderConstants;
+import org.restlet.representation.InputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.routing.Filter;
+
+/**
+ * Client-side filter caching the responses to GET requests. Entries are
+ * looked up in a memory store, then in an optional disk store.<br>
+ * <br>
+ * A fresh entry, according to the "max-age" directive or the "Expires" header
+ * of the response that was cached, is returned without calling the next
+ * Restlet. A stale entry that has an ETag or a modification date is
+ * revalidated with a conditional request, and returned if the server answers
+ * with a "304 Not Modified" status. Responses with a "no-store" directive and
+ * requests that already have conditions are never served from the cache.<br>
+ * <br>
+ * Response entities are stored as they are read by the caller, so that large
+ * entities are still streamed. Entities larger than the maximum entry size,
+ * or that aren't fully read, are not stored.<br>
+ * <br>
+ * Asynchronous calls, whose request has a response callback, are cached as
+ * well: the response goes through the cache before the callback is invoked,
+ * and a fresh entry is given to the callback right away.<br>
+ * <br>
+ * The filter counts fresh hits, successful revalidations and misses, and the
+ * number of entity bytes that didn't have to be transferred.
+ */
+public class CacheFilter extends Filter {
+
+    /**
+     * Tees an entity stream into a buffer, storing the entry once the stream
+     * has been fully read.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        /** The content read so far, or null if it won't be stored. */
+        private ByteArrayOutputStream buffer;
+
+        /** The representation read. */
+        private final Representation entity;
+
+        /** The time until which the entry can be used without revalidation. */
+        private final long freshUntil;
+
+        /** The key of the entry. */
+        private final String key;
+
+        /**
+         * Constructor.
+         * 
+         * @param key
+         *            The key of the entry.
+         * @param entity
+         *            The representation read.
+         * @param freshUntil
+         *            The time until which the entry can be used without
+         *            revalidation.
+         * @throws IOException
+         */
+        public CachingInputStream(String key, Representation entity,
+                long freshUntil) throws IOException {
+            super(entity.getStream());
+            this.buffer = new ByteArrayOutputStream(
+                    (entity.getSize() > 0) ? (int) entity.getSize() : 1024);
+            this.entity = entity;
+            this.freshUntil = freshUntil;
+            this.key = key;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.buffer = null;
+            super.close();
+            this.entity.release();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+
+            if (result == -1) {
+                store();
+            } else if (this.buffer != null) {
+                this.buffer.write(result);
+                checkSize();
+            }
+
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+
+            if (result == -1) {
+                store();
+            } else if (this.buffer != null) {
+                this.buffer.write(b, off, result);
+                checkSize();
+            }
+
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // The skipped content can't be cached
+            this.buffer = null;
+            return super.skip(n);
+        }
+
+        /**
+         * Gives up storing the entry if it has become too large.
+         */
+        private void checkSize() {
+            if (this.buffer.size() > getMaxEntrySize()) {
+                this.buffer = null;
+            }
+        }
+
+        /**
+         * Stores the entry once the whole content has been read.
+         */
+        private void store() {
+            if (this.buffer != null) {
+                put(new CacheEntry(this.key, this.entity, this.buffer
+                        .toByteArray(), this.freshUntil));
+                this.buffer = null;
+            }
+        }
+    }
+
+    /** The default maximum size of an entry. */
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 256 * 1024;
+
+    /** The request attribute holding the entry being revalidated. */
+    private static final String REVALIDATED_ENTRY = "org.restlet.engine.http.cache.entry";
+
+    /**
+     * Indicates if a series of cache directives contains the given one.
+     * 
+     * @param directives
+     *            The directives to look into.
+     * @param name
+     *            The name of the directive.
+     * @return True if the directive is present.
+     */
+    private static boolean hasDirective(Iterable<CacheDirective> directives,
+            String name) {
+        for (CacheDirective directive : directives) {
+            if (name.equalsIgnoreCase(directive.getName())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /** The number of entity bytes that didn't have to be transferred. */
+    private final AtomicLong bytesSaved;
+
+    /** The optional disk store. */
+    private final CacheStore diskStore;
+
+    /** The number of fresh entries returned. */
+    private final AtomicLong hits;
+
+    /** The number of cacheable requests. */
+    private final AtomicLong lookups;
+
+    /** The maximum size of an entry. */
+    private volatile int maxEntrySize;
+
+    /** The memory store. */
+    private final CacheStore memoryStore;
+
+    /** The number of cacheable requests that had to be fully transferred. */
+    private final AtomicLong misses;
+
+    /** The number of stale entries returned after revalidation. */
+    private final AtomicLong revalidations;
+
+    /**
+     * Constructor.
+     * 
+     * @param context
+     *            The context.
+     * @param memoryStore
+     *            The memory store.
+     */
+    public CacheFilter(Context context, CacheStore memoryStore) {
+        this(context, memoryStore, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param context
+     *            The context.
+     * @param memoryStore
+     *            The memory store.
+     * @param diskStore
+     *            The optional disk store.
+     */
+    public CacheFilter(Context context, CacheStore memoryStore,
+            CacheStore diskStore) {
+        super(context);
+        this.bytesSaved = new AtomicLong();
+        this.diskStore = diskStore;
+        this.hits = new AtomicLong();
+        this.lookups = new AtomicLong();
+        this.maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+        this.memoryStore = memoryStore;
+        this.misses = new AtomicLong();
+        this.revalidations = new AtomicLong();
+    }
+
+    @Override
+    protected void afterHandle(Request request, Response response) {
+        if (request.getOnResponse() == null) {
+            handleResponse(request, response);
+        }
+    }
+
+    @Override
+    protected int beforeHandle(Request request, Response response) {
+        final Uniform onResponse = request.getOnResponse();
+        final int result = lookup(request, response);
+
+        if (onResponse != null) {
+            if (result == STOP) {
+                onResponse.handle(request, response);
+            } else {
+                // Go through the cache before the asynchronous callback
+                request.setOnResponse(new Uniform() {
+                    public void handle(Request request, Response response) {
+                        handleResponse(request, response);
+                        onResponse.handle(request, response);
+                    }
+                });
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Wraps a response entity so that it is stored once fully read.
+     * 
+     * @param key
+     *            The key of the entry.
+     * @param entity
+     *            The response entity.
+     * @param freshUntil
+     *            The time until which the entry can be used without
+     *            revalidation.
+     * @return The wrapping representation.
+     * @throws IOException
+     */
+    protected Representation createCachingRepresentation(String key,
+            Representation entity, long freshUntil) throws IOException {
+        InputStream stream = new CachingInputStream(key, entity, freshUntil);
+        Representation result = new InputRepresentation(stream, entity
+                .getMediaType(), entity.getSize());
+        result.setCharacterSet(entity.getCharacterSet());
+        result.getEncodings().addAll(entity.getEncodings());
+        result.getLanguages().addAll(entity.getLanguages());
+        result.setTag(entity.getTag());
+        result.setModificationDate(entity.getModificationDate());
+        result.setExpirationDate(entity.getExpirationDate());
+        result.setLocationRef(entity.getLocationRef());
+        result.setDisposition(entity.getDisposition());
+        return result;
+    }
+
+    /**
+     * Returns the entry with the given key, looking into the memory store then
+     * into the disk store.
+     * 
+     * @param key
+     *            The key of the entry.
+     * @return The entry or null.
+     */
+    protected CacheEntry get(String key) {
+        CacheEntry result = this.memoryStore.get(key);
+
+        if ((result == null) && (this.diskStore != null)) {
+            result = this.diskStore.get(key);
+
+            if (result != null) {
+                this.memoryStore.put(result);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of entity bytes that didn't have to be transferred
+     * thanks to fresh or revalidated entries.
+     * 
+     * @return The number of entity bytes saved.
+     */
+    public long getBytesSaved() {
+        return this.bytesSaved.get();
+    }
+
+    /**
+     * Returns the time until which a response can be used without
+     * revalidation, based on its "max-age" or "no-cache" directives, or on its
+     * expiration date.
+     * 
+     * @param response
+     *            The response.
+     * @return The time until which the response is fresh.
+     */
+    protected long getFreshUntil(Response response) {
+        long now = System.currentTimeMillis();
+        long result = now;
+        boolean maxAgeFound = false;
+
+        for (CacheDirective directive : response.getCacheDirectives()) {
+            if (HeaderConstants.CACHE_NO_CACHE.equalsIgnoreCase(directive
+                    .getName())) {
+                return now;
+            } else if (HeaderConstants.CACHE_MAX_AGE.equalsIgnoreCase(directive
+                    .getName())) {
+                try {
+                    result = now
+                            + (Long.parseLong(directive.getValue()) - response
+                                    .getAge()) * 1000L;
+                    maxAgeFound = true;
+                } catch (NumberFormatException nfe) {
+                    getLogger().fine(
+                            "Invalid max-age directive: "
+                                    + directive.getValue());
+                }
+            }
+        }
+
+        if (!maxAgeFound && (response.getEntity() != null)
+                && (response.getEntity().getExpirationDate() != null)) {
+            result = response.getEntity().getExpirationDate().getTime();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the ratio of cacheable requests answered from the cache, either
+     * directly or after revalidation.
+     * 
+     * @return The hit ratio, between 0 and 1.
+     */
+    public double getHitRatio() {
+        long lookups = this.lookups.get();
+        return (lookups == 0) ? 0
+                : (double) (this.hits.get() + this.revalidations.get())
+                        / lookups;
+    }
+
+    /**
+     * Returns the number of fresh entries returned without calling the next
+     * Restlet.
+     * 
+     * @return The number of fresh entries returned.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the cache key of a request. It is the target URI, qualified by
+     * the user identifier if the request is authenticated.
+     * 
+     * @param request
+     *            The request.
+     * @return The cache key.
+     */
+    protected String getKey(Request request) {
+        String result = request.getResourceRef().getTargetRef().toString();
+
+        if ((request.getChallengeResponse() != null)
+                && (request.getChallengeResponse().getIdentifier() != null)) {
+            result = request.getChallengeResponse().getIdentifier() + " "
+                    + result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the maximum size of an entry.
+     * 
+     * @return The maximum size of an entry, in bytes.
+     */
+    public int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * Returns the number of cacheable requests whose response had to be
+     * transferred.
+     * 
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the number of stale entries returned after a successful
+     * revalidation.
+     * 
+     * @return The number of revalidated entries.
+     */
+    public long getRevalidations() {
+        return this.revalidations.get();
+    }
+
+    /**
+     * Updates the cache with the response of a call, replacing a "304 Not
+     * Modified" response to a revalidation by the cached entity.
+     * 
+     * @param request
+     *            The request handled.
+     * @param response
+     *            The response to update.
+     */
+    private void handleResponse(Request request, Response response) {
+        if (response.getStatus().isConnectorError()) {
+            // Nothing was received, the entry is kept for another try
+            return;
+        }
+
+        String key = getKey(request);
+
+        if (!Method.GET.equals(request.getMethod())) {
+            // A successful unsafe method invalidates the cached entity
+            if (!request.getMethod().isSafe()
+                    && response.getStatus().isSuccess()) {
+                remove(key);
+            }
+
+            return;
+        }
+
+        CacheEntry entry = (CacheEntry) request.getAttributes().remove(
+                REVALIDATED_ENTRY);
+
+        if ((entry == null) && !isCacheable(request)) {
+            return;
+        }
+
+        if (entry != null) {
+            if (Status.REDIRECTION_NOT_MODIFIED.equals(response.getStatus())) {
+                this.revalidations.incrementAndGet();
+                this.bytesSaved.addAndGet(entry.getSize());
+                entry.revalidated(getFreshUntil(response),
+                        (response.getEntity() == null) ? null : response
+                                .getEntity().getExpirationDate());
+
+                if (hasDirective(response.getCacheDirectives(),
+                        HeaderConstants.CACHE_NO_STORE)) {
+                    remove(key);
+                } else {
+                    put(entry);
+                }
+
+                response.setStatus(Status.SUCCESS_OK);
+                response.setEntity(entry.createRepresentation());
+                return;
+            }
+
+            this.misses.incrementAndGet();
+        }
+
+        if (hasDirective(response.getCacheDirectives(),
+                HeaderConstants.CACHE_NO_STORE)
+                || !response.getStatus().isSuccess()) {
+            remove(key);
+        } else if (Status.SUCCESS_OK.equals(response.getStatus())
+                && response.isEntityAvailable()
+                && (response.getEntity().getSize() <= getMaxEntrySize())) {
+            Representation entity = response.getEntity();
+            long freshUntil = getFreshUntil(response);
+
+            if ((freshUntil > System.currentTimeMillis())
+                    || (entity.getTag() != null)
+                    || (entity.getModificationDate() != null)) {
+                try {
+                    response.setEntity(createCachingRepresentation(key,
+                            entity, freshUntil));
+                } catch (IOException ioe) {
+                    getLogger().log(Level.FINE,
+                            "Unable to cache the response entity", ioe);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Indicates if the response to a GET request can be taken from or stored
+     * in the cache. It can't if the caller validates it itself with
+     * conditions, or doesn't want it stored.
+     * 
+     * @param request
+     *            The GET request.
+     * @return True if the response can be cached.
+     */
+    protected boolean isCacheable(Request request) {
+        return !request.getConditions().hasSome()
+                && !hasDirective(request.getCacheDirectives(),
+                        HeaderConstants.CACHE_NO_STORE);
+    }
+
+    /**
+     * Looks up the entry of a request, returning it if it is fresh or adding
+     * the conditions to revalidate it otherwise.
+     * 
+     * @param request
+     *            The request to handle.
+     * @param response
+     *            The response to update.
+     * @return The continuation status.
+     */
+    private int lookup(Request request, Response response) {
+        if (!Method.GET.equals(request.getMethod()) || !isCacheable(request)) {
+            return CONTINUE;
+        }
+
+        this.lookups.incrementAndGet();
+        CacheEntry entry = get(getKey(request));
+
+        if (entry == null) {
+            this.misses.incrementAndGet();
+        } else if (entry.isFresh()
+                && !hasDirective(request.getCacheDirectives(),
+                        HeaderConstants.CACHE_NO_CACHE)) {
+            this.hits.incrementAndGet();
+            this.bytesSaved.addAndGet(entry.getSize());
+            response.setStatus(Status.SUCCESS_OK);
+            response.setAge(entry.getAge());
+            response.setEntity(entry.createRepresentation());
+            return STOP;
+        } else if (entry.isRevalidable()) {
+            Conditions conditions = request.getConditions();
+
+            if (entry.getTag() != null) {
+                conditions.getNoneMatch().add(entry.getTag());
+            }
+
+            if (entry.getModificationDate() != null) {
+                conditions.setModifiedSince(entry.getModificationDate());
+            }
+
+            request.getAttributes().put(REVALIDATED_ENTRY, entry);
+        } else {
+            this.misses.incrementAndGet();
+        }
+
+        return CONTINUE;
+    }
+
+    /**
+     * Stores an entry in the memory store and in the disk store.
+     * 
+     * @param entry
+     *            The entry to store.
+     */
+    protected void put(CacheEntry entry) {
+        this.memoryStore.put(entry);
+
+        if (this.diskStore != null) {
+            this.diskStore.put(entry);
+        }
+    }
+
+    /**
+     * Removes an entry from the memory store and from the disk store.
+     * 
+     * @param key
+     *            The key of the entry.
+     */
+    protected void remove(String key) {
+        this.memoryStore.remove(key);
+
+        if (this.diskStore != null) {
+            this.diskStore.remove(key);
+        }
+    }
+
+    /**
+     * Sets the maximum size of an entry.
+     * 
+     * @param maxEntrySize
+     *            The maximum size of an entry, in bytes.
+     */
+    public void setMaxEntrySize(int maxEntrySize) {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+}
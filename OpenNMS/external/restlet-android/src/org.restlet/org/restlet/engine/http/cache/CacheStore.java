@@ -0,0 +1,76 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.cache;
+
+/**
+ * Storage tier of a {@link CacheFilter}. Implementations must be thread-safe.
+ */
+public abstract class CacheStore {
+
+    /**
+     * Removes all the entries.
+     */
+    public abstract void clear();
+
+    /**
+     * Returns the entry with the given key.
+     * 
+     * @param key
+     *            The key of the entry.
+     * @return The entry or null.
+     */
+    public abstract CacheEntry get(String key);
+
+    /**
+     * Returns the total size of the stored entries, in bytes.
+     * 
+     * @return The total size of the stored entries.
+     */
+    public abstract long getSize();
+
+    /**
+     * Stores an entry, replacing any entry with the same key. The entry may
+     * be refused if it is too large for the store.
+     * 
+     * @param entry
+     *            The entry to store.
+     */
+    public abstract void put(CacheEntry entry);
+
+    /**
+     * Removes the entry with the given key.
+     * 
+     * @param key
+     *            The key of the entry.
+     */
+    public abstract void remove(String key);
+
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+
+import org.restlet.Context;
+import org.restlet.engine.io.BioUtils;
+
+/**
+ * Cache store keeping each entry in a file of a directory. Once the total
+ * size of the files exceeds a maximum number of bytes, the least recently
+ * used files are deleted.
+ */
+public class FileCacheStore extends CacheStore {
+
+    /** The suffix of the entry files. */
+    private static final String SUFFIX = ".entry";
+
+    /** The directory of the entry files. */
+    private final File directory;
+
+    /** The maximum total size of the files. */
+    private final long maxSize;
+
+    /** The total size of the files. */
+    private long size;
+
+    /**
+     * Constructor. The directory is created if needed.
+     * 
+     * @param directory
+     *            The directory of the entry files.
+     * @param maxSize
+     *            The maximum total size of the files, in bytes.
+     */
+    public FileCacheStore(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.size = 0;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Context.getCurrentLogger().warning(
+                    "Unable to create the cache directory " + directory);
+        }
+
+        for (File file : getFiles()) {
+            this.size += file.length();
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (File file : getFiles()) {
+            file.delete();
+        }
+
+        this.size = 0;
+    }
+
+    @Override
+    public synchronized CacheEntry get(String key) {
+        CacheEntry result = null;
+        File file = getFile(key);
+
+        if (file.exists()) {
+            DataInputStream in = null;
+
+            try {
+                in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(file)));
+                result = CacheEntry.read(in);
+
+                if ((result != null) && !key.equals(result.getKey())) {
+                    // Another key with the same digest
+                    result = null;
+                } else {
+                    file.setLastModified(System.currentTimeMillis());
+                }
+            } catch (IOException ioe) {
+                Context.getCurrentLogger().log(Level.FINE,
+                        "Unable to read the cache entry " + file, ioe);
+            } finally {
+                close(in);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Closes a stream, ignoring errors.
+     * 
+     * @param stream
+     *            The stream to close or null.
+     */
+    private void close(Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ioe) {
+                // Nothing more can be done
+            }
+        }
+    }
+
+    /**
+     * Returns the file of the entry with the given key.
+     * 
+     * @param key
+     *            The key of the entry.
+     * @return The file of the entry.
+     */
+    private File getFile(String key) {
+        String name;
+
+        try {
+            name = BioUtils.toHexString(MessageDigest.getInstance("MD5")
+                    .digest(key.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException nsae) {
+            name = Integer.toHexString(key.hashCode());
+        } catch (IOException ioe) {
+            name = Integer.toHexString(key.hashCode());
+        }
+
+        return new File(this.directory, name + SUFFIX);
+    }
+
+    /**
+     * Returns the entry files.
+     * 
+     * @return The entry files.
+     */
+    private File[] getFiles() {
+        File[] result = this.directory.listFiles();
+
+        if (result == null) {
+            result = new File[0];
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the maximum total size of the files.
+     * 
+     * @return The maximum total size of the files, in bytes.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized void put(CacheEntry entry) {
+        remove(entry.getKey());
+
+        if (entry.getSize() > this.maxSize) {
+            return;
+        }
+
+        File file = getFile(entry.getKey());
+        DataOutputStream out = null;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file)));
+            entry.write(out);
+            out.close();
+            out = null;
+            this.size += file.length();
+        } catch (IOException ioe) {
+            Context.getCurrentLogger().log(Level.FINE,
+                    "Unable to write the cache entry " + file, ioe);
+            close(out);
+            file.delete();
+        }
+
+        if (this.size > this.maxSize) {
+            File[] files = getFiles();
+
+            // Least recently used first
+            Arrays.sort(files, new Comparator<File>() {
+                public int compare(File file1, File file2) {
+                    long diff = file1.lastModified() - file2.lastModified();
+                    return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+                }
+            });
+
+            for (int i = 0; (this.size > this.maxSize) && (i < files.length); i++) {
+                long length = files[i].length();
+
+                if (files[i].delete()) {
+                    this.size -= length;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        File file = getFile(key);
+        long length = file.length();
+
+        if (file.delete()) {
+            this.size -= length;
+        }
+    }
+
+}
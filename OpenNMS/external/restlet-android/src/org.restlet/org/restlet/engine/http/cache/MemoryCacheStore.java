@@ -0,0 +1,115 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache store keeping the entries in memory, evicting the least recently used
+ * ones once their total size exceeds a maximum number of bytes.
+ */
+public class MemoryCacheStore extends CacheStore {
+
+    /** The entries, least recently used first. */
+    private final LinkedHashMap<String, CacheEntry> entries;
+
+    /** The maximum total size of the entries. */
+    private final long maxSize;
+
+    /** The total size of the entries. */
+    private long size;
+
+    /**
+     * Constructor.
+     * 
+     * @param maxSize
+     *            The maximum total size of the entries, in bytes.
+     */
+    public MemoryCacheStore(long maxSize) {
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+        this.maxSize = maxSize;
+        this.size = 0;
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.entries.clear();
+        this.size = 0;
+    }
+
+    @Override
+    public synchronized CacheEntry get(String key) {
+        return this.entries.get(key);
+    }
+
+    /**
+     * Returns the maximum total size of the entries.
+     * 
+     * @return The maximum total size of the entries, in bytes.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized void put(CacheEntry entry) {
+        remove(entry.getKey());
+
+        if (entry.getSize() <= this.maxSize) {
+            this.entries.put(entry.getKey(), entry);
+            this.size += entry.getSize();
+
+            for (Iterator<Map.Entry<String, CacheEntry>> iter = this.entries
+                    .entrySet().iterator(); (this.size > this.maxSize)
+                    && iter.hasNext();) {
+                this.size -= iter.next().getValue().getSize();
+                iter.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        CacheEntry removed = this.entries.remove(key);
+
+        if (removed != null) {
+            this.size -= removed.getSize();
+        }
+    }
+
+}
@@ -96,8 +96,11 @@ public class Acceptor extends BaseTask {
                                 .getMaxTotalConnections())) {
                     Connection<Server> connection = getHelper()
                             .createConnection(getHelper(), socket, null);
-                    connection.open();
                     getHelper().getConnections().add(connection);
+
+                    // Opening wakes up the controller, so the connection must
+                    // already be known to it
+                    connection.open();
                 } else {
                     // Rejection connection
                     socket.close();
@@ -41,7 +41,6 @@ import java.nio.channels.SocketChannel;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.SecureRandom;
-import java.util.Iterator;
 import java.util.concurrent.CountDownLatch;
 import java.util.logging.Level;
 
@@ -49,6 +48,7 @@ import javax.net.SocketFactory;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 
@@ -57,6 +57,9 @@ import org.restlet.Request;
 import org.restlet.Response;
 import org.restlet.data.Reference;
 import org.restlet.data.Status;
+import org.restlet.engine.http.ResponseDecoder;
+import org.restlet.engine.http.timing.CallTimer;
+import org.restlet.engine.http.timing.Phase;
 
 /**
  * Base client helper based on NIO blocking sockets. Here is the list of
@@ -82,6 +85,21 @@ import org.restlet.data.Status;
  * <td>The port of the HTTP proxy.</td>
  * </tr>
  * <tr>
+ * <td>connectionMaxIdleTimeMs</td>
+ * <td>int</td>
+ * <td>30000</td>
+ * <td>Time in milliseconds after which a pooled connection that hasn't been
+ * reused is closed. -1 means that idle connections are never closed.</td>
+ * </tr>
+ * <tr>
+ * <td>decodingResponse</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Indicates if the "gzip" and "deflate" encodings should be accepted for
+ * requests that don't specify their accepted encodings, and the matching
+ * response entities transparently decoded. See {@link ResponseDecoder}.</td>
+ * </tr>
+ * <tr>
  * <td>tcpNoDelay</td>
  * <td>boolean</td>
  * <td>false</td>
@@ -160,6 +178,12 @@ public class BaseClientHelper extends BaseHelper<Client> {
 
     private static final String CONNECTOR_LATCH = "org.restlet.engine.http.connector.latch";
 
+    /** The client connections indexed by host address and port. */
+    private final ClientConnectionPool connectionPool;
+
+    /** The decoder of compressed response entities. */
+    private final ResponseDecoder decoder;
+
     /** The regular socket factory. */
     private volatile SocketFactory regularSocketFactory;
 
@@ -174,6 +198,8 @@ public class BaseClientHelper extends BaseHelper<Client> {
      */
     public BaseClientHelper(Client connector) {
         super(connector, true);
+        this.connectionPool = new ClientConnectionPool();
+        this.decoder = new ResponseDecoder();
         this.regularSocketFactory = null;
         this.secureSocketFactory = null;
     }
@@ -373,61 +399,34 @@ public class BaseClientHelper extends BaseHelper<Client> {
     protected Connection<Client> getBestConnection(Request request)
             throws UnknownHostException, IOException {
         Connection<Client> result = null;
+        CallTimer timer = CallTimer.get(request);
 
-        // Try to reuse an existing connection for the same host and
-        // port
-        int hostConnectionCount = 0;
-        int bestCount = 0;
-        boolean foundConn = false;
+        if (timer != null) {
+            timer.mark();
+        }
 
         // Determine the target host domain and port of the request.
         InetSocketAddress socketAddress = getSocketAddress(request);
 
+        if (timer != null) {
+            timer.lap(Phase.DNS);
+        }
+
         if (socketAddress == null) {
             getLogger()
                     .log(Level.WARNING,
                             "Unable to create a socket address related to the request.");
         } else {
-            // Associate the given request to the first available connection
-            // opened on the same host domain and port.
-            for (Iterator<Connection<Client>> iterator = getConnections()
-                    .iterator(); !foundConn && iterator.hasNext();) {
-                ClientConnection currConn = (ClientConnection) iterator.next();
-
-                if (socketAddress.getAddress().equals(
-                        currConn.getSocket().getInetAddress())
-                        && socketAddress.getPort() == currConn.getSocket()
-                                .getPort()) {
-                    if (currConn.getState().equals(ConnectionState.OPEN)
-                            && currConn.canEnqueue()) {
-                        result = currConn;
-                        foundConn = true;
-                    } else {
-                        // Assign the request to the busy connection that
-                        // handles the less number of messages. This is usefull
-                        // in case the maximum number of connections has been
-                        // reached. As a drawback, the message will only be
-                        // handled as soon as possible.
-                        int currCount = currConn.getOutboundMessages().size();
-                        if (bestCount > currCount) {
-                            bestCount = currCount;
-                            result = currConn;
-                        }
-                        hostConnectionCount++;
-                    }
-                }
-            }
+            ClientConnectionPool pool = getConnectionPool();
+            pool.evictIdle(getConnectionMaxIdleTimeMs());
 
-            // No connection has been found, try to create a new one that will
-            // handle the message soon.
-            if (!foundConn
-                    && ((getMaxTotalConnections() == -1) || (getConnections()
-                            .size() < getMaxTotalConnections()))
-                    && ((getMaxConnectionsPerHost() == -1) || (hostConnectionCount < getMaxConnectionsPerHost()))) {
-                // Create a new connection
-                result = createConnection(this, createSocket(request
-                        .isConfidential(), socketAddress), null);
-                result.open();
+            // Reuse an idle connection opened on the same host domain and
+            // port.
+            result = pool.checkout(socketAddress);
+
+            if (result == null) {
+                result = getNewOrLeastBusyConnection(request, socketAddress,
+                        pool);
             }
         }
 
@@ -443,6 +442,27 @@ public class BaseClientHelper extends BaseHelper<Client> {
         return getHelpedParameters().getFirstValue("certAlgorithm", "SunX509");
     }
 
+    /**
+     * Returns the time after which a pooled connection that hasn't been
+     * reused is closed.
+     * 
+     * @return The time after which an idle connection is closed, in
+     *         milliseconds.
+     */
+    public int getConnectionMaxIdleTimeMs() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "connectionMaxIdleTimeMs", "30000"));
+    }
+
+    /**
+     * Returns the client connections indexed by host address and port.
+     * 
+     * @return The client connections indexed by host address and port.
+     */
+    public ClientConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
     /**
      * Returns the connection timeout.
      * 
@@ -452,6 +472,16 @@ public class BaseClientHelper extends BaseHelper<Client> {
         return getHelped().getConnectTimeout();
     }
 
+    /**
+     * Returns the decoder of compressed response entities. Its statistics are
+     * only updated when the "decodingResponse" parameter is set.
+     * 
+     * @return The decoder of compressed response entities.
+     */
+    public ResponseDecoder getDecoder() {
+        return this.decoder;
+    }
+
     /**
      * Returns the SSL key password.
      * 
@@ -491,6 +521,93 @@ public class BaseClientHelper extends BaseHelper<Client> {
         return getHelpedParameters().getFirstValue("keystoreType", "JKS");
     }
 
+    /**
+     * Opens a new connection for a request if the connection limits allow it,
+     * or returns the least busy connection to the same host otherwise.
+     * Requests are handled concurrently, so a place is reserved in the pool
+     * before connecting and released once the connection is added or failed
+     * to open. The pool isn't locked while connecting, instead a request
+     * finding no open connection while another one is being opened waits for
+     * it.
+     * 
+     * @param request
+     *            The request to handle.
+     * @param socketAddress
+     *            The address of the target host.
+     * @param pool
+     *            The connection pool.
+     * @return A new connection or the least busy one.
+     * @throws UnknownHostException
+     * @throws IOException
+     */
+    private Connection<Client> getNewOrLeastBusyConnection(Request request,
+            InetSocketAddress socketAddress, ClientConnectionPool pool)
+            throws UnknownHostException, IOException {
+        Connection<Client> result = null;
+        boolean limited = (getMaxTotalConnections() != -1)
+                || (getMaxConnectionsPerHost() != -1);
+        boolean reserved = !limited
+                || pool.reserve(socketAddress, getMaxTotalConnections(),
+                        getMaxConnectionsPerHost());
+
+        while (!reserved) {
+            // Assign the request to the busy connection that handles
+            // the less number of messages. This is useful in case the
+            // maximum number of connections has been reached. As a
+            // drawback, the message will only be handled as soon as
+            // possible.
+            result = pool.getLeastBusy(socketAddress);
+
+            if ((result != null) || !pool.awaitReservation(socketAddress)) {
+                return result;
+            }
+
+            reserved = pool.reserve(socketAddress, getMaxTotalConnections(),
+                    getMaxConnectionsPerHost());
+        }
+
+        // Create a new connection that will handle the message
+        // soon.
+        CallTimer timer = CallTimer.get(request);
+        Socket socket = null;
+        ClientConnection connection = null;
+
+        try {
+            if (timer != null) {
+                timer.mark();
+            }
+
+            socket = createSocket(request.isConfidential(), socketAddress);
+
+            if (timer != null) {
+                timer.lap(Phase.CONNECT);
+
+                if (socket instanceof SSLSocket) {
+                    // Negotiate now rather than on the first write, so
+                    // that it is timed apart from sending the request
+                    ((SSLSocket) socket).startHandshake();
+                    timer.lap(Phase.TLS);
+                }
+            }
+
+            connection = (ClientConnection) createConnection(this, socket,
+                    null);
+            pool.add(socketAddress, connection);
+            connection.open();
+        } finally {
+            if (limited) {
+                pool.unreserve(socketAddress);
+            }
+
+            if ((connection == null) && (socket != null)) {
+                socket.close();
+            }
+        }
+
+        result = connection;
+        return result;
+    }
+
     /**
      * Returns the host name of the HTTP proxy, if specified.
      * 
@@ -670,6 +787,13 @@ public class BaseClientHelper extends BaseHelper<Client> {
     @Override
     public void handle(Request request, Response response) {
         try {
+            // Time the call if it wasn't made through a timed client resource
+            CallTimer.start(request);
+
+            if (isDecodingResponse()) {
+                getDecoder().negotiate(request);
+            }
+
             if (request.getOnResponse() == null) {
                 // Synchronous mode
                 CountDownLatch latch = new CountDownLatch(1);
@@ -696,6 +820,10 @@ public class BaseClientHelper extends BaseHelper<Client> {
     @Override
     public void handleInbound(Response response) {
         if (response != null) {
+            if (isDecodingResponse()) {
+                getDecoder().decode(response);
+            }
+
             if (response.getRequest().getOnResponse() != null) {
                 response.getRequest().getOnResponse().handle(
                         response.getRequest(), response);
@@ -715,8 +843,10 @@ public class BaseClientHelper extends BaseHelper<Client> {
                         .getRequest());
 
                 if (bestConn != null) {
-                    bestConn.getOutboundMessages().add(response);
+                    // Queuing the message wakes up the controller, so the
+                    // connection must already be known to it
                     getConnections().add(bestConn);
+                    bestConn.getOutboundMessages().add(response);
 
                     if (!response.getRequest().isExpectingResponse()) {
                         // Attempt to directly write the response, preventing a
@@ -742,6 +872,17 @@ public class BaseClientHelper extends BaseHelper<Client> {
         }
     }
 
+    /**
+     * Indicates if compressed response entities should be negotiated and
+     * transparently decoded.
+     * 
+     * @return True if compressed response entities should be decoded.
+     */
+    public boolean isDecodingResponse() {
+        return Boolean.parseBoolean(getHelpedParameters().getFirstValue(
+                "decodingResponse", "false"));
+    }
+
     /**
      * Sets the regular socket factory.
      * 
@@ -35,7 +35,6 @@ import java.net.Socket;
 import java.nio.channels.SocketChannel;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -70,10 +69,19 @@ import org.restlet.engine.log.LoggingThreadFactory;
  * exit).</td>
  * </tr>
  * <tr>
+ * <td>controllerSelecting</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Indicates if the controller thread should wait on a selector until a
+ * message is queued or a connection changes state, instead of sleeping between
+ * each control.</td>
+ * </tr>
+ * <tr>
  * <td>controllerSleepTimeMs</td>
  * <td>int</td>
  * <td>100</td>
- * <td>Time for the controller thread to sleep between each control.</td>
+ * <td>Time for the controller thread to sleep between each control. In
+ * selecting mode, only used while the worker service is full.</td>
  * </tr>
  * <tr>
  * <td>inboundBufferSize</td>
@@ -175,8 +183,8 @@ public abstract class BaseHelper<T extends Connector> extends
         super(connector);
         this.clientSide = clientSide;
         this.connections = new CopyOnWriteArraySet<Connection<T>>();
-        this.inboundMessages = new ConcurrentLinkedQueue<Response>();
-        this.outboundMessages = new ConcurrentLinkedQueue<Response>();
+        this.inboundMessages = new MessageQueue(this);
+        this.outboundMessages = new MessageQueue(this);
         this.controller = createController();
         this.workerService = null;
     }
@@ -454,6 +462,18 @@ public abstract class BaseHelper<T extends Connector> extends
                 "controllerDaemon", "true"));
     }
 
+    /**
+     * Indicates if the controller thread should wait on a selector for events
+     * instead of sleeping between each control.
+     * 
+     * @return True if the controller thread should wait on a selector for
+     *         events.
+     */
+    public boolean isControllerSelecting() {
+        return Boolean.parseBoolean(getHelpedParameters().getFirstValue(
+                "controllerSelecting", "false"));
+    }
+
     /**
      * Indicates if persistent connections should be used if possible.
      * 
@@ -31,9 +31,12 @@
 package org.restlet.engine.http.connector;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 
 import org.restlet.Client;
@@ -45,9 +48,13 @@ import org.restlet.data.Reference;
 import org.restlet.data.Status;
 import org.restlet.engine.Engine;
 import org.restlet.engine.http.header.HeaderConstants;
-import org.restlet.engine.http.header.HeaderReader;
 import org.restlet.engine.http.header.HeaderUtils;
+import org.restlet.engine.http.timing.CallTimer;
+import org.restlet.engine.http.timing.Phase;
+import org.restlet.engine.util.IndexedForm;
 import org.restlet.engine.util.StringUtils;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.Representation;
 import org.restlet.util.Series;
 
 /**
@@ -81,6 +88,15 @@ public class ClientConnection extends Connection<Client> {
         return result;
     }
 
+    /** Indicates if the connection is in the idle queue of its pool. */
+    private final AtomicBoolean idle;
+
+    /** The time at which the connection was last released to its pool. */
+    private volatile long idleSince;
+
+    /** The remote address under which the connection is pooled. */
+    private volatile InetSocketAddress poolAddress;
+
     /**
      * Constructor.
      * 
@@ -95,6 +111,23 @@ public class ClientConnection extends Connection<Client> {
     public ClientConnection(BaseHelper<Client> helper, Socket socket,
             SocketChannel socketChannel) throws IOException {
         super(helper, socket, socketChannel);
+        this.idle = new AtomicBoolean(false);
+        this.idleSince = System.currentTimeMillis();
+        this.poolAddress = null;
+    }
+
+    /**
+     * Answers a request with a communication error because the connection
+     * was closed before its response was received.
+     * 
+     * @param response
+     *            The response to update.
+     */
+    private void abort(Response response) {
+        response.setStatus(Status.CONNECTOR_ERROR_COMMUNICATION,
+                "The connection was closed before the response was received");
+        response.setEntity(null);
+        getHelper().getInboundMessages().add(response);
     }
 
     /**
@@ -119,6 +152,91 @@ public class ClientConnection extends Connection<Client> {
                 && getInboundMessages().isEmpty();
     }
 
+    /**
+     * Returns the time at which the connection was last released to its pool.
+     * 
+     * @return The time at which the connection was last released to its pool.
+     */
+    public long getIdleSince() {
+        return idleSince;
+    }
+
+    /**
+     * Returns the inbound message entity stream, which also times the
+     * {@link Phase#BODY} phase of the response being read if its call is
+     * timed.
+     * 
+     * @param size
+     *            The expected entity size or -1 if unknown.
+     * @param chunked
+     *            Indicates if the entity is chunked.
+     * @return The inbound message entity stream if it exists.
+     */
+    @Override
+    public InputStream getInboundEntityStream(long size, boolean chunked) {
+        Response response = getInboundMessages().peek();
+        CallTimer timer = (response == null) ? null : CallTimer.get(response
+                .getRequest());
+        return getInboundEntityStream(size, chunked, (timer == null) ? this
+                : timer.notifying(this));
+    }
+
+    /**
+     * Returns the pool of the parent helper, if any.
+     * 
+     * @return The pool of the parent helper or null.
+     */
+    private ClientConnectionPool getPool() {
+        return (getHelper() instanceof BaseClientHelper) ? ((BaseClientHelper) getHelper())
+                .getConnectionPool()
+                : null;
+    }
+
+    /**
+     * Returns the remote address under which the connection is pooled.
+     * 
+     * @return The remote address under which the connection is pooled.
+     */
+    public InetSocketAddress getPoolAddress() {
+        return poolAddress;
+    }
+
+    /**
+     * Marks the connection as taken out of the idle queue of its pool.
+     * 
+     * @return True if the connection was idle.
+     */
+    protected boolean markBusy() {
+        return this.idle.compareAndSet(true, false);
+    }
+
+    /**
+     * Marks the connection as put in the idle queue of its pool.
+     * 
+     * @return True if the connection wasn't already idle.
+     */
+    protected boolean markIdle() {
+        boolean result = this.idle.compareAndSet(false, true);
+
+        if (result) {
+            this.idleSince = System.currentTimeMillis();
+        }
+
+        return result;
+    }
+
+    /**
+     * Releases the connection to its pool if it can accept a new message.
+     */
+    private void releaseIfIdle() {
+        ClientConnectionPool pool = getPool();
+
+        if ((pool != null) && (getState() == ConnectionState.OPEN)
+                && canEnqueue()) {
+            pool.release(this);
+        }
+    }
+
     @Override
     public boolean canRead() {
         // There should be at least one call to read/update
@@ -131,6 +249,29 @@ public class ClientConnection extends Connection<Client> {
                 && ((getInboundMessages().size() == 0) || isPipelining());
     }
 
+    /**
+     * Closes the connection, then answers the requests still waiting on it
+     * with a communication error, as they will never get their response.
+     * This happens when the server closes a connection on which several
+     * requests were pipelined.
+     */
+    @Override
+    public void close() {
+        super.close();
+
+        Response response = getInboundMessages().poll();
+        while (response != null) {
+            abort(response);
+            response = getInboundMessages().poll();
+        }
+
+        response = getOutboundMessages().poll();
+        while (response != null) {
+            abort(response);
+            response = getOutboundMessages().poll();
+        }
+    }
+
     /**
      * Copies headers into a response.
      * 
@@ -219,14 +360,14 @@ public class ClientConnection extends Connection<Client> {
             sb.delete(0, sb.length());
 
             // Parse the headers
-            Parameter header = HeaderReader.readHeader(getInboundStream(), sb);
+            Parameter header = getHeaderParser().readHeader(getInboundStream());
             while (header != null) {
                 if (headers == null) {
-                    headers = new Form();
+                    headers = new IndexedForm();
                 }
 
                 headers.add(header);
-                header = HeaderReader.readHeader(getInboundStream(), sb);
+                header = getHeaderParser().readHeader(getInboundStream());
             }
         } else {
             throw new IOException(
@@ -242,6 +383,11 @@ public class ClientConnection extends Connection<Client> {
         Response finalResponse = getInboundMessages().peek();
         Response response = null;
         Status status = createStatus(statusCode);
+        CallTimer timer = CallTimer.get(finalResponse.getRequest());
+
+        if ((timer != null) && !status.isInformational()) {
+            timer.lap(Phase.FIRST_BYTE);
+        }
 
         if (status.isInformational()) {
             response = getHelper().createResponse(finalResponse.getRequest());
@@ -255,7 +401,8 @@ public class ClientConnection extends Connection<Client> {
                 getSocket().getLocalAddress().toString());
         response.getServerInfo().setAgent(Engine.VERSION_HEADER);
         response.getServerInfo().setPort(getSocket().getPort());
-        response.setEntity(createInboundEntity(headers));
+        Representation entity = createInboundEntity(headers);
+        response.setEntity(entity);
 
         try {
             copyResponseTransportHeaders(headers, response);
@@ -274,6 +421,11 @@ public class ClientConnection extends Connection<Client> {
             getInboundMessages().poll();
         }
 
+        // Mark the inbound as free so new messages can be read if possible
+        if (entity instanceof EmptyRepresentation) {
+            setInboundBusy(false);
+        }
+
         // Add it to the helper queue
         getHelper().getInboundMessages().add(response);
     }
@@ -289,6 +441,11 @@ public class ClientConnection extends Connection<Client> {
         // Prepare the headers
         Series<Parameter> headers = new Form();
         Request request = response.getRequest();
+        CallTimer timer = CallTimer.get(request);
+
+        if (timer != null) {
+            timer.mark();
+        }
 
         try {
             addGeneralHeaders(request, headers);
@@ -313,6 +470,10 @@ public class ClientConnection extends Connection<Client> {
                 request.getOnSent().handle(request, response);
             }
 
+            if (timer != null) {
+                timer.lap(Phase.SEND);
+            }
+
             // The request has been written
             getOutboundMessages().poll();
 
@@ -325,6 +486,50 @@ public class ClientConnection extends Connection<Client> {
         }
     }
 
+    @Override
+    public void setInboundBusy(boolean inboundBusy) {
+        super.setInboundBusy(inboundBusy);
+
+        if (!inboundBusy) {
+            releaseIfIdle();
+        }
+    }
+
+    @Override
+    public void setOutboundBusy(boolean outboundBusy) {
+        super.setOutboundBusy(outboundBusy);
+
+        if (!outboundBusy) {
+            releaseIfIdle();
+        }
+    }
+
+    /**
+     * Sets the remote address under which the connection is pooled.
+     * 
+     * @param poolAddress
+     *            The remote address under which the connection is pooled.
+     */
+    protected void setPoolAddress(InetSocketAddress poolAddress) {
+        this.poolAddress = poolAddress;
+    }
+
+    @Override
+    public void setState(ConnectionState state) {
+        if ((state == ConnectionState.CLOSING)
+                || (state == ConnectionState.CLOSED)) {
+            // Leave the pool first, so that a request never finds the
+            // connection limit reached by a connection it can't use
+            ClientConnectionPool pool = getPool();
+
+            if (pool != null) {
+                pool.remove(this);
+            }
+        }
+
+        super.setState(state);
+    }
+
     @Override
     protected void writeMessageHeadLine(Response message,
             OutputStream headStream) throws IOException {
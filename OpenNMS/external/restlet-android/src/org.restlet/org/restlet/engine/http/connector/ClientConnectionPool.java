@@ -0,0 +1,446 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.connector;
+
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of the client connections by remote host address and port. Each host
+ * keeps a queue of its idle connections, so that a reusable connection is
+ * found without looking at the connections to other hosts or at the busy
+ * ones. Connections enter the idle queue when they report being able to
+ * accept a new message, see {@link ClientConnection#canEnqueue()}, and leave
+ * it when checked out, closed or evicted after staying idle too long.<br>
+ * <br>
+ * A connection being opened first reserves its place with
+ * {@link #reserve(InetSocketAddress, int, int)}, so that the limits are
+ * enforced without holding a lock while connecting.<br>
+ * <br>
+ * The pool also counts the checkouts that found an idle connection (hits),
+ * those that didn't (misses), the connections created and the ones evicted.
+ */
+public class ClientConnectionPool {
+
+    /**
+     * The connections to a given host address and port.
+     */
+    private static class HostConnections {
+        /** All the open connections to the host. */
+        private final ConcurrentMap<ClientConnection, Boolean> all = new ConcurrentHashMap<ClientConnection, Boolean>();
+
+        /** The idle connections, least recently released first. */
+        private final Queue<ClientConnection> idle = new ConcurrentLinkedQueue<ClientConnection>();
+
+        /** The number of connections being opened to the host. */
+        private final AtomicInteger reserved = new AtomicInteger();
+    }
+
+    /** The connections indexed by host address and port. */
+    private final ConcurrentMap<InetSocketAddress, HostConnections> hosts;
+
+    /** The total number of connections. */
+    private final AtomicInteger size;
+
+    /** The total number of connections being opened. */
+    private final AtomicInteger reserved;
+
+    /** The number of checkouts that found an idle connection. */
+    private final AtomicLong hits;
+
+    /** The number of checkouts that didn't find an idle connection. */
+    private final AtomicLong misses;
+
+    /** The number of connections added. */
+    private final AtomicLong creations;
+
+    /** The number of idle connections evicted. */
+    private final AtomicLong evictions;
+
+    /** The time of the last eviction sweep. */
+    private final AtomicLong lastSweep;
+
+    /**
+     * Constructor.
+     */
+    public ClientConnectionPool() {
+        this.hosts = new ConcurrentHashMap<InetSocketAddress, HostConnections>();
+        this.size = new AtomicInteger();
+        this.reserved = new AtomicInteger();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.creations = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.lastSweep = new AtomicLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Adds a newly created connection. It is considered busy until released.
+     * 
+     * @param address
+     *            The remote host address and port.
+     * @param connection
+     *            The connection to add.
+     */
+    public void add(InetSocketAddress address, ClientConnection connection) {
+        HostConnections host = getHost(address, true);
+        connection.setPoolAddress(address);
+
+        if (host.all.put(connection, Boolean.TRUE) == null) {
+            this.size.incrementAndGet();
+            this.creations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Takes an idle connection to the given host out of the pool. Idle
+     * connections that were closed or started being used in the meantime are
+     * dropped from the idle queue on the way.
+     * 
+     * @param address
+     *            The remote host address and port.
+     * @return An idle connection or null.
+     */
+    public ClientConnection checkout(InetSocketAddress address) {
+        ClientConnection result = null;
+        HostConnections host = getHost(address, false);
+
+        if (host != null) {
+            ClientConnection candidate = host.idle.poll();
+
+            while ((result == null) && (candidate != null)) {
+                if (candidate.markBusy()
+                        && (candidate.getState() == ConnectionState.OPEN)
+                        && candidate.canEnqueue()) {
+                    result = candidate;
+                } else {
+                    candidate = host.idle.poll();
+                }
+            }
+        }
+
+        if (result == null) {
+            this.misses.incrementAndGet();
+        } else {
+            this.hits.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Waits until a connection being opened to the given host is added or
+     * failed to open.
+     * 
+     * @param address
+     *            The remote host address and port.
+     * @return False if no connection was being opened to the host or if the
+     *         thread was interrupted.
+     */
+    public synchronized boolean awaitReservation(InetSocketAddress address) {
+        HostConnections host = getHost(address, false);
+        boolean result = (host != null) && (host.reserved.get() > 0);
+
+        if (result) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result = false;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Closes the connections that have been idle for longer than the given
+     * time. The sweep is only done if the last one is older than half this
+     * time, so it can be called on each request.
+     * 
+     * @param maxIdleTimeMs
+     *            The maximum time a connection may stay idle or -1 to keep
+     *            them forever.
+     */
+    public void evictIdle(long maxIdleTimeMs) {
+        if (maxIdleTimeMs < 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long last = this.lastSweep.get();
+
+        if ((now - last < maxIdleTimeMs / 2)
+                || !this.lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+
+        for (HostConnections host : this.hosts.values()) {
+            for (Iterator<ClientConnection> iter = host.idle.iterator(); iter
+                    .hasNext();) {
+                ClientConnection connection = iter.next();
+
+                if ((now - connection.getIdleSince() > maxIdleTimeMs)
+                        && connection.markBusy()) {
+                    iter.remove();
+                    this.evictions.incrementAndGet();
+
+                    if (connection.getState() == ConnectionState.OPEN) {
+                        // The controller closes and unregisters it
+                        connection.setState(ConnectionState.CLOSING);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of connections to the given host, idle or busy.
+     * 
+     * @param address
+     *            The remote host address and port.
+     * @return The number of connections to the given host.
+     */
+    public int getConnectionCount(InetSocketAddress address) {
+        HostConnections host = getHost(address, false);
+        return (host == null) ? 0 : host.all.size();
+    }
+
+    /**
+     * Returns the number of connections created.
+     * 
+     * @return The number of connections created.
+     */
+    public long getCreations() {
+        return this.creations.get();
+    }
+
+    /**
+     * Returns the number of idle connections evicted.
+     * 
+     * @return The number of idle connections evicted.
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Returns the number of checkouts that found an idle connection.
+     * 
+     * @return The number of checkouts that found an idle connection.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the connections to a host.
+     * 
+     * @param address
+     *            The remote host address and port.
+     * @param create
+     *            Indicates if the entry should be created if missing.
+     * @return The connections to the host.
+     */
+    private HostConnections getHost(InetSocketAddress address, boolean create) {
+        HostConnections result = this.hosts.get(address);
+
+        if ((result == null) && create) {
+            result = new HostConnections();
+            HostConnections existing = this.hosts.putIfAbsent(address, result);
+
+            if (existing != null) {
+                result = existing;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the open connection to the given host with the fewest pending
+     * messages. Used as a last resort when no connection can be created.
+     * 
+     * @param address
+     *            The remote host address and port.
+     * @return The least busy connection or null.
+     */
+    public ClientConnection getLeastBusy(InetSocketAddress address) {
+        ClientConnection result = null;
+        HostConnections host = getHost(address, false);
+
+        if (host != null) {
+            int bestCount = Integer.MAX_VALUE;
+
+            for (ClientConnection connection : host.all.keySet()) {
+                if (connection.getState() == ConnectionState.OPEN) {
+                    int count = connection.getOutboundMessages().size()
+                            + connection.getInboundMessages().size();
+
+                    if (count < bestCount) {
+                        bestCount = count;
+                        result = connection;
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of checkouts that didn't find an idle connection.
+     * 
+     * @return The number of checkouts that didn't find an idle connection.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the total number of connections, idle or busy.
+     * 
+     * @return The total number of connections.
+     */
+    public int getSize() {
+        return this.size.get();
+    }
+
+    /**
+     * Puts a connection that can accept a new message back in the idle queue
+     * of its host. Does nothing if it is already there.
+     * 
+     * @param connection
+     *            The connection to release.
+     */
+    public void release(ClientConnection connection) {
+        HostConnections host = getHost(connection.getPoolAddress(), false);
+
+        if ((host != null) && host.all.containsKey(connection)
+                && connection.markIdle()) {
+            host.idle.offer(connection);
+        }
+    }
+
+    /**
+     * Removes a connection, typically because it was closed.
+     * 
+     * @param connection
+     *            The connection to remove.
+     */
+    public void remove(ClientConnection connection) {
+        InetSocketAddress address = connection.getPoolAddress();
+        HostConnections host = (address == null) ? null : getHost(address,
+                false);
+
+        if ((host != null) && (host.all.remove(connection) != null)) {
+            this.size.decrementAndGet();
+            host.idle.remove(connection);
+        }
+    }
+
+    /**
+     * Reserves the place of a new connection to the given host, if the
+     * connections already open or being opened stay below the limits. The
+     * reservation must be cancelled with
+     * {@link #unreserve(InetSocketAddress)} once the connection was added or
+     * failed to open, which wakes up the threads in
+     * {@link #awaitReservation(InetSocketAddress)}.
+     * 
+     * @param address
+     *            The remote host address and port.
+     * @param maxTotal
+     *            The maximum number of connections or -1 for no limit.
+     * @param maxPerHost
+     *            The maximum number of connections per host or -1 for no
+     *            limit.
+     * @return True if a new connection may be opened.
+     */
+    public synchronized boolean reserve(InetSocketAddress address,
+            int maxTotal, int maxPerHost) {
+        HostConnections host = getHost(address, true);
+        boolean result = ((maxTotal == -1) || (getSize()
+                + this.reserved.get() < maxTotal))
+                && ((maxPerHost == -1) || (host.all.size()
+                        + host.reserved.get() < maxPerHost));
+
+        if (result) {
+            this.reserved.incrementAndGet();
+            host.reserved.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Cancels a reservation made with
+     * {@link #reserve(InetSocketAddress, int, int)}.
+     * 
+     * @param address
+     *            The remote host address and port.
+     */
+    public synchronized void unreserve(InetSocketAddress address) {
+        HostConnections host = getHost(address, false);
+
+        if (host != null) {
+            host.reserved.decrementAndGet();
+            this.reserved.decrementAndGet();
+            notifyAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Connection pool: ");
+        sb.append(getSize()).append(" connections to ");
+        sb.append(this.hosts.size()).append(" hosts, ");
+        sb.append(getHits()).append(" hits, ");
+        sb.append(getMisses()).append(" misses, ");
+        sb.append(getCreations()).append(" created, ");
+        sb.append(getEvictions()).append(" evicted");
+
+        for (Map.Entry<InetSocketAddress, HostConnections> entry : this.hosts
+                .entrySet()) {
+            sb.append("; ").append(entry.getKey()).append(": ");
+            sb.append(entry.getValue().all.size()).append(" open, ");
+            sb.append(entry.getValue().idle.size()).append(" idle");
+        }
+
+        return sb.toString();
+    }
+}
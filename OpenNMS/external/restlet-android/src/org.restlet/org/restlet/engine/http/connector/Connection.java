@@ -41,7 +41,6 @@ import java.security.cert.Certificate;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -55,11 +54,13 @@ import org.restlet.Response;
 import org.restlet.data.Parameter;
 import org.restlet.engine.ConnectorHelper;
 import org.restlet.engine.http.header.HeaderConstants;
+import org.restlet.engine.http.header.HeaderParser;
 import org.restlet.engine.http.header.HeaderUtils;
 import org.restlet.engine.http.io.ChunkedInputStream;
 import org.restlet.engine.http.io.ChunkedOutputStream;
 import org.restlet.engine.http.io.ClosingInputStream;
 import org.restlet.engine.http.io.InboundStream;
+import org.restlet.engine.http.io.InputEntityStream;
 import org.restlet.engine.http.io.Notifiable;
 import org.restlet.engine.http.io.OutboundStream;
 import org.restlet.engine.http.io.SizedInputStream;
@@ -82,6 +83,9 @@ import org.restlet.util.Series;
  * @author Jerome Louvel
  */
 public abstract class Connection<T extends Connector> implements Notifiable {
+    /** The parser of inbound headers, reused for each message. */
+    private final HeaderParser headerParser;
+
     /** The parent connector helper. */
     private final BaseHelper<T> helper;
 
@@ -109,6 +113,9 @@ public abstract class Connection<T extends Connector> implements Notifiable {
     /** Indicates if idempotent sequences of requests can be pipelined. */
     private volatile boolean pipelining;
 
+    /** The task reading inbound messages, reused for each execution. */
+    private final Runnable readTask;
+
     /** The underlying BIO socket. */
     private final Socket socket;
 
@@ -118,6 +125,9 @@ public abstract class Connection<T extends Connector> implements Notifiable {
     /** The state of the connection. */
     private volatile ConnectionState state;
 
+    /** The task writing outbound messages, reused for each execution. */
+    private final Runnable writeTask;
+
     /**
      * Constructor.
      * 
@@ -131,9 +141,10 @@ public abstract class Connection<T extends Connector> implements Notifiable {
      */
     public Connection(BaseHelper<T> helper, Socket socket,
             SocketChannel socketChannel) throws IOException {
+        this.headerParser = new HeaderParser();
         this.helper = helper;
-        this.inboundMessages = new ConcurrentLinkedQueue<Response>();
-        this.outboundMessages = new ConcurrentLinkedQueue<Response>();
+        this.inboundMessages = new MessageQueue(helper);
+        this.outboundMessages = new MessageQueue(helper);
         this.persistent = helper.isPersistingConnections();
         this.pipelining = helper.isPipeliningConnections();
         this.state = ConnectionState.OPENING;
@@ -141,6 +152,26 @@ public abstract class Connection<T extends Connector> implements Notifiable {
         this.socketChannel = socketChannel;
         this.inboundBusy = false;
         this.outboundBusy = false;
+        this.readTask = new Runnable() {
+            public void run() {
+                readMessages();
+            }
+
+            @Override
+            public String toString() {
+                return "Read connection messages: " + canRead();
+            }
+        };
+        this.writeTask = new Runnable() {
+            public void run() {
+                writeMessages();
+            }
+
+            @Override
+            public String toString() {
+                return "Write connection messages";
+            }
+        };
 
         if (getHelper().isTracing()) {
             this.inboundStream = new TraceInputStream(
@@ -241,7 +272,10 @@ public abstract class Connection<T extends Connector> implements Notifiable {
     }
 
     /**
-     * Returns the inbound message entity if available.
+     * Returns the inbound message entity if available. When the message has
+     * no entity, an {@link EmptyRepresentation} is returned and the inbound
+     * is left busy: the caller frees it once the message is queued, so that
+     * a pipelined message can't be read and queued before this one.
      * 
      * @param headers
      *            The headers to use.
@@ -257,7 +291,7 @@ public abstract class Connection<T extends Connector> implements Notifiable {
         // Create the representation
         if ((contentLength != Representation.UNKNOWN_SIZE && contentLength != 0)
                 || chunkedEncoding || connectionClosed) {
-            InputStream inboundEntityStream = getInboundEntityStream(
+            final InputStream inboundEntityStream = getInboundEntityStream(
                     contentLength, chunkedEncoding);
             ReadableByteChannel inboundEntityChannel = getInboundEntityChannel(
                     contentLength, chunkedEncoding);
@@ -286,7 +320,14 @@ public abstract class Connection<T extends Connector> implements Notifiable {
                         }
 
                         super.release();
-                        setInboundBusy(false);
+
+                        // The connection may already be reading the next
+                        // message if the end of the stream was reached
+                        if (inboundEntityStream instanceof InputEntityStream) {
+                            ((InputEntityStream) inboundEntityStream).release();
+                        } else {
+                            setInboundBusy(false);
+                        }
                     }
                 };
             } else if (inboundEntityChannel != null) {
@@ -303,9 +344,6 @@ public abstract class Connection<T extends Connector> implements Notifiable {
             result.setSize(contentLength);
         } else {
             result = new EmptyRepresentation();
-
-            // Mark the inbound as free so new messages can be read if possible
-            setInboundBusy(false);
         }
 
         if (headers != null) {
@@ -330,6 +368,15 @@ public abstract class Connection<T extends Connector> implements Notifiable {
                 .getInetAddress().getHostAddress();
     }
 
+    /**
+     * Returns the parser of inbound headers, reused for each message.
+     * 
+     * @return The parser of inbound headers.
+     */
+    public HeaderParser getHeaderParser() {
+        return headerParser;
+    }
+
     /**
      * Returns the parent connector helper.
      * 
@@ -361,14 +408,31 @@ public abstract class Connection<T extends Connector> implements Notifiable {
      * @return The inbound message entity stream if it exists.
      */
     public InputStream getInboundEntityStream(long size, boolean chunked) {
+        return getInboundEntityStream(size, chunked, this);
+    }
+
+    /**
+     * Returns the inbound message entity stream if it exists.
+     * 
+     * @param size
+     *            The expected entity size or -1 if unknown.
+     * @param chunked
+     *            Indicates if the entity is chunked.
+     * @param notifiable
+     *            The object to notify of the end of the entity, normally
+     *            this connection.
+     * @return The inbound message entity stream if it exists.
+     */
+    protected InputStream getInboundEntityStream(long size, boolean chunked,
+            Notifiable notifiable) {
         InputStream result = null;
 
         if (chunked) {
-            result = new ChunkedInputStream(this, getInboundStream());
+            result = new ChunkedInputStream(notifiable, getInboundStream());
         } else if (size >= 0) {
-            result = new SizedInputStream(this, getInboundStream(), size);
+            result = new SizedInputStream(notifiable, getInboundStream(), size);
         } else {
-            result = new ClosingInputStream(this, getInboundStream());
+            result = new ClosingInputStream(notifiable, getInboundStream());
         }
 
         return result;
@@ -452,6 +516,17 @@ public abstract class Connection<T extends Connector> implements Notifiable {
         return getSocket().getPort();
     }
 
+    /**
+     * Returns the task reading inbound messages. The same instance is returned
+     * on each call so that the controller doesn't allocate a new task each
+     * time the connection can be read.
+     * 
+     * @return The task reading inbound messages.
+     */
+    public Runnable getReadTask() {
+        return readTask;
+    }
+
     /**
      * Returns the representation wrapping the given stream.
      * 
@@ -562,6 +637,17 @@ public abstract class Connection<T extends Connector> implements Notifiable {
         return state;
     }
 
+    /**
+     * Returns the task writing outbound messages. The same instance is
+     * returned on each call so that the controller doesn't allocate a new task
+     * each time the connection can be written.
+     * 
+     * @return The task writing outbound messages.
+     */
+    public Runnable getWriteTask() {
+        return writeTask;
+    }
+
     /**
      * Indicates if the connection is busy.
      * 
@@ -713,6 +799,10 @@ public abstract class Connection<T extends Connector> implements Notifiable {
      */
     public void setInboundBusy(boolean inboundBusy) {
         this.inboundBusy = inboundBusy;
+
+        if (!inboundBusy) {
+            getHelper().getController().wakeup();
+        }
     }
 
     /**
@@ -723,6 +813,10 @@ public abstract class Connection<T extends Connector> implements Notifiable {
      */
     public void setOutboundBusy(boolean outboundBusy) {
         this.outboundBusy = outboundBusy;
+
+        if (!outboundBusy) {
+            getHelper().getController().wakeup();
+        }
     }
 
     /**
@@ -753,6 +847,7 @@ public abstract class Connection<T extends Connector> implements Notifiable {
      */
     public void setState(ConnectionState state) {
         this.state = state;
+        getHelper().getController().wakeup();
     }
 
     /**
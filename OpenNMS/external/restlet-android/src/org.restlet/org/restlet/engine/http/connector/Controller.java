@@ -31,25 +31,51 @@
 package org.restlet.engine.http.connector;
 
 import java.io.IOException;
+import java.nio.channels.Selector;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import org.restlet.Response;
 import org.restlet.engine.Engine;
+import org.restlet.engine.io.SelectorFactory;
 
 /**
- * Controls the state of the server helper and its managed connections.
+ * Controls the state of the server helper and its managed connections.<br>
+ * <br>
+ * By default, the controller sleeps for a fixed time between each control. In
+ * selecting mode, see {@link BaseHelper#isControllerSelecting()}, it instead
+ * waits on a selector that is woken up when a message is queued or when a
+ * connection becomes free or changes state, so that idle connectors don't
+ * wake up the CPU and new messages are handled without waiting for the end of
+ * a sleep period.
  * 
  * @author Jerome Louvel
  */
 public class Controller extends BaseTask {
 
+    /**
+     * The maximum time to wait for an event in selecting mode, as a safety net
+     * against state changes that didn't wake up the controller.
+     */
+    public static final long MAX_SELECT_TIME_MS = 5000;
+
+    /** The number of controls done. */
+    private final AtomicLong controlCount;
+
     /** The parent server helper. */
     private final BaseHelper<?> helper;
 
     /** Indicates if the controller is overloaded. */
     private volatile boolean overloaded;
 
+    /** The selector waited on in selecting mode. */
+    private volatile Selector selector;
+
+    /** Indicates if the controller was woken up since its last control. */
+    private final AtomicBoolean woken;
+
     /**
      * Constructor.
      * 
@@ -57,8 +83,41 @@ public class Controller extends BaseTask {
      *            The parent connector helper.
      */
     public Controller(BaseHelper<?> helper) {
+        this.controlCount = new AtomicLong();
         this.helper = helper;
         this.overloaded = false;
+        this.selector = null;
+        this.woken = new AtomicBoolean(false);
+    }
+
+    /**
+     * Controls the connections and the helper queues, unless the worker
+     * service is overloaded.
+     * 
+     * @throws IOException
+     */
+    protected void control() throws IOException {
+        this.controlCount.incrementAndGet();
+
+        if (isOverloaded()) {
+            if (!isWorkerServiceFull()) {
+                setOverloaded(false);
+                getHelper().getLogger().log(Level.INFO,
+                        "Accepting new connections and transactions again.");
+            }
+        } else {
+            if (isWorkerServiceFull()) {
+                setOverloaded(true);
+                getHelper()
+                        .getLogger()
+                        .log(
+                                Level.INFO,
+                                "Stop accepting new connections and transactions. Consider increasing the maximum number of threads.");
+            }
+
+            controlConnections();
+            controlHelper();
+        }
     }
 
     /**
@@ -67,7 +126,7 @@ public class Controller extends BaseTask {
      * @throws IOException
      */
     protected void controlConnections() throws IOException {
-        for (final Connection<?> conn : getHelper().getConnections()) {
+        for (Connection<?> conn : getHelper().getConnections()) {
             if (conn.getState() == ConnectionState.CLOSED) {
                 getHelper().getConnections().remove(conn);
             } else if ((conn.getState() == ConnectionState.CLOSING)
@@ -76,43 +135,28 @@ public class Controller extends BaseTask {
             } else {
                 if ((isOverloaded() && !getHelper().isClientSide())
                         || conn.canWrite()) {
-                    execute(new Runnable() {
-                        public void run() {
-                            conn.writeMessages();
-                        }
-
-                        @Override
-                        public String toString() {
-                            return "Write connection messages";
-                        }
-                    });
+                    execute(conn.getWriteTask());
                 }
 
                 if ((isOverloaded() && getHelper().isClientSide())
                         || conn.canRead()) {
-                    execute(new Runnable() {
-                        public void run() {
-                            conn.readMessages();
-                        }
-
-                        @Override
-                        public String toString() {
-                            return "Read connection messages: "
-                                    + conn.canRead();
-                        }
-                    });
+                    execute(conn.getReadTask());
                 }
             }
         }
     }
 
     /**
-     * Control the helper for inbound or outbound messages to handle.
+     * Control the helper for inbound or outbound messages to handle. All the
+     * messages queued when the control starts are handled, as the selecting
+     * mode won't come back to the ones left over until the next event.
      */
     protected void controlHelper() {
         // Control if there are some pending requests that could
         // be processed
-        for (int i = 0; i < getHelper().getInboundMessages().size(); i++) {
+        int count = getHelper().getInboundMessages().size();
+
+        for (int i = 0; i < count; i++) {
             final Response response = getHelper().getInboundMessages().poll();
 
             if (response != null) {
@@ -135,7 +179,9 @@ public class Controller extends BaseTask {
 
         // Control if some pending responses that could be moved
         // to their respective connection queues
-        for (int i = 0; i < getHelper().getOutboundMessages().size(); i++) {
+        count = getHelper().getOutboundMessages().size();
+
+        for (int i = 0; i < count; i++) {
             final Response response = getHelper().getOutboundMessages().poll();
 
             if (response != null) {
@@ -179,6 +225,15 @@ public class Controller extends BaseTask {
         }
     }
 
+    /**
+     * Returns the number of controls done since the controller was created.
+     * 
+     * @return The number of controls done.
+     */
+    public long getControlCount() {
+        return this.controlCount.get();
+    }
+
     /**
      * Returns the parent connector helper.
      * 
@@ -217,34 +272,80 @@ public class Controller extends BaseTask {
     }
 
     /**
-     * Listens on the given server socket for incoming connections.
+     * Controls the helper and its connections until it is stopped.
      */
     public void run() {
         setRunning(true);
 
-        while (isRunning() || !getHelper().getConnections().isEmpty()) {
-            try {
-                if (isOverloaded()) {
-                    if (!isWorkerServiceFull()) {
-                        setOverloaded(false);
-                        getHelper()
-                                .getLogger()
-                                .log(Level.INFO,
-                                        "Accepting new connections and transactions again.");
-                    }
-                } else {
-                    if (isWorkerServiceFull()) {
-                        setOverloaded(true);
-                        getHelper()
-                                .getLogger()
-                                .log(
-                                        Level.INFO,
-                                        "Stop accepting new connections and transactions. Consider increasing the maximum number of threads.");
-                    }
+        if (getHelper().isControllerSelecting()) {
+            runSelecting();
+        } else {
+            runSleeping();
+        }
+    }
+
+    /**
+     * Controls the helper and its connections each time the selector is woken
+     * up. Falls back to sleeping if no selector is available.
+     */
+    protected void runSelecting() {
+        Selector selector = SelectorFactory.getSelector();
+        boolean pooled = (selector != null);
+
+        try {
+            if (!pooled) {
+                selector = Selector.open();
+            }
+        } catch (IOException ioe) {
+            this.helper.getLogger().log(Level.WARNING,
+                    "Unable to open a selector, sleeping between controls",
+                    ioe);
+            runSleeping();
+            return;
+        }
 
-                    controlConnections();
-                    controlHelper();
+        this.selector = selector;
+
+        try {
+            while (isRunning() || !getHelper().getConnections().isEmpty()) {
+                try {
+                    // Events received from now on will wake up the next select
+                    this.woken.set(false);
+                    control();
+
+                    // Tasks aren't executed while overloaded, so check again
+                    // soon instead of waiting for an event
+                    selector.select(isOverloaded() ? getHelper()
+                            .getControllerSleepTimeMs() : MAX_SELECT_TIME_MS);
+                } catch (Exception ex) {
+                    this.helper.getLogger().log(Level.FINE,
+                            "Unexpected error while controlling connector", ex);
+                }
+            }
+        } finally {
+            this.selector = null;
+
+            if (pooled) {
+                SelectorFactory.returnSelector(selector);
+            } else {
+                try {
+                    selector.close();
+                } catch (IOException ioe) {
+                    this.helper.getLogger().log(Level.FINE,
+                            "Unable to close the selector", ioe);
                 }
+            }
+        }
+    }
+
+    /**
+     * Controls the helper and its connections, sleeping for
+     * {@link BaseHelper#getControllerSleepTimeMs()} between each control.
+     */
+    protected void runSleeping() {
+        while (isRunning() || !getHelper().getConnections().isEmpty()) {
+            try {
+                control();
 
                 // Sleep a bit
                 Thread.sleep(getHelper().getControllerSleepTimeMs());
@@ -265,4 +366,27 @@ public class Controller extends BaseTask {
         this.overloaded = overloaded;
     }
 
+    @Override
+    public void setRunning(boolean running) {
+        super.setRunning(running);
+
+        if (!running) {
+            wakeup();
+        }
+    }
+
+    /**
+     * Wakes up the controller so that it controls the helper and its
+     * connections again without waiting. Only the first call since the last
+     * control reaches the selector. Does nothing if the controller isn't in
+     * selecting mode.
+     */
+    public void wakeup() {
+        Selector selector = this.selector;
+
+        if ((selector != null) && this.woken.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
 }
\ No newline at end of file
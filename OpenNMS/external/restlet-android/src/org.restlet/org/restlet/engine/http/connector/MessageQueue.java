@@ -0,0 +1,151 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.connector;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.restlet.Response;
+
+/**
+ * Concurrent queue of messages that keeps track of its size. Unlike
+ * {@link ConcurrentLinkedQueue} whose {@link #size()} method traverses the
+ * whole queue, the size is returned in constant time so it can be checked on
+ * each controller cycle or connection selection. Adding a message wakes up the
+ * controller of the parent helper, and so does removing the last one, as an
+ * empty connection queue may let the connection read or write again.
+ */
+public class MessageQueue extends AbstractQueue<Response> {
+
+    /** The underlying queue. */
+    private final ConcurrentLinkedQueue<Response> delegate;
+
+    /** The parent connector helper. */
+    private final BaseHelper<?> helper;
+
+    /** The number of messages in the queue. */
+    private final AtomicInteger size;
+
+    /**
+     * Constructor.
+     * 
+     * @param helper
+     *            The parent connector helper.
+     */
+    public MessageQueue(BaseHelper<?> helper) {
+        this.delegate = new ConcurrentLinkedQueue<Response>();
+        this.helper = helper;
+        this.size = new AtomicInteger();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size.get() == 0;
+    }
+
+    @Override
+    public Iterator<Response> iterator() {
+        final Iterator<Response> iterator = this.delegate.iterator();
+
+        return new Iterator<Response>() {
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public Response next() {
+                return iterator.next();
+            }
+
+            public void remove() {
+                iterator.remove();
+                removed();
+            }
+        };
+    }
+
+    public boolean offer(Response message) {
+        // Count the message before it can be polled, so that a concurrent
+        // poll never takes the size below zero and misses the empty wakeup
+        this.size.incrementAndGet();
+        boolean result = this.delegate.offer(message);
+
+        if (result) {
+            this.helper.getController().wakeup();
+        } else {
+            removed();
+        }
+
+        return result;
+    }
+
+    public Response peek() {
+        return this.delegate.peek();
+    }
+
+    public Response poll() {
+        Response result = this.delegate.poll();
+
+        if (result != null) {
+            removed();
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean remove(Object message) {
+        boolean result = this.delegate.remove(message);
+
+        if (result) {
+            removed();
+        }
+
+        return result;
+    }
+
+    /**
+     * Updates the size once a message was removed, waking up the controller
+     * if the queue became empty.
+     */
+    private void removed() {
+        if (this.size.decrementAndGet() == 0) {
+            this.helper.getController().wakeup();
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size.get();
+    }
+
+}
@@ -45,9 +45,10 @@ import org.restlet.data.Method;
 import org.restlet.data.Parameter;
 import org.restlet.data.Protocol;
 import org.restlet.data.Status;
-import org.restlet.engine.http.header.HeaderReader;
 import org.restlet.engine.http.header.HeaderUtils;
+import org.restlet.engine.util.IndexedForm;
 import org.restlet.engine.util.StringUtils;
+import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.util.Series;
 
@@ -134,8 +135,8 @@ public class ServerConnection extends Connection<Server> {
             String version, Series<Parameter> headers, Representation entity,
             boolean confidential, Principal userPrincipal) {
         return new ConnectedRequest(getHelper().getContext(), this, Method
-                .valueOf(methodName), resourceUri, version, headers,
-                createInboundEntity(headers), false, null);
+                .valueOf(methodName), resourceUri, version, headers, entity,
+                false, null);
     }
 
     /**
@@ -206,14 +207,14 @@ public class ServerConnection extends Connection<Server> {
             sb.delete(0, sb.length());
 
             // Parse the headers
-            Parameter header = HeaderReader.readHeader(getInboundStream(), sb);
+            Parameter header = getHeaderParser().readHeader(getInboundStream());
             while (header != null) {
                 if (headers == null) {
-                    headers = new Form();
+                    headers = new IndexedForm();
                 }
 
                 headers.add(header);
-                header = HeaderReader.readHeader(getInboundStream(), sb);
+                header = getHeaderParser().readHeader(getInboundStream());
             }
         } else {
             throw new IOException(
@@ -226,9 +227,9 @@ public class ServerConnection extends Connection<Server> {
         }
 
         // Create the request and the associated response
+        Representation entity = createInboundEntity(headers);
         request = createRequest(getHelper().getContext(), this, requestMethod,
-                requestUri, version, headers, createInboundEntity(headers),
-                false, null);
+                requestUri, version, headers, entity, false, null);
         Response response = getHelper().createResponse(request);
 
         // Update the response
@@ -242,6 +243,11 @@ public class ServerConnection extends Connection<Server> {
                 getInboundMessages().add(response);
             }
 
+            // Mark the inbound as free so new messages can be read if possible
+            if (entity instanceof EmptyRepresentation) {
+                setInboundBusy(false);
+            }
+
             // Add it to the helper queue
             getHelper().getInboundMessages().add(response);
         }
@@ -0,0 +1,434 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.header;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.restlet.data.Parameter;
+import org.restlet.engine.http.io.InboundStream;
+import org.restlet.engine.io.IoUtils;
+
+/**
+ * Byte-oriented HTTP header parser. Each header line is copied in bulk out of
+ * the buffer of an {@link InboundStream} into a reusable buffer, instead of
+ * being read one character at a time. Lines longer than
+ * {@link IoUtils#BUFFER_SIZE} bytes are rejected. Well-known header names and values are matched against pre-hashed
+ * tables and shared instead of being copied. Names are matched exactly, so
+ * that they keep the case they were sent with. Other values are copied into
+ * blocks shared by many headers, and only decoded into strings when they are
+ * first read.<br>
+ * <br>
+ * Instances aren't thread-safe; each connection should use its own.
+ */
+public class HeaderParser {
+
+    /**
+     * Header whose value is decoded from its bytes when first read.
+     */
+    private static class LazyParameter extends Parameter {
+
+        /** The bytes holding the undecoded value, or null once decoded. */
+        private byte[] bytes;
+
+        /** The length of the undecoded value. */
+        private final int length;
+
+        /** The index of the undecoded value in the bytes. */
+        private final int offset;
+
+        /**
+         * Constructor.
+         * 
+         * @param name
+         *            The header name.
+         * @param bytes
+         *            The bytes holding the undecoded value.
+         * @param offset
+         *            The index of the undecoded value in the bytes.
+         * @param length
+         *            The length of the undecoded value.
+         */
+        public LazyParameter(String name, byte[] bytes, int offset, int length) {
+            super(name, null);
+            this.bytes = bytes;
+            this.length = length;
+            this.offset = offset;
+        }
+
+        @Override
+        public String getSecond() {
+            byte[] value = this.bytes;
+
+            if (value != null) {
+                char[] chars = new char[this.length];
+
+                for (int i = 0; i < this.length; i++) {
+                    chars[i] = (char) (value[this.offset + i] & 0xff);
+                }
+
+                super.setSecond(new String(chars));
+                this.bytes = null;
+            }
+
+            return super.getSecond();
+        }
+
+        @Override
+        public void setSecond(String second) {
+            this.bytes = null;
+            super.setSecond(second);
+        }
+    }
+
+    /** The table of well-known header names. */
+    private static final String[] NAMES = createTable(128,
+            HeaderConstants.HEADER_ACCEPT,
+            HeaderConstants.HEADER_ACCEPT_CHARSET,
+            HeaderConstants.HEADER_ACCEPT_ENCODING,
+            HeaderConstants.HEADER_ACCEPT_LANGUAGE,
+            HeaderConstants.HEADER_ACCEPT_RANGES,
+            HeaderConstants.HEADER_AGE, HeaderConstants.HEADER_ALLOW,
+            HeaderConstants.HEADER_AUTHENTICATION_INFO,
+            HeaderConstants.HEADER_AUTHORIZATION,
+            HeaderConstants.HEADER_CACHE_CONTROL,
+            HeaderConstants.HEADER_CONNECTION,
+            HeaderConstants.HEADER_CONTENT_DISPOSITION,
+            HeaderConstants.HEADER_CONTENT_ENCODING,
+            HeaderConstants.HEADER_CONTENT_LANGUAGE,
+            HeaderConstants.HEADER_CONTENT_LENGTH,
+            HeaderConstants.HEADER_CONTENT_LOCATION,
+            HeaderConstants.HEADER_CONTENT_MD5,
+            HeaderConstants.HEADER_CONTENT_RANGE,
+            HeaderConstants.HEADER_CONTENT_TYPE,
+            HeaderConstants.HEADER_COOKIE, HeaderConstants.HEADER_DATE,
+            HeaderConstants.HEADER_ETAG, HeaderConstants.HEADER_EXPECT,
+            HeaderConstants.HEADER_EXPIRES, HeaderConstants.HEADER_FROM,
+            HeaderConstants.HEADER_HOST, HeaderConstants.HEADER_IF_MATCH,
+            HeaderConstants.HEADER_IF_MODIFIED_SINCE,
+            HeaderConstants.HEADER_IF_NONE_MATCH,
+            HeaderConstants.HEADER_IF_RANGE,
+            HeaderConstants.HEADER_IF_UNMODIFIED_SINCE,
+            HeaderConstants.HEADER_LAST_MODIFIED,
+            HeaderConstants.HEADER_LOCATION,
+            HeaderConstants.HEADER_MAX_FORWARDS,
+            HeaderConstants.HEADER_PRAGMA,
+            HeaderConstants.HEADER_PROXY_AUTHENTICATE,
+            HeaderConstants.HEADER_PROXY_AUTHORIZATION,
+            HeaderConstants.HEADER_RANGE, HeaderConstants.HEADER_REFERRER,
+            HeaderConstants.HEADER_RETRY_AFTER,
+            HeaderConstants.HEADER_SERVER,
+            HeaderConstants.HEADER_SET_COOKIE,
+            HeaderConstants.HEADER_SET_COOKIE2,
+            HeaderConstants.HEADER_SLUG, HeaderConstants.HEADER_TRAILER,
+            HeaderConstants.HEADER_TRANSFER_ENCODING,
+            HeaderConstants.HEADER_TRANSFER_EXTENSION,
+            HeaderConstants.HEADER_UPGRADE,
+            HeaderConstants.HEADER_USER_AGENT, HeaderConstants.HEADER_VARY,
+            HeaderConstants.HEADER_VIA, HeaderConstants.HEADER_WARNING,
+            HeaderConstants.HEADER_WWW_AUTHENTICATE,
+            HeaderConstants.HEADER_X_FORWARDED_FOR,
+            HeaderConstants.HEADER_X_HTTP_METHOD_OVERRIDE, "Keep-Alive",
+            "X-Powered-By");
+
+    /** The size of the blocks holding undecoded values. */
+    private static final int SLAB_SIZE = 2048;
+
+    /** The table of frequent header values, matched case-sensitively. */
+    private static final String[] VALUES = createTable(64, "0", "bytes",
+            "chunked", "close", "deflate", "gzip", "identity", "keep-alive",
+            "Keep-Alive", "max-age=0", "must-revalidate", "no-cache",
+            "no-store", "private", "public", "Accept-Encoding",
+            "Thu, 01 Jan 1970 00:00:00 GMT", "application/json",
+            "application/xml", "text/html", "text/plain", "text/xml",
+            "application/json;charset=UTF-8",
+            "application/xml;charset=UTF-8", "text/html;charset=UTF-8",
+            "text/xml;charset=UTF-8");
+
+    /**
+     * Creates an open-addressing table of strings.
+     * 
+     * @param size
+     *            The table size, a power of two larger than the number of
+     *            strings.
+     * @param strings
+     *            The strings to add.
+     * @return The table.
+     */
+    private static String[] createTable(int size, String... strings) {
+        String[] result = new String[size];
+
+        for (String string : strings) {
+            int hash = 0;
+
+            for (int i = 0; i < string.length(); i++) {
+                hash = 31 * hash + (string.charAt(i) | 0x20);
+            }
+
+            int index = hash & (size - 1);
+
+            while (result[index] != null) {
+                index = (index + 1) & (size - 1);
+            }
+
+            result[index] = string;
+        }
+
+        return result;
+    }
+
+    /**
+     * Looks up a string in a table.
+     * 
+     * @param table
+     *            The table to search.
+     * @param bytes
+     *            The bytes of the string to look up.
+     * @param start
+     *            The index of the first byte.
+     * @param end
+     *            The index after the last byte.
+     * @return The string found or null.
+     */
+    private static String lookup(String[] table, byte[] bytes, int start,
+            int end) {
+        int hash = 0;
+
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + ((bytes[i] & 0xff) | 0x20);
+        }
+
+        for (int index = hash & (table.length - 1); table[index] != null; index = (index + 1)
+                & (table.length - 1)) {
+            String candidate = table[index];
+
+            if (candidate.length() == end - start) {
+                boolean matching = true;
+
+                for (int i = 0; matching && (i < candidate.length()); i++) {
+                    int b = bytes[start + i] & 0xff;
+                    matching = (candidate.charAt(i) == b);
+                }
+
+                if (matching) {
+                    return candidate;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /** The reusable buffer holding the current line. */
+    private byte[] buffer;
+
+    /** The reusable buffer used to decode header names. */
+    private char[] chars;
+
+    /** The current block holding undecoded values. */
+    private byte[] slab;
+
+    /** The number of bytes used in the current block. */
+    private int slabLength;
+
+    /**
+     * Constructor.
+     */
+    public HeaderParser() {
+        this.buffer = new byte[IoUtils.BUFFER_SIZE];
+        this.chars = new char[64];
+        this.slab = null;
+        this.slabLength = 0;
+    }
+
+    /**
+     * Decodes a range of the current line into a new string.
+     * 
+     * @param start
+     *            The index of the first byte.
+     * @param end
+     *            The index after the last byte.
+     * @return The decoded string.
+     */
+    private String decode(int start, int end) {
+        if (this.chars.length < end - start) {
+            this.chars = new char[end - start];
+        }
+
+        for (int i = start; i < end; i++) {
+            this.chars[i - start] = (char) (this.buffer[i] & 0xff);
+        }
+
+        return new String(this.chars, 0, end - start);
+    }
+
+    /**
+     * Makes sure the line buffer can hold a given number of bytes.
+     * 
+     * @param capacity
+     *            The number of bytes required.
+     */
+    private void ensureCapacity(int capacity) {
+        if (this.buffer.length < capacity) {
+            byte[] newBuffer = new byte[Math.max(capacity,
+                    this.buffer.length * 2)];
+            System.arraycopy(this.buffer, 0, newBuffer, 0, this.buffer.length);
+            this.buffer = newBuffer;
+        }
+    }
+
+    /**
+     * Reads a header. Returns null if the last header was already read.
+     * 
+     * @param is
+     *            The message input stream.
+     * @return The header read or null.
+     * @throws IOException
+     */
+    public Parameter readHeader(InputStream is) throws IOException {
+        int length = readLine(is);
+
+        // Detect the end of headers
+        if (length == 0) {
+            return null;
+        }
+
+        // Parse the header name
+        int colon = 0;
+
+        while ((colon < length) && (this.buffer[colon] != ':')) {
+            colon++;
+        }
+
+        if (colon == length) {
+            throw new IOException(
+                    "Unable to parse the header name. Colon missing.");
+        }
+
+        String name = lookup(NAMES, this.buffer, 0, colon);
+
+        if (name == null) {
+            name = decode(0, colon);
+        }
+
+        // Skip any separator space between colon and header value
+        int start = colon + 1;
+
+        while ((start < length) && HeaderUtils.isSpace(this.buffer[start])) {
+            start++;
+        }
+
+        // Parse the header value
+        String value = lookup(VALUES, this.buffer, start, length);
+
+        if (value != null) {
+            return new Parameter(name, value);
+        }
+
+        int valueLength = length - start;
+
+        if (valueLength > SLAB_SIZE / 4) {
+            byte[] bytes = new byte[valueLength];
+            System.arraycopy(this.buffer, start, bytes, 0, valueLength);
+            return new LazyParameter(name, bytes, 0, valueLength);
+        }
+
+        if ((this.slab == null) || (this.slabLength + valueLength > SLAB_SIZE)) {
+            // Blocks are never reused as earlier headers may still refer to
+            // them
+            this.slab = new byte[SLAB_SIZE];
+            this.slabLength = 0;
+        }
+
+        System.arraycopy(this.buffer, start, this.slab, this.slabLength,
+                valueLength);
+        Parameter result = new LazyParameter(name, this.slab, this.slabLength,
+                valueLength);
+        this.slabLength += valueLength;
+        return result;
+    }
+
+    /**
+     * Reads a line ending with a carriage return and a line feed into the
+     * buffer.
+     * 
+     * @param is
+     *            The message input stream.
+     * @return The length of the line, without its end.
+     * @throws IOException
+     */
+    private int readLine(InputStream is) throws IOException {
+        if (is instanceof InboundStream) {
+            int length;
+
+            try {
+                length = ((InboundStream) is).readLine(this.buffer, 0,
+                        this.buffer.length);
+            } catch (IOException e) {
+                IOException ioe = new IOException(
+                        "Unable to parse the header. " + e.getMessage());
+                ioe.initCause(e);
+                throw ioe;
+            }
+
+            if (length == -1) {
+                throw new IOException(
+                        "Unable to parse the header. End of stream reached too early.");
+            }
+
+            return length;
+        }
+
+        // Read the line one byte at a time, as other streams such as the
+        // tracing stream can't be read in bulk
+        int length = 0;
+        int next = is.read();
+
+        while ((next != -1) && !HeaderUtils.isCarriageReturn(next)) {
+            ensureCapacity(length + 1);
+            this.buffer[length++] = (byte) next;
+            next = is.read();
+        }
+
+        if (next == -1) {
+            throw new IOException(
+                    "Unable to parse the header. End of stream reached too early.");
+        }
+
+        if (!HeaderUtils.isLineFeed(is.read())) {
+            throw new IOException(
+                    "Unable to parse the header. The carriage return must be followed by a line feed.");
+        }
+
+        return length;
+    }
+
+}
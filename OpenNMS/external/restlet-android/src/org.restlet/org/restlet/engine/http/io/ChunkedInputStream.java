@@ -30,15 +30,22 @@
 
 package org.restlet.engine.http.io;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PushbackInputStream;
+
+import org.restlet.engine.http.header.HeaderUtils;
 
 /**
  * {@link InputStream} to wrap a source {@link InputStream} that has been
  * chunked. See section 3.6.1 of HTTP Protocol for more information on chunked
- * encoding.
+ * encoding.<br>
+ * <br>
+ * When the source stream is the connection's {@link InboundStream}, each
+ * chunk size line is copied in bulk out of its buffer into a reusable one and
+ * parsed in place, and the following chunks are read in the same call as long
+ * as their size line is already completely buffered. Other streams, such as the tracing stream, are
+ * read one byte at a time for the lines. The chunk data are read in bulk
+ * straight into the caller's array.
  * 
  * @author <a href="mailto:kevin.a.conaway@gmail.com">Kevin Conaway</a>
  * @see <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec3.html">HTTP/1.1
@@ -46,8 +53,8 @@ import java.io.PushbackInputStream;
  */
 public class ChunkedInputStream extends InputEntityStream {
 
-    /** Size of the push back buffer. */
-    private static final int PUSHBBACK_BUFFER_SIZE = 2;
+    /** Maximum length of a chunk size or trailer line. */
+    private static final int MAX_LINE_LENGTH = 256;
 
     /** Size of the current chunk. */
     private volatile long chunkSize;
@@ -55,14 +62,17 @@ public class ChunkedInputStream extends InputEntityStream {
     /** Indicates if the end of the source stream has been reached. */
     private volatile boolean endReached;
 
-    /** Indicates if the chunked has been properly initialized. */
-    private volatile boolean initialized;
+    /** The source input stream if it is a buffered inbound stream. */
+    private final InboundStream inboundStream;
+
+    /** The buffer of the current chunk size or trailer line. */
+    private final byte[] line;
 
     /** Indicates the position inside the current chunk. */
     private volatile long position;
 
     /** The source input stream to decode. */
-    private final PushbackInputStream source;
+    private final InputStream source;
 
     /**
      * Constructor.
@@ -74,14 +84,47 @@ public class ChunkedInputStream extends InputEntityStream {
      */
     public ChunkedInputStream(Notifiable notifiable, InputStream inboundStream) {
         super(notifiable, inboundStream);
-        this.source = new PushbackInputStream(inboundStream,
-                PUSHBBACK_BUFFER_SIZE);
-        this.initialized = false;
+        this.source = inboundStream;
+        this.inboundStream = (inboundStream instanceof InboundStream) ? (InboundStream) inboundStream
+                : null;
+        this.line = new byte[MAX_LINE_LENGTH];
         this.endReached = false;
         this.position = 0;
         this.chunkSize = 0;
     }
 
+    @Override
+    public int available() throws IOException {
+        if (this.endReached || !chunkAvailable()) {
+            return 0;
+        }
+
+        return (int) Math.min(this.source.available(), this.chunkSize
+                - this.position);
+    }
+
+    /**
+     * Indicates if the source stream can be read further without blocking.
+     * Within a chunk, some data must be buffered. At the end of a chunk, the
+     * line ending it and the next chunk size line must be completely
+     * buffered, which can only be told for an {@link InboundStream}.
+     * 
+     * @return True if the source stream can be read without blocking.
+     * @throws IOException
+     */
+    private boolean buffered() throws IOException {
+        boolean result = false;
+
+        if (chunkAvailable()) {
+            result = (this.inboundStream != null) ? (this.inboundStream
+                    .getBufferedSize() > 0) : (this.source.available() > 0);
+        } else if (this.inboundStream != null) {
+            result = this.inboundStream.isLineBuffered();
+        }
+
+        return result;
+    }
+
     /**
      * Indicates if the source stream can be read and prepare it if necessary.
      * 
@@ -90,7 +133,6 @@ public class ChunkedInputStream extends InputEntityStream {
      */
     private boolean canRead() throws IOException {
         boolean result = false;
-        initialize();
 
         if (!this.endReached) {
             if (!chunkAvailable()) {
@@ -103,22 +145,6 @@ public class ChunkedInputStream extends InputEntityStream {
         return result;
     }
 
-    /**
-     * Checks if the source stream will return a CR+LF sequence next, without
-     * actually reading it.
-     * 
-     * @throws IOException
-     */
-    private void checkCRLF() throws IOException {
-        final int cr = this.source.read();
-        final int lf = this.source.read();
-
-        if ((cr != '\r') && (lf != '\n')) {
-            this.source.unread(lf);
-            this.source.unread(cr);
-        }
-    }
-
     /**
      * Indicates if a chunk is available or false if a new one needs to be
      * initialized.
@@ -136,22 +162,9 @@ public class ChunkedInputStream extends InputEntityStream {
     @Override
     public void close() throws IOException {
         super.close();
-        this.initialized = true;
         onEndReached();
     }
 
-    /**
-     * Initializes the stream by reading and discarding a CRLF (if present).
-     * 
-     * @throws IOException
-     */
-    private void initialize() throws IOException {
-        if (!this.initialized) {
-            checkCRLF();
-            this.initialized = true;
-        }
-    }
-
     /**
      * Initialize the next chunk in the stream.
      * 
@@ -162,10 +175,12 @@ public class ChunkedInputStream extends InputEntityStream {
         this.position = 0;
 
         if (this.chunkSize == 0) {
-            onEndReached();
+            // Read the optional (unsupported) trailer and the final new line
+            // before the connection goes on with the next message
+            while (readLine() > 0) {
+            }
 
-            // Read the new line after the optional (unsupported) trailer
-            checkCRLF();
+            onEndReached();
         }
     }
 
@@ -181,9 +196,11 @@ public class ChunkedInputStream extends InputEntityStream {
 
         if (canRead()) {
             result = this.source.read();
-            this.position++;
-            if ((result == -1)) {
+
+            if (result == -1) {
                 onEndReached();
+            } else {
+                this.position++;
             }
         }
 
@@ -192,78 +209,150 @@ public class ChunkedInputStream extends InputEntityStream {
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        int result = -1;
+        if (len == 0) {
+            return 0;
+        }
 
-        if (canRead()) {
-            result = this.source.read(b, off, Math.min(len,
-                    (int) (this.chunkSize - this.position)));
-            this.position += result;
+        int result = 0;
 
-            if (len - result > 0) {
-                int nextResult = read(b, off + result, len - result);
+        // Go on with the next chunks only as long as they are buffered
+        while ((result < len) && ((result == 0) || buffered()) && canRead()) {
+            final int count = this.source.read(b, off + result, (int) Math
+                    .min(len - result, this.chunkSize - this.position));
 
-                if (nextResult > 0) {
-                    result += nextResult;
-                }
-            }
-            if (result == -1) {
+            if (count == -1) {
                 onEndReached();
+            } else {
+                this.position += count;
+                result += count;
             }
         }
 
-        return result;
+        return (result > 0) ? result : -1;
     }
 
     /**
-     * Reads the chunk size from the current line.
+     * Reads the chunk size from the current line, skipping the empty line
+     * ending the previous chunk.
      * 
      * @return The chunk size from the current line.
      * @throws IOException
      *             If the chunk size could not be read or was invalid.
      */
     private long readChunkSize() throws IOException {
-        String line = readChunkSizeLine();
-        final int index = line.indexOf(';');
-        line = index == -1 ? line : line.substring(0, index);
-
-        try {
-            return Long.parseLong(line.trim(), 16);
-        } catch (NumberFormatException ex) {
-            throw new IOException("<" + line + "> is an invalid chunk size");
+        int length = readLine();
+
+        if (length == 0) {
+            length = readLine();
+        }
+
+        if (length == -1) {
+            throw new IOException(
+                    "Invalid chunk size specified. End of stream reached");
+        }
+
+        long result = 0;
+        int digits = 0;
+        int i = 0;
+
+        while ((i < length) && HeaderUtils.isLinearWhiteSpace(this.line[i])) {
+            i++;
+        }
+
+        for (int digit; (i < length)
+                && ((digit = Character.digit(this.line[i], 16)) != -1); i++) {
+            result = (result << 4) | digit;
+            digits++;
+        }
+
+        while ((i < length) && HeaderUtils.isLinearWhiteSpace(this.line[i])) {
+            i++;
+        }
+
+        if ((digits == 0) || (digits > 15)
+                || ((i < length) && (this.line[i] != ';'))) {
+            throw new IOException("<" + new String(this.line, 0, length)
+                    + "> is an invalid chunk size");
         }
+
+        return result;
     }
 
     /**
-     * Reads a line containing a chunk size.
+     * Reads a line ending with a carriage return and a line feed into the line
+     * buffer.
      * 
-     * @return A line containing a chunk size.
+     * @return The length of the line, without its end, or -1 if the end of
+     *         the source stream was reached before the line.
      * @throws IOException
      */
-    private String readChunkSizeLine() throws IOException {
-        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        checkCRLF();
+    private int readLine() throws IOException {
+        if (this.inboundStream != null) {
+            try {
+                return this.inboundStream.readLine(this.line, 0,
+                        this.line.length);
+            } catch (IOException e) {
+                IOException ioe = new IOException(
+                        "Invalid chunk size specified. " + e.getMessage());
+                ioe.initCause(e);
+                throw ioe;
+            }
+        }
+
+        // Read the line one byte at a time
+        int length = 0;
+        int next = this.source.read();
 
-        for (;;) {
-            final int b = this.source.read();
+        if (next == -1) {
+            return -1;
+        }
 
-            if (b == -1) {
+        while ((next != -1) && !HeaderUtils.isCarriageReturn(next)) {
+            if (length == this.line.length) {
                 throw new IOException(
-                        "Invalid chunk size specified. End of stream reached");
+                        "Invalid chunk size specified. Line longer than "
+                                + length + " bytes");
             }
 
-            if (b == '\r') {
-                final int lf = this.source.read();
+            this.line[length++] = (byte) next;
+            next = this.source.read();
+        }
 
-                if (lf == '\n') {
+        if (next == -1) {
+            throw new IOException(
+                    "Invalid chunk size specified. End of stream reached");
+        }
+
+        if (!HeaderUtils.isLineFeed(this.source.read())) {
+            throw new IOException(
+                    "Invalid chunk size specified.  Expected crlf, only saw cr");
+        }
+
+        return length;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result = 0;
+
+        while ((result < n) && canRead()) {
+            long count = this.source.skip(Math.min(n - result, this.chunkSize
+                    - this.position));
+
+            if (count <= 0) {
+                // Make sure the source isn't at its end
+                if (this.source.read() == -1) {
+                    onEndReached();
                     break;
                 }
-                throw new IOException(
-                        "Invalid chunk size specified.  Expected crlf, only saw cr");
+
+                count = 1;
             }
 
-            buffer.write(b);
+            this.position += count;
+            result += count;
         }
 
-        return new String(buffer.toByteArray());
+        return result;
     }
 }
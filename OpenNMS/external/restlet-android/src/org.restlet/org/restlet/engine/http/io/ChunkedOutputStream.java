@@ -33,13 +33,14 @@ package org.restlet.engine.http.io;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import org.restlet.engine.http.header.HeaderUtils;
-import org.restlet.engine.util.StringUtils;
-
 /**
  * OutputStream to write data in the HTTP chunked encoding format to a
  * destination OutputStream. See section 3.6.1 of HTTP Protocol for more
- * information on chunked encoding.
+ * information on chunked encoding.<br>
+ * <br>
+ * Arrays are copied in bulk into the chunk buffer, or written as a chunk of
+ * their own when they are at least as large as the buffer. The size line of
+ * each chunk is formatted in place into a reusable buffer.
  * 
  * @author <a href="mailto:kevin.a.conaway@gmail.com">Kevin Conaway</a>
  * @see <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec3.html">HTTP/1.1
@@ -50,6 +51,16 @@ public class ChunkedOutputStream extends OutputStream {
     /** Default size of a chunk. */
     private static final int DEFAULT_CHUNK_SIZE = 2048;
 
+    /** The line ending a chunk. */
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    /** The closing chunk: a zero followed by two CRLF. */
+    private static final byte[] FINAL_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+    /** The hexadecimal digits. */
+    private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5',
+            '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
     /** The byte buffer. */
     private final byte[] buffer;
 
@@ -62,6 +73,9 @@ public class ChunkedOutputStream extends OutputStream {
     /** The destination output stream. */
     private final OutputStream destination;
 
+    /** The size line of the current chunk, formatted from the end. */
+    private final byte[] sizeLine;
+
     /**
      * Convenience constructor to use a default chunk size size of 2048.
      * 
@@ -81,6 +95,7 @@ public class ChunkedOutputStream extends OutputStream {
     public ChunkedOutputStream(OutputStream destination, int chunkSize) {
         this.destination = destination;
         this.buffer = new byte[chunkSize];
+        this.sizeLine = new byte[10];
         this.bytesWritten = 0;
         this.closed = false;
     }
@@ -132,37 +147,81 @@ public class ChunkedOutputStream extends OutputStream {
         this.buffer[this.bytesWritten++] = (byte) b;
     }
 
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if ((this.bytesWritten == 0) && (len >= this.buffer.length)) {
+            // No need to copy into the buffer
+            writeChunk(b, off, len);
+        } else {
+            while (len > 0) {
+                if (chunkFull()) {
+                    writeChunk();
+                }
+
+                final int count = Math.min(len, this.buffer.length
+                        - this.bytesWritten);
+                System.arraycopy(b, off, this.buffer, this.bytesWritten, count);
+                this.bytesWritten += count;
+                off += count;
+                len -= count;
+            }
+        }
+    }
+
     /**
-     * Write a chunk, starting with its size in hexadecimal, followed by CRLF
-     * and the actual content.
+     * Write the buffered content, if any, as a chunk.
      * 
      * @throws IOException
      */
     private void writeChunk() throws IOException {
         if (this.bytesWritten > 0) {
-            // Write the current position in hexadecimal format followed by CRLF
-            this.destination.write(StringUtils.getAsciiBytes(Integer
-                    .toHexString(this.bytesWritten)));
-            HeaderUtils.writeCRLF(this.destination);
-
-            // Write the chunk content
-            this.destination.write(this.buffer, 0, this.bytesWritten);
-            HeaderUtils.writeCRLF(this.destination);
+            writeChunk(this.buffer, 0, this.bytesWritten);
 
             // Reset the position
             reset();
         }
     }
 
+    /**
+     * Write a chunk, starting with its size in hexadecimal, followed by CRLF
+     * and the actual content.
+     * 
+     * @param b
+     *            The chunk content.
+     * @param off
+     *            The start offset of the content.
+     * @param len
+     *            The length of the content.
+     * @throws IOException
+     */
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        // Write the size in hexadecimal format followed by CRLF
+        int start = this.sizeLine.length;
+        this.sizeLine[--start] = '\n';
+        this.sizeLine[--start] = '\r';
+
+        int size = len;
+
+        do {
+            this.sizeLine[--start] = HEX_DIGITS[size & 0xF];
+            size >>>= 4;
+        } while (size != 0);
+
+        this.destination.write(this.sizeLine, start, this.sizeLine.length
+                - start);
+
+        // Write the chunk content
+        this.destination.write(b, off, len);
+        this.destination.write(CRLF);
+    }
+
     /**
      * Write the closing chunk: A zero followed by two CRLF.
      * 
      * @throws IOException
      */
     private void writeFinalChunk() throws IOException {
-        this.destination.write((byte) '0');
-        HeaderUtils.writeCRLF(this.destination);
-        HeaderUtils.writeCRLF(this.destination);
+        this.destination.write(FINAL_CHUNK);
     }
 
 }
@@ -69,4 +69,101 @@ public class InboundStream extends BufferedInputStream {
     @Override
     public void close() throws IOException {
     }
+
+    /**
+     * Returns the number of bytes that can be read from the buffer, without
+     * asking the source stream.
+     * 
+     * @return The number of buffered bytes.
+     */
+    public synchronized int getBufferedSize() {
+        return this.count - this.pos;
+    }
+
+    /**
+     * Indicates if a complete line, ending with a carriage return and a line
+     * feed, is buffered after the empty lines at the current position. Such a
+     * line can be read without blocking.
+     * 
+     * @return True if a complete non empty line is buffered.
+     */
+    public synchronized boolean isLineBuffered() {
+        int start = this.pos;
+
+        while ((start + 1 < this.count) && (this.buf[start] == '\r')
+                && (this.buf[start + 1] == '\n')) {
+            start += 2;
+        }
+
+        for (int i = start; i + 1 < this.count; i++) {
+            if (this.buf[i] == '\r') {
+                return (i > start) && (this.buf[i + 1] == '\n');
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads a line ending with a carriage return and a line feed, copying it
+     * in bulk out of the buffer. Only the bytes of the line are consumed.
+     * 
+     * @param b
+     *            The array receiving the line, without its end.
+     * @param off
+     *            The start offset in the array.
+     * @param len
+     *            The maximum length of the line.
+     * @return The length of the line, or -1 if the end of the stream was
+     *         reached before the line.
+     * @throws IOException
+     *             If the line is too long or not properly ended.
+     */
+    public synchronized int readLine(byte[] b, int off, int len)
+            throws IOException {
+        int length = 0;
+        int next = -1;
+
+        while (next != '\r') {
+            // Copy the buffered part of the line
+            int end = this.pos;
+
+            while ((end < this.count) && (this.buf[end] != '\r')) {
+                end++;
+            }
+
+            if (length + end - this.pos > len) {
+                throw new IOException("Line longer than " + len + " bytes");
+            }
+
+            System.arraycopy(this.buf, this.pos, b, off + length, end
+                    - this.pos);
+            length += end - this.pos;
+            this.pos = end;
+
+            // Refill the buffer if needed
+            next = read();
+
+            if (next == -1) {
+                if (length == 0) {
+                    return -1;
+                }
+
+                throw new IOException("End of stream reached within a line");
+            } else if (next != '\r') {
+                if (length == len) {
+                    throw new IOException("Line longer than " + len + " bytes");
+                }
+
+                b[off + length++] = (byte) next;
+            }
+        }
+
+        if (read() != '\n') {
+            throw new IOException(
+                    "The carriage return must be followed by a line feed");
+        }
+
+        return length;
+    }
 }
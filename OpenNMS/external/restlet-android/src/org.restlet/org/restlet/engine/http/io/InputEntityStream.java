@@ -61,6 +61,19 @@ public abstract class InputEntityStream extends InputStream {
         this.inboundStream = inboundStream;
     }
 
+    /**
+     * Returns the notifiable connection and forgets it, so that the connection
+     * is notified at most once about this stream. Once notified, it may
+     * already be reading the next message.
+     * 
+     * @return The notifiable connection, or null if already notified.
+     */
+    private synchronized Notifiable detach() {
+        Notifiable result = this.notifiable;
+        this.notifiable = null;
+        return result;
+    }
+
     /**
      * Returns the inbound stream.
      * 
@@ -76,6 +89,8 @@ public abstract class InputEntityStream extends InputStream {
      * {@link Connection#setInboundBusy(boolean)}) .
      */
     protected void onEndReached() {
+        Notifiable notifiable = detach();
+
         if (notifiable != null) {
             notifiable.onEndReached();
         }
@@ -87,8 +102,18 @@ public abstract class InputEntityStream extends InputStream {
      * {@link ConnectionState#CLOSING} in order to release this stream.
      */
     protected void onError() {
+        Notifiable notifiable = detach();
+
         if (notifiable != null) {
             notifiable.onError();
         }
     }
+
+    /**
+     * Releases the connection as if the end of the stream was reached, unless
+     * it already was.
+     */
+    public void release() {
+        onEndReached();
+    }
 }
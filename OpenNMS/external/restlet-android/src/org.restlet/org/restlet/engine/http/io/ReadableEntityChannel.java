@@ -42,7 +42,8 @@ import java.nio.channels.spi.SelectorProvider;
 // [excludes gwt]
 /**
  * Readable byte channel based on a source socket channel that must only be
- * partially read.
+ * partially read. The bytes are copied or read in bulk into the destination
+ * buffer, which is limited to the size left to read.
  */
 public class ReadableEntityChannel extends SelectableChannel implements
         ReadableByteChannel {
@@ -125,16 +126,30 @@ public class ReadableEntityChannel extends SelectableChannel implements
         int result = -1;
 
         if (this.availableSize > 0) {
-            if ((this.remainingBuffer != null)
-                    && (this.remainingBuffer.hasRemaining())) {
-                // First make sure that the remaining buffer is empty
-                result = this.remainingBuffer.remaining();
-                final byte[] src = new byte[result];
-                this.remainingBuffer.get(src);
-                dst.put(src);
-            } else {
-                // Otherwise, read data from the source channel
-                result = ((ReadableByteChannel) getSource()).read(dst);
+            // Never read beyond the entity, nor copy beyond the destination
+            final int dstLimit = dst.limit();
+
+            if (dst.remaining() > this.availableSize) {
+                dst.limit(dst.position() + (int) this.availableSize);
+            }
+
+            try {
+                if ((this.remainingBuffer != null)
+                        && (this.remainingBuffer.hasRemaining())) {
+                    // First make sure that the remaining buffer is empty
+                    final int srcLimit = this.remainingBuffer.limit();
+                    result = Math.min(this.remainingBuffer.remaining(), dst
+                            .remaining());
+                    this.remainingBuffer.limit(this.remainingBuffer.position()
+                            + result);
+                    dst.put(this.remainingBuffer);
+                    this.remainingBuffer.limit(srcLimit);
+                } else {
+                    // Otherwise, read data from the source channel
+                    result = ((ReadableByteChannel) getSource()).read(dst);
+                }
+            } finally {
+                dst.limit(dstLimit);
             }
 
             if (result > 0) {
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.timing;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.restlet.Request;
+import org.restlet.engine.http.io.Notifiable;
+
+/**
+ * Times the phases of a client call and records them in the default
+ * {@link LatencyRecorder}. The timer of a call travels in the attributes of
+ * its request, under the {@link #ATTRIBUTE} name, from the client resource
+ * down to the connector, which may run some phases on other threads.<br>
+ * <br>
+ * The connectors time consecutive phases with {@link #mark()} and
+ * {@link #lap(Phase)}, each lap measuring the time since the previous mark
+ * or lap. When recording is disabled, {@link #start(Request)} and
+ * {@link #get(Request)} return null without touching the request, so
+ * callers only time anything when they got a timer.
+ */
+public class CallTimer {
+
+    /** The name of the request attribute holding the timer of a call. */
+    public static final String ATTRIBUTE = "org.restlet.engine.http.timing.callTimer";
+
+    /**
+     * Returns the timer of a call.
+     * 
+     * @param request
+     *            The request of the call.
+     * @return The timer of the call, or null if it isn't timed.
+     */
+    public static CallTimer get(Request request) {
+        if (!LatencyRecorder.getInstance().isEnabled()) {
+            return null;
+        }
+
+        return (CallTimer) request.getAttributes().get(ATTRIBUTE);
+    }
+
+    /**
+     * Returns the timer of a call, starting one if recording is enabled and
+     * the call has none yet.
+     * 
+     * @param request
+     *            The request of the call.
+     * @return The timer of the call, or null if it isn't timed.
+     */
+    public static CallTimer start(Request request) {
+        final LatencyRecorder recorder = LatencyRecorder.getInstance();
+
+        if (!recorder.isEnabled()) {
+            return null;
+        }
+
+        CallTimer result = (CallTimer) request.getAttributes().get(ATTRIBUTE);
+        if (result == null) {
+            result = new CallTimer(recorder, LatencyRecorder
+                    .getEndpoint(request.getResourceRef()));
+            request.getAttributes().put(ATTRIBUTE, result);
+        }
+
+        return result;
+    }
+
+    /** The endpoint called. */
+    private final String endpoint;
+
+    /** The time of the last mark or lap, in nanoseconds. */
+    private volatile long mark;
+
+    /** The recorder of the timings. */
+    private final LatencyRecorder recorder;
+
+    /** The time the call started, in nanoseconds. */
+    private final long start;
+
+    /**
+     * Constructor.
+     * 
+     * @param recorder
+     *            The recorder of the timings.
+     * @param endpoint
+     *            The endpoint called.
+     */
+    public CallTimer(LatencyRecorder recorder, String endpoint) {
+        this.recorder = recorder;
+        this.endpoint = endpoint;
+        this.start = System.nanoTime();
+        this.mark = this.start;
+    }
+
+    /**
+     * Returns the endpoint called.
+     * 
+     * @return The endpoint called.
+     */
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    /**
+     * Returns the time elapsed since the call started.
+     * 
+     * @return The time elapsed since the call started, in nanoseconds.
+     */
+    public long getElapsed() {
+        return System.nanoTime() - this.start;
+    }
+
+    /**
+     * Records the time elapsed since the last mark or lap as a phase, and
+     * marks the end of the phase.
+     * 
+     * @param phase
+     *            The phase that just ended.
+     */
+    public void lap(Phase phase) {
+        final long now = System.nanoTime();
+        record(phase, now - this.mark);
+        this.mark = now;
+    }
+
+    /**
+     * Marks the start of a phase.
+     */
+    public void mark() {
+        this.mark = System.nanoTime();
+    }
+
+    /**
+     * Returns a notifiable that records the {@link Phase#BODY} phase before
+     * notifying another one of the end of an entity stream.
+     * 
+     * @param notifiable
+     *            The notifiable to notify.
+     * @return The notifiable recording the phase.
+     */
+    public Notifiable notifying(final Notifiable notifiable) {
+        return new Notifiable() {
+            public void onEndReached() {
+                lap(Phase.BODY);
+                notifiable.onEndReached();
+            }
+
+            public void onError() {
+                notifiable.onError();
+            }
+        };
+    }
+
+    /**
+     * Records the duration of a phase.
+     * 
+     * @param phase
+     *            The phase.
+     * @param nanos
+     *            The duration in nanoseconds.
+     */
+    public void record(Phase phase, long nanos) {
+        this.recorder.record(this.endpoint, phase, nanos);
+    }
+
+    /**
+     * Returns a stream that records the {@link Phase#BODY} phase once the
+     * end of an entity stream is reached or it is closed.
+     * 
+     * @param stream
+     *            The entity stream.
+     * @return The stream recording the phase.
+     */
+    public InputStream wrap(InputStream stream) {
+        return new FilterInputStream(stream) {
+            private boolean ended = false;
+
+            @Override
+            public void close() throws IOException {
+                end();
+                super.close();
+            }
+
+            private void end() {
+                if (!this.ended) {
+                    this.ended = true;
+                    lap(Phase.BODY);
+                }
+            }
+
+            @Override
+            public int read() throws IOException {
+                final int result = super.read();
+                if (result == -1) {
+                    end();
+                }
+                return result;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                final int result = super.read(b, off, len);
+                if (result == -1) {
+                    end();
+                }
+                return result;
+            }
+        };
+    }
+
+}
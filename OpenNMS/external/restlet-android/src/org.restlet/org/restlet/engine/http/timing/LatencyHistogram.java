@@ -0,0 +1,184 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.timing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with buckets growing by powers of two, from one
+ * microsecond to about 18 minutes. Recording a duration is lock-free and
+ * doesn't allocate; percentiles are estimated as the upper bound of the
+ * bucket they fall in.
+ */
+public class LatencyHistogram {
+
+    /** Number of buckets. */
+    public static final int BUCKETS = 32;
+
+    /**
+     * Returns the bucket of a duration: bucket 0 holds durations under a
+     * microsecond, and bucket i those from 2^(i-1) to 2^i microseconds. The
+     * last bucket also holds all the longer durations.
+     * 
+     * @param nanos
+     *            The duration in nanoseconds.
+     * @return The index of the bucket.
+     */
+    private static int bucket(long nanos) {
+        final long micros = nanos / 1000L;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /** The number of durations in each bucket. */
+    private final AtomicLongArray buckets;
+
+    /** The number of durations recorded. */
+    private final AtomicLong count;
+
+    /** The longest duration recorded, in nanoseconds. */
+    private final AtomicLong max;
+
+    /** The sum of the durations recorded, in nanoseconds. */
+    private final AtomicLong total;
+
+    /**
+     * Constructor.
+     */
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.count = new AtomicLong();
+        this.max = new AtomicLong();
+        this.total = new AtomicLong();
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     * 
+     * @return The number of durations recorded.
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Returns the longest duration recorded.
+     * 
+     * @return The longest duration recorded, in nanoseconds.
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Returns the average duration recorded.
+     * 
+     * @return The average duration recorded, in nanoseconds, or 0.
+     */
+    public long getMean() {
+        final long n = getCount();
+        return (n == 0) ? 0 : getTotal() / n;
+    }
+
+    /**
+     * Returns an estimate of a percentile of the durations: the upper bound
+     * of the bucket it falls in, or the longest duration if lower.
+     * 
+     * @param fraction
+     *            The percentile, between 0 and 1.
+     * @return The estimated percentile, in nanoseconds, or 0 if no duration
+     *         was recorded.
+     */
+    public long getPercentile(double fraction) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += this.buckets.get(i);
+        }
+
+        if (n == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(getMax(), (1L << i) * 1000L);
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Returns the sum of the durations recorded.
+     * 
+     * @return The sum of the durations recorded, in nanoseconds.
+     */
+    public long getTotal() {
+        return this.total.get();
+    }
+
+    /**
+     * Records a duration.
+     * 
+     * @param nanos
+     *            The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        this.buckets.incrementAndGet(bucket(nanos));
+        this.count.incrementAndGet();
+        this.total.addAndGet(nanos);
+
+        long current = this.max.get();
+        while ((nanos > current) && !this.max.compareAndSet(current, nanos)) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * Forgets the durations recorded.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets.set(i, 0);
+        }
+        this.count.set(0);
+        this.max.set(0);
+        this.total.set(0);
+    }
+
+}
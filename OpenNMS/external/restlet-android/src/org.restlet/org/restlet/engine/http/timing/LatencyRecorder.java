@@ -0,0 +1,236 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.timing;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.restlet.data.Reference;
+
+/**
+ * Aggregates the phase timings of client calls in one
+ * {@link LatencyHistogram} per endpoint and {@link Phase}. An endpoint is the
+ * scheme, host, port and path of the target resource, without the query.
+ * Once {@link #MAX_ENDPOINTS} endpoints are known, the calls to other ones
+ * are aggregated under {@link #OTHER_ENDPOINT}.<br>
+ * <br>
+ * Recording is disabled by default. While it is, connectors don't time their
+ * calls at all, and {@link CallTimer#start(org.restlet.Request)} and
+ * {@link CallTimer#get(org.restlet.Request)} return null.
+ */
+public class LatencyRecorder {
+
+    /** The default recorder. */
+    private static final LatencyRecorder instance = new LatencyRecorder();
+
+    /** Maximum number of endpoints with their own histograms. */
+    public static final int MAX_ENDPOINTS = 64;
+
+    /** The endpoint aggregating the calls beyond {@link #MAX_ENDPOINTS}. */
+    public static final String OTHER_ENDPOINT = "(other)";
+
+    /**
+     * Returns the endpoint of a resource reference.
+     * 
+     * @param resourceRef
+     *            The resource reference.
+     * @return The scheme, host, port and path of the reference.
+     */
+    public static String getEndpoint(Reference resourceRef) {
+        final Reference ref = resourceRef.isRelative() ? resourceRef
+                .getTargetRef() : resourceRef;
+        final String hostIdentifier = ref.getHostIdentifier();
+        final String path = ref.getPath();
+
+        if (hostIdentifier == null) {
+            return (path == null) ? "" : path;
+        }
+
+        return (path == null) ? hostIdentifier : hostIdentifier + path;
+    }
+
+    /**
+     * Returns the default recorder, used by the connectors.
+     * 
+     * @return The default recorder.
+     */
+    public static LatencyRecorder getInstance() {
+        return instance;
+    }
+
+    /** Indicates if calls are timed. */
+    private volatile boolean enabled;
+
+    /** The histograms of each endpoint, indexed by phase. */
+    private final ConcurrentMap<String, LatencyHistogram[]> endpoints;
+
+    /**
+     * Constructor.
+     */
+    public LatencyRecorder() {
+        this.enabled = false;
+        this.endpoints = new ConcurrentHashMap<String, LatencyHistogram[]>();
+    }
+
+    /**
+     * Returns a text table of the timings of each endpoint: the number of
+     * calls, average, estimated median, 90th and 99th percentiles and longest
+     * duration of each timed phase, in milliseconds.
+     * 
+     * @return A text table of the timings.
+     */
+    public String dump() {
+        final StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<String, LatencyHistogram[]> entry : new TreeMap<String, LatencyHistogram[]>(
+                this.endpoints).entrySet()) {
+            sb.append(entry.getKey()).append('\n');
+
+            for (Phase phase : Phase.values()) {
+                final LatencyHistogram histogram = entry.getValue()[phase
+                        .ordinal()];
+
+                if (histogram.getCount() > 0) {
+                    sb.append(String.format(
+                            "  %-10s n=%-6d mean=%-8.1f p50<=%-8.1f p90<=%-8.1f p99<=%-8.1f max=%.1f\n",
+                            phase.name().toLowerCase(), histogram.getCount(),
+                            millis(histogram.getMean()), millis(histogram
+                                    .getPercentile(0.5)), millis(histogram
+                                    .getPercentile(0.9)), millis(histogram
+                                    .getPercentile(0.99)), millis(histogram
+                                    .getMax())));
+                }
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns the histogram of a phase of the calls to an endpoint, creating
+     * it if needed.
+     * 
+     * @param endpoint
+     *            The endpoint.
+     * @param phase
+     *            The phase.
+     * @return The histogram.
+     */
+    public LatencyHistogram getHistogram(String endpoint, Phase phase) {
+        LatencyHistogram[] histograms = this.endpoints.get(endpoint);
+
+        if (histograms == null) {
+            if (this.endpoints.size() >= MAX_ENDPOINTS) {
+                endpoint = OTHER_ENDPOINT;
+                histograms = this.endpoints.get(endpoint);
+            }
+
+            if (histograms == null) {
+                histograms = new LatencyHistogram[Phase.values().length];
+                for (int i = 0; i < histograms.length; i++) {
+                    histograms[i] = new LatencyHistogram();
+                }
+
+                final LatencyHistogram[] existing = this.endpoints.putIfAbsent(
+                        endpoint, histograms);
+                if (existing != null) {
+                    histograms = existing;
+                }
+            }
+        }
+
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * Returns the known endpoints.
+     * 
+     * @return The known endpoints.
+     */
+    public Set<String> getEndpoints() {
+        return this.endpoints.keySet();
+    }
+
+    /**
+     * Indicates if calls are timed.
+     * 
+     * @return True if calls are timed.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds.
+     * 
+     * @param nanos
+     *            The duration in nanoseconds.
+     * @return The duration in milliseconds.
+     */
+    private double millis(long nanos) {
+        return nanos / 1000000D;
+    }
+
+    /**
+     * Records the duration of a phase of a call to an endpoint.
+     * 
+     * @param endpoint
+     *            The endpoint.
+     * @param phase
+     *            The phase.
+     * @param nanos
+     *            The duration in nanoseconds.
+     */
+    public void record(String endpoint, Phase phase, long nanos) {
+        getHistogram(endpoint, phase).record(nanos);
+    }
+
+    /**
+     * Forgets all the timings.
+     */
+    public void reset() {
+        this.endpoints.clear();
+    }
+
+    /**
+     * Indicates if calls should be timed.
+     * 
+     * @param enabled
+     *            True if calls should be timed.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+}
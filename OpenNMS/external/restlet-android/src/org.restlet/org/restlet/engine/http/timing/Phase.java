@@ -0,0 +1,77 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.http.timing;
+
+/**
+ * Phase of a client call timed by a {@link CallTimer}. Depending on the
+ * connector, some phases are not timed separately: the JDK's
+ * HttpURLConnection resolves, connects and negotiates TLS in one step, timed
+ * as {@link #CONNECT}, and Apache HTTP Client also sends the request and
+ * waits for the response in that step, timed as {@link #FIRST_BYTE}.
+ */
+public enum Phase {
+
+    /** Resolving the host name of the server. */
+    DNS,
+
+    /** Opening a TCP connection to the server. */
+    CONNECT,
+
+    /** Negotiating TLS on a new connection. */
+    TLS,
+
+    /** Writing the request head and entity. */
+    SEND,
+
+    /** Waiting for the response head, once the request is sent. */
+    FIRST_BYTE,
+
+    /**
+     * Reading the response entity, until its end is reached or it is
+     * released. When the entity is parsed as it is read, this includes the
+     * parsing.
+     */
+    BODY,
+
+    /**
+     * Processing the response entity by the application, such as parsing it,
+     * as reported by the application itself.
+     */
+    PARSE,
+
+    /**
+     * Handling the whole call, from the client resource until the response
+     * is available, including redirections, retries and filters such as a
+     * cache, but not the reading of the response entity.
+     */
+    RESPONSE;
+
+}
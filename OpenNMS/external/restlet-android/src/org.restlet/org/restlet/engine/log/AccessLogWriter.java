@@ -0,0 +1,287 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.restlet.Context;
+import org.restlet.engine.util.RingBuffer;
+
+/**
+ * Writes access log entries from a background thread. The calling threads
+ * only add their entries to a lock-free {@link RingBuffer}; the writer thread
+ * takes them by batches of up to {@link #BATCH_SIZE}, formats them and logs
+ * each batch as a single record, with one line per entry. With the
+ * {@link AccessLogFormatter}, the log file gets the same lines as when
+ * logging each entry, but written and flushed once per batch.<br>
+ * <br>
+ * When the buffer is full, entries are either dropped and counted, or the
+ * calling threads wait for the writer to make room, depending on the
+ * blocking policy. The dropped entries are reported as a warning.<br>
+ * <br>
+ * Once stopped, the remaining entries are written and new ones are logged by
+ * the calling threads themselves.
+ * 
+ * @param <E>
+ *            The type of the log entries.
+ */
+public abstract class AccessLogWriter<E> implements Runnable {
+
+    /** The maximum number of entries logged in a single record. */
+    public static final int BATCH_SIZE = 256;
+
+    /** How long a blocked thread waits before trying again, in nanoseconds. */
+    private static final long BLOCKED_WAIT = 100000L;
+
+    /** How long the writer waits for new entries, in nanoseconds. */
+    private static final long IDLE_WAIT = 100000000L;
+
+    /** Indicates if the calling threads wait when the buffer is full. */
+    private final boolean blocking;
+
+    /** The entries to write. */
+    private final RingBuffer<E> buffer;
+
+    /** The number of entries dropped because the buffer was full. */
+    private final AtomicLong droppedCount;
+
+    /** The access logger. */
+    private final Logger logger;
+
+    /** Indicates if the writer thread is running. */
+    private volatile boolean running;
+
+    /** The writer thread. */
+    private volatile Thread thread;
+
+    /** Indicates if the writer thread is waiting for new entries. */
+    private volatile boolean waiting;
+
+    /**
+     * Constructor.
+     * 
+     * @param logger
+     *            The access logger.
+     * @param bufferSize
+     *            The number of entries that can wait to be written.
+     * @param blocking
+     *            True if the calling threads should wait when the buffer is
+     *            full, false if their entries should be dropped.
+     */
+    public AccessLogWriter(Logger logger, int bufferSize, boolean blocking) {
+        this.blocking = blocking;
+        this.buffer = new RingBuffer<E>(bufferSize);
+        this.droppedCount = new AtomicLong();
+        this.logger = logger;
+        this.running = false;
+        this.waiting = false;
+    }
+
+    /**
+     * Formats a log entry.
+     * 
+     * @param entry
+     *            The log entry.
+     * @return The formatted log entry.
+     */
+    protected abstract String format(E entry);
+
+    /**
+     * Returns the number of entries dropped because the buffer was full.
+     * 
+     * @return The number of entries dropped.
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    /**
+     * Indicates if the calling threads wait when the buffer is full.
+     * 
+     * @return True if the calling threads wait when the buffer is full, false
+     *         if their entries are dropped.
+     */
+    public boolean isBlocking() {
+        return this.blocking;
+    }
+
+    /**
+     * Indicates if the writer thread is running.
+     * 
+     * @return True if the writer thread is running.
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Queues a log entry to be written, or writes it if the writer is
+     * stopped.
+     * 
+     * @param entry
+     *            The log entry.
+     * @return False if the entry was dropped because the buffer was full.
+     */
+    public boolean log(E entry) {
+        boolean result = this.running && this.buffer.offer(entry);
+
+        while (!result && this.blocking && this.running) {
+            wake();
+            LockSupport.parkNanos(BLOCKED_WAIT);
+            result = this.buffer.offer(entry);
+        }
+
+        if (result) {
+            if (this.waiting) {
+                wake();
+            }
+        } else if (!this.running) {
+            write(Collections.singletonList(entry));
+            result = true;
+        } else {
+            this.droppedCount.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes the entries until stopped.
+     */
+    public void run() {
+        final List<E> batch = new ArrayList<E>(BATCH_SIZE);
+        long reported = 0;
+
+        while (this.running || !this.buffer.isEmpty()) {
+            if (this.buffer.drainTo(batch, BATCH_SIZE) > 0) {
+                write(batch);
+                batch.clear();
+            } else {
+                this.waiting = true;
+
+                if (this.running && this.buffer.isEmpty()) {
+                    LockSupport.parkNanos(IDLE_WAIT);
+                }
+
+                this.waiting = false;
+            }
+
+            final long dropped = getDroppedCount();
+            if (dropped > reported) {
+                Context.getCurrentLogger().warning(
+                        (dropped - reported)
+                                + " access log entries were dropped, "
+                                + "the log buffer being full.");
+                reported = dropped;
+            }
+        }
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    public synchronized void start() {
+        if (!this.running) {
+            this.running = true;
+            this.thread = new LoggingThreadFactory(Context.getCurrentLogger(),
+                    true).newThread(this);
+            this.thread.start();
+        }
+    }
+
+    /**
+     * Stops the writer thread, once the queued entries are written.
+     * 
+     * @throws InterruptedException
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (this.running) {
+            this.running = false;
+            wake();
+            this.thread.join();
+            this.thread = null;
+
+            // Entries queued while the writer was exiting
+            final List<E> batch = new ArrayList<E>();
+            while (this.buffer.drainTo(batch, BATCH_SIZE) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Wakes the writer thread up.
+     */
+    private void wake() {
+        final Thread writer = this.thread;
+
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Formats and logs a batch of entries as a single record.
+     * 
+     * @param batch
+     *            The entries to write.
+     */
+    private void write(List<E> batch) {
+        final StringBuilder sb = new StringBuilder();
+
+        for (E entry : batch) {
+            try {
+                final String line = format(entry);
+
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+
+                sb.append(line);
+            } catch (RuntimeException e) {
+                Context.getCurrentLogger().log(Level.WARNING,
+                        "Unable to format an access log entry", e);
+            }
+        }
+
+        if (sb.length() > 0) {
+            this.logger.log(Level.INFO, sb.toString());
+        }
+    }
+
+}
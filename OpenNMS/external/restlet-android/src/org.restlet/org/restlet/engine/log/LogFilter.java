@@ -49,6 +49,13 @@ import org.restlet.service.LogService;
  * current format is similar to IIS 6 logs. The logging is based on the
  * java.util.logging package.
  * 
+ * When the log service is asynchronous, the calls are logged by an
+ * {@link AccessLogWriter} thread instead of the calling threads. Only a
+ * snapshot of each call is queued, never the request or response themselves:
+ * a custom log format is still resolved by the calling thread, while the
+ * values of the default format are captured and formatted, with the optional
+ * identity check, by the writer thread.
+ * 
  * Concurrency note: instances of this class or its subclasses can be invoked by
  * several threads at the same time and therefore must be thread-safe. You
  * should be especially careful when storing state in member variables.
@@ -59,6 +66,133 @@ import org.restlet.service.LogService;
  * @author Jerome Louvel
  */
 public class LogFilter extends Filter {
+    /**
+     * Call to log, with the values captured when the call was handled. Either
+     * the message is already formatted, or the values of the default format
+     * are kept.
+     */
+    private static final class LogEntry {
+        /** The agent name. */
+        private final String agentName;
+
+        /** The client IP address. */
+        private final String clientAddress;
+
+        /** The client port. */
+        private final int clientPort;
+
+        /** The call duration (in milliseconds). */
+        private final int duration;
+
+        /** The host reference. */
+        private final String hostRef;
+
+        /** The identifier of the challenge response. */
+        private final String identifier;
+
+        /** The formatted message, or null to use the default format. */
+        private final String message;
+
+        /** The method name. */
+        private final String methodName;
+
+        /** The size of the received entity, or -1 if unknown. */
+        private final long receivedSize;
+
+        /** The referrer identifier. */
+        private final String referrer;
+
+        /** The resource path. */
+        private final String resourcePath;
+
+        /** The resource query. */
+        private final String resourceQuery;
+
+        /** The size of the returned entity, or -1 if unknown. */
+        private final long returnedSize;
+
+        /** The server IP address. */
+        private final String serverAddress;
+
+        /** The server port. */
+        private final int serverPort;
+
+        /** The status code, or -1 if none. */
+        private final int statusCode;
+
+        /** The time the call was handled. */
+        private final long time;
+
+        /**
+         * Constructor capturing the values of the default format.
+         * 
+         * @param request
+         *            The request to log.
+         * @param response
+         *            The response to log.
+         * @param time
+         *            The time the call was handled.
+         * @param duration
+         *            The call duration (in milliseconds).
+         * @param returnedSize
+         *            The size of the returned entity, or -1 if unknown.
+         */
+        private LogEntry(Request request, Response response, long time,
+                int duration, long returnedSize) {
+            this.agentName = request.getClientInfo().getAgent();
+            this.clientAddress = request.getClientInfo().getUpstreamAddress();
+            this.clientPort = request.getClientInfo().getPort();
+            this.duration = duration;
+            this.hostRef = (request.getHostRef() == null) ? null : request
+                    .getHostRef().toString();
+            this.identifier = (request.getChallengeResponse() == null) ? null
+                    : request.getChallengeResponse().getIdentifier();
+            this.message = null;
+            this.methodName = (request.getMethod() == null) ? null : request
+                    .getMethod().getName();
+            this.receivedSize = (request.getEntity() == null) ? 0 : request
+                    .getEntity().getSize();
+            this.referrer = (request.getReferrerRef() == null) ? null
+                    : request.getReferrerRef().getIdentifier();
+            this.resourcePath = (request.getResourceRef() == null) ? null
+                    : request.getResourceRef().getPath();
+            this.resourceQuery = (request.getResourceRef() == null) ? null
+                    : request.getResourceRef().getQuery();
+            this.returnedSize = returnedSize;
+            this.serverAddress = response.getServerInfo().getAddress();
+            this.serverPort = response.getServerInfo().getPort();
+            this.statusCode = (response.getStatus() == null) ? -1 : response
+                    .getStatus().getCode();
+            this.time = time;
+        }
+
+        /**
+         * Constructor for an already formatted message.
+         * 
+         * @param message
+         *            The formatted message.
+         */
+        private LogEntry(String message) {
+            this.agentName = null;
+            this.clientAddress = null;
+            this.clientPort = -1;
+            this.duration = 0;
+            this.hostRef = null;
+            this.identifier = null;
+            this.message = message;
+            this.methodName = null;
+            this.receivedSize = -1;
+            this.referrer = null;
+            this.resourcePath = null;
+            this.resourceQuery = null;
+            this.returnedSize = -1;
+            this.serverAddress = null;
+            this.serverPort = -1;
+            this.statusCode = -1;
+            this.time = 0;
+        }
+    }
+
     /** The log service. */
     protected volatile LogService logService;
 
@@ -68,6 +202,9 @@ public class LogFilter extends Filter {
     /** The log service logger. */
     private volatile Logger logLogger;
 
+    /** The writer of the log entries, when asynchronous and started. */
+    private volatile AccessLogWriter<LogEntry> logWriter;
+
     /**
      * Constructor.
      * 
@@ -110,8 +247,13 @@ public class LogFilter extends Filter {
     @Override
     protected void afterHandle(Request request, Response response) {
         if (this.logLogger.isLoggable(Level.INFO)) {
-            // Format the call into a log entry
-            if (this.logTemplate != null) {
+            final AccessLogWriter<LogEntry> writer = this.logWriter;
+
+            if (writer != null) {
+                // Queue a snapshot of the call to the writer thread
+                writer.log(capture(request, response));
+            } else if (this.logTemplate != null) {
+                // Format the call into a log entry
                 this.logLogger.log(Level.INFO, format(request, response));
             } else {
                 long startTime = (Long) request.getAttributes().get(
@@ -123,6 +265,29 @@ public class LogFilter extends Filter {
         }
     }
 
+    /**
+     * Captures a call to log, so that it can be formatted by another thread
+     * once the request and response have been reused.
+     * 
+     * @param request
+     *            The request to log.
+     * @param response
+     *            The response to log.
+     * @return The log entry.
+     */
+    private LogEntry capture(Request request, Response response) {
+        if (this.logTemplate != null) {
+            return new LogEntry(format(request, response));
+        }
+
+        long currentTime = System.currentTimeMillis();
+        long startTime = (Long) request.getAttributes().get(
+                "org.restlet.startTime");
+        return new LogEntry(request, response, currentTime,
+                (int) (currentTime - startTime), getReturnedSize(request,
+                        response));
+    }
+
     /**
      * Allows filtering before processing by the next Restlet. Saves the start
      * time.
@@ -154,6 +319,17 @@ public class LogFilter extends Filter {
         return this.logTemplate.format(request, response);
     }
 
+    /**
+     * Format a log entry queued to the writer.
+     * 
+     * @param entry
+     *            The log entry.
+     * @return The formatted log entry.
+     */
+    private String format(LogEntry entry) {
+        return (entry.message != null) ? entry.message : formatDefault(entry);
+    }
+
     /**
      * Format a log entry using the default format.
      * 
@@ -167,112 +343,154 @@ public class LogFilter extends Filter {
      */
     protected String formatDefault(Request request, Response response,
             int duration) {
+        return formatDefault(new LogEntry(request, response, System
+                .currentTimeMillis(), duration, getReturnedSize(request,
+                response)));
+    }
+
+    /**
+     * Format a log entry using the default format.
+     * 
+     * @param entry
+     *            The log entry.
+     * @return The formatted log entry.
+     */
+    private String formatDefault(LogEntry entry) {
         StringBuilder sb = new StringBuilder();
-        long currentTime = System.currentTimeMillis();
 
         // Append the date of the request
-        sb.append(String.format("%tF", currentTime));
+        sb.append(String.format("%tF", entry.time));
         sb.append('\t');
 
         // Append the time of the request
-        sb.append(String.format("%tT", currentTime));
+        sb.append(String.format("%tT", entry.time));
         sb.append('\t');
 
         // Append the client IP address
-        String clientAddress = request.getClientInfo().getUpstreamAddress();
-        sb.append((clientAddress == null) ? "-" : clientAddress);
+        sb.append((entry.clientAddress == null) ? "-" : entry.clientAddress);
         sb.append('\t');
 
         // Append the user name (via IDENT protocol)
         if (this.logService.isIdentityCheck()) {
-            IdentClient ic = new IdentClient(request.getClientInfo()
-                    .getUpstreamAddress(), request.getClientInfo().getPort(),
-                    response.getServerInfo().getPort());
+            IdentClient ic = new IdentClient(entry.clientAddress,
+                    entry.clientPort, entry.serverPort);
             sb.append((ic.getUserIdentifier() == null) ? "-" : ic
                     .getUserIdentifier());
-        } else if ((request.getChallengeResponse() != null)
-                && (request.getChallengeResponse().getIdentifier() != null)) {
-            sb.append(request.getChallengeResponse().getIdentifier());
+        } else if (entry.identifier != null) {
+            sb.append(entry.identifier);
         } else {
             sb.append('-');
         }
         sb.append('\t');
 
         // Append the server IP address
-        String serverAddress = response.getServerInfo().getAddress();
-        sb.append((serverAddress == null) ? "-" : serverAddress);
+        sb.append((entry.serverAddress == null) ? "-" : entry.serverAddress);
         sb.append('\t');
 
         // Append the server port
-        Integer serverport = response.getServerInfo().getPort();
-        sb.append((serverport == null) ? "-" : serverport.toString());
+        sb.append(entry.serverPort);
         sb.append('\t');
 
         // Append the method name
-        String methodName = (request.getMethod() == null) ? "-" : request
-                .getMethod().getName();
-        sb.append((methodName == null) ? "-" : methodName);
+        sb.append((entry.methodName == null) ? "-" : entry.methodName);
 
         // Append the resource path
         sb.append('\t');
-        String resourcePath = (request.getResourceRef() == null) ? "-"
-                : request.getResourceRef().getPath();
-        sb.append((resourcePath == null) ? "-" : resourcePath);
+        sb.append((entry.resourcePath == null) ? "-" : entry.resourcePath);
 
         // Append the resource query
         sb.append('\t');
-        String resourceQuery = (request.getResourceRef() == null) ? "-"
-                : request.getResourceRef().getQuery();
-        sb.append((resourceQuery == null) ? "-" : resourceQuery);
+        sb.append((entry.resourceQuery == null) ? "-" : entry.resourceQuery);
 
         // Append the status code
         sb.append('\t');
-        sb.append((response.getStatus() == null) ? "-" : Integer
-                .toString(response.getStatus().getCode()));
+        sb.append((entry.statusCode == -1) ? "-" : Integer
+                .toString(entry.statusCode));
 
         // Append the returned size
         sb.append('\t');
-
-        if (!response.isEntityAvailable()
-                || Status.REDIRECTION_NOT_MODIFIED.equals(response.getStatus())
-                || Status.SUCCESS_NO_CONTENT.equals(response.getStatus())
-                || Method.HEAD.equals(request.getMethod())) {
-            sb.append('0');
-        } else {
-            sb.append((response.getEntity().getSize() == -1) ? "-" : Long
-                    .toString(response.getEntity().getSize()));
-        }
+        sb.append((entry.returnedSize == -1) ? "-" : Long
+                .toString(entry.returnedSize));
 
         // Append the received size
         sb.append('\t');
-
-        if (request.getEntity() == null) {
-            sb.append('0');
-        } else {
-            sb.append((request.getEntity().getSize() == -1) ? "-" : Long
-                    .toString(request.getEntity().getSize()));
-        }
+        sb.append((entry.receivedSize == -1) ? "-" : Long
+                .toString(entry.receivedSize));
 
         // Append the duration
         sb.append('\t');
-        sb.append(duration);
+        sb.append(entry.duration);
 
         // Append the host reference
         sb.append('\t');
-        sb.append((request.getHostRef() == null) ? "-" : request.getHostRef()
-                .toString());
+        sb.append((entry.hostRef == null) ? "-" : entry.hostRef);
 
         // Append the agent name
         sb.append('\t');
-        String agentName = request.getClientInfo().getAgent();
-        sb.append((agentName == null) ? "-" : agentName);
+        sb.append((entry.agentName == null) ? "-" : entry.agentName);
 
         // Append the referrer
         sb.append('\t');
-        sb.append((request.getReferrerRef() == null) ? "-" : request
-                .getReferrerRef().getIdentifier());
+        sb.append((entry.referrer == null) ? "-" : entry.referrer);
 
         return sb.toString();
     }
 
+    /**
+     * Returns the size of the entity returned by a call.
+     * 
+     * @param request
+     *            The request to log.
+     * @param response
+     *            The response to log.
+     * @return The size of the returned entity, or -1 if unknown.
+     */
+    protected long getReturnedSize(Request request, Response response) {
+        if (!response.isEntityAvailable()
+                || Status.REDIRECTION_NOT_MODIFIED.equals(response.getStatus())
+                || Status.SUCCESS_NO_CONTENT.equals(response.getStatus())
+                || Method.HEAD.equals(request.getMethod())) {
+            return 0;
+        }
+
+        return response.getEntity().getSize();
+    }
+
+    /**
+     * Starts the filter, and the writer of the log entries if the log service
+     * is asynchronous.
+     */
+    @Override
+    public synchronized void start() throws Exception {
+        if (isStopped() && (this.logService != null)
+                && this.logService.isAsynchronous()) {
+            this.logWriter = new AccessLogWriter<LogEntry>(this.logLogger,
+                    this.logService.getBufferSize(), this.logService
+                            .isBlockingOnOverflow()) {
+                @Override
+                protected String format(LogEntry entry) {
+                    return LogFilter.this.format(entry);
+                }
+            };
+            this.logWriter.start();
+        }
+
+        super.start();
+    }
+
+    /**
+     * Stops the filter, and the writer of the log entries once they are
+     * written.
+     */
+    @Override
+    public synchronized void stop() throws Exception {
+        super.stop();
+
+        final AccessLogWriter<LogEntry> writer = this.logWriter;
+        if (writer != null) {
+            this.logWriter = null;
+            writer.stop();
+        }
+    }
+
 }
@@ -36,7 +36,8 @@ import java.util.Date;
 import java.util.List;
 
 /**
- * Date manipulation utilities.
+ * Date manipulation utilities. Dates are parsed and formatted by
+ * {@link HttpDateFormat}, which is thread-safe and caches its results.
  * 
  * @author Jerome Louvel
  */
@@ -59,10 +60,6 @@ public final class DateUtils {
             "EEE, dd MMM yy HH:mm:ss z", "EEE, dd MMM yy HH:mm z",
             "dd MMM yy HH:mm:ss z", "dd MMM yy HH:mm z");
 
-    /** Remember the often used GMT time zone. */
-    private static final java.util.TimeZone TIMEZONE_GMT = java.util.TimeZone
-            .getTimeZone("GMT");
-
     /**
      * Compares two date with a precision of one second.
      * 
@@ -148,15 +145,7 @@ public final class DateUtils {
             throw new IllegalArgumentException("Date is null");
         }
 
-        java.text.DateFormat formatter = null;
-        if (FORMAT_RFC_3339.get(0).equals(format)) {
-            formatter = new InternetDateFormat(TIMEZONE_GMT);
-        } else {
-            formatter = new java.text.SimpleDateFormat(format,
-                    java.util.Locale.US);
-            formatter.setTimeZone(TIMEZONE_GMT);
-        }
-        return formatter.format(date);
+        return HttpDateFormat.format(date, format);
     }
 
     /**
@@ -181,34 +170,11 @@ public final class DateUtils {
      * @return The parsed date.
      */
     public static Date parse(String date, List<String> formats) {
-        Date result = null;
-
         if (date == null) {
             throw new IllegalArgumentException("Date is null");
         }
 
-        String format = null;
-        int formatsSize = formats.size();
-
-        for (int i = 0; (result == null) && (i < formatsSize); i++) {
-            format = formats.get(i);
-            java.text.DateFormat parser = null;
-
-            if (FORMAT_RFC_3339.get(0).equals(format)) {
-                parser = new InternetDateFormat(TIMEZONE_GMT);
-            } else {
-                parser = new java.text.SimpleDateFormat(format,
-                        java.util.Locale.US);
-                parser.setTimeZone(TIMEZONE_GMT);
-            }
-            try {
-                result = parser.parse(date);
-            } catch (Exception e) {
-                // Ignores error as the next format may work better
-            }
-        }
-
-        return result;
+        return HttpDateFormat.parse(date, formats);
     }
 
     /**
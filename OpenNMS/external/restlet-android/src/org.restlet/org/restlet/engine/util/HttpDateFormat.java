@@ -0,0 +1,591 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.util;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe parser and formatter of dates, behind {@link DateUtils}.<br>
+ * <br>
+ * The three HTTP date formats ({@link DateUtils#FORMAT_RFC_1123},
+ * {@link DateUtils#FORMAT_RFC_1036} and {@link DateUtils#FORMAT_ASC_TIME}) in
+ * GMT are parsed and formatted by hand, without a {@link SimpleDateFormat}.
+ * Dates these don't strictly match, such as other time zones or lenient
+ * values, as well as the other formats, go to a {@link DateFormat} kept per
+ * thread and per format, so results are the same as with a new
+ * {@link SimpleDateFormat}.<br>
+ * <br>
+ * The last parsed strings, including those that couldn't be parsed such as
+ * the "0" of an "Expires" header, and the last formatted seconds are cached.
+ * Each cache is bounded to {@link #CACHE_SIZE} entries, and simply cleared
+ * when it is full.
+ */
+public final class HttpDateFormat {
+
+    /**
+     * Result of parsing a string with a list of formats.
+     */
+    private static final class Parsed {
+
+        /** The formats used. */
+        private final List<String> formats;
+
+        /** The parsed time, or {@link HttpDateFormat#INVALID}. */
+        private final long time;
+
+        /**
+         * Constructor.
+         * 
+         * @param formats
+         *            The formats used.
+         * @param time
+         *            The parsed time, or {@link HttpDateFormat#INVALID}.
+         */
+        private Parsed(List<String> formats, long time) {
+            this.formats = formats;
+            this.time = time;
+        }
+    }
+
+    /** Maximum number of entries of each cache. */
+    public static final int CACHE_SIZE = 256;
+
+    /** Short names of the days of the week, from Sunday. */
+    private static final String[] DAYS = { "Sun", "Mon", "Tue", "Wed", "Thu",
+            "Fri", "Sat" };
+
+    /** Full names of the days of the week, from Sunday. */
+    private static final String[] DAYS_FULL = { "Sunday", "Monday",
+            "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday" };
+
+    /** Index of the ANSI C asctime() format. */
+    private static final int FAST_ASC_TIME = 2;
+
+    /** Index of the RFC 1036 format. */
+    private static final int FAST_RFC_1036 = 1;
+
+    /** Index of the RFC 1123 format. */
+    private static final int FAST_RFC_1123 = 0;
+
+    /** Marks a string that couldn't be parsed. */
+    private static final long INVALID = Long.MIN_VALUE;
+
+    /** Greatest year handled by hand. */
+    private static final int MAX_YEAR = 9999;
+
+    /** Smallest year handled by hand, well after the Gregorian cutover. */
+    private static final int MIN_YEAR = 1600;
+
+    /** Short names of the months. */
+    private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr",
+            "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+    /** The GMT time zone. */
+    private static final TimeZone TIMEZONE_GMT = TimeZone.getTimeZone("GMT");
+
+    /**
+     * Start of the century two digit years fall in, 80 years ago as with
+     * {@link SimpleDateFormat}.
+     */
+    private static final long CENTURY_START;
+
+    /** Year of {@link #CENTURY_START}. */
+    private static final int CENTURY_START_YEAR;
+
+    /** The formatted strings of the last seconds, for each HTTP format. */
+    private static final List<Map<Long, String>> formatted = new ArrayList<Map<Long, String>>(3);
+
+    /** The formatters and parsers of the current thread, by format. */
+    private static final ThreadLocal<Map<String, DateFormat>> formatters = new ThreadLocal<Map<String, DateFormat>>() {
+        @Override
+        protected Map<String, DateFormat> initialValue() {
+            return new HashMap<String, DateFormat>();
+        }
+    };
+
+    /** The last parsed strings. */
+    private static final Map<String, Parsed> parsed = new ConcurrentHashMap<String, Parsed>();
+
+    static {
+        final Calendar calendar = Calendar.getInstance(TIMEZONE_GMT,
+                Locale.US);
+        calendar.add(Calendar.YEAR, -80);
+        CENTURY_START = calendar.getTimeInMillis();
+        CENTURY_START_YEAR = calendar.get(Calendar.YEAR);
+
+        for (int i = 0; i < 3; i++) {
+            formatted.add(new ConcurrentHashMap<Long, String>());
+        }
+    }
+
+    /**
+     * Returns the number of days from 1970-01-01 to a date of the proleptic
+     * Gregorian calendar.
+     * 
+     * @param year
+     *            The year, not negative.
+     * @param month
+     *            The month, from 1 to 12.
+     * @param day
+     *            The day of the month, from 1.
+     * @return The number of days from 1970-01-01.
+     */
+    private static long days(int year, int month, int day) {
+        final int y = (month <= 2) ? year - 1 : year;
+        final int era = y / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2)
+                / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra
+                / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468L;
+    }
+
+    /**
+     * Returns the number of days in a month.
+     * 
+     * @param year
+     *            The year.
+     * @param month
+     *            The month, from 1 to 12.
+     * @return The number of days in the month.
+     */
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return ((year % 4 == 0) && ((year % 100 != 0) || (year % 400 == 0))) ? 29
+                    : 28;
+        }
+
+        return ((month == 4) || (month == 6) || (month == 9) || (month == 11)) ? 30
+                : 31;
+    }
+
+    /**
+     * Returns the index of an HTTP date format handled by hand.
+     * 
+     * @param format
+     *            The date format.
+     * @return The index of the format, or -1.
+     */
+    private static int fastIndex(String format) {
+        if (DateUtils.FORMAT_RFC_1123.get(0).equals(format)) {
+            return FAST_RFC_1123;
+        } else if (DateUtils.FORMAT_RFC_1036.get(0).equals(format)) {
+            return FAST_RFC_1036;
+        } else if (DateUtils.FORMAT_ASC_TIME.get(0).equals(format)) {
+            return FAST_ASC_TIME;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Formats a Date.
+     * 
+     * @param date
+     *            The date to format.
+     * @param format
+     *            The date format to use.
+     * @return The formatted date.
+     */
+    public static String format(Date date, String format) {
+        final int index = fastIndex(format);
+
+        if (index >= 0) {
+            final long time = date.getTime();
+            final Long second = Long.valueOf(floorDiv(time, 1000L));
+            final Map<Long, String> cache = formatted.get(index);
+            String result = cache.get(second);
+
+            if (result == null) {
+                result = formatFast(time, index);
+
+                if (result == null) {
+                    result = getFormatter(format).format(date);
+                }
+
+                if (cache.size() >= CACHE_SIZE) {
+                    cache.clear();
+                }
+                cache.put(second, result);
+            }
+
+            return result;
+        }
+
+        return getFormatter(format).format(date);
+    }
+
+    /**
+     * Formats a time in one of the HTTP date formats, in GMT.
+     * 
+     * @param time
+     *            The time in milliseconds.
+     * @param index
+     *            The index of the format.
+     * @return The formatted date, or null if the year is out of the handled
+     *         range.
+     */
+    private static String formatFast(long time, int index) {
+        final long seconds = floorDiv(time, 1000L);
+        final long days = floorDiv(seconds, 86400L);
+        int secondOfDay = (int) (seconds - days * 86400L);
+
+        // Civil date from the number of days, in the proleptic Gregorian
+        // calendar
+        final long z = days + 719468L;
+        final long era = floorDiv(z, 146097L);
+        final int dayOfEra = (int) (z - era * 146097L);
+        final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra
+                - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int mp = (5 * dayOfYear + 2) / 153;
+        final int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        final int month = (mp < 10) ? mp + 3 : mp - 9;
+        final long year = yearOfEra + era * 400L + ((month <= 2) ? 1 : 0);
+
+        if ((year < MIN_YEAR) || (year > MAX_YEAR)) {
+            return null;
+        }
+
+        final int dayOfWeek = (int) (days + 4 - floorDiv(days + 4, 7L) * 7L);
+        final int hour = secondOfDay / 3600;
+        secondOfDay -= hour * 3600;
+        final int minute = secondOfDay / 60;
+        final int second = secondOfDay - minute * 60;
+
+        final StringBuilder sb = new StringBuilder(32);
+        if (index == FAST_RFC_1123) {
+            sb.append(DAYS[dayOfWeek]).append(", ");
+            pad(sb, day).append(' ').append(MONTHS[month - 1]).append(' ')
+                    .append(year).append(' ');
+            pad(pad(pad(sb, hour).append(':'), minute).append(':'), second)
+                    .append(" GMT");
+        } else if (index == FAST_RFC_1036) {
+            sb.append(DAYS_FULL[dayOfWeek]).append(", ");
+            pad(sb, day).append('-').append(MONTHS[month - 1]).append('-');
+            pad(sb, (int) (year % 100)).append(' ');
+            pad(pad(pad(sb, hour).append(':'), minute).append(':'), second)
+                    .append(" GMT");
+        } else {
+            sb.append(DAYS[dayOfWeek]).append(' ').append(MONTHS[month - 1])
+                    .append(' ');
+            pad(sb, day).append(' ');
+            pad(pad(pad(sb, hour).append(':'), minute).append(':'), second)
+                    .append(' ').append(year);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Divides rounding towards negative infinity.
+     * 
+     * @param a
+     *            The dividend.
+     * @param b
+     *            The divisor, positive.
+     * @return The quotient.
+     */
+    private static long floorDiv(long a, long b) {
+        final long q = a / b;
+        return ((a % b) < 0) ? q - 1 : q;
+    }
+
+    /**
+     * Returns the formatter and parser of a format for the current thread, in
+     * GMT again as parsing a date with a time zone changes it.
+     * 
+     * @param format
+     *            The date format.
+     * @return The formatter and parser.
+     */
+    private static DateFormat getFormatter(String format) {
+        final Map<String, DateFormat> map = formatters.get();
+        DateFormat result = map.get(format);
+
+        if (result == null) {
+            if (DateUtils.FORMAT_RFC_3339.get(0).equals(format)) {
+                result = new InternetDateFormat(TIMEZONE_GMT);
+            } else {
+                result = new SimpleDateFormat(format, Locale.US);
+            }
+            map.put(format, result);
+        }
+
+        if (result instanceof SimpleDateFormat) {
+            result.setTimeZone(TIMEZONE_GMT);
+        }
+
+        return result;
+    }
+
+    /**
+     * Matches the name of a day of the week, short or full, ignoring case.
+     * 
+     * @param s
+     *            The string to parse.
+     * @param pos
+     *            The position of the name.
+     * @return The position after the name, or -1.
+     */
+    private static int matchDay(String s, int pos) {
+        for (int i = 0; i < DAYS.length; i++) {
+            if (s.regionMatches(true, pos, DAYS_FULL[i], 0,
+                    DAYS_FULL[i].length())) {
+                return pos + DAYS_FULL[i].length();
+            } else if (s.regionMatches(true, pos, DAYS[i], 0, 3)) {
+                return pos + 3;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Matches the short name of a month, ignoring case.
+     * 
+     * @param s
+     *            The string to parse.
+     * @param pos
+     *            The position of the name.
+     * @return The month, from 1 to 12, or -1.
+     */
+    private static int matchMonth(String s, int pos) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (s.regionMatches(true, pos, MONTHS[i], 0, 3)) {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Appends a number on at least two digits.
+     * 
+     * @param sb
+     *            The builder to append to.
+     * @param value
+     *            The number, not negative.
+     * @return The builder.
+     */
+    private static StringBuilder pad(StringBuilder sb, int value) {
+        if (value < 10) {
+            sb.append('0');
+        }
+        return sb.append(value);
+    }
+
+    /**
+     * Parses a formatted date into a Date object.
+     * 
+     * @param date
+     *            The date to parse.
+     * @param formats
+     *            The date formats to use sorted by completeness.
+     * @return The parsed date, or null.
+     */
+    public static Date parse(String date, List<String> formats) {
+        Parsed result = parsed.get(date);
+
+        if ((result == null)
+                || ((result.formats != formats) && !result.formats
+                        .equals(formats))) {
+            long time = INVALID;
+            final int formatsSize = formats.size();
+
+            for (int i = 0; (time == INVALID) && (i < formatsSize); i++) {
+                final String format = formats.get(i);
+                final int index = fastIndex(format);
+
+                if (index >= 0) {
+                    time = parseFast(date, index);
+                }
+
+                if (time == INVALID) {
+                    try {
+                        time = getFormatter(format).parse(date).getTime();
+                    } catch (Exception e) {
+                        // Ignores error as the next format may work better
+                    }
+                }
+            }
+
+            result = new Parsed(formats, time);
+            if (parsed.size() >= CACHE_SIZE) {
+                parsed.clear();
+            }
+            parsed.put(date, result);
+        }
+
+        return (result.time == INVALID) ? null : new Date(result.time);
+    }
+
+    /**
+     * Parses a date strictly in one of the HTTP date formats, in GMT.
+     * 
+     * @param s
+     *            The date to parse.
+     * @param index
+     *            The index of the format.
+     * @return The parsed time, or {@link #INVALID} if the date doesn't
+     *         strictly match.
+     */
+    private static long parseFast(String s, int index) {
+        int pos = matchDay(s, 0);
+        int day;
+        int month;
+        int year;
+
+        if (pos < 0) {
+            return INVALID;
+        }
+
+        if (index == FAST_ASC_TIME) {
+            // "Sun Nov  6 08:49:37 1994" or "Sun Nov 06 08:49:37 1994"
+            if ((s.length() != pos + 21) || (s.charAt(pos) != ' ')
+                    || (s.charAt(pos + 4) != ' ')
+                    || (s.charAt(pos + 7) != ' ')
+                    || (s.charAt(pos + 16) != ' ')) {
+                return INVALID;
+            }
+            month = matchMonth(s, pos + 1);
+            day = (s.charAt(pos + 5) == ' ') ? parseDigits(s, pos + 6, 1)
+                    : parseDigits(s, pos + 5, 2);
+            year = parseDigits(s, pos + 17, 4);
+            pos += 8;
+        } else {
+            // "Sun, 06 Nov 1994 08:49:37 GMT" or "Sunday, 06-Nov-94 08:49:37 GMT"
+            final boolean rfc1123 = (index == FAST_RFC_1123);
+            final char separator = rfc1123 ? ' ' : '-';
+            final int yearLength = rfc1123 ? 4 : 2;
+
+            if ((s.length() < pos + 12 + yearLength + 10)
+                    || (s.charAt(pos) != ',') || (s.charAt(pos + 1) != ' ')
+                    || (s.charAt(pos + 4) != separator)
+                    || (s.charAt(pos + 8) != separator)
+                    || (s.charAt(pos + 9 + yearLength) != ' ')) {
+                return INVALID;
+            }
+            day = parseDigits(s, pos + 2, 2);
+            month = matchMonth(s, pos + 5);
+            year = parseDigits(s, pos + 9, yearLength);
+            pos += 10 + yearLength;
+
+            // Only GMT is handled by hand
+            if ((s.charAt(pos + 8) != ' ')
+                    || (!s.regionMatches(true, pos + 9, "GMT", 0, 3) && !s
+                            .regionMatches(true, pos + 9, "UTC", 0, 3))
+                    || (s.length() != pos + 12)) {
+                return INVALID;
+            }
+
+            if ((year >= 0) && !rfc1123) {
+                year += (CENTURY_START_YEAR / 100) * 100;
+                if (year < CENTURY_START_YEAR) {
+                    year += 100;
+                }
+            }
+        }
+
+        if ((s.charAt(pos + 2) != ':') || (s.charAt(pos + 5) != ':')) {
+            return INVALID;
+        }
+        final int hour = parseDigits(s, pos, 2);
+        final int minute = parseDigits(s, pos + 3, 2);
+        final int second = parseDigits(s, pos + 6, 2);
+
+        if ((month < 0) || (year < MIN_YEAR) || (year > MAX_YEAR)
+                || (day < 1) || (day > daysInMonth(year, month))
+                || (hour < 0) || (hour > 23) || (minute < 0) || (minute > 59)
+                || (second < 0) || (second > 59)) {
+            return INVALID;
+        }
+
+        long result = ((days(year, month, day) * 24L + hour) * 60L + minute)
+                * 60000L + second * 1000L;
+
+        if ((index == FAST_RFC_1036) && (result < CENTURY_START)
+                && (year == CENTURY_START_YEAR)) {
+            // As SimpleDateFormat, the start year itself may be a century
+            // later
+            result = ((days(year + 100, month, day) * 24L + hour) * 60L + minute)
+                    * 60000L + second * 1000L;
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a fixed number of decimal digits.
+     * 
+     * @param s
+     *            The string to parse.
+     * @param pos
+     *            The position of the first digit.
+     * @param length
+     *            The number of digits.
+     * @return The number, or -1 if a character isn't a digit.
+     */
+    private static int parseDigits(String s, int pos, int length) {
+        int result = 0;
+
+        for (int i = pos; i < pos + length; i++) {
+            final char c = s.charAt(i);
+            if ((c < '0') || (c > '9')) {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+
+        return result;
+    }
+
+    /**
+     * Private constructor to ensure that the class acts as a true utility class
+     * i.e. it isn't instatiable and extensible.
+     */
+    private HttpDateFormat() {
+
+    }
+
+}
@@ -0,0 +1,420 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.restlet.data.Form;
+import org.restlet.data.Parameter;
+import org.restlet.util.Series;
+
+/**
+ * Form keeping a hash index of its parameter names, so that looking up a
+ * parameter by name doesn't scan the whole list. The index folds the case of
+ * names, so it serves both case-sensitive and case-insensitive lookups, and
+ * preserves the order of the parameters.<br>
+ * <br>
+ * The index is built lazily on the first lookup, from a snapshot of the list,
+ * and built again after any change to the list. Small forms are always
+ * scanned. Note that a parameter renamed in place, with
+ * {@link Parameter#setName(String)}, is only indexed under its new name once
+ * the list itself has changed again.
+ */
+public class IndexedForm extends Form {
+
+    /**
+     * Snapshot of the list with a hash index of its names.
+     */
+    private static class Index {
+
+        /** Index of the first entry of each bucket, plus one. */
+        private final int[] buckets;
+
+        /** The entries of the list when the index was built. */
+        private final Object[] entries;
+
+        /** Folded hash code of the name of each entry. */
+        private final int[] hashes;
+
+        /** Index of the next entry in the same bucket, plus one. */
+        private final int[] next;
+
+        /** The version of the list when the index was built. */
+        private final int version;
+
+        /**
+         * Constructor.
+         * 
+         * @param entries
+         *            The entries of the list.
+         * @param version
+         *            The version of the list.
+         */
+        public Index(Object[] entries, int version) {
+            int size = 16;
+
+            while (size < entries.length * 2) {
+                size <<= 1;
+            }
+
+            this.buckets = new int[size];
+            this.entries = entries;
+            this.hashes = new int[entries.length];
+            this.next = new int[entries.length];
+            this.version = version;
+
+            // Insert backwards so that each bucket lists entries in order
+            for (int i = entries.length - 1; i >= 0; i--) {
+                int hash = hash(((Parameter) entries[i]).getName());
+                int bucket = hash & (size - 1);
+                this.hashes[i] = hash;
+                this.next[i] = this.buckets[bucket];
+                this.buckets[bucket] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Array list counting its changes, including the replacement of entries.
+     */
+    private static class TrackedArrayList extends ArrayList<Parameter>
+            implements TrackedList {
+
+        private static final long serialVersionUID = 1L;
+
+        /** Number of entries replaced. */
+        private volatile int replacements;
+
+        @Override
+        public Parameter set(int index, Parameter element) {
+            Parameter result = super.set(index, element);
+            this.replacements++;
+            return result;
+        }
+
+        public int getVersion() {
+            return this.modCount + this.replacements;
+        }
+    }
+
+    /**
+     * Copy-on-write array list counting its changes.
+     */
+    private static class TrackedCopyOnWriteArrayList extends
+            CopyOnWriteArrayList<Parameter> implements TrackedList {
+
+        private static final long serialVersionUID = 1L;
+
+        /** Number of changes. */
+        private volatile int version;
+
+        @Override
+        public boolean add(Parameter element) {
+            boolean result = super.add(element);
+            this.version++;
+            return result;
+        }
+
+        @Override
+        public void add(int index, Parameter element) {
+            super.add(index, element);
+            this.version++;
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends Parameter> elements) {
+            boolean result = super.addAll(elements);
+            this.version++;
+            return result;
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends Parameter> elements) {
+            boolean result = super.addAll(index, elements);
+            this.version++;
+            return result;
+        }
+
+        @Override
+        public int addAllAbsent(Collection<? extends Parameter> elements) {
+            int result = super.addAllAbsent(elements);
+            this.version++;
+            return result;
+        }
+
+        @Override
+        public boolean addIfAbsent(Parameter element) {
+            boolean result = super.addIfAbsent(element);
+            this.version++;
+            return result;
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            this.version++;
+        }
+
+        public int getVersion() {
+            return this.version;
+        }
+
+        @Override
+        public Parameter remove(int index) {
+            Parameter result = super.remove(index);
+            this.version++;
+            return result;
+        }
+
+        @Override
+        public boolean remove(Object element) {
+            boolean result = super.remove(element);
+            this.version++;
+            return result;
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> elements) {
+            boolean result = super.removeAll(elements);
+            this.version++;
+            return result;
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> elements) {
+            boolean result = super.retainAll(elements);
+            this.version++;
+            return result;
+        }
+
+        @Override
+        public Parameter set(int index, Parameter element) {
+            Parameter result = super.set(index, element);
+            this.version++;
+            return result;
+        }
+    }
+
+    /**
+     * List counting its changes.
+     */
+    private static interface TrackedList {
+        /**
+         * Returns a number that changes whenever the list changes.
+         * 
+         * @return The version of the list.
+         */
+        public int getVersion();
+    }
+
+    /** Smallest size from which lookups use the index. */
+    private static final int MIN_INDEXED_SIZE = 8;
+
+    /**
+     * Returns a hash code of a name that doesn't depend on its case.
+     * 
+     * @param name
+     *            The name.
+     * @return The folded hash code.
+     */
+    private static int hash(String name) {
+        int result = 0;
+
+        if (name != null) {
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+
+                if (c < 128) {
+                    if ((c >= 'A') && (c <= 'Z')) {
+                        c += 'a' - 'A';
+                    }
+                } else {
+                    c = Character.toLowerCase(Character.toUpperCase(c));
+                }
+
+                result = 31 * result + c;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Indicates if two names match.
+     * 
+     * @param name1
+     *            The first name.
+     * @param name2
+     *            The second name.
+     * @param ignoreCase
+     *            Indicates if the case should be ignored.
+     * @return True if the names match.
+     */
+    private static boolean matches(String name1, String name2,
+            boolean ignoreCase) {
+        return (name1 == name2)
+                || ((name1 != null) && (ignoreCase ? name1
+                        .equalsIgnoreCase(name2) : name1.equals(name2)));
+    }
+
+    /** The current index, or null if none was built yet. */
+    private volatile Index index;
+
+    /**
+     * Constructor for a form used by a single thread at a time.
+     */
+    public IndexedForm() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param concurrent
+     *            Indicates if the form is backed by a copy-on-write list,
+     *            safe for concurrent use.
+     */
+    public IndexedForm(boolean concurrent) {
+        super(concurrent ? new TrackedCopyOnWriteArrayList()
+                : new TrackedArrayList());
+        this.index = null;
+    }
+
+    /**
+     * Returns an up-to-date index, or null if the form is too small to be
+     * worth indexing.
+     * 
+     * @return The index or null.
+     */
+    private Index getIndex() {
+        Index result = this.index;
+        int version = ((TrackedList) getDelegate()).getVersion();
+
+        if ((result == null) || (result.version != version)) {
+            if (size() < MIN_INDEXED_SIZE) {
+                return null;
+            }
+
+            result = new Index(getDelegate().toArray(), version);
+            this.index = result;
+        }
+
+        return result;
+    }
+
+    @Override
+    public Parameter getFirst(String name, boolean ignoreCase) {
+        Index index = (name == null) ? null : getIndex();
+
+        if (index == null) {
+            return super.getFirst(name, ignoreCase);
+        }
+
+        int hash = hash(name);
+
+        for (int i = index.buckets[hash & (index.buckets.length - 1)] - 1; i >= 0; i = index.next[i] - 1) {
+            if (index.hashes[i] == hash) {
+                Parameter param = (Parameter) index.entries[i];
+
+                if (matches(param.getName(), name, ignoreCase)) {
+                    return param;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String getValues(String name, String separator, boolean ignoreCase) {
+        Index index = (name == null) ? null : getIndex();
+
+        if (index == null) {
+            return super.getValues(name, separator, ignoreCase);
+        }
+
+        String result = null;
+        StringBuilder sb = null;
+        int hash = hash(name);
+
+        for (int i = index.buckets[hash & (index.buckets.length - 1)] - 1; i >= 0; i = index.next[i] - 1) {
+            Parameter param = (Parameter) index.entries[i];
+
+            if ((index.hashes[i] == hash)
+                    && matches(param.getName(), name, ignoreCase)) {
+                if (sb == null) {
+                    if (result == null) {
+                        result = param.getValue();
+                    } else {
+                        sb = new StringBuilder();
+                        sb.append(result).append(separator).append(
+                                param.getValue());
+                    }
+                } else {
+                    sb.append(separator).append(param.getValue());
+                }
+            }
+        }
+
+        if (sb != null) {
+            result = sb.toString();
+        }
+
+        return result;
+    }
+
+    @Override
+    public Series<Parameter> subList(String name, boolean ignoreCase) {
+        Index index = (name == null) ? null : getIndex();
+
+        if (index == null) {
+            return super.subList(name, ignoreCase);
+        }
+
+        Series<Parameter> result = createSeries(null);
+        int hash = hash(name);
+
+        for (int i = index.buckets[hash & (index.buckets.length - 1)] - 1; i >= 0; i = index.next[i] - 1) {
+            Parameter param = (Parameter) index.entries[i];
+
+            if ((index.hashes[i] == hash)
+                    && matches(param.getName(), name, ignoreCase)) {
+                result.add(param);
+            }
+        }
+
+        return result;
+    }
+
+}
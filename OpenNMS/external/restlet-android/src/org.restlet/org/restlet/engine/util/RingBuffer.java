@@ -0,0 +1,204 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ * 
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ * 
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ * 
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.engine.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue backed by an array used as a ring. Any number of
+ * threads can offer and poll elements at the same time without locking:
+ * each slot carries a sequence number telling whether it is free for the
+ * next offer or holds the element of the next poll, and the threads claim
+ * slots by compare-and-set of the offer or poll position.<br>
+ * <br>
+ * Offering doesn't allocate, and fails instead of waiting when the buffer is
+ * full, leaving the caller to decide whether to drop the element or retry.
+ * 
+ * @param <E>
+ *            The type of the elements.
+ */
+public class RingBuffer<E> {
+
+    /** The elements, indexed by position modulo the capacity. */
+    private final AtomicReferenceArray<E> elements;
+
+    /** The mask giving the index of a position. */
+    private final int mask;
+
+    /** The position of the next offer. */
+    private final AtomicLong offerPosition;
+
+    /** The position of the next poll. */
+    private final AtomicLong pollPosition;
+
+    /**
+     * The sequence of each slot: its position when free for an offer, its
+     * position plus one once it holds an element to poll.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity
+     *            The minimum capacity, rounded up to a power of two.
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "The capacity must be at least 1");
+        }
+
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        this.elements = new AtomicReferenceArray<E>(size);
+        this.mask = size - 1;
+        this.offerPosition = new AtomicLong();
+        this.pollPosition = new AtomicLong();
+        this.sequences = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Polls up to a given number of elements into a collection.
+     * 
+     * @param collection
+     *            The collection to add the elements to.
+     * @param maxElements
+     *            The maximum number of elements to poll.
+     * @return The number of elements polled.
+     */
+    public int drainTo(Collection<? super E> collection, int maxElements) {
+        int result = 0;
+        E element;
+
+        while ((result < maxElements) && ((element = poll()) != null)) {
+            collection.add(element);
+            result++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the capacity.
+     * 
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * Indicates if the buffer is empty.
+     * 
+     * @return True if the buffer is empty.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Adds an element if the buffer isn't full.
+     * 
+     * @param element
+     *            The element to add.
+     * @return True if the element was added, false if the buffer is full.
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        for (;;) {
+            final long position = this.offerPosition.get();
+            final int index = (int) position & this.mask;
+            final long sequence = this.sequences.get(index);
+
+            if (sequence == position) {
+                if (this.offerPosition.compareAndSet(position, position + 1)) {
+                    this.elements.set(index, element);
+                    this.sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // The slot still holds the element offered a lap ago
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the oldest element.
+     * 
+     * @return The oldest element, or null if the buffer is empty.
+     */
+    public E poll() {
+        for (;;) {
+            final long position = this.pollPosition.get();
+            final int index = (int) position & this.mask;
+            final long sequence = this.sequences.get(index);
+
+            if (sequence == position + 1) {
+                if (this.pollPosition.compareAndSet(position, position + 1)) {
+                    final E result = this.elements.get(index);
+                    this.elements.set(index, null);
+                    this.sequences.set(index, position + this.mask + 1);
+                    return result;
+                }
+            } else if (sequence < position + 1) {
+                // The slot is still free, or being filled
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of elements, which may already have changed when
+     * other threads offer or poll at the same time.
+     * 
+     * @return The number of elements.
+     */
+    public int size() {
+        final long size = this.offerPosition.get() - this.pollPosition.get();
+        return (int) Math.max(0, Math.min(size, getCapacity()));
+    }
+
+}
@@ -51,6 +51,8 @@ import org.restlet.data.Protocol;
 import org.restlet.data.Range;
 import org.restlet.data.Reference;
 import org.restlet.data.Status;
+import org.restlet.engine.http.timing.CallTimer;
+import org.restlet.engine.http.timing.Phase;
 import org.restlet.representation.Representation;
 import org.restlet.representation.StringRepresentation;
 import org.restlet.util.Series;
@@ -857,9 +859,15 @@ public class ClientResource extends UniformResource {
         Uniform next = getNext();
 
         if (next != null) {
+            CallTimer timer = CallTimer.start(request);
+
             // Effectively handle the call
             handle(request, response, null, 0, next);
 
+            if (timer != null) {
+                timer.record(Phase.RESPONSE, timer.getElapsed());
+            }
+
             // Update the last received response.
             setResponse(response);
         } else {
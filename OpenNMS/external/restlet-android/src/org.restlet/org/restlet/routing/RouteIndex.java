@@ -0,0 +1,480 @@
+/**
+ * Copyright 2005-2010 Noelios Technologies.
+ *
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: LGPL 3.0 or LGPL 2.1 or CDDL 1.0 or EPL 1.0 (the
+ * "Licenses"). You can select the license that you prefer but you may not use
+ * this file except in compliance with one of these Licenses.
+ *
+ * You can obtain a copy of the LGPL 3.0 license at
+ * http://www.opensource.org/licenses/lgpl-3.0.html
+ *
+ * You can obtain a copy of the LGPL 2.1 license at
+ * http://www.opensource.org/licenses/lgpl-2.1.php
+ *
+ * You can obtain a copy of the CDDL 1.0 license at
+ * http://www.opensource.org/licenses/cddl1.php
+ *
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ *
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://www.noelios.com/products/restlet-engine
+ *
+ * Restlet is a registered trademark of Noelios Technologies.
+ */
+
+package org.restlet.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Reference;
+import org.restlet.util.RouteList;
+
+/**
+ * Index of a list of routes, compiled from the literal parts of their URI
+ * patterns. The text preceding the first variable of each pattern is stored
+ * in a prefix trie, so that walking the trie along the remaining part of a
+ * resource reference gives the only routes whose template can match it. The
+ * later literal parts of each pattern must then be found in order in the
+ * remaining part before the route is scored, which is when its template
+ * actually matches and extracts variables.<br>
+ * <br>
+ * The candidates are scored in the order of the list, so the route selected is
+ * the same as with {@link RouteList#getBest(Request, Response, float)} and
+ * {@link RouteList#getFirst(Request, Response, float)}. Routes without a
+ * template, or whose class overrides
+ * {@link TemplateRoute#score(Request, Response)}, are always candidates.<br>
+ * <br>
+ * Instances are immutable once built and can be used by several threads at
+ * the same time. They capture the routes, templates and patterns they were
+ * built from, see {@link #isCurrent(RouteList)}.
+ *
+ * @see Router#setIndexingRoutes(boolean)
+ */
+@SuppressWarnings("deprecation")
+final class RouteIndex {
+
+    /** Node of the prefix trie. */
+    private static final class Node {
+
+        /** The sorted characters leading to the child nodes. */
+        private char[] chars;
+
+        /** The number of child nodes. */
+        private int childCount;
+
+        /** The child nodes, in the order of their characters. */
+        private Node[] children;
+
+        /** The number of routes whose literal prefix ends at this node. */
+        private int routeCount;
+
+        /** The indexes of the routes whose literal prefix ends at this node. */
+        private int[] routes;
+
+        /**
+         * Constructor.
+         */
+        private Node() {
+            this.chars = new char[2];
+            this.childCount = 0;
+            this.children = new Node[2];
+            this.routeCount = 0;
+            this.routes = new int[1];
+        }
+
+        /**
+         * Adds the index of a route whose literal prefix ends at this node.
+         *
+         * @param index
+         *            The index of the route.
+         */
+        private void addRoute(int index) {
+            if (this.routeCount == this.routes.length) {
+                this.routes = copyOf(this.routes, this.routeCount * 2);
+            }
+
+            this.routes[this.routeCount++] = index;
+        }
+
+        /**
+         * Returns the child node for a character, if any.
+         *
+         * @param c
+         *            The character.
+         * @return The child node or null.
+         */
+        private Node getChild(char c) {
+            final int index = Arrays.binarySearch(this.chars, 0,
+                    this.childCount, c);
+            return (index < 0) ? null : this.children[index];
+        }
+
+        /**
+         * Returns the child node for a character, creating it if needed.
+         *
+         * @param c
+         *            The character.
+         * @return The child node.
+         */
+        private Node putChild(char c) {
+            int index = Arrays.binarySearch(this.chars, 0, this.childCount, c);
+
+            if (index < 0) {
+                index = -index - 1;
+
+                if (this.childCount == this.chars.length) {
+                    final Node[] children = new Node[this.childCount * 2];
+                    final char[] chars = new char[this.childCount * 2];
+                    System.arraycopy(this.children, 0, children, 0,
+                            this.childCount);
+                    System.arraycopy(this.chars, 0, chars, 0,
+                            this.childCount);
+                    this.children = children;
+                    this.chars = chars;
+                }
+
+                System.arraycopy(this.children, index, this.children,
+                        index + 1, this.childCount - index);
+                System.arraycopy(this.chars, index, this.chars, index + 1,
+                        this.childCount - index);
+                this.children[index] = new Node();
+                this.chars[index] = c;
+                this.childCount++;
+            }
+
+            return this.children[index];
+        }
+    }
+
+    /**
+     * Copies an array of integers into a new array.
+     *
+     * @param array
+     *            The array to copy.
+     * @param length
+     *            The length of the new array.
+     * @return The new array.
+     */
+    private static int[] copyOf(int[] array, int length) {
+        final int[] result = new int[length];
+        System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+        return result;
+    }
+
+    /**
+     * Indicates if the score of a route is computed by
+     * {@link TemplateRoute#score(Request, Response)}, which only matches the
+     * template against the remaining part.
+     *
+     * @param route
+     *            The route.
+     * @return True if the route is scored by its template.
+     */
+    private static boolean isScoredByTemplate(Route route) {
+        try {
+            return route.getClass()
+                    .getMethod("score", Request.class, Response.class)
+                    .getDeclaringClass() == TemplateRoute.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Splits a URI pattern into the literal text found between its variables.
+     * Characters are skipped as when the template compiles the pattern.
+     *
+     * @param pattern
+     *            The URI pattern.
+     * @return The literal parts, the first one being the prefix preceding the
+     *         first variable, even if empty.
+     */
+    private static List<String> split(String pattern) {
+        final List<String> result = new ArrayList<String>();
+        final StringBuilder part = new StringBuilder();
+        boolean inVariable = false;
+        char next;
+
+        for (int i = 0; i < pattern.length(); i++) {
+            next = pattern.charAt(i);
+
+            if (inVariable) {
+                if (next == '}') {
+                    inVariable = false;
+                }
+            } else if ((next == '{') || (next == '}')) {
+                if ((part.length() > 0) || result.isEmpty()) {
+                    result.add(part.toString());
+                    part.setLength(0);
+                }
+
+                inVariable = (next == '{');
+            } else {
+                part.append(next);
+            }
+        }
+
+        if ((part.length() > 0) || result.isEmpty()) {
+            result.add(part.toString());
+        }
+
+        return result;
+    }
+
+    /**
+     * The literal parts following the prefix of each route's pattern, or null
+     * for routes that are always candidates.
+     */
+    private final String[][] literals;
+
+    /** The patterns of the route templates, when the index was built. */
+    private final String[] patterns;
+
+    /** The length of the literal prefix of each route's pattern. */
+    private final int[] prefixLengths;
+
+    /** The root node of the prefix trie. */
+    private final Node root;
+
+    /** The indexed routes. */
+    private final Route[] routes;
+
+    /** The templates of the routes, when the index was built. */
+    private final Template[] templates;
+
+    /**
+     * Constructor.
+     *
+     * @param routes
+     *            The list of routes to index.
+     */
+    RouteIndex(RouteList routes) {
+        this.routes = routes.toArray(new Route[0]);
+        this.templates = new Template[this.routes.length];
+        this.patterns = new String[this.routes.length];
+        this.literals = new String[this.routes.length][];
+        this.prefixLengths = new int[this.routes.length];
+        this.root = new Node();
+
+        for (int i = 0; i < this.routes.length; i++) {
+            final Template template = this.routes[i].getTemplate();
+            final String pattern = (template == null) ? null : template
+                    .getPattern();
+            this.templates[i] = template;
+            this.patterns[i] = pattern;
+
+            if ((pattern == null) || !isScoredByTemplate(this.routes[i])) {
+                this.root.addRoute(i);
+            } else {
+                final List<String> parts = split(pattern);
+                final String prefix = parts.get(0);
+                Node node = this.root;
+
+                for (int j = 0; j < prefix.length(); j++) {
+                    node = node.putChild(prefix.charAt(j));
+                }
+
+                node.addRoute(i);
+                this.prefixLengths[i] = prefix.length();
+                this.literals[i] = parts.subList(1, parts.size()).toArray(
+                        new String[parts.size() - 1]);
+            }
+        }
+    }
+
+    /**
+     * Returns the best route match for a given call, as
+     * {@link RouteList#getBest(Request, Response, float)} does.
+     *
+     * @param request
+     *            The request to score.
+     * @param response
+     *            The response to score.
+     * @param requiredScore
+     *            The minimum score required to have a match.
+     * @return The best route match or null.
+     */
+    Route getBest(Request request, Response response, float requiredScore) {
+        Route result = null;
+        float bestScore = 0F;
+        float score;
+        final int[] candidates = new int[this.routes.length];
+        final int count = getCandidates(getRemainingPart(request),
+                candidates);
+
+        for (int i = 0; i < count; i++) {
+            final Route current = this.routes[candidates[i]];
+            score = current.score(request, response);
+
+            if ((score > bestScore) && (score >= requiredScore)) {
+                bestScore = score;
+                result = current;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Fills an array with the indexes of the routes that may match a remaining
+     * part, in the order of the list of routes.
+     *
+     * @param remainingPart
+     *            The remaining part of the resource reference, including the
+     *            query, or null if all the routes are candidates.
+     * @param candidates
+     *            The array to fill, as long as the list of routes.
+     * @return The number of candidates.
+     */
+    private int getCandidates(String remainingPart, int[] candidates) {
+        if (remainingPart == null) {
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = i;
+            }
+
+            return candidates.length;
+        }
+
+        int result = 0;
+        Node node = this.root;
+
+        for (int depth = 0; node != null; depth++) {
+            for (int i = 0; i < node.routeCount; i++) {
+                final int index = node.routes[i];
+
+                if (isMatchingLiterals(index, remainingPart)) {
+                    candidates[result++] = index;
+                }
+            }
+
+            node = (depth < remainingPart.length()) ? node
+                    .getChild(remainingPart.charAt(depth)) : null;
+        }
+
+        Arrays.sort(candidates, 0, result);
+        return result;
+    }
+
+    /**
+     * Returns the first route match for a given call, as
+     * {@link RouteList#getFirst(Request, Response, float)} does.
+     *
+     * @param request
+     *            The request to score.
+     * @param response
+     *            The response to score.
+     * @param requiredScore
+     *            The minimum score required to have a match.
+     * @return The first route match or null.
+     */
+    Route getFirst(Request request, Response response, float requiredScore) {
+        final int[] candidates = new int[this.routes.length];
+
+        // A required score of zero is reached by routes that do not match
+        final int count = getCandidates(
+                (requiredScore > 0F) ? getRemainingPart(request) : null,
+                candidates);
+
+        for (int i = 0; i < count; i++) {
+            final Route current = this.routes[candidates[i]];
+
+            if (current.score(request, response) >= requiredScore) {
+                return current;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the remaining part of the resource reference that the trie is
+     * walked along. The query is included as the routes matching the query
+     * see the longest remaining part, and the others see a prefix of it.
+     *
+     * @param request
+     *            The request.
+     * @return The remaining part or null if the routes must all be scored.
+     */
+    private String getRemainingPart(Request request) {
+        final Reference resourceRef = request.getResourceRef();
+
+        if ((resourceRef == null)
+                || ((resourceRef.getBaseRef() != null) && resourceRef
+                        .getBaseRef().hasQuery())) {
+            return null;
+        }
+
+        return resourceRef.getRemainingPart(false, true);
+    }
+
+    /**
+     * Indicates if the index was built from the current state of a list of
+     * routes: the same routes, with the same templates and patterns.
+     *
+     * @param routes
+     *            The list of routes.
+     * @return True if the index can be used for the list of routes.
+     */
+    boolean isCurrent(RouteList routes) {
+        int i = 0;
+
+        for (final Route route : routes) {
+            if ((i == this.routes.length) || (route != this.routes[i])) {
+                return false;
+            }
+
+            final Template template = route.getTemplate();
+
+            if ((template != this.templates[i])
+                    || ((template != null)
+                            && (template.getPattern() != this.patterns[i]))) {
+                return false;
+            }
+
+            i++;
+        }
+
+        return i == this.routes.length;
+    }
+
+    /**
+     * Indicates if the literal parts following the prefix of a route's pattern
+     * are found in order in a remaining part.
+     *
+     * @param index
+     *            The index of the route.
+     * @param remainingPart
+     *            The remaining part of the resource reference.
+     * @return True if the route may match the remaining part.
+     */
+    private boolean isMatchingLiterals(int index, String remainingPart) {
+        final String[] parts = this.literals[index];
+
+        if (parts != null) {
+            int offset = this.prefixLengths[index];
+
+            for (final String part : parts) {
+                offset = remainingPart.indexOf(part, offset);
+
+                if (offset == -1) {
+                    return false;
+                }
+
+                offset += part.length();
+            }
+        }
+
+        return true;
+    }
+
+}
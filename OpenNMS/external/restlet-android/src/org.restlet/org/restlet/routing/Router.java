@@ -195,6 +195,12 @@ public class Router extends Restlet {
     /** Finder class to instantiate. */
     private volatile Class<? extends Finder> finderClass;
 
+    /**
+     * Indicates if the routes should be selected through an index of their URI
+     * patterns in the best and first match modes.
+     */
+    private volatile boolean indexingRoutes;
+
     /**
      * The maximum number of attempts if no attachment could be matched on the
      * first attempt.
@@ -207,6 +213,9 @@ public class Router extends Restlet {
     /** The delay (in milliseconds) before a new attempt. */
     private volatile long retryDelay;
 
+    /** The index of the routes, built when first needed. */
+    private volatile RouteIndex routeIndex;
+
     /** The modifiable list of routes. */
     private volatile RouteList routes;
 
@@ -236,6 +245,7 @@ public class Router extends Restlet {
         this.defaultMatchingQuery = false;
         this.defaultRoute = null;
         this.finderClass = Finder.class;
+        this.indexingRoutes = false;
         this.routingMode = MODE_FIRST_MATCH;
         this.requiredScore = 0.5F;
         this.maxAttempts = 1;
@@ -631,13 +641,23 @@ public class Router extends Restlet {
                 // Select the routing mode
                 switch (getRoutingMode()) {
                 case MODE_BEST_MATCH:
-                    result = getRoutes().getBest(request, response,
-                            getRequiredScore());
+                    if (isIndexingRoutes()) {
+                        result = getRouteIndex().getBest(request, response,
+                                getRequiredScore());
+                    } else {
+                        result = getRoutes().getBest(request, response,
+                                getRequiredScore());
+                    }
                     break;
 
                 case MODE_FIRST_MATCH:
-                    result = getRoutes().getFirst(request, response,
-                            getRequiredScore());
+                    if (isIndexingRoutes()) {
+                        result = getRouteIndex().getFirst(request, response,
+                                getRequiredScore());
+                    } else {
+                        result = getRoutes().getFirst(request, response,
+                                getRequiredScore());
+                    }
                     break;
 
                 case MODE_LAST_MATCH:
@@ -698,6 +718,24 @@ public class Router extends Restlet {
         return this.retryDelay;
     }
 
+    /**
+     * Returns the index of the current routes, building it again if the list
+     * of routes or the templates of the routes have changed since it was last
+     * built.
+     * 
+     * @return The index of the current routes.
+     */
+    private RouteIndex getRouteIndex() {
+        RouteIndex result = this.routeIndex;
+
+        if ((result == null) || !result.isCurrent(getRoutes())) {
+            result = new RouteIndex(getRoutes());
+            this.routeIndex = result;
+        }
+
+        return result;
+    }
+
     /**
      * Returns the modifiable list of routes. Creates a new instance if no one
      * has been set.
@@ -738,6 +776,21 @@ public class Router extends Restlet {
         }
     }
 
+    /**
+     * Indicates if the routes should be selected through an index of their URI
+     * patterns in the {@link #MODE_BEST_MATCH} and {@link #MODE_FIRST_MATCH}
+     * modes. The index is a prefix trie of the literal parts of the patterns,
+     * so only the routes that may match the remaining part are scored, and
+     * the same route is selected as without the index. It is rebuilt when the
+     * routes change and is worth it when many routes are attached. By
+     * default, it returns false.
+     * 
+     * @return True if the routes should be selected through an index.
+     */
+    public boolean isIndexingRoutes() {
+        return this.indexingRoutes;
+    }
+
     /**
      * Logs the route selected.
      * 
@@ -816,6 +869,18 @@ public class Router extends Restlet {
         this.finderClass = finderClass;
     }
 
+    /**
+     * Indicates if the routes should be selected through an index of their URI
+     * patterns in the {@link #MODE_BEST_MATCH} and {@link #MODE_FIRST_MATCH}
+     * modes. By default, it is set to false.
+     * 
+     * @param indexingRoutes
+     *            True if the routes should be selected through an index.
+     */
+    public void setIndexingRoutes(boolean indexingRoutes) {
+        this.indexingRoutes = indexingRoutes;
+    }
+
     /**
      * Sets the maximum number of attempts if no attachment could be matched on
      * the first attempt. This is useful when the attachment scoring is dynamic
@@ -72,6 +72,11 @@ import org.restlet.routing.Filter;
  * <br>
  * For custom access log format, see the syntax to use and the list of available
  * variable names in {@link org.restlet.routing.Template}. <br>
+ * <br>
+ * To keep the logging off the threads handling the calls, the service can be
+ * made asynchronous: the calls are then queued in a buffer and formatted and
+ * logged in batches by a background thread. When that buffer is full, the
+ * new calls are either dropped or wait for room, as configured.<br>
  * 
  * @see <a
  *      href="http://www.restlet.org/documentation/2.0/tutorial#part07">Tutorial:
@@ -83,6 +88,15 @@ import org.restlet.routing.Filter;
  * @author Jerome Louvel
  */
 public class LogService extends Service {
+    /** Indicates if the calls are logged by a background thread. */
+    private volatile boolean asynchronous;
+
+    /** Indicates if calls wait when the asynchronous buffer is full. */
+    private volatile boolean blockingOnOverflow;
+
+    /** The number of calls that can wait to be logged asynchronously. */
+    private volatile int bufferSize;
+
     /** The access logger name. */
     private volatile String loggerName;
 
@@ -110,6 +124,9 @@ public class LogService extends Service {
      */
     public LogService(boolean enabled) {
         super(enabled);
+        this.asynchronous = false;
+        this.blockingOnOverflow = false;
+        this.bufferSize = 1024;
         this.loggerName = null;
         this.logFormat = null;
         this.logPropertiesRef = null;
@@ -121,6 +138,16 @@ public class LogService extends Service {
         return new LogFilter(context, this);
     }
 
+    /**
+     * Returns the number of calls that can wait to be logged when the service
+     * is asynchronous. Default value is 1024.
+     * 
+     * @return The number of calls that can wait to be logged.
+     */
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
+
     /**
      * Returns the format used.
      * 
@@ -153,6 +180,27 @@ public class LogService extends Service {
         return logPropertiesRef;
     }
 
+    /**
+     * Indicates if the calls are logged by a background thread. Default value
+     * is false.
+     * 
+     * @return True if the calls are logged by a background thread.
+     */
+    public boolean isAsynchronous() {
+        return this.asynchronous;
+    }
+
+    /**
+     * Indicates if calls wait for room when the buffer of the asynchronous
+     * service is full, instead of being dropped from the log. Default value
+     * is false.
+     * 
+     * @return True if calls wait when the buffer is full.
+     */
+    public boolean isBlockingOnOverflow() {
+        return this.blockingOnOverflow;
+    }
+
     /**
      * Indicates if the identity check (as specified by RFC1413) is enabled.
      * Default value is false.
@@ -163,6 +211,38 @@ public class LogService extends Service {
         return this.identityCheck;
     }
 
+    /**
+     * Indicates if the calls should be logged by a background thread.
+     * 
+     * @param asynchronous
+     *            True if the calls should be logged by a background thread.
+     */
+    public void setAsynchronous(boolean asynchronous) {
+        this.asynchronous = asynchronous;
+    }
+
+    /**
+     * Indicates if calls should wait for room when the buffer of the
+     * asynchronous service is full, instead of being dropped from the log.
+     * 
+     * @param blockingOnOverflow
+     *            True if calls should wait when the buffer is full.
+     */
+    public void setBlockingOnOverflow(boolean blockingOnOverflow) {
+        this.blockingOnOverflow = blockingOnOverflow;
+    }
+
+    /**
+     * Sets the number of calls that can wait to be logged when the service is
+     * asynchronous.
+     * 
+     * @param bufferSize
+     *            The number of calls that can wait to be logged.
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
     /**
      * Indicates if the identity check (as specified by RFC1413) is enabled.
      * 
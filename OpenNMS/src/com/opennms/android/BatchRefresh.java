@@ -0,0 +1,366 @@
+package com.opennms.android;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.restlet.Client;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Uniform;
+import org.restlet.data.ChallengeResponse;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Reference;
+import org.restlet.ext.crypto.DigestSessionFilter;
+import org.restlet.representation.Representation;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Fetches several endpoints of the server as one batch, for example the
+ * outages, alarms and nodes when everything is refreshed at once.
+ *
+ * The GETs are pipelined: they are all written on one keep-alive connection
+ * without waiting for the responses, which the server sends back in the same
+ * order.  Each response is handed to the handler of its endpoint as soon as
+ * it is read, so the batch costs one connection setup and about one
+ * round-trip instead of one of each per endpoint.
+ *
+ * If the server does not keep the connection open for the whole batch (an
+ * HTTP/1.0 server, or one answering with Connection: close), the requests it
+ * did not answer are sent again one at a time through the regular client
+ * chain, and later batches to that server are sent that way from the start.
+ *
+ * With Digest authentication, batches are pipelined only once the regular
+ * client chain holds a Digest session for the server, and each pipelined
+ * request is authorized from it with a nonce count of its own.  Pipelined
+ * requests go through a cache filter sharing the stores of the
+ * {@link HttpCache}, so they are revalidated like the others.
+ *
+ * Batches run one at a time, but adding endpoints or changing the settings
+ * does not wait for the running batch.
+ */
+public class BatchRefresh {
+	private static final String TAG = "BatchRefresh";
+	public static final long TIMEOUT = 60L * 1000L;
+
+	// the states of a pipelined request
+	private static final int PENDING = 0;
+	private static final int ANSWERED = 1;
+	private static final int HANDLED = 2;
+	private static final int ABANDONED = 3;
+
+	/**
+	 * Reads the response of one endpoint.
+	 */
+	public interface Handler {
+		/**
+		 * Called in the order the endpoints were added, on a connector thread
+		 * when the batch is pipelined: the entity must be read before the next
+		 * response can be.
+		 */
+		public void handle(Response response) throws Exception;
+	}
+
+	private static BatchRefresh m_instance;
+
+	private final Restlet m_next;
+	private final DigestSessionFilter m_digest;
+	private final HttpCache m_cache;
+	private final Object m_batchLock = new Object();
+	private final ServerSettings m_settings = ServerSettings.getInstance();
+	private final Set<String> m_sequentialServers = Collections.synchronizedSet(new HashSet<String>());
+	private final List<String> m_endpoints = new ArrayList<String>();
+	private final List<Handler> m_handlers = new ArrayList<Handler>();
+	private Client m_client = null;
+	private Restlet m_pipeline = null;
+	private boolean m_pipelining = true;
+	private volatile long m_lastLatency = -1;
+
+	/**
+	 * @param next where requests are sent when they are not pipelined
+	 */
+	protected BatchRefresh(final Restlet next) {
+		this(next, null);
+	}
+
+	/**
+	 * @param next where requests are sent when they are not pipelined
+	 * @param digest the Digest sessions of the chain behind next, if any
+	 */
+	protected BatchRefresh(final Restlet next, final DigestSessionFilter digest) {
+		this(next, digest, null);
+	}
+
+	/**
+	 * @param next where requests are sent when they are not pipelined
+	 * @param digest the Digest sessions of the chain behind next, if any
+	 * @param cache the cache whose stores pipelined requests go through, if any
+	 */
+	protected BatchRefresh(final Restlet next, final DigestSessionFilter digest, final HttpCache cache) {
+		m_next = next;
+		m_digest = digest;
+		m_cache = cache;
+	}
+
+	public static synchronized BatchRefresh getInstance(final Context context) {
+		if (m_instance == null) {
+			final HttpCache cache = HttpCache.getInstance(context);
+			m_instance = new BatchRefresh(cache.getFilter(), cache.getDigestFilter(), cache);
+		}
+		return m_instance;
+	}
+
+	/**
+	 * Add an endpoint (relative to {@link ServerSettings#getBase()}) to the next batch.
+	 */
+	public synchronized void add(final String endpoint, final Handler handler) {
+		m_endpoints.add(endpoint);
+		m_handlers.add(handler);
+	}
+
+	public synchronized boolean isPipelining() {
+		return m_pipelining;
+	}
+
+	/**
+	 * Pipeline the batches if the server allows it (the default), or always
+	 * send their requests one at a time.
+	 */
+	public synchronized void setPipelining(final boolean pipelining) {
+		m_pipelining = pipelining;
+	}
+
+	/**
+	 * @return milliseconds taken by the last batch, from the first request to the last response read, or -1 if none ran yet
+	 */
+	public long getLastLatency() {
+		return m_lastLatency;
+	}
+
+	/**
+	 * Fetch the endpoints added since the last batch.
+	 *
+	 * @return milliseconds taken, from the first request to the last response read
+	 * @throws Exception the first error thrown by a handler, once every endpoint was handled
+	 */
+	public long execute() throws Exception {
+		final List<String> endpoints;
+		final List<Handler> handlers;
+		final boolean pipelining;
+		synchronized (this) {
+			endpoints = new ArrayList<String>(m_endpoints);
+			handlers = new ArrayList<Handler>(m_handlers);
+			m_endpoints.clear();
+			m_handlers.clear();
+			pipelining = m_pipelining;
+		}
+		synchronized (m_batchLock) {
+			return execute(endpoints, handlers, pipelining);
+		}
+	}
+
+	private long execute(final List<String> endpoints, final List<Handler> handlers, final boolean pipelining) throws Exception {
+		final String base = m_settings.getBase();
+		// without a Digest session yet, every pipelined request would be challenged
+		final boolean pipelined = pipelining && endpoints.size() > 1 && !m_sequentialServers.contains(base)
+			&& (!m_settings.getDigest() || (m_digest != null && m_digest.hasSession(new Reference(base))));
+		final Exception[] errors = new Exception[endpoints.size()];
+		final long start = SystemClock.uptimeMillis();
+		final boolean[] handled = pipelined? executePipelined(endpoints, handlers, errors) : new boolean[endpoints.size()];
+		int retried = 0;
+		for (int i = 0; i < endpoints.size(); i++) {
+			if (!handled[i]) {
+				final Request request = createRequest(endpoints.get(i));
+				final Response response = new Response(request);
+				m_next.handle(request, response);
+				errors[i] = handle(handlers.get(i), response);
+				if (pipelined) {
+					retried++;
+				}
+			}
+		}
+		m_lastLatency = SystemClock.uptimeMillis() - start;
+		Log.i(TAG, String.format("refreshed %d endpoints in %dms (%s)", endpoints.size(), m_lastLatency, pipelined? (retried == 0? "pipelined" : retried + " sent again one at a time") : "one at a time"));
+
+		for (final Exception e : errors) {
+			if (e != null) {
+				throw e;
+			}
+		}
+		return m_lastLatency;
+	}
+
+	/**
+	 * Send every request on one connection and hand each response to its
+	 * handler as it is read.
+	 *
+	 * Each request is either answered, its response being claimed by the
+	 * callback, or abandoned by this thread once the responses stopped
+	 * coming; only abandoned requests are sent again.  A handler still
+	 * reading when the others were abandoned is waited for.
+	 *
+	 * @return for each endpoint, whether its response was handled
+	 */
+	protected boolean[] executePipelined(final List<String> endpoints, final List<Handler> handlers, final Exception[] errors) throws InterruptedException {
+		final AtomicIntegerArray states = new AtomicIntegerArray(endpoints.size());
+		final CountDownLatch latch = new CountDownLatch(endpoints.size());
+		final Restlet pipeline = getPipeline();
+
+		for (int i = 0; i < endpoints.size(); i++) {
+			final int index = i;
+			final Request pipelinedRequest = createRequest(endpoints.get(index));
+			if (m_digest != null) {
+				m_digest.authorize(pipelinedRequest);
+			}
+			pipelinedRequest.setOnResponse(new Uniform() {
+				public void handle(final Request request, final Response response) {
+					try {
+						// a connector error means the server dropped the connection first
+						if (!response.getStatus().isConnectorError() && states.compareAndSet(index, PENDING, ANSWERED)) {
+							errors[index] = BatchRefresh.this.handle(handlers.get(index), response);
+							synchronized (states) {
+								states.set(index, HANDLED);
+								states.notifyAll();
+							}
+						}
+					} finally {
+						latch.countDown();
+					}
+				}
+			});
+			pipeline.handle(pipelinedRequest, new Response(pipelinedRequest));
+		}
+
+		final boolean complete = latch.await(TIMEOUT, TimeUnit.MILLISECONDS);
+		final boolean[] handled = new boolean[endpoints.size()];
+		int answered = 0;
+		for (int i = 0; i < handled.length; i++) {
+			// a late response must not be handled on top of the one sent again
+			handled[i] = !states.compareAndSet(i, PENDING, ABANDONED);
+			if (handled[i]) {
+				answered++;
+			}
+		}
+		if (!complete || answered < handled.length) {
+			if (!complete || answered > 0) {
+				// the server answered, but not to every pipelined request
+				Log.w(TAG, "pipelined requests to " + m_settings.getBase() + " went unanswered, sending them one at a time from now on");
+				m_sequentialServers.add(m_settings.getBase());
+			}
+			stopClient();
+		}
+		awaitHandlers(endpoints, states);
+		return handled;
+	}
+
+	/**
+	 * Wait for the handlers still reading a response, which fail soon once
+	 * the connection is closed.
+	 */
+	private void awaitHandlers(final List<String> endpoints, final AtomicIntegerArray states) throws InterruptedException {
+		final long deadline = SystemClock.uptimeMillis() + TIMEOUT;
+		synchronized (states) {
+			for (int i = 0; i < states.length(); i++) {
+				while (states.get(i) == ANSWERED) {
+					final long wait = deadline - SystemClock.uptimeMillis();
+					if (wait <= 0) {
+						Log.w(TAG, "gave up waiting for the handler of " + m_settings.getBase() + endpoints.get(i));
+						return;
+					}
+					states.wait(wait);
+				}
+			}
+		}
+	}
+
+	protected Request createRequest(final String endpoint) {
+		final Request request = new Request(Method.GET, m_settings.getBase() + endpoint);
+		request.setChallengeResponse(new ChallengeResponse(m_settings.getChallengeScheme(), m_settings.getUsername(), m_settings.getPassword()));
+		return request;
+	}
+
+	/**
+	 * Where pipelined requests are sent: the pipelining client, behind a
+	 * cache filter when there is a cache.
+	 */
+	protected Restlet getPipeline() {
+		if (m_pipeline == null) {
+			final Client client = getClient();
+			m_pipeline = (m_cache == null)? client : m_cache.createFilter(client);
+		}
+		return m_pipeline;
+	}
+
+	/**
+	 * The client pipelining the batches, with at most one connection per server.
+	 */
+	protected Client getClient() {
+		if (m_client == null) {
+			final org.restlet.Context context = new org.restlet.Context();
+			context.getParameters().add("pipeliningConnections", "true");
+			context.getParameters().add("maxConnectionsPerHost", "1");
+			context.getParameters().add("decodingResponse", "true");
+			context.getParameters().add("controllerSelecting", "true");
+			m_client = new Client(context, Arrays.asList(Protocol.HTTP, Protocol.HTTPS));
+			try {
+				m_client.start();
+			} catch (final Exception e) {
+				Log.w(TAG, "Unable to start the pipelining client.", e);
+			}
+		}
+		return m_client;
+	}
+
+	/**
+	 * Drop the client along with its connection, which may still have requests waiting on it.
+	 */
+	protected void stopClient() {
+		if (m_client != null) {
+			try {
+				m_client.stop();
+			} catch (final Exception e) {
+				Log.d(TAG, "Unable to stop the pipelining client.", e);
+			}
+			m_client = null;
+			m_pipeline = null;
+		}
+	}
+
+	/**
+	 * Run a handler, then read whatever it left of the entity so the
+	 * connection can move on to the next response.
+	 *
+	 * @return the error thrown by the handler, if any
+	 */
+	private Exception handle(final Handler handler, final Response response) {
+		try {
+			handler.handle(response);
+			return null;
+		} catch (final Exception e) {
+			Log.w(TAG, "Unable to handle the response of " + response.getRequest().getResourceRef(), e);
+			return e;
+		} finally {
+			final Representation entity = response.getEntity();
+			if (entity != null) {
+				try {
+					entity.exhaust();
+				} catch (final IOException e) {
+					Log.d(TAG, "Unable to read the rest of the response.", e);
+				}
+				entity.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.opennms.android;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.restlet.Client;
+import org.restlet.Restlet;
+import org.restlet.data.Protocol;
+import org.restlet.engine.http.cache.CacheFilter;
+import org.restlet.engine.http.cache.CacheStore;
+import org.restlet.engine.http.cache.FileCacheStore;
+import org.restlet.engine.http.cache.MemoryCacheStore;
+import org.restlet.ext.crypto.DigestSessionFilter;
+import org.restlet.resource.ClientResource;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * The app-wide HTTP response cache, in front of one shared client connector.
+ *
+ * Responses are kept in memory and in the app's cache directory, and are
+ * reused or revalidated according to the Cache-Control, Expires, ETag and
+ * Last-Modified headers sent by the server.  The client connector asks for
+ * gzip or deflate compressed responses and decodes them as they are read;
+ * the cache holds the decoded entities.
+ *
+ * Between the cache and the connector, requests with Digest credentials
+ * reuse the nonce of the last challenge of their server, so that only the
+ * first one pays for a 401 and a retry.
+ */
+public class HttpCache {
+	private static final String TAG = "HttpCache";
+	public static final long MEMORY_SIZE = 256L * 1024L;
+	public static final long DISK_SIZE = 2L * 1024L * 1024L;
+
+	private static HttpCache m_instance;
+
+	private final CacheStore m_memoryStore;
+	private final CacheStore m_diskStore;
+	private final CacheFilter m_filter;
+	private final DigestSessionFilter m_digestFilter;
+
+	protected HttpCache(final Context context) {
+		m_memoryStore = new MemoryCacheStore(MEMORY_SIZE);
+		m_diskStore = new FileCacheStore(new File(context.getCacheDir(), "http"), DISK_SIZE);
+		m_filter = new CacheFilter(new org.restlet.Context(), m_memoryStore, m_diskStore);
+		final org.restlet.Context clientContext = new org.restlet.Context();
+		clientContext.getParameters().add("decodingResponse", "true");
+		m_digestFilter = new DigestSessionFilter(new org.restlet.Context());
+		m_digestFilter.setNext(new Client(clientContext, Arrays.asList(Protocol.HTTP, Protocol.HTTPS)));
+		m_filter.setNext(m_digestFilter);
+	}
+
+	public static synchronized HttpCache getInstance(final Context context) {
+		if (m_instance == null) {
+			m_instance = new HttpCache(context.getApplicationContext());
+		}
+		return m_instance;
+	}
+
+	/**
+	 * Send the resource's requests through the cache.
+	 */
+	public void attach(final ClientResource resource) {
+		resource.setNext(m_filter);
+	}
+
+	public CacheFilter getFilter() {
+		return m_filter;
+	}
+
+	/**
+	 * A cache filter sharing the stores of this cache, in front of another
+	 * client, such as one pipelining its requests.
+	 */
+	public CacheFilter createFilter(final Restlet next) {
+		final CacheFilter filter = new CacheFilter(new org.restlet.Context(), m_memoryStore, m_diskStore);
+		filter.setNext(next);
+		return filter;
+	}
+
+	public DigestSessionFilter getDigestFilter() {
+		return m_digestFilter;
+	}
+
+	public void logStatistics() {
+		Log.d(TAG, String.format("hit ratio %.2f (%d fresh, %d revalidated, %d missed), %d bytes saved", m_filter.getHitRatio(), m_filter.getHits(), m_filter.getRevalidations(), m_filter.getMisses(), m_filter.getBytesSaved()));
+		if (m_digestFilter.getChallenges() > 0) {
+			Log.d(TAG, String.format("digest: %d preemptive, %d round-trips saved, %d challenges (%d stale)", m_digestFilter.getAuthorizations(), m_digestFilter.getRoundTripsSaved(), m_digestFilter.getChallenges(), m_digestFilter.getStaleNonces()));
+		}
+	}
+}
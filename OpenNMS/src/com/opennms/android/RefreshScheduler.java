@@ -0,0 +1,249 @@
+package com.opennms.android;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+/**
+ * Runs every background fetch in the app on one small thread pool.
+ *
+ * Requests are keyed by the endpoint they fetch (relative to
+ * {@link ServerSettings#getBase()}).  Asking for an endpoint that is already
+ * being fetched or polled joins the existing job instead of starting another
+ * download, and its Request replaces the job's one for the runs to come.  A
+ * job is dropped once nobody has been subscribed to it for
+ * {@link #UNSUBSCRIBE_DELAY}, so an activity recreated for a configuration
+ * change picks its job up again; a run in progress is never interrupted.
+ *
+ * Polling jobs adapt their interval: it is reset to {@link #MIN_INTERVAL}
+ * whenever a run reports a change, and doubles up to {@link #MAX_INTERVAL}
+ * while nothing changes or the server cannot be reached.
+ */
+public class RefreshScheduler {
+	private static final String TAG = "RefreshScheduler";
+	public static final int THREADS = 2;
+	public static final long MIN_INTERVAL = 30L * 1000L;
+	public static final long MAX_INTERVAL = 10L * 60L * 1000L;
+	public static final long UNSUBSCRIBE_DELAY = 2L * 1000L;
+
+	/**
+	 * The actual work, run on a pool thread.
+	 */
+	public interface Request {
+		/**
+		 * @return true if the fetched data changed
+		 */
+		public boolean execute() throws Exception;
+	}
+
+	/**
+	 * Told about the outcome of each run, on the pool thread.
+	 */
+	public interface Callback {
+		public void onComplete(boolean changed);
+		public void onError(Exception e);
+	}
+
+	/**
+	 * Returned to each subscriber; cancel it when the data is no longer
+	 * wanted, for example when the activity is paused.
+	 */
+	public final class Subscription {
+		private final Job m_job;
+		private final Callback m_callback;
+		private final boolean m_poll;
+
+		private Subscription(final Job job, final Callback callback, final boolean poll) {
+			m_job = job;
+			m_callback = callback;
+			m_poll = poll;
+		}
+
+		public void cancel() {
+			unsubscribe(this);
+		}
+	}
+
+	private static RefreshScheduler m_instance;
+
+	private final ScheduledThreadPoolExecutor m_executor;
+	private final Map<String,Job> m_jobs = new HashMap<String,Job>();
+	private final ServerSettings m_settings = ServerSettings.getInstance();
+
+	protected RefreshScheduler() {
+		m_executor = new ScheduledThreadPoolExecutor(THREADS, new ThreadFactory() {
+			private final AtomicInteger m_count = new AtomicInteger();
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "RefreshScheduler-" + m_count.incrementAndGet());
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+	}
+
+	public static synchronized RefreshScheduler getInstance() {
+		if (m_instance == null) {
+			m_instance = new RefreshScheduler();
+		}
+		return m_instance;
+	}
+
+	/**
+	 * Fetch an endpoint once, joining a fetch of the same endpoint that is already running.
+	 */
+	public Subscription refresh(final String endpoint, final Request request, final Callback callback) {
+		return subscribe(endpoint, request, callback, false);
+	}
+
+	/**
+	 * Fetch an endpoint now and then periodically until the subscription is cancelled.
+	 */
+	public Subscription poll(final String endpoint, final Request request, final Callback callback) {
+		return subscribe(endpoint, request, callback, true);
+	}
+
+	private synchronized Subscription subscribe(final String endpoint, final Request request, final Callback callback, final boolean poll) {
+		final String key = m_settings.getBase() + endpoint;
+		Job job = m_jobs.get(key);
+		if (job == null) {
+			job = new Job(key);
+			m_jobs.put(key, job);
+			job.m_future = m_executor.schedule(job, 0, TimeUnit.MILLISECONDS);
+		} else if (job.m_running) {
+			Log.d(TAG, "joining running job for " + key);
+		} else {
+			// a poll waiting for its next turn, or a finished job waiting for
+			// its subscriber to come back; bring it forward, but a new poller
+			// does not get it closer than MIN_INTERVAL to the last run
+			final long delay = poll? Math.max(0, job.m_lastRun + MIN_INTERVAL - System.currentTimeMillis()) : 0;
+			if (job.m_future == null || delay < job.m_future.getDelay(TimeUnit.MILLISECONDS)) {
+				Log.d(TAG, "moving next poll of " + key + " to " + (delay / 1000) + "s from now");
+				if (job.m_future != null) {
+					job.m_future.cancel(false);
+				}
+				job.m_future = m_executor.schedule(job, delay, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (job.m_expiry != null) {
+			job.m_expiry.cancel(false);
+			job.m_expiry = null;
+		}
+		job.m_request = request;
+		job.m_callbacks.add(callback);
+		if (poll) {
+			job.m_pollers++;
+		}
+		return new Subscription(job, callback, poll);
+	}
+
+	private synchronized void unsubscribe(final Subscription subscription) {
+		final Job job = subscription.m_job;
+		if (!job.m_callbacks.remove(subscription.m_callback)) {
+			return;
+		}
+		if (subscription.m_poll) {
+			job.m_pollers--;
+		}
+		if (job.m_callbacks.isEmpty() && m_jobs.get(job.m_key) == job) {
+			job.m_expiry = m_executor.schedule(new Runnable() {
+				public void run() {
+					expire(job);
+				}
+			}, UNSUBSCRIBE_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Drop a job nobody subscribed to again after the last one left.  A run
+	 * in progress is left to finish, it just does not get scheduled again.
+	 */
+	private synchronized void expire(final Job job) {
+		if (!job.m_callbacks.isEmpty() || m_jobs.get(job.m_key) != job) {
+			return;
+		}
+		Log.d(TAG, "no more subscribers, cancelling " + job.m_key);
+		m_jobs.remove(job.m_key);
+		job.m_expiry = null;
+		if (!job.m_running && job.m_future != null) {
+			job.m_future.cancel(false);
+		}
+	}
+
+	/**
+	 * @return the Request to run, which is the latest subscriber's
+	 */
+	private synchronized Request started(final Job job) {
+		job.m_running = true;
+		return job.m_request;
+	}
+
+	/**
+	 * Schedule the job's next run, or drop it if nobody is polling it.
+	 *
+	 * @return the callbacks to tell about the run that just finished
+	 */
+	private synchronized List<Callback> finished(final Job job, final boolean changed) {
+		job.m_running = false;
+		job.m_lastRun = System.currentTimeMillis();
+		final List<Callback> callbacks = new ArrayList<Callback>(job.m_callbacks);
+		if (m_jobs.get(job.m_key) != job) {
+			return callbacks;
+		}
+		if (job.m_pollers == 0) {
+			if (job.m_expiry == null) {
+				m_jobs.remove(job.m_key);
+			} else {
+				// kept until it expires, in case the poller comes back
+				job.m_future = null;
+			}
+			return callbacks;
+		}
+		job.m_interval = changed? MIN_INTERVAL : Math.min(job.m_interval * 2, MAX_INTERVAL);
+		Log.d(TAG, String.format("next poll of %s in %ds", job.m_key, job.m_interval / 1000));
+		job.m_future = m_executor.schedule(job, job.m_interval, TimeUnit.MILLISECONDS);
+		return callbacks;
+	}
+
+	private final class Job implements Runnable {
+		private final String m_key;
+		private Request m_request;
+		private final List<Callback> m_callbacks = new ArrayList<Callback>();
+		private int m_pollers = 0;
+		private long m_interval = MIN_INTERVAL;
+		private long m_lastRun = 0;
+		private boolean m_running = false;
+		private ScheduledFuture<?> m_future;
+		private ScheduledFuture<?> m_expiry;
+
+		private Job(final String key) {
+			m_key = key;
+		}
+
+		public void run() {
+			final Request request = started(this);
+			boolean changed = false;
+			Exception error = null;
+			try {
+				changed = request.execute();
+			} catch (final Exception e) {
+				Log.w(TAG, "Request for " + m_key + " failed.", e);
+				error = e;
+			}
+			for (final Callback callback : finished(this, changed)) {
+				if (error == null) {
+					callback.onComplete(changed);
+				} else {
+					callback.onError(error);
+				}
+			}
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package com.opennms.android;
 
+import org.restlet.data.ChallengeScheme;
+import org.restlet.engine.http.timing.LatencyRecorder;
+
 public class ServerSettings {
 	private static ServerSettings m_instance;
 	private boolean m_https = false;
@@ -8,6 +11,8 @@ public class ServerSettings {
 	private String m_path = "/opennms/rest";
 	private String m_username = "admin";
 	private String m_password = "admin";
+	private boolean m_json = false;
+	private boolean m_digest = false;
 	private String m_base;
 	
 	protected ServerSettings() {
@@ -61,6 +66,45 @@ public class ServerSettings {
 		m_password = password;
 	}
 	
+	public boolean getDigest() {
+		return m_digest;
+	}
+	/**
+	 * Authenticate with HTTP Digest instead of Basic, for servers (or proxies) that require it.
+	 */
+	public void setDigest(final boolean digest) {
+		m_digest = digest;
+	}
+	public ChallengeScheme getChallengeScheme() {
+		return m_digest? ChallengeScheme.HTTP_DIGEST : ChallengeScheme.HTTP_BASIC;
+	}
+	
+	public boolean getJson() {
+		return m_json;
+	}
+	/**
+	 * Ask the server for JSON instead of XML where a streaming JSON parser exists (outages).
+	 */
+	public void setJson(final boolean json) {
+		m_json = json;
+	}
+
+	public boolean getTiming() {
+		return LatencyRecorder.getInstance().isEnabled();
+	}
+	/**
+	 * Time each phase of the calls to the server, per endpoint; see {@link #getTimings()}.
+	 */
+	public void setTiming(final boolean timing) {
+		LatencyRecorder.getInstance().setEnabled(timing);
+	}
+	/**
+	 * @return a table of the phase timings of the calls made since timing was enabled
+	 */
+	public String getTimings() {
+		return LatencyRecorder.getInstance().dump();
+	}
+
 	public String getBase() {
 		if (m_base == null) {
 			m_base = String.format("http%s://%s:%d%s", (m_https? "s":""), m_host, m_port, m_path);
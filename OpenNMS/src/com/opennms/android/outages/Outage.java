@@ -3,7 +3,7 @@ package com.opennms.android.outages;
 import java.util.Date;
 
 public class Outage {
-	private Integer m_id;
+	private int m_id;
 	private String m_ipAddress;
 	private String m_serviceName;
 	private Date m_ifLostService;
@@ -13,12 +13,15 @@ public class Outage {
 	private String m_logMessage;
 	private String m_uei;
 	private String m_severity;
-	private Integer m_nodeId;
+	private int m_nodeId;
 
-	public Integer getId() {
+	/**
+	 * @return the outage ID, or 0 if unknown
+	 */
+	public int getId() {
 		return m_id;
 	}
-	public void setId(final Integer id) {
+	public void setId(final int id) {
 		m_id = id;
 	}
 	public String getIpAddress() {
@@ -75,10 +78,13 @@ public class Outage {
 	public void setSeverity(final String severity) {
 		m_severity = severity;
 	}
-	public Integer getNodeId() {
+	/**
+	 * @return the node ID, or 0 if unknown
+	 */
+	public int getNodeId() {
 		return m_nodeId;
 	}
-	public void setNodeId(final Integer nodeId) {
+	public void setNodeId(final int nodeId) {
 		m_nodeId = nodeId;
 	}
 
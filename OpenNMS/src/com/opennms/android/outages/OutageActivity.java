@@ -1,20 +1,9 @@
 package com.opennms.android.outages;
 
-import java.io.IOException;
-import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.restlet.data.ChallengeResponse;
-import org.restlet.data.ChallengeScheme;
-import org.restlet.resource.ClientResource;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
+import java.util.Set;
 
 import android.app.ListActivity;
 import android.app.ProgressDialog;
@@ -26,27 +15,37 @@ import android.widget.AdapterView.OnItemClickListener;
 import android.widget.ListView;
 import android.widget.Toast;
 
+import com.opennms.android.HttpCache;
 import com.opennms.android.R;
-import com.opennms.android.ServerSettings;
+import com.opennms.android.RefreshScheduler;
 
 public class OutageActivity extends ListActivity {
 	private static final String TAG = "OutageActivity";
 	private ProgressDialog m_progressDialog = null;
 	private List<Outage> m_outages = new ArrayList<Outage>();
 	private OutageAdapter m_outageAdapter = null;
-	private Runnable m_viewOutages = null;
-	private ServerSettings m_settings = ServerSettings.getInstance();
+	private RefreshScheduler.Subscription m_subscription = null;
+	private OutageStore m_store = null;
+	private OutageSync m_sync = null;
+	private volatile List<Outage> m_pending = null;
+	/** Whether m_outages is empty, for the refresh callback, which runs on a pool thread. */
+	private volatile boolean m_empty = true;
+	private int m_streamed = 0;
+	private Set<Integer> m_unstreamed = null;
 
     public void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
         setContentView(R.layout.outage);
+        m_store = OutageStore.getInstance(this);
+        m_sync = new OutageSync(m_store, HttpCache.getInstance(this));
+        m_outages.addAll(m_store.getOutages(false));
+        m_empty = m_outages.isEmpty();
         m_outageAdapter = new OutageAdapter(this, R.layout.severity_item, m_outages);
         setListAdapter(m_outageAdapter);
         
         ListView lv = getListView();
-        // FIXME: implement proper filtering in the OutageAdapter
-//        lv.setTextFilterEnabled(true);
+        lv.setTextFilterEnabled(true);
         lv.setOnItemClickListener(new OnItemClickListener() {
         	public void onItemClick(final AdapterView<?> parent, final View view, final int position, final long id) {
         		Log.d(TAG, "clicked: " + view);
@@ -56,71 +55,182 @@ public class OutageActivity extends ListActivity {
           });
 
 
-        m_viewOutages = new Runnable() {
-        	public void run() {
-        		try {
-					getData();
-				} catch (final Exception e) {
-					Log.w(TAG, "An error occurred getting outage data.", e);
-				}
-        	}
-        };
-        Thread thread = new Thread(null, m_viewOutages, "MagentoBackground");
-        thread.start();
-        m_progressDialog = ProgressDialog.show(this, "Please wait...", "Retrieving data ...", true);
-        
+        if (m_outages.isEmpty()) {
+        	m_progressDialog = ProgressDialog.show(this, "Please wait...", "Retrieving data ...", true);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+    	super.onResume();
+    	m_subscription = RefreshScheduler.getInstance().poll(OutageSync.ENDPOINT, m_refresh, m_refreshCallback);
     }
 
-    public void getData() throws IOException, ParserConfigurationException, SAXException {
+    @Override
+    protected void onPause() {
+    	super.onPause();
+    	if (m_subscription != null) {
+    		m_subscription.cancel();
+    		m_subscription = null;
+    	}
+    }
+
+    /**
+     * @return true if the outages changed
+     */
+    public boolean getData() throws Exception {
     	Log.d(TAG, "getData()");
-    	List<Outage> outages = new ArrayList<Outage>();
-
-    	final String url = m_settings.getBase() + "/outages?limit=50&orderBy=ifLostService&order=desc&ifRegainedService=null";
-    	Log.d(TAG, "url = " + url);
-		ClientResource resource = new ClientResource(url);
-        resource.setChallengeResponse(new ChallengeResponse(ChallengeScheme.HTTP_BASIC, m_settings.getUsername(), m_settings.getPassword()));
-
-        Log.d(TAG, "getting resource");
-        resource.get();
-        if (resource.getStatus().isSuccess() && resource.getResponseEntity().isAvailable()) { 
-        	Log.d(TAG, "resource is available, parsing");
-        	SAXParserFactory spf = SAXParserFactory.newInstance();
-            SAXParser sp = spf.newSAXParser();
-            XMLReader xr = sp.getXMLReader();
-            OutageParseHandler handler = new OutageParseHandler(false);
-            xr.setContentHandler(handler);
-            Reader reader = null;
-            try {
-            	reader = resource.getResponseEntity().getReader();
-				xr.parse(new InputSource(reader));
-				outages = handler.getOutages();
-            } catch (final Exception e) {
-            	Log.w(TAG, "failed to parse", e);
-            } finally {
-            	if (reader != null) {
-            		try {
-            			reader.close();
-            		} catch (final Exception e) {
-            			Log.d(TAG, "Unable to close reader.", e);
-            		}
-            	}
-            }
-        } else {
-        	Log.d(TAG, "failed to get response entity: " + resource.getStatus());
-        }
+    	final OutagePublisher publisher = new OutagePublisher(this, m_showBatch, false, m_outageAdapter.getRenderer());
+    	final boolean changed = m_sync.sync(publisher);
+    	publisher.finish();
+    	return changed;
+    }
 
-        synchronized(m_outages) {
-        	m_outages.clear();
-        	m_outages.addAll(outages);
-        }
-//        Log.d(TAG, "returning " + m_outages);
-        runOnUiThread(m_returnRes);
+    private RefreshScheduler.Request m_refresh = new RefreshScheduler.Request() {
+    	public boolean execute() throws Exception {
+    		return getData();
+    	}
+    };
+
+    private RefreshScheduler.Callback m_refreshCallback = new RefreshScheduler.Callback() {
+    	public void onComplete(final boolean changed) {
+    		if (changed || m_empty) {
+    			final List<Outage> outages = m_store.getOutages(false);
+    			// render the top of the list here rather than on the UI thread
+    			m_outageAdapter.getRenderer().prepare(outages, OutageRenderer.PREFETCH);
+    			m_pending = outages;
+    		}
+    		runOnUiThread(m_returnRes);
+    	}
+    	public void onError(final Exception e) {
+    		Log.w(TAG, "An error occurred getting outage data.", e);
+    		runOnUiThread(m_returnRes);
+    	}
+    };
+
+    /**
+     * Rows arriving while a full download is still being parsed.  They are
+     * added as a prefix of the list; rows that are gone on the server are
+     * only dropped once the download is complete.
+     */
+    private OutagePublisher.Callback m_showBatch = new OutagePublisher.Callback() {
+    	public void onOutages(final List<Outage> outages) {
+    		if (m_unstreamed == null) {
+    			dismissProgress();
+    			m_unstreamed = new HashSet<Integer>(m_outages.size() * 2);
+    			for (final Outage o : m_outages) {
+    				m_unstreamed.add(o.getId());
+    			}
+    			m_streamed = 0;
+    		}
+    		if (appendOutages(outages) > 0) {
+    			m_empty = m_outages.isEmpty();
+    			m_outageAdapter.notifyDataSetChanged();
+    		}
+    	}
+    };
+
+    /**
+     * Add a batch of the download in progress after the rows already
+     * streamed, in place of the older copies of the same outages.  Only the
+     * rows up to the last older copy are looked at; when the server lists the
+     * outages in the order they are shown, that is just the batch's length.
+     *
+     * @return the number of rows added or replaced
+     */
+    protected int appendOutages(final List<Outage> outages) {
+    	final Set<Integer> replaced = new HashSet<Integer>(outages.size() * 2);
+    	for (final Outage o : outages) {
+    		if (m_unstreamed.remove(o.getId())) {
+    			replaced.add(o.getId());
+    		}
+    	}
+
+    	int end = m_streamed;
+    	for (int found = 0; found < replaced.size() && end < m_outages.size(); end++) {
+    		if (replaced.contains(m_outages.get(end).getId())) {
+    			found++;
+    		}
+    	}
+    	// move the rows that stay behind the older copies, freeing the
+    	// older copies' slots right after the streamed rows
+    	int kept = end;
+    	for (int i = end - 1; i >= m_streamed; i--) {
+    		final Outage o = m_outages.get(i);
+    		if (!replaced.contains(o.getId())) {
+    			m_outages.set(--kept, o);
+    		}
+    	}
+    	final int free = kept - m_streamed;
+    	for (int i = 0; i < free; i++) {
+    		m_outages.set(m_streamed + i, outages.get(i));
+    	}
+    	if (free < outages.size()) {
+    		m_outages.addAll(m_streamed + free, outages.subList(free, outages.size()));
+    	}
+    	m_streamed += outages.size();
+    	return outages.size();
+    }
+
+    /**
+     * Bring m_outages in line with the given list.  The new contents are
+     * built in one pass and only copied in if a row was added, removed,
+     * replaced or moved.
+     *
+     * @param partial if true, the list is only the head of the new data and rows missing from it are kept
+     * @return the number of positions whose row changed
+     */
+    protected int mergeOutages(final List<Outage> outages, final boolean partial) {
+    	final List<Outage> merged;
+    	if (partial) {
+    		final Set<Integer> ids = new HashSet<Integer>(outages.size() * 2);
+    		for (final Outage o : outages) {
+    			ids.add(o.getId());
+    		}
+    		merged = new ArrayList<Outage>(outages.size() + m_outages.size());
+    		merged.addAll(outages);
+    		for (final Outage o : m_outages) {
+    			if (!ids.contains(o.getId())) {
+    				merged.add(o);
+    			}
+    		}
+    	} else {
+    		merged = outages;
+    	}
+
+    	final int common = Math.min(merged.size(), m_outages.size());
+    	int changed = Math.max(merged.size(), m_outages.size()) - common;
+    	for (int i = 0; i < common; i++) {
+    		if (m_outages.get(i) != merged.get(i)) {
+    			changed++;
+    		}
+    	}
+    	if (changed > 0) {
+    		// the adapter holds on to m_outages, so refill it rather than replace it
+    		m_outages.clear();
+    		m_outages.addAll(merged);
+    	}
+    	return changed;
     }
 
     private Runnable m_returnRes = new Runnable() {
     	public void run() {
-			m_progressDialog.dismiss();
-			m_outageAdapter.notifyDataSetChanged();
+			dismissProgress();
+			m_unstreamed = null;
+			m_streamed = 0;
+			final List<Outage> outages = m_pending;
+			m_pending = null;
+			if (outages != null && mergeOutages(outages, false) > 0) {
+				m_empty = m_outages.isEmpty();
+				m_outageAdapter.notifyDataSetChanged();
+			}
     	}
     };
+
+    private void dismissProgress() {
+    	if (m_progressDialog != null) {
+    		m_progressDialog.dismiss();
+    		m_progressDialog = null;
+    	}
+    }
 }
@@ -3,49 +3,199 @@ package com.opennms.android.outages;
 import java.util.List;
 
 import android.content.Context;
-import android.text.Html;
+import android.os.AsyncTask;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
+import android.widget.Filter;
 import android.widget.TextView;
 import android.widget.TextView.BufferType;
 
 import com.opennms.android.R;
 
+/**
+ * Shows the outages of a list, or the ones matching the text typed in the
+ * list when it is filtered.
+ *
+ * Filtering goes through an {@link OutageIndex}, brought up to date with the
+ * list on each {@link #notifyDataSetChanged()}, instead of scanning the
+ * string form of every row.  The filter text may also hold "severity:major"
+ * or "node:12" to only show one severity or node.  A long list can still
+ * take more than a frame to filter, so it is never filtered on the UI
+ * thread: keystrokes go through the list's {@link Filter}, and a filtered
+ * list that changed is filtered again in an {@link AsyncTask}.
+ *
+ * Rows are bound from the adapter's {@link OutageRenderer}, which renders
+ * them ahead of time off the UI thread.
+ */
 public class OutageAdapter extends ArrayAdapter<Outage> {
 	private List<Outage> m_items;
 	private Context m_context;
+	private final OutageIndex m_index = new OutageIndex();
+	private final OutageRenderer m_renderer = new OutageRenderer();
+	private OutageIndex.Query m_query = null;
+	private List<Outage> m_filtered = null;
+	private Filter m_filter = null;
+	/** Bumped by each change to the list, to tell stale filter results. */
+	private volatile int m_generation = 0;
 
 	public OutageAdapter(final Context context, final int textViewResourceId, final List<Outage> items) {
 		super(context, textViewResourceId, items);
 		m_context = context;
 		m_items = items;
+		m_index.sync(items);
+	}
+
+	/**
+	 * @return the rows shown: all the outages, or those matching the filter
+	 */
+	protected List<Outage> getRows() {
+		return (m_filtered == null)? m_items : m_filtered;
+	}
+
+	@Override
+	public int getCount() {
+		return getRows().size();
+	}
+
+	@Override
+	public Outage getItem(final int position) {
+		return getRows().get(position);
+	}
+
+	public OutageIndex getIndex() {
+		return m_index;
+	}
+
+	public OutageRenderer getRenderer() {
+		return m_renderer;
+	}
+
+	/**
+	 * Index the changes to the list and show it, once filtered again if a
+	 * filter is set.
+	 */
+	@Override
+	public void notifyDataSetChanged() {
+		m_index.sync(m_items);
+		m_generation++;
+		if (m_query != null) {
+			refilter(m_query);
+			return;
+		}
+		m_renderer.reset();
+		super.notifyDataSetChanged();
+	}
+
+	/**
+	 * Filter the list again in the background, and show the result unless
+	 * the filter or the list changed in the meantime.
+	 */
+	private void refilter(final OutageIndex.Query query) {
+		final int generation = m_generation;
+		new AsyncTask<Void,Void,List<Outage>>() {
+			@Override
+			protected List<Outage> doInBackground(final Void... params) {
+				return m_index.filter(query);
+			}
+
+			@Override
+			protected void onPostExecute(final List<Outage> outages) {
+				if (query == m_query && generation == m_generation) {
+					showFiltered(query, outages);
+				}
+			}
+		}.execute();
+	}
+
+	private void showFiltered(final OutageIndex.Query query, final List<Outage> outages) {
+		m_query = query;
+		m_filtered = outages;
+		m_renderer.reset();
+		super.notifyDataSetChanged();
+	}
+
+	@Override
+	public Filter getFilter() {
+		if (m_filter == null) {
+			m_filter = new Filter() {
+				@Override
+				protected FilterResults performFiltering(final CharSequence constraint) {
+					final FilterResults results = new FilterResults();
+					final OutageIndex.Query query = (constraint == null)? null : OutageIndex.Query.parse(constraint);
+					if (query != null && !query.isEmpty()) {
+						final int generation = m_generation;
+						final List<Outage> outages = m_index.filter(query);
+						results.values = new FilterResult(query, outages, generation);
+						results.count = outages.size();
+					}
+					return results;
+				}
+
+				@Override
+				protected void publishResults(final CharSequence constraint, final FilterResults results) {
+					if (results.values == null) {
+						showFiltered(null, null);
+						return;
+					}
+					final FilterResult result = (FilterResult) results.values;
+					showFiltered(result.m_query, result.m_outages);
+					if (result.m_generation != m_generation) {
+						// the list changed while filtering
+						refilter(result.m_query);
+					}
+				}
+			};
+		}
+		return m_filter;
 	}
 
 	@Override
 	public View getView(final int position, final View convertView, final ViewGroup parent) {
 		View v = convertView;
+		ViewHolder holder;
 		if (v == null) {
 			LayoutInflater vi = (LayoutInflater) m_context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
 			v = vi.inflate(R.layout.severity_item, null);
+			holder = new ViewHolder();
+			holder.m_top = (TextView) v.findViewById(R.id.toptext);
+			holder.m_bottom = (TextView) v.findViewById(R.id.bottomtext);
+			v.setTag(holder);
+		} else {
+			holder = (ViewHolder) v.getTag();
 		}
-		final Outage o = m_items.get(position);
-		if (o != null) {
-			TextView tt = (TextView) v.findViewById(R.id.toptext);
-			TextView bt = (TextView) v.findViewById(R.id.bottomtext);
-			if (tt != null) {
-				String host = o.getHost();
-				if (host == null) {
-					host = o.getIpAddress();
-				}
-				tt.setText(host);
-			}
-			if (bt != null) {
-				final String description = o.getDescription().replaceAll("<p>", "").replaceAll("</p>", "<br />").replace("<br />$", "");
-				bt.setText(Html.fromHtml(description), BufferType.SPANNABLE);
-			}
+		final OutageRenderer.Row row = m_renderer.bind(getRows(), position);
+		if (holder.m_top != null) {
+			holder.m_top.setText(row.getTitle());
+		}
+		if (holder.m_bottom != null) {
+			holder.m_bottom.setText(row.getDescription(), BufferType.SPANNABLE);
 		}
 		return v;
 	}
+
+	/**
+	 * What the filter hands from the background to the UI thread: the query,
+	 * the matching outages and the generation of the list they were found in.
+	 */
+	private static final class FilterResult {
+		private final OutageIndex.Query m_query;
+		private final List<Outage> m_outages;
+		private final int m_generation;
+
+		private FilterResult(final OutageIndex.Query query, final List<Outage> outages, final int generation) {
+			m_query = query;
+			m_outages = outages;
+			m_generation = generation;
+		}
+	}
+
+	/**
+	 * The views of a row, looked up once when it is inflated.
+	 */
+	private static final class ViewHolder {
+		private TextView m_top;
+		private TextView m_bottom;
+	}
 }
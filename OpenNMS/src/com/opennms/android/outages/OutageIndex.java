@@ -0,0 +1,409 @@
+package com.opennms.android.outages;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Searchable index of the outages in the list, so that filtering does not
+ * have to look at every row.
+ *
+ * The host, IP address, service name and UEI of each outage are lower-cased
+ * and kept whole and cut into words (host12.example.org is also host12,
+ * example and org), in one sorted map of words.  A search term matches an
+ * outage if one of its words starts with the term, like the default text
+ * filter of a list; the outages to check for a term are the ones holding the
+ * words in its range of the map.  Outages are also grouped by severity and
+ * node ID, which narrow a search to one value of each (facets).
+ *
+ * {@link #sync(List)} updates the index incrementally: only outages that
+ * were added, replaced or removed since the last call are (un)indexed.  It
+ * builds a new snapshot of the index and swaps it in, so searches never wait
+ * for a sync and always see one whole version of the list.
+ */
+public class OutageIndex {
+	/**
+	 * Terms matching more words than this do not narrow the search much; the
+	 * outages are checked one by one instead of merging that many word sets.
+	 */
+	public static final int MAX_WORDS = 64;
+
+	/**
+	 * A search: text terms, all of which must match, and optional facets.
+	 *
+	 * Parsed from what is typed in the list: words separated by spaces, where
+	 * "severity:major" and "node:12" select a facet.
+	 */
+	public static class Query {
+		private final List<String> m_terms = new ArrayList<String>();
+		private String m_severity = null;
+		private int m_nodeId = 0;
+
+		public static Query parse(final CharSequence constraint) {
+			final Query query = new Query();
+			for (final String token : constraint.toString().toLowerCase().trim().split("\\s+")) {
+				if (token.startsWith("severity:") && token.length() > 9) {
+					query.m_severity = token.substring(9);
+				} else if (token.startsWith("node:") && token.length() > 5) {
+					try {
+						query.m_nodeId = Integer.parseInt(token.substring(5));
+					} catch (final NumberFormatException e) {
+						query.m_terms.add(token);
+					}
+				} else if (token.length() > 0) {
+					query.m_terms.add(token);
+				}
+			}
+			return query;
+		}
+
+		public List<String> getTerms() {
+			return m_terms;
+		}
+		/**
+		 * @return the lower-cased severity to match, or null for any
+		 */
+		public String getSeverity() {
+			return m_severity;
+		}
+		/**
+		 * @return the node ID to match, or 0 for any
+		 */
+		public int getNodeId() {
+			return m_nodeId;
+		}
+		public boolean isEmpty() {
+			return m_terms.isEmpty() && m_severity == null && m_nodeId == 0;
+		}
+	}
+
+	private static final class Entry {
+		private final Outage m_outage;
+		private final String[] m_words;
+		private final String m_severity;
+		/** The last sync that found the outage in the list. */
+		private int m_generation;
+
+		private Entry(final Outage outage) {
+			m_outage = outage;
+			final Set<String> words = new HashSet<String>();
+			addWords(words, outage.getHost());
+			addWords(words, outage.getIpAddress());
+			addWords(words, outage.getServiceName());
+			addWords(words, outage.getUei());
+			m_words = words.toArray(new String[words.size()]);
+			m_severity = (outage.getSeverity() == null)? null : outage.getSeverity().toLowerCase();
+		}
+
+		private boolean matches(final Query query) {
+			if (query.m_severity != null && !query.m_severity.equals(m_severity)) {
+				return false;
+			}
+			if (query.m_nodeId != 0 && query.m_nodeId != m_outage.getNodeId()) {
+				return false;
+			}
+			for (final String term : query.m_terms) {
+				if (!matches(term)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean matches(final String term) {
+			for (final String word : m_words) {
+				if (word.startsWith(term)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * What {@link #filter(Query)} reads: the entries in list order, their
+	 * positions and the maps to look them up.  A sync builds the next snapshot
+	 * from the current one, copying the maps and each set it changes, then
+	 * publishes it whole; a published snapshot never changes, so it is read
+	 * without locking.
+	 */
+	private static final class Snapshot {
+		private final int m_generation;
+		private final List<Entry> m_order;
+		private final Map<Entry,Integer> m_positions;
+		private final TreeMap<String,Set<Entry>> m_words;
+		private final Map<String,Set<Entry>> m_severities;
+		private final Map<Integer,Set<Entry>> m_nodes;
+		/** The sets already copied while building, or null once published. */
+		private Map<Set<Entry>,Boolean> m_copied;
+
+		private Snapshot() {
+			m_generation = 0;
+			m_order = Collections.emptyList();
+			m_positions = Collections.emptyMap();
+			m_words = new TreeMap<String,Set<Entry>>();
+			m_severities = Collections.emptyMap();
+			m_nodes = Collections.emptyMap();
+		}
+
+		private Snapshot(final Snapshot previous, final int size) {
+			m_generation = previous.m_generation + 1;
+			m_order = new ArrayList<Entry>(size);
+			m_positions = new HashMap<Entry,Integer>(size * 4 / 3 + 1);
+			m_words = new TreeMap<String,Set<Entry>>(previous.m_words);
+			m_severities = new HashMap<String,Set<Entry>>(previous.m_severities);
+			m_nodes = new HashMap<Integer,Set<Entry>>(previous.m_nodes);
+			m_copied = new IdentityHashMap<Set<Entry>,Boolean>();
+		}
+
+		private void add(final Entry entry) {
+			m_positions.put(entry, m_order.size());
+			m_order.add(entry);
+		}
+
+		private void index(final Entry entry) {
+			for (final String word : entry.m_words) {
+				get(m_words, word).add(entry);
+			}
+			if (entry.m_severity != null) {
+				get(m_severities, entry.m_severity).add(entry);
+			}
+			get(m_nodes, entry.m_outage.getNodeId()).add(entry);
+		}
+
+		private void unindex(final Entry entry) {
+			for (final String word : entry.m_words) {
+				remove(m_words, word, entry);
+			}
+			if (entry.m_severity != null) {
+				remove(m_severities, entry.m_severity, entry);
+			}
+			remove(m_nodes, entry.m_outage.getNodeId(), entry);
+		}
+
+		/**
+		 * @return the set of the key, copied first if an earlier snapshot shares it
+		 */
+		private <K> Set<Entry> get(final Map<K,Set<Entry>> map, final K key) {
+			Set<Entry> entries = map.get(key);
+			if (entries == null) {
+				entries = new HashSet<Entry>();
+			} else if (m_copied.containsKey(entries)) {
+				return entries;
+			} else {
+				entries = new HashSet<Entry>(entries);
+			}
+			m_copied.put(entries, Boolean.TRUE);
+			map.put(key, entries);
+			return entries;
+		}
+
+		private <K> void remove(final Map<K,Set<Entry>> map, final K key, final Entry entry) {
+			final Set<Entry> entries = map.get(key);
+			if (entries != null && entries.contains(entry)) {
+				if (entries.size() == 1) {
+					map.remove(key);
+				} else {
+					get(map, key).remove(entry);
+				}
+			}
+		}
+	}
+
+	/** The outages by ID, only used by {@link #sync(List)}. */
+	private final Map<Integer,Entry> m_entries = new HashMap<Integer,Entry>();
+	private volatile Snapshot m_snapshot = new Snapshot();
+
+	/**
+	 * Bring the index in line with the list, in the list's order.  Searches
+	 * running meanwhile see the index as it was before.
+	 *
+	 * @return the number of outages (re)indexed or removed
+	 */
+	public synchronized int sync(final List<Outage> outages) {
+		int changed = 0;
+		final Snapshot next = new Snapshot(m_snapshot, outages.size());
+		for (int i = 0; i < outages.size(); i++) {
+			final Outage o = outages.get(i);
+			Entry entry = m_entries.get(o.getId());
+			if (entry == null || entry.m_outage != o) {
+				if (entry != null) {
+					next.unindex(entry);
+				}
+				entry = new Entry(o);
+				next.index(entry);
+				m_entries.put(o.getId(), entry);
+				changed++;
+			}
+			entry.m_generation = next.m_generation;
+			next.add(entry);
+		}
+		if (m_entries.size() > next.m_order.size()) {
+			for (final Iterator<Entry> i = m_entries.values().iterator(); i.hasNext(); ) {
+				final Entry entry = i.next();
+				if (entry.m_generation != next.m_generation) {
+					i.remove();
+					next.unindex(entry);
+					changed++;
+				}
+			}
+		}
+		next.m_copied = null;
+		m_snapshot = next;
+		return changed;
+	}
+
+	/**
+	 * @return the matching outages, in list order
+	 */
+	public List<Outage> filter(final Query query) {
+		final Snapshot snapshot = m_snapshot;
+		final List<Outage> result = new ArrayList<Outage>();
+		final Set<Entry> candidates = getCandidates(snapshot, query);
+		if (candidates == null || candidates.size() > snapshot.m_order.size() / 4) {
+			// sorting most of the list costs more than checking all of it
+			for (final Entry entry : snapshot.m_order) {
+				if (entry.matches(query)) {
+					result.add(entry.m_outage);
+				}
+			}
+		} else {
+			final List<Entry> sorted = new ArrayList<Entry>();
+			for (final Entry entry : candidates) {
+				if (entry.matches(query)) {
+					sorted.add(entry);
+				}
+			}
+			Collections.sort(sorted, new Comparator<Entry>() {
+				public int compare(final Entry a, final Entry b) {
+					return snapshot.m_positions.get(a) - snapshot.m_positions.get(b);
+				}
+			});
+			for (final Entry entry : sorted) {
+				result.add(entry.m_outage);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of indexed outages for each (lower-cased) severity
+	 */
+	public Map<String,Integer> getSeverityCounts() {
+		final Map<String,Integer> counts = new HashMap<String,Integer>();
+		for (final Map.Entry<String,Set<Entry>> e : m_snapshot.m_severities.entrySet()) {
+			counts.put(e.getKey(), e.getValue().size());
+		}
+		return counts;
+	}
+
+	/**
+	 * @return the number of indexed outages for each node ID
+	 */
+	public Map<Integer,Integer> getNodeCounts() {
+		final Map<Integer,Integer> counts = new HashMap<Integer,Integer>();
+		for (final Map.Entry<Integer,Set<Entry>> e : m_snapshot.m_nodes.entrySet()) {
+			counts.put(e.getKey(), e.getValue().size());
+		}
+		return counts;
+	}
+
+	public int size() {
+		return m_snapshot.m_order.size();
+	}
+
+	/**
+	 * The smallest set of outages the query can match, from its facets and
+	 * from the words its terms are a prefix of.
+	 *
+	 * @return the candidates, or null if the query does not narrow the search
+	 */
+	private static Set<Entry> getCandidates(final Snapshot snapshot, final Query query) {
+		final List<Set<Entry>> sets = new ArrayList<Set<Entry>>();
+		if (query.m_severity != null) {
+			sets.add(lookup(snapshot.m_severities, query.m_severity));
+		}
+		if (query.m_nodeId != 0) {
+			sets.add(lookup(snapshot.m_nodes, query.m_nodeId));
+		}
+		for (final String term : query.m_terms) {
+			final Set<Entry> entries = getEntries(snapshot, term);
+			if (entries != null) {
+				sets.add(entries);
+			}
+		}
+		if (sets.isEmpty()) {
+			return null;
+		}
+
+		Set<Entry> smallest = sets.get(0);
+		for (final Set<Entry> set : sets) {
+			if (set.size() < smallest.size()) {
+				smallest = set;
+			}
+		}
+		// the other sets are checked by Entry.matches()
+		return smallest;
+	}
+
+	/**
+	 * @return the outages holding a word starting with the term, or null if there are too many such words to merge
+	 */
+	private static Set<Entry> getEntries(final Snapshot snapshot, final String term) {
+		final SortedMap<String,Set<Entry>> range = snapshot.m_words.subMap(term, term + Character.MAX_VALUE);
+		Set<Entry> result = null;
+		int words = 0;
+		for (final Set<Entry> entries : range.values()) {
+			if (++words > MAX_WORDS) {
+				return null;
+			}
+			if (result == null) {
+				result = entries;
+			} else {
+				if (words == 2) {
+					result = new HashSet<Entry>(result);
+				}
+				result.addAll(entries);
+			}
+		}
+		return (result == null)? Collections.<Entry>emptySet() : result;
+	}
+
+	private static <K> Set<Entry> lookup(final Map<K,Set<Entry>> map, final K key) {
+		final Set<Entry> entries = map.get(key);
+		return (entries == null)? Collections.<Entry>emptySet() : entries;
+	}
+
+	/**
+	 * Add a lower-cased field, and each run of letters and digits in it.
+	 */
+	private static void addWords(final Set<String> words, final String field) {
+		if (field == null || field.length() == 0) {
+			return;
+		}
+		final String value = field.toLowerCase();
+		words.add(value);
+		int start = -1;
+		for (int i = 0; i <= value.length(); i++) {
+			if (i < value.length() && Character.isLetterOrDigit(value.charAt(i))) {
+				if (start < 0) {
+					start = i;
+				}
+			} else if (start >= 0) {
+				if (start > 0 || i < value.length()) {
+					words.add(value.substring(start, i));
+				}
+				start = -1;
+			}
+		}
+	}
+}
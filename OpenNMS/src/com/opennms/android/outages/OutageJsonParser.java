@@ -0,0 +1,290 @@
+package com.opennms.android.outages;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import android.util.Log;
+import android.util.SparseBooleanArray;
+
+/**
+ * Parses the JSON outage list of the OpenNMS REST API with Jackson's
+ * streaming parser, straight into {@link Outage} objects, without a tree or
+ * a String copy of the body.
+ *
+ * Fields are matched by name anywhere inside an outage, the way
+ * {@link OutageParseHandler} matches elements.  Attributes may come with an
+ * '@' prefix, numbers as strings, and a list of one outage as a single
+ * object, as JAXB's JSON notations do.  Dates and numbers are read from the
+ * parser's own character buffer.  Instances are not thread-safe.
+ */
+public class OutageJsonParser {
+	private static final String TAG = "OutageJsonParser";
+
+	private static final int OTHER = 0;
+	private static final int OUTAGE = 1;
+	private static final int SERVICE_LOST_EVENT = 2;
+	private static final int IP_ADDRESS = 3;
+	private static final int NAME = 4;
+	private static final int IF_LOST_SERVICE = 5;
+	private static final int IF_REGAINED_SERVICE = 6;
+	private static final int DESCRIPTION = 7;
+	private static final int HOST = 8;
+	private static final int LOG_MESSAGE = 9;
+	private static final int UEI = 10;
+	private static final int NODE_ID = 11;
+	private static final int ID = 12;
+	private static final int SEVERITY = 13;
+
+	private static final Map<String,Integer> FIELDS = new HashMap<String,Integer>();
+	static {
+		FIELDS.put("outage", OUTAGE);
+		FIELDS.put("serviceLostEvent", SERVICE_LOST_EVENT);
+		FIELDS.put("ipAddress", IP_ADDRESS);
+		FIELDS.put("name", NAME);
+		FIELDS.put("ifLostService", IF_LOST_SERVICE);
+		FIELDS.put("ifRegainedService", IF_REGAINED_SERVICE);
+		FIELDS.put("description", DESCRIPTION);
+		FIELDS.put("host", HOST);
+		FIELDS.put("logMessage", LOG_MESSAGE);
+		FIELDS.put("uei", UEI);
+		FIELDS.put("nodeId", NODE_ID);
+		FIELDS.put("id", ID);
+		FIELDS.put("@id", ID);
+		FIELDS.put("severity", SEVERITY);
+		FIELDS.put("@severity", SEVERITY);
+	}
+
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	private List<Outage> m_outages = new ArrayList<Outage>();
+	private SparseBooleanArray m_nodeIds = new SparseBooleanArray();
+	private Outage m_currentOutage = null;
+	private final TimestampParser m_timestampParser = new TimestampParser();
+	private boolean m_allowDuplicateNodes = true;
+	private OutageParseHandler.Listener m_listener = null;
+
+	// Jackson interns field names, so remembering the last lookup skips
+	// most hashing
+	private String m_lastName = null;
+	private int m_lastField = OTHER;
+
+	public OutageJsonParser() {
+	}
+
+	public OutageJsonParser(final boolean allowDuplicateNodes) {
+		this();
+		m_allowDuplicateNodes = allowDuplicateNodes;
+	}
+
+	public void setListener(final OutageParseHandler.Listener listener) {
+		m_listener = listener;
+	}
+
+	public List<Outage> getOutages() {
+		return m_outages;
+	}
+
+	/**
+	 * Parse an outage list, either <code>{"outage":[...]}</code> or a bare
+	 * array of outages.  The stream is not closed.
+	 */
+	public void parse(final InputStream in) throws IOException {
+		final JsonParser parser = FACTORY.createJsonParser(in);
+		try {
+			final JsonToken token = parser.nextToken();
+			if (token == JsonToken.START_ARRAY) {
+				parseOutages(parser);
+			} else if (token == JsonToken.START_OBJECT) {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					final int field = getField(parser.getCurrentName());
+					final JsonToken value = parser.nextToken();
+					if (field == OUTAGE && value == JsonToken.START_ARRAY) {
+						parseOutages(parser);
+					} else if (field == OUTAGE && value == JsonToken.START_OBJECT) {
+						parseOutage(parser);
+					} else {
+						parser.skipChildren();
+					}
+				}
+			} else {
+				throw new JsonParseException("Expected an outage list, got " + token, parser.getCurrentLocation());
+			}
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Parse the outages of an array, the parser being on its start.
+	 */
+	private void parseOutages(final JsonParser parser) throws IOException {
+		JsonToken token;
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+			if (token == JsonToken.START_OBJECT) {
+				parseOutage(parser);
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Parse an outage, the parser being on the start of its object.
+	 */
+	private void parseOutage(final JsonParser parser) throws IOException {
+		m_currentOutage = new Outage();
+		parseObject(parser, OUTAGE);
+
+		final int nodeId = m_currentOutage.getNodeId();
+		if (m_allowDuplicateNodes || nodeId == 0 || !m_nodeIds.get(nodeId)) {
+			m_outages.add(m_currentOutage);
+			if (m_listener != null) {
+				m_listener.onOutage(m_currentOutage);
+			}
+		}
+		m_nodeIds.put(nodeId, true);
+		m_currentOutage = null;
+	}
+
+	/**
+	 * Parse the fields of an object inside an outage, the parser being on
+	 * the start of the object.
+	 *
+	 * @param container the field holding the object
+	 */
+	private void parseObject(final JsonParser parser, final int container) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final int field = getField(parser.getCurrentName());
+			JsonToken token = parser.nextToken();
+			if (token == JsonToken.START_OBJECT) {
+				parseObject(parser, field);
+			} else if (token == JsonToken.START_ARRAY) {
+				while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+					if (token == JsonToken.START_OBJECT) {
+						parseObject(parser, field);
+					} else if (token == JsonToken.START_ARRAY) {
+						parser.skipChildren();
+					} else {
+						setValue(parser, token, container, field);
+					}
+				}
+			} else {
+				setValue(parser, token, container, field);
+			}
+		}
+	}
+
+	private void setValue(final JsonParser parser, final JsonToken token, final int container, final int field) throws IOException {
+		if (token == JsonToken.VALUE_NULL) {
+			return;
+		}
+		switch (field) {
+			case ID:
+				if (container == OUTAGE) {
+					try {
+						m_currentOutage.setId(getInt(parser, token));
+					} catch (final NumberFormatException e) {
+						Log.w(TAG, "Unable to parse outage id: " + parser.getText(), e);
+					}
+				}
+				break;
+			case SEVERITY:
+				if (container == SERVICE_LOST_EVENT) {
+					m_currentOutage.setSeverity(parser.getText());
+				}
+				break;
+			case IP_ADDRESS:
+				m_currentOutage.setIpAddress(parser.getText());
+				break;
+			case NAME:
+				m_currentOutage.setServiceName(parser.getText());
+				break;
+			case IF_LOST_SERVICE:
+				m_currentOutage.setIfLostService(getDate(parser, token));
+				break;
+			case IF_REGAINED_SERVICE:
+				m_currentOutage.setIfRegainedService(getDate(parser, token));
+				break;
+			case DESCRIPTION:
+				m_currentOutage.setDescription(parser.getText());
+				break;
+			case HOST:
+				m_currentOutage.setHost(parser.getText());
+				break;
+			case LOG_MESSAGE:
+				m_currentOutage.setLogMessage(parser.getText());
+				break;
+			case UEI:
+				m_currentOutage.setUei(parser.getText());
+				break;
+			case NODE_ID:
+				try {
+					m_currentOutage.setNodeId(getInt(parser, token));
+				} catch (final NumberFormatException e) {
+					Log.w(TAG, "Unable to parse node id: " + parser.getText(), e);
+				}
+				break;
+		}
+	}
+
+	private int getField(final String name) {
+		if (name != m_lastName) {
+			final Integer field = FIELDS.get(name);
+			m_lastName = name;
+			m_lastField = (field == null)? OTHER : field;
+		}
+		return m_lastField;
+	}
+
+	/**
+	 * @return the value as a date, from a timestamp string or milliseconds since the epoch
+	 */
+	private Date getDate(final JsonParser parser, final JsonToken token) throws IOException {
+		if (token == JsonToken.VALUE_NUMBER_INT) {
+			return new Date(parser.getLongValue());
+		}
+		try {
+			return m_timestampParser.parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+		} catch (final ParseException e) {
+			Log.w(TAG, String.format("Unable to parse date '%s'", parser.getText()), e);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the value as an int, from a number or a string of digits
+	 */
+	private static int getInt(final JsonParser parser, final JsonToken token) throws IOException {
+		if (token == JsonToken.VALUE_NUMBER_INT) {
+			return parser.getIntValue();
+		}
+		final char[] text = parser.getTextCharacters();
+		int start = parser.getTextOffset();
+		int end = start + parser.getTextLength();
+		while (start < end && Character.isWhitespace(text[start])) start++;
+		while (end > start && Character.isWhitespace(text[end - 1])) end--;
+		if (start == end) {
+			throw new NumberFormatException("empty");
+		}
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			final char c = text[i];
+			if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - 9) / 10) {
+				throw new NumberFormatException(parser.getText());
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+}
@@ -1,34 +1,74 @@
 package com.opennms.android.outages;
 
+import java.io.IOException;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import android.util.Log;
+import android.util.SparseBooleanArray;
 
 public class OutageParseHandler extends DefaultHandler {
+	/**
+	 * Notified of each outage as soon as its closing tag has been parsed.
+	 */
+	public interface Listener {
+		public void onOutage(Outage outage) throws IOException;
+	}
+
 	private static final String TAG = "OutageParseHandler";
+
+	private static final int OTHER = 0;
+	private static final int OUTAGE = 1;
+	private static final int SERVICE_LOST_EVENT = 2;
+	private static final int IP_ADDRESS = 3;
+	private static final int NAME = 4;
+	private static final int IF_LOST_SERVICE = 5;
+	private static final int IF_REGAINED_SERVICE = 6;
+	private static final int DESCRIPTION = 7;
+	private static final int HOST = 8;
+	private static final int LOG_MESSAGE = 9;
+	private static final int UEI = 10;
+	private static final int NODE_ID = 11;
+
+	private static final Map<String,Integer> ELEMENTS = new HashMap<String,Integer>();
+	static {
+		ELEMENTS.put("outage", OUTAGE);
+		ELEMENTS.put("serviceLostEvent", SERVICE_LOST_EVENT);
+		ELEMENTS.put("ipAddress", IP_ADDRESS);
+		ELEMENTS.put("name", NAME);
+		ELEMENTS.put("ifLostService", IF_LOST_SERVICE);
+		ELEMENTS.put("ifRegainedService", IF_REGAINED_SERVICE);
+		ELEMENTS.put("description", DESCRIPTION);
+		ELEMENTS.put("host", HOST);
+		ELEMENTS.put("logMessage", LOG_MESSAGE);
+		ELEMENTS.put("uei", UEI);
+		ELEMENTS.put("nodeId", NODE_ID);
+	}
+
 	private List<Outage> m_outages = new ArrayList<Outage>();
-	private Set<Integer> m_nodeIds = new HashSet<Integer>();
+	private SparseBooleanArray m_nodeIds = new SparseBooleanArray();
 	private Outage m_currentOutage = null;
-	private StringBuffer m_currentText = null;
-	private Pattern m_pattern = Pattern.compile("^(\\d\\d\\d\\d-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d[\\+\\-\\s]*\\d\\d):(\\d\\d)$");
-	private SimpleDateFormat m_dateFormat;
+	private char[] m_text = new char[256];
+	private int m_textLength = 0;
+	private final TimestampParser m_timestampParser = new TimestampParser();
 	private boolean m_allowDuplicateNodes = true;
+	private Listener m_listener = null;
+
+	// SAX parsers generally hand out the same String instance for a given
+	// element name, so remembering the last lookup skips most hashing
+	private String m_lastName = null;
+	private int m_lastElement = OTHER;
 
 	public OutageParseHandler() {
 		super();
-		m_dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
 	}
 
 	public OutageParseHandler(final boolean allowDuplicateNodes) {
@@ -36,6 +76,10 @@ public class OutageParseHandler extends DefaultHandler {
 		m_allowDuplicateNodes = allowDuplicateNodes;
 	}
 
+	public void setListener(final Listener listener) {
+		m_listener = listener;
+	}
+
 	public List<Outage> getOutages() {
 		return m_outages;
 	}
@@ -44,7 +88,7 @@ public class OutageParseHandler extends DefaultHandler {
 	public void startDocument() throws SAXException {
 		super.startDocument();
 	}
-	
+
 	@Override
 	public void endDocument() throws SAXException {
 		super.endDocument();
@@ -52,82 +96,134 @@ public class OutageParseHandler extends DefaultHandler {
 
 	@Override
     public void startElement(final String namespaceURI, final String localName, final String qName, final Attributes atts) throws SAXException {
-		if (localName.equals("outage")) {
-			m_currentOutage = new Outage();
-			final String outageId = atts.getValue("id");
-			try {
-				m_currentOutage.setId(Integer.valueOf(outageId));
-			} catch (final NumberFormatException e) {
-				Log.w(TAG, "Unable to parse outage id: " + outageId, e);
-			}
-		} else if (localName.equals("serviceLostEvent")) {
-			m_currentOutage.setSeverity(atts.getValue("severity"));
+		switch (getElement(localName)) {
+			case OUTAGE:
+				m_currentOutage = new Outage();
+				final String outageId = atts.getValue("id");
+				try {
+					m_currentOutage.setId(Integer.parseInt(outageId));
+				} catch (final NumberFormatException e) {
+					Log.w(TAG, "Unable to parse outage id: " + outageId, e);
+				}
+				break;
+			case SERVICE_LOST_EVENT:
+				m_currentOutage.setSeverity(atts.getValue("severity"));
+				break;
 		}
-		m_currentText = new StringBuffer();
+		m_textLength = 0;
 	}
 
 	@Override
     public void endElement(final String namespaceURI, final String localName, final String qName) throws SAXException {
-		String currentText = null;
-		if (m_currentText != null) {
-			currentText = m_currentText.toString();
-		}
-		if (localName.equals("outage")) {
-			final Integer nodeId = m_currentOutage.getNodeId();
-
-			if (m_allowDuplicateNodes || nodeId == null) {
-				m_outages.add(m_currentOutage);
-			} else {
-				if (!m_nodeIds.contains(nodeId)) {
+		switch (getElement(localName)) {
+			case OUTAGE:
+				final int nodeId = m_currentOutage.getNodeId();
+				if (m_allowDuplicateNodes || nodeId == 0 || !m_nodeIds.get(nodeId)) {
 					m_outages.add(m_currentOutage);
+					if (m_listener != null) {
+						try {
+							m_listener.onOutage(m_currentOutage);
+						} catch (final IOException e) {
+							throw new SAXException(e);
+						}
+					}
 				}
-			}
-			m_nodeIds.add(m_currentOutage.getNodeId());
-			m_currentOutage = null;
-		} else if (localName.equals("ipAddress")) {
-			m_currentOutage.setIpAddress(currentText);
-		} else if (localName.equals("name")) {
-			m_currentOutage.setServiceName(currentText);
-		} else if (localName.equals("ifLostService")) {
-			m_currentOutage.setIfLostService(getDateFromString(currentText));
-		} else if (localName.equals("ifRegainedService")) {
-			m_currentOutage.setIfRegainedService(getDateFromString(currentText));
-		} else if (localName.equals("description")) {
-			m_currentOutage.setDescription(currentText);
-		} else if (localName.equals("host")) {
-			m_currentOutage.setHost(currentText);
-		} else if (localName.equals("logMessage")) {
-			m_currentOutage.setLogMessage(currentText);
-		} else if (localName.equals("uei")) {
-			m_currentOutage.setUei(currentText);
-		} else if (localName.equals("nodeId")) {
-			final String nodeId = currentText;
-			try {
-				m_currentOutage.setNodeId(Integer.valueOf(nodeId));
-			} catch (final NumberFormatException e) {
-				Log.w(TAG, "Unable to parse node id: " + nodeId, e);
-			}
+				m_nodeIds.put(nodeId, true);
+				m_currentOutage = null;
+				break;
+			case IP_ADDRESS:
+				m_currentOutage.setIpAddress(getText());
+				break;
+			case NAME:
+				m_currentOutage.setServiceName(getText());
+				break;
+			case IF_LOST_SERVICE:
+				m_currentOutage.setIfLostService(getTextAsDate());
+				break;
+			case IF_REGAINED_SERVICE:
+				m_currentOutage.setIfRegainedService(getTextAsDate());
+				break;
+			case DESCRIPTION:
+				m_currentOutage.setDescription(getText());
+				break;
+			case HOST:
+				m_currentOutage.setHost(getText());
+				break;
+			case LOG_MESSAGE:
+				m_currentOutage.setLogMessage(getText());
+				break;
+			case UEI:
+				m_currentOutage.setUei(getText());
+				break;
+			case NODE_ID:
+				try {
+					m_currentOutage.setNodeId(getTextAsInt());
+				} catch (final NumberFormatException e) {
+					Log.w(TAG, "Unable to parse node id: " + getText(), e);
+				}
+				break;
 		}
-		m_currentText = null;
+		m_textLength = 0;
 	}
 
 	@Override
     public void characters(final char ch[], final int start, final int length) {
-    	m_currentText.append(ch, start, length);
+		if (m_textLength + length > m_text.length) {
+			final char[] text = new char[Math.max(m_text.length * 2, m_textLength + length)];
+			System.arraycopy(m_text, 0, text, 0, m_textLength);
+			m_text = text;
+		}
+		System.arraycopy(ch, start, m_text, m_textLength, length);
+		m_textLength += length;
     }
 
 	protected Date getDateFromString(final String dateString) {
-		Date date = null;
-		final Matcher matcher = m_pattern.matcher(dateString);
 		try {
-			if (matcher.matches()) {
-				return m_dateFormat.parse(matcher.group(1) + matcher.group(2));
-			} else {
-				return m_dateFormat.parse(dateString);
-			}
+			return m_timestampParser.parse(dateString);
 		} catch (final ParseException e) {
 			Log.w(TAG, String.format("Unable to parse date '%s'", dateString), e);
 		}
-		return date;
+		return null;
+	}
+
+	private int getElement(final String localName) {
+		if (localName != m_lastName) {
+			final Integer element = ELEMENTS.get(localName);
+			m_lastName = localName;
+			m_lastElement = (element == null)? OTHER : element;
+		}
+		return m_lastElement;
+	}
+
+	private String getText() {
+		return new String(m_text, 0, m_textLength);
+	}
+
+	private Date getTextAsDate() {
+		try {
+			return m_timestampParser.parse(m_text, 0, m_textLength);
+		} catch (final ParseException e) {
+			Log.w(TAG, String.format("Unable to parse date '%s'", getText()), e);
+		}
+		return null;
+	}
+
+	private int getTextAsInt() {
+		int start = 0;
+		int end = m_textLength;
+		while (start < end && Character.isWhitespace(m_text[start])) start++;
+		while (end > start && Character.isWhitespace(m_text[end - 1])) end--;
+		if (start == end) {
+			throw new NumberFormatException("empty");
+		}
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			final char c = m_text[i];
+			if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - 9) / 10) {
+				throw new NumberFormatException(getText());
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
 	}
 }
@@ -0,0 +1,123 @@
+package com.opennms.android.outages;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import android.app.Activity;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+
+/**
+ * Hands outages to the UI thread in batches while the document is still
+ * being parsed.
+ *
+ * The first batch holds a single outage so something is on screen as soon
+ * as possible; after that batches double in size up to {@link #MAX_BATCH}.
+ * At most {@link #MAX_PENDING} batches may be waiting on the UI thread; past
+ * that the parsing thread blocks until the UI catches up, which in turn
+ * stops reading from the connection.
+ *
+ * Given an {@link OutageRenderer}, the publisher also renders the rows of the
+ * first outages on the parsing thread, so the first screen is bound without
+ * rendering anything on the UI thread.
+ */
+public class OutagePublisher implements OutageParseHandler.Listener {
+	/**
+	 * Receives each batch on the UI thread.
+	 */
+	public interface Callback {
+		public void onOutages(List<Outage> outages);
+	}
+
+	private static final String TAG = "OutagePublisher";
+	public static final int MAX_BATCH = 32;
+	public static final int MAX_PENDING = 2;
+
+	private final Activity m_activity;
+	private final Callback m_callback;
+	private final boolean m_allowDuplicateNodes;
+	private final OutageRenderer m_renderer;
+	private final Semaphore m_pending = new Semaphore(MAX_PENDING);
+	private final SparseBooleanArray m_nodeIds = new SparseBooleanArray();
+	private List<Outage> m_batch = new ArrayList<Outage>();
+	private int m_batchSize = 1;
+	private int m_count = 0;
+	private final long m_start = SystemClock.uptimeMillis();
+	private volatile long m_firstRow = -1;
+
+	public OutagePublisher(final Activity activity, final Callback callback, final boolean allowDuplicateNodes) {
+		this(activity, callback, allowDuplicateNodes, null);
+	}
+
+	/**
+	 * @param renderer renders the rows of the first {@link OutageRenderer#PREFETCH} outages, or null
+	 */
+	public OutagePublisher(final Activity activity, final Callback callback, final boolean allowDuplicateNodes, final OutageRenderer renderer) {
+		m_activity = activity;
+		m_callback = callback;
+		m_allowDuplicateNodes = allowDuplicateNodes;
+		m_renderer = renderer;
+	}
+
+	public void onOutage(final Outage outage) throws IOException {
+		final int nodeId = outage.getNodeId();
+		if (!m_allowDuplicateNodes && nodeId != 0) {
+			if (m_nodeIds.get(nodeId)) {
+				return;
+			}
+			m_nodeIds.put(nodeId, true);
+		}
+		if (m_renderer != null && m_count + m_batch.size() < OutageRenderer.PREFETCH) {
+			m_renderer.prepare(outage);
+		}
+		m_batch.add(outage);
+		if (m_batch.size() >= m_batchSize) {
+			flush();
+			m_batchSize = Math.min(m_batchSize * 2, MAX_BATCH);
+		}
+	}
+
+	/**
+	 * Publish whatever is left of the last batch.
+	 */
+	public void finish() throws IOException {
+		flush();
+		Log.i(TAG, String.format("published %d outages, first row after %dms, done after %dms", m_count, getTimeToFirstRow(), SystemClock.uptimeMillis() - m_start));
+	}
+
+	/**
+	 * @return milliseconds from creation until the first row reached the UI thread, or -1 if none has yet
+	 */
+	public long getTimeToFirstRow() {
+		return m_firstRow < 0? -1 : m_firstRow - m_start;
+	}
+
+	protected void flush() throws IOException {
+		if (m_batch.isEmpty()) return;
+		try {
+			m_pending.acquire();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for the UI thread");
+		}
+		final List<Outage> batch = m_batch;
+		m_batch = new ArrayList<Outage>(Math.min(m_batchSize * 2, MAX_BATCH));
+		m_count += batch.size();
+		m_activity.runOnUiThread(new Runnable() {
+			public void run() {
+				try {
+					if (m_firstRow < 0) {
+						m_firstRow = SystemClock.uptimeMillis();
+					}
+					m_callback.onOutages(batch);
+				} finally {
+					m_pending.release();
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,206 @@
+package com.opennms.android.outages;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.text.Html;
+
+/**
+ * Turns outages into what their row of the list shows, so that binding a
+ * row does not have to clean up the description and run Html.fromHtml() on
+ * the UI thread while the list is scrolling.
+ *
+ * Rows are rendered ahead of time on background threads: the first ones on
+ * the parsing thread as outages arrive (see {@link #prepare(Outage)}), and
+ * the ones around the scroll position on a renderer thread as rows are
+ * bound (see {@link #bind(List, int)}).  The last {@link #CAPACITY} rows are
+ * kept in a least-recently-used cache, keyed by outage; a changed outage is
+ * a new object, so it is rendered again.  A row that was not rendered yet is
+ * rendered when it is bound.
+ */
+public class OutageRenderer {
+	public static final int CAPACITY = 512;
+	/** Rows rendered ahead of the one being bound, in either direction. */
+	public static final int PREFETCH = 32;
+
+	/**
+	 * What a row shows, ready to be set on its views.
+	 */
+	public static final class Row {
+		private final CharSequence m_title;
+		private final CharSequence m_description;
+
+		private Row(final CharSequence title, final CharSequence description) {
+			m_title = title;
+			m_description = description;
+		}
+
+		/**
+		 * @return the host, or the IP address if the host is unknown
+		 */
+		public CharSequence getTitle() {
+			return m_title;
+		}
+		/**
+		 * @return the styled description
+		 */
+		public CharSequence getDescription() {
+			return m_description;
+		}
+	}
+
+	private static final ExecutorService m_executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(final Runnable r) {
+			final Thread thread = new Thread(r, "OutageRenderer");
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final Map<Outage,Row> m_rows = new LinkedHashMap<Outage,Row>(CAPACITY, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Outage,Row> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+	private int m_windowStart = 0;
+	private int m_windowEnd = 0;
+	private long m_hits = 0;
+	private long m_misses = 0;
+
+	/**
+	 * @return the row of an outage, rendering it now if it is not cached
+	 */
+	public Row get(final Outage outage) {
+		synchronized (m_rows) {
+			final Row row = m_rows.get(outage);
+			if (row != null) {
+				m_hits++;
+				return row;
+			}
+			m_misses++;
+		}
+		return put(outage, render(outage));
+	}
+
+	/**
+	 * Get the row at a position of the list, and render the rows around it
+	 * in the background once the position leaves the middle of the last
+	 * rendered window.  Must be called on the thread modifying the list.
+	 */
+	public Row bind(final List<Outage> outages, final int position) {
+		final int margin = PREFETCH / 2;
+		if ((position - margin < m_windowStart && m_windowStart > 0) || (position + margin >= m_windowEnd && m_windowEnd < outages.size())) {
+			m_windowStart = Math.max(0, position - PREFETCH);
+			m_windowEnd = Math.min(outages.size(), position + PREFETCH + 1);
+			prefetch(new ArrayList<Outage>(outages.subList(m_windowStart, m_windowEnd)));
+		}
+		return get(outages.get(position));
+	}
+
+	/**
+	 * Forget the rendered window, for example because the list changed.
+	 */
+	public void reset() {
+		m_windowStart = 0;
+		m_windowEnd = 0;
+	}
+
+	/**
+	 * Render an outage now, on the calling (background) thread, unless it is
+	 * cached.
+	 */
+	public void prepare(final Outage outage) {
+		synchronized (m_rows) {
+			if (m_rows.containsKey(outage)) {
+				return;
+			}
+		}
+		put(outage, render(outage));
+	}
+
+	/**
+	 * Render the first outages of a list now, on the calling (background) thread.
+	 */
+	public void prepare(final List<Outage> outages, final int count) {
+		for (int i = 0; i < outages.size() && i < count; i++) {
+			prepare(outages.get(i));
+		}
+	}
+
+	/**
+	 * @return the ratio of rows found in the cache when they were needed, or 0 if none were yet
+	 */
+	public double getHitRatio() {
+		synchronized (m_rows) {
+			final long total = m_hits + m_misses;
+			return total == 0? 0 : (double) m_hits / (double) total;
+		}
+	}
+
+	/**
+	 * Clean up an outage description and style it.
+	 */
+	public static Row render(final Outage outage) {
+		final String host = outage.getHost();
+		final String description = outage.getDescription();
+		return new Row((host == null)? outage.getIpAddress() : host, (description == null)? "" : Html.fromHtml(clean(description)));
+	}
+
+	/**
+	 * Drop the paragraphs of a description for line breaks, in one pass: the
+	 * opening tags are removed, and the closing ones turned into breaks
+	 * except at the end.
+	 */
+	protected static String clean(final String description) {
+		final StringBuilder sb = new StringBuilder(description.length() + 16);
+		int start = 0;
+		int tag = description.indexOf("<", start);
+		while (tag >= 0) {
+			if (description.startsWith("<p>", tag)) {
+				sb.append(description, start, tag);
+				start = tag + 3;
+			} else if (description.startsWith("</p>", tag)) {
+				sb.append(description, start, tag).append("<br />");
+				start = tag + 4;
+			}
+			tag = description.indexOf("<", tag + 1);
+		}
+		sb.append(description, start, description.length());
+
+		// no break after the last paragraph
+		int end = sb.length();
+		while (end > 0 && Character.isWhitespace(sb.charAt(end - 1))) {
+			end--;
+		}
+		if (end >= 6 && sb.indexOf("<br />", end - 6) == end - 6) {
+			sb.setLength(end - 6);
+		}
+		return sb.toString();
+	}
+
+	private void prefetch(final List<Outage> outages) {
+		m_executor.execute(new Runnable() {
+			public void run() {
+				for (final Outage outage : outages) {
+					prepare(outage);
+				}
+			}
+		});
+	}
+
+	private Row put(final Outage outage, final Row row) {
+		synchronized (m_rows) {
+			m_rows.put(outage, row);
+		}
+		return row;
+	}
+}
@@ -0,0 +1,317 @@
+package com.opennms.android.outages;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Persistent local copy of the current outages, keyed by outage ID.
+ *
+ * Besides the outages themselves, the store remembers what is needed to ask
+ * the server for changes only: the base URL it was filled from, the newest
+ * ifLostService/ifRegainedService seen (the watermark), and the ETag and
+ * Last-Modified of the last full download.
+ */
+public class OutageStore {
+	private static final String TAG = "OutageStore";
+	private static final String FILENAME = "outages.dat";
+	private static final int VERSION = 1;
+
+	private static OutageStore m_instance;
+
+	private final Context m_context;
+	private final Map<Integer,Outage> m_outages = new HashMap<Integer,Outage>();
+	private String m_base;
+	private Date m_watermark;
+	private String m_etag;
+	private Date m_lastModified;
+	private long m_lastFullSync = 0;
+
+	protected OutageStore(final Context context) {
+		m_context = context;
+	}
+
+	public static synchronized OutageStore getInstance(final Context context) {
+		if (m_instance == null) {
+			m_instance = new OutageStore(context.getApplicationContext());
+			m_instance.load();
+		}
+		return m_instance;
+	}
+
+	public synchronized String getBase() {
+		return m_base;
+	}
+	public synchronized Date getWatermark() {
+		return m_watermark;
+	}
+	public synchronized String getEtag() {
+		return m_etag;
+	}
+	public synchronized Date getLastModified() {
+		return m_lastModified;
+	}
+	public synchronized long getLastFullSync() {
+		return m_lastFullSync;
+	}
+	public synchronized boolean isEmpty() {
+		return m_outages.isEmpty();
+	}
+
+	/**
+	 * Forget everything, for example because the server changed.
+	 */
+	public synchronized void reset(final String base) {
+		m_outages.clear();
+		m_base = base;
+		m_watermark = null;
+		m_etag = null;
+		m_lastModified = null;
+		m_lastFullSync = 0;
+	}
+
+	/**
+	 * Replace the contents of the store with a full download.
+	 *
+	 * @return true if anything differs from what was stored before
+	 */
+	public synchronized boolean replaceAll(final List<Outage> outages, final String etag, final Date lastModified) {
+		final Map<Integer,Outage> before = new HashMap<Integer,Outage>(m_outages);
+		m_outages.clear();
+		m_watermark = null;
+		boolean changed = false;
+		for (final Outage outage : outages) {
+			if (outage.getId() == 0) continue;
+			m_outages.put(outage.getId(), outage);
+			changed |= !same(before.get(outage.getId()), outage);
+			updateWatermark(outage);
+		}
+		m_etag = etag;
+		m_lastModified = lastModified;
+		m_lastFullSync = System.currentTimeMillis();
+		return changed || !m_outages.keySet().containsAll(before.keySet());
+	}
+
+	/**
+	 * Record a full download that found the list not modified.
+	 */
+	public synchronized void markFullSync() {
+		m_lastFullSync = System.currentTimeMillis();
+	}
+
+	/**
+	 * Apply outages that were created or resolved since the watermark.
+	 * Resolved outages are dropped, everything else is added or replaced.
+	 * Outages already stored as they are (the ones at the watermark are
+	 * sent again) do not count as changes.
+	 *
+	 * @return true if anything in the store changed
+	 */
+	public synchronized boolean apply(final List<Outage> changes) {
+		boolean changed = false;
+		for (final Outage outage : changes) {
+			if (outage.getId() == 0) continue;
+			updateWatermark(outage);
+			if (outage.getIfRegainedService() != null) {
+				changed |= (m_outages.remove(outage.getId()) != null);
+			} else {
+				changed |= !same(m_outages.put(outage.getId(), outage), outage);
+			}
+		}
+		return changed;
+	}
+
+	private static boolean same(final Outage a, final Outage b) {
+		return a != null
+			&& a.getId() == b.getId()
+			&& a.getNodeId() == b.getNodeId()
+			&& same(a.getIfLostService(), b.getIfLostService())
+			&& same(a.getIfRegainedService(), b.getIfRegainedService())
+			&& same(a.getIpAddress(), b.getIpAddress())
+			&& same(a.getServiceName(), b.getServiceName())
+			&& same(a.getDescription(), b.getDescription())
+			&& same(a.getHost(), b.getHost())
+			&& same(a.getLogMessage(), b.getLogMessage())
+			&& same(a.getUei(), b.getUei())
+			&& same(a.getSeverity(), b.getSeverity());
+	}
+
+	private static boolean same(final Object a, final Object b) {
+		return (a == null)? b == null : a.equals(b);
+	}
+
+	/**
+	 * The current outages, newest first.
+	 *
+	 * @param allowDuplicateNodes if false, only the newest outage for each node is returned
+	 */
+	public synchronized List<Outage> getOutages(final boolean allowDuplicateNodes) {
+		final List<Outage> sorted = new ArrayList<Outage>(m_outages.values());
+		Collections.sort(sorted, NEWEST_FIRST);
+		if (allowDuplicateNodes) {
+			return sorted;
+		}
+		final List<Outage> outages = new ArrayList<Outage>(sorted.size());
+		final Set<Integer> nodeIds = new HashSet<Integer>();
+		for (final Outage outage : sorted) {
+			final int nodeId = outage.getNodeId();
+			if (nodeId == 0 || nodeIds.add(nodeId)) {
+				outages.add(outage);
+			}
+		}
+		return outages;
+	}
+
+	private void updateWatermark(final Outage outage) {
+		m_watermark = later(m_watermark, outage.getIfLostService());
+		m_watermark = later(m_watermark, outage.getIfRegainedService());
+	}
+
+	private static Date later(final Date a, final Date b) {
+		if (a == null) return b;
+		if (b == null) return a;
+		return b.after(a)? b : a;
+	}
+
+	private static final Comparator<Outage> NEWEST_FIRST = new Comparator<Outage>() {
+		public int compare(final Outage a, final Outage b) {
+			final Date da = a.getIfLostService();
+			final Date db = b.getIfLostService();
+			if (da == null) return (db == null)? 0 : 1;
+			if (db == null) return -1;
+			return db.compareTo(da);
+		}
+	};
+
+	public synchronized void load() {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(m_context.openFileInput(FILENAME)));
+			if (in.readInt() != VERSION) {
+				Log.d(TAG, "ignoring outage store with unknown version");
+				return;
+			}
+			m_base = readString(in);
+			m_watermark = readDate(in);
+			m_etag = readString(in);
+			m_lastModified = readDate(in);
+			m_lastFullSync = in.readLong();
+			final int count = in.readInt();
+			m_outages.clear();
+			for (int i = 0; i < count; i++) {
+				final Outage outage = readOutage(in);
+				m_outages.put(outage.getId(), outage);
+			}
+			Log.d(TAG, "loaded " + count + " outages");
+		} catch (final FileNotFoundException e) {
+			Log.d(TAG, "no outage store yet");
+		} catch (final IOException e) {
+			Log.w(TAG, "Unable to read outage store.", e);
+			reset(null);
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	public synchronized void save() {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(m_context.openFileOutput(FILENAME, Context.MODE_PRIVATE)));
+			out.writeInt(VERSION);
+			writeString(out, m_base);
+			writeDate(out, m_watermark);
+			writeString(out, m_etag);
+			writeDate(out, m_lastModified);
+			out.writeLong(m_lastFullSync);
+			out.writeInt(m_outages.size());
+			for (final Outage outage : m_outages.values()) {
+				writeOutage(out, outage);
+			}
+		} catch (final IOException e) {
+			Log.w(TAG, "Unable to write outage store.", e);
+		} finally {
+			closeQuietly(out);
+		}
+	}
+
+	private static Outage readOutage(final DataInputStream in) throws IOException {
+		final Outage outage = new Outage();
+		outage.setId(in.readInt());
+		outage.setIpAddress(readString(in));
+		outage.setServiceName(readString(in));
+		outage.setIfLostService(readDate(in));
+		outage.setIfRegainedService(readDate(in));
+		outage.setDescription(readString(in));
+		outage.setHost(readString(in));
+		outage.setLogMessage(readString(in));
+		outage.setUei(readString(in));
+		outage.setSeverity(readString(in));
+		if (in.readBoolean()) {
+			outage.setNodeId(in.readInt());
+		}
+		return outage;
+	}
+
+	private static void writeOutage(final DataOutputStream out, final Outage outage) throws IOException {
+		out.writeInt(outage.getId());
+		writeString(out, outage.getIpAddress());
+		writeString(out, outage.getServiceName());
+		writeDate(out, outage.getIfLostService());
+		writeDate(out, outage.getIfRegainedService());
+		writeString(out, outage.getDescription());
+		writeString(out, outage.getHost());
+		writeString(out, outage.getLogMessage());
+		writeString(out, outage.getUei());
+		writeString(out, outage.getSeverity());
+		out.writeBoolean(outage.getNodeId() != 0);
+		if (outage.getNodeId() != 0) {
+			out.writeInt(outage.getNodeId());
+		}
+	}
+
+	private static String readString(final DataInputStream in) throws IOException {
+		return in.readBoolean()? in.readUTF() : null;
+	}
+
+	private static void writeString(final DataOutputStream out, final String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static Date readDate(final DataInputStream in) throws IOException {
+		final long time = in.readLong();
+		return (time == Long.MIN_VALUE)? null : new Date(time);
+	}
+
+	private static void writeDate(final DataOutputStream out, final Date value) throws IOException {
+		out.writeLong(value == null? Long.MIN_VALUE : value.getTime());
+	}
+
+	private static void closeQuietly(final Closeable c) {
+		if (c != null) {
+			try {
+				c.close();
+			} catch (final IOException e) {
+				Log.d(TAG, "Unable to close outage store.", e);
+			}
+		}
+	}
+}
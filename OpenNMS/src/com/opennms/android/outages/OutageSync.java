@@ -0,0 +1,250 @@
+package com.opennms.android.outages;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.restlet.data.ChallengeResponse;
+import org.restlet.data.Conditions;
+import org.restlet.data.MediaType;
+import org.restlet.data.Preference;
+import org.restlet.data.Reference;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.engine.http.timing.CallTimer;
+import org.restlet.engine.http.timing.Phase;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ClientResource;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import android.util.Log;
+
+import com.opennms.android.HttpCache;
+import com.opennms.android.ServerSettings;
+
+/**
+ * Keeps an {@link OutageStore} up to date with the server.
+ *
+ * The first sync (and one every {@link #FULL_SYNC_INTERVAL} after that)
+ * downloads the full list of current outages, using If-None-Match and
+ * If-Modified-Since so an unchanged list costs a 304 and no body.  In
+ * between, only outages lost or regained after the store's watermark are
+ * requested and applied.
+ *
+ * Outages are requested as JSON when {@link ServerSettings#getJson()} is
+ * set, and parsed according to the media type actually returned.
+ */
+public class OutageSync {
+	private static final String TAG = "OutageSync";
+	public static final String ENDPOINT = "/outages";
+	public static final int LIMIT = 50;
+	public static final long FULL_SYNC_INTERVAL = 60L * 60L * 1000L;
+
+	private final OutageStore m_store;
+	private final HttpCache m_cache;
+	private final ServerSettings m_settings = ServerSettings.getInstance();
+	private final SimpleDateFormat m_dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
+
+	public OutageSync(final OutageStore store, final HttpCache cache) {
+		m_store = store;
+		m_cache = cache;
+	}
+
+	/**
+	 * Bring the store up to date.
+	 *
+	 * @return true if the contents of the store changed
+	 */
+	public boolean sync() throws Exception {
+		return sync(null);
+	}
+
+	/**
+	 * Bring the store up to date.
+	 *
+	 * @param listener if not null, told about each outage of a full download as it is parsed
+	 * @return true if the contents of the store changed
+	 */
+	public boolean sync(final OutageParseHandler.Listener listener) throws Exception {
+		final String base = m_settings.getBase();
+		if (!base.equals(m_store.getBase())) {
+			Log.d(TAG, "server changed, discarding stored outages");
+			m_store.reset(base);
+		}
+
+		final boolean changed;
+		final Date watermark = m_store.getWatermark();
+		if (watermark == null || System.currentTimeMillis() - m_store.getLastFullSync() > FULL_SYNC_INTERVAL) {
+			changed = fullSync(listener);
+		} else {
+			final List<Outage> changes = getDelta(watermark);
+			if (changes == null) {
+				changed = fullSync(listener);
+			} else {
+				changed = m_store.apply(changes);
+				if (changed) {
+					m_store.save();
+				}
+			}
+		}
+		m_cache.logStatistics();
+		if (m_settings.getTiming()) {
+			Log.d(TAG, "call timings (ms):\n" + m_settings.getTimings());
+		}
+		return changed;
+	}
+
+	/**
+	 * Download the full list, and save the store with the new validators
+	 * and sync time even if the outages did not change.
+	 *
+	 * @return true if the contents of the store changed
+	 */
+	protected boolean fullSync(final OutageParseHandler.Listener listener) throws Exception {
+		final ClientResource resource = createResource(ENDPOINT + "?limit=" + LIMIT + "&orderBy=ifLostService&order=desc&ifRegainedService=null");
+		final Conditions conditions = resource.getConditions();
+		if (m_store.getEtag() != null) {
+			conditions.setNoneMatch(Collections.singletonList(Tag.parse(m_store.getEtag())));
+		}
+		if (m_store.getLastModified() != null) {
+			conditions.setModifiedSince(m_store.getLastModified());
+		}
+
+		resource.get();
+		if (Status.REDIRECTION_NOT_MODIFIED.equals(resource.getStatus())) {
+			Log.d(TAG, "outages not modified since last full sync");
+			m_store.markFullSync();
+			m_store.save();
+			return false;
+		}
+		final List<Outage> outages = parse(resource, listener);
+		if (outages == null) {
+			return false;
+		}
+
+		final Representation entity = resource.getResponseEntity();
+		final Tag tag = (entity == null)? null : entity.getTag();
+		final Date lastModified = (entity == null)? null : entity.getModificationDate();
+		final boolean changed = m_store.replaceAll(outages, (tag == null)? null : tag.format(), lastModified);
+		m_store.save();
+		return changed;
+	}
+
+	/**
+	 * Get the outages lost or regained at or after the given date.  The
+	 * server compares to the second, so outages sharing the watermark's
+	 * second are asked for again rather than missed; the store is keyed by
+	 * outage ID, so the ones already applied are just replaced.
+	 *
+	 * @return the changed outages, or null if a full sync is needed instead
+	 */
+	protected List<Outage> getDelta(final Date watermark) throws Exception {
+		final String since = Reference.encode(m_dateFormat.format(watermark));
+		final List<Outage> changes = new ArrayList<Outage>();
+		for (final String field : new String[] { "ifLostService", "ifRegainedService" }) {
+			final ClientResource resource = createResource(ENDPOINT + "?limit=" + LIMIT + "&comparator=ge&" + field + "=" + since);
+			resource.get();
+			final List<Outage> outages = parse(resource, null);
+			if (outages == null || outages.size() >= LIMIT) {
+				// failed, or more changes than one page; start over
+				return null;
+			}
+			changes.addAll(outages);
+		}
+		Log.d(TAG, "applying " + changes.size() + " changed outages since " + watermark);
+		return changes;
+	}
+
+	protected ClientResource createResource(final String path) {
+		final String url = m_settings.getBase() + path;
+		Log.d(TAG, "url = " + url);
+		final ClientResource resource = new ClientResource(url);
+		m_cache.attach(resource);
+		if (m_settings.getJson()) {
+			resource.getClientInfo().getAcceptedMediaTypes().add(new Preference<MediaType>(MediaType.APPLICATION_JSON));
+		}
+		resource.setChallengeResponse(new ChallengeResponse(m_settings.getChallengeScheme(), m_settings.getUsername(), m_settings.getPassword()));
+		return resource;
+	}
+
+	/**
+	 * Parse the outage list in the response.
+	 *
+	 * @param listener if not null, told about each outage as it is parsed
+	 * @return the outages, or null if the response could not be read
+	 */
+	protected List<Outage> parse(final ClientResource resource, final OutageParseHandler.Listener listener) {
+		if (!resource.getStatus().isSuccess() || resource.getResponseEntity() == null || !resource.getResponseEntity().isAvailable()) {
+			Log.d(TAG, "failed to get response entity: " + resource.getStatus());
+			return null;
+		}
+		final CallTimer timer = CallTimer.get(resource.getResponse().getRequest());
+		final long start = System.nanoTime();
+		final Representation entity = resource.getResponseEntity();
+		final List<Outage> outages;
+		if (MediaType.APPLICATION_JSON.isCompatible(entity.getMediaType())) {
+			outages = parseJson(entity, listener);
+		} else {
+			outages = parseXml(entity, listener);
+		}
+		if (outages != null && timer != null) {
+			timer.record(Phase.PARSE, System.nanoTime() - start);
+		}
+		return outages;
+	}
+
+	private List<Outage> parseXml(final Representation entity, final OutageParseHandler.Listener listener) {
+		Reader reader = null;
+		try {
+			final SAXParser sp = SAXParserFactory.newInstance().newSAXParser();
+			final XMLReader xr = sp.getXMLReader();
+			final OutageParseHandler handler = new OutageParseHandler();
+			handler.setListener(listener);
+			xr.setContentHandler(handler);
+			reader = entity.getReader();
+			xr.parse(new InputSource(reader));
+			return handler.getOutages();
+		} catch (final Exception e) {
+			Log.w(TAG, "failed to parse", e);
+			return null;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (final Exception e) {
+					Log.d(TAG, "Unable to close reader.", e);
+				}
+			}
+		}
+	}
+
+	private List<Outage> parseJson(final Representation entity, final OutageParseHandler.Listener listener) {
+		InputStream stream = null;
+		try {
+			final OutageJsonParser parser = new OutageJsonParser();
+			parser.setListener(listener);
+			stream = entity.getStream();
+			parser.parse(stream);
+			return parser.getOutages();
+		} catch (final Exception e) {
+			Log.w(TAG, "failed to parse", e);
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (final Exception e) {
+					Log.d(TAG, "Unable to close stream.", e);
+				}
+			}
+		}
+	}
+}
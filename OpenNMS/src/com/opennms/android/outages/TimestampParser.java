@@ -0,0 +1,166 @@
+package com.opennms.android.outages;
+
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * Parses the ISO-8601 timestamps used by the OpenNMS REST API, for example
+ * <code>2010-09-08T14:21:03-04:00</code>, <code>2010-09-08T14:21:03.120-0400</code>
+ * or <code>2010-09-08T18:21:03Z</code>, without regular expressions or
+ * SimpleDateFormat.
+ *
+ * Outage lists repeat the same timestamps a lot (outages caused by one
+ * event, or lost and regained at the same poll), so the last few results
+ * are remembered.  Instances are not thread-safe.
+ */
+public class TimestampParser {
+	private static final int CACHE_SIZE = 8;
+	private static final int MAX_LENGTH = 32;
+
+	private final char[][] m_keys = new char[CACHE_SIZE][MAX_LENGTH];
+	private final int[] m_keyLengths = new int[CACHE_SIZE];
+	private final long[] m_values = new long[CACHE_SIZE];
+	private int m_next = 0;
+	private int m_hits = 0;
+	private int m_misses = 0;
+
+	public Date parse(final String text) throws ParseException {
+		return new Date(parseMillis(text.toCharArray(), 0, text.length()));
+	}
+
+	public Date parse(final char[] buf, final int offset, final int length) throws ParseException {
+		return new Date(parseMillis(buf, offset, length));
+	}
+
+	public int getHits() {
+		return m_hits;
+	}
+	public int getMisses() {
+		return m_misses;
+	}
+
+	/**
+	 * @return milliseconds since the epoch
+	 * @throws ParseException if the text is not a timestamp this parser understands
+	 */
+	public long parseMillis(final char[] buf, final int offset, final int length) throws ParseException {
+		final int cached = find(buf, offset, length);
+		if (cached >= 0) {
+			m_hits++;
+			return m_values[cached];
+		}
+		m_misses++;
+		final long millis = doParse(buf, offset, length);
+		if (length <= MAX_LENGTH) {
+			System.arraycopy(buf, offset, m_keys[m_next], 0, length);
+			m_keyLengths[m_next] = length;
+			m_values[m_next] = millis;
+			m_next = (m_next + 1) % CACHE_SIZE;
+		}
+		return millis;
+	}
+
+	private int find(final char[] buf, final int offset, final int length) {
+		for (int i = 0; i < CACHE_SIZE; i++) {
+			if (m_keyLengths[i] != length) continue;
+			final char[] key = m_keys[i];
+			int j = length - 1;
+			// the seconds differ first, so compare from the end
+			while (j >= 0 && key[j] == buf[offset + j]) {
+				j--;
+			}
+			if (j < 0) return i;
+		}
+		return -1;
+	}
+
+	private static long doParse(final char[] buf, final int offset, final int length) throws ParseException {
+		final int end = offset + length;
+		if (length < 19 || buf[offset + 4] != '-' || buf[offset + 7] != '-' || buf[offset + 10] != 'T' || buf[offset + 13] != ':' || buf[offset + 16] != ':') {
+			throw error(buf, offset, length, 0);
+		}
+		final int year = digits(buf, offset, 4, offset, length);
+		final int month = digits(buf, offset + 5, 2, offset, length);
+		final int day = digits(buf, offset + 8, 2, offset, length);
+		final int hour = digits(buf, offset + 11, 2, offset, length);
+		final int minute = digits(buf, offset + 14, 2, offset, length);
+		final int second = digits(buf, offset + 17, 2, offset, length);
+		if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 60) {
+			throw error(buf, offset, length, 0);
+		}
+
+		int pos = offset + 19;
+		int millis = 0;
+		if (pos < end && buf[pos] == '.') {
+			pos++;
+			int scale = 100;
+			while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+				millis += (buf[pos++] - '0') * scale;
+				scale /= 10;
+			}
+		}
+		while (pos < end && buf[pos] == ' ') {
+			pos++;
+		}
+
+		if (pos >= end) {
+			throw error(buf, offset, length, pos - offset);
+		}
+		int zoneMinutes = 0;
+		final char sign = buf[pos];
+		if (sign == 'Z' && pos + 1 == end) {
+			zoneMinutes = 0;
+		} else if (sign == '+' || sign == '-') {
+			pos++;
+			final int zoneHours = digits(buf, pos, 2, offset, length);
+			pos += 2;
+			if (pos < end && buf[pos] == ':') {
+				pos++;
+			}
+			if (pos + 2 != end) {
+				throw error(buf, offset, length, pos - offset);
+			}
+			zoneMinutes = zoneHours * 60 + digits(buf, pos, 2, offset, length);
+			if (sign == '-') {
+				zoneMinutes = -zoneMinutes;
+			}
+		} else {
+			throw error(buf, offset, length, pos - offset);
+		}
+
+		final long days = daysFromCivil(year, month, day);
+		final long seconds = days * 86400L + hour * 3600L + minute * 60L + second - zoneMinutes * 60L;
+		return seconds * 1000L + millis;
+	}
+
+	/**
+	 * Days since 1970-01-01 in the proleptic Gregorian calendar.
+	 */
+	private static long daysFromCivil(final int year, final int month, final int day) {
+		final int y = (month <= 2)? year - 1 : year;
+		final int era = (y >= 0? y : y - 399) / 400;
+		final int yoe = y - era * 400;
+		final int doy = (153 * (month + (month > 2? -3 : 9)) + 2) / 5 + day - 1;
+		final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097L + doe - 719468L;
+	}
+
+	private static int digits(final char[] buf, final int pos, final int count, final int offset, final int length) throws ParseException {
+		if (pos + count > offset + length) {
+			throw error(buf, offset, length, pos - offset);
+		}
+		int value = 0;
+		for (int i = pos; i < pos + count; i++) {
+			final char c = buf[i];
+			if (c < '0' || c > '9') {
+				throw error(buf, offset, length, i - offset);
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static ParseException error(final char[] buf, final int offset, final int length, final int errorOffset) {
+		return new ParseException("Unparseable date: \"" + new String(buf, offset, length) + "\"", errorOffset);
+	}
+}
@@ -0,0 +1,133 @@
+package com.opennms.android.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.engine.log.AccessLogFileHandler;
+import org.restlet.routing.Filter;
+import org.restlet.service.LogService;
+
+import android.util.Log;
+
+/**
+ * Compares synchronous and asynchronous access logging: several threads
+ * handle calls through the log filter of a {@link LogService}, logging to an
+ * {@link AccessLogFileHandler}, and the throughput is measured until every
+ * entry is written.  Results go to the log under the "AccessLogBenchmark" tag.
+ */
+public class AccessLogBenchmark extends TestCase {
+	private static final String TAG = "AccessLogBenchmark";
+	private static final String LOGGER = "com.opennms.android.test.AccessLogBenchmark";
+	private static final int THREADS = 4;
+	private static final int CALLS = 2000;
+
+	public void testThroughput() throws Exception {
+		// warm up
+		run(false, false, 200);
+		run(true, true, 200);
+
+		final long[] synchronous = run(false, false, CALLS);
+		final long[] dropping = run(true, false, CALLS);
+		final long[] blocking = run(true, true, CALLS);
+		Log.i(TAG, String.format("synchronous:          %d calls/s, %d/%d entries written", synchronous[0], synchronous[1], THREADS * CALLS));
+		Log.i(TAG, String.format("asynchronous (drop):  %d calls/s, %d/%d entries written", dropping[0], dropping[1], THREADS * CALLS));
+		Log.i(TAG, String.format("asynchronous (block): %d calls/s, %d/%d entries written", blocking[0], blocking[1], THREADS * CALLS));
+
+		assertEquals((long) THREADS * CALLS, synchronous[1]);
+		assertTrue(dropping[1] <= THREADS * CALLS);
+		assertEquals((long) THREADS * CALLS, blocking[1]);
+	}
+
+	/**
+	 * @return calls per second, and entries found in the log file
+	 */
+	private static long[] run(final boolean asynchronous, final boolean blocking, final int calls) throws Exception {
+		final File file = File.createTempFile("access", ".log");
+		final Logger logger = Logger.getLogger(LOGGER);
+		final Handler handler = new AccessLogFileHandler(file.getAbsolutePath());
+		logger.setUseParentHandlers(false);
+		logger.setLevel(Level.INFO);
+		logger.addHandler(handler);
+
+		final LogService logService = new LogService();
+		logService.setLoggerName(LOGGER);
+		logService.setAsynchronous(asynchronous);
+		logService.setBlockingOnOverflow(blocking);
+		final Filter filter = logService.createInboundFilter(new Context());
+		filter.setNext(new Restlet() {
+			@Override
+			public void handle(final Request request, final Response response) {
+				response.setEntity("ok", MediaType.TEXT_PLAIN);
+			}
+		});
+
+		try {
+			filter.start();
+			final CountDownLatch ready = new CountDownLatch(THREADS);
+			final CountDownLatch go = new CountDownLatch(1);
+			final CountDownLatch done = new CountDownLatch(THREADS);
+			for (int t = 0; t < THREADS; t++) {
+				new Thread() {
+					@Override
+					public void run() {
+						ready.countDown();
+						try {
+							go.await();
+							for (int i = 0; i < calls; i++) {
+								final Request request = new Request(Method.GET, "http://localhost/opennms/rest/outages?limit=" + i);
+								filter.handle(request, new Response(request));
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						} finally {
+							done.countDown();
+						}
+					}
+				}.start();
+			}
+
+			ready.await();
+			final long start = System.nanoTime();
+			go.countDown();
+			done.await();
+			// until the last entry is written
+			filter.stop();
+			final long elapsed = System.nanoTime() - start;
+			return new long[] { THREADS * calls * 1000000000L / elapsed, countLines(file) };
+		} finally {
+			filter.stop();
+			logger.removeHandler(handler);
+			handler.close();
+			file.delete();
+		}
+	}
+
+	private static long countLines(final File file) throws Exception {
+		final BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			long count = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() > 0) {
+					count++;
+				}
+			}
+			return count;
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,352 @@
+package com.opennms.android.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Uniform;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.engine.http.cache.CacheEntry;
+import org.restlet.engine.http.cache.CacheFilter;
+import org.restlet.engine.http.cache.FileCacheStore;
+import org.restlet.engine.http.cache.MemoryCacheStore;
+import org.restlet.representation.StringRepresentation;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Checks what {@link CacheFilter} answers from its stores and what it
+ * passes on: fresh entries, revalidation of stale ones, "no-store", unsafe
+ * methods, and the size limits of {@link MemoryCacheStore} and
+ * {@link FileCacheStore}, and calls answered asynchronously.  The server is
+ * a Restlet called in process.
+ */
+public class CacheFilterTest extends AndroidTestCase {
+	private static final String URI = "http://localhost/opennms/rest/outages";
+
+	private Origin m_origin;
+	private CacheFilter m_filter;
+	private File m_directory;
+
+	/**
+	 * Serves "v1" (or whatever m_content is), with its tag, and answers
+	 * If-None-Match with a 304 when the tag still matches.
+	 */
+	private static class Origin extends Restlet {
+		private String m_content = "v1";
+		private final List<CacheDirective> m_directives = new ArrayList<CacheDirective>();
+		private final List<Request> m_requests = new ArrayList<Request>();
+
+		@Override
+		public void handle(final Request request, final Response response) {
+			m_requests.add(request);
+			if (!Method.GET.equals(request.getMethod())) {
+				response.setStatus(Status.SUCCESS_NO_CONTENT);
+				return;
+			}
+			final Tag tag = new Tag(m_content);
+			response.getCacheDirectives().addAll(m_directives);
+			if (request.getConditions().getNoneMatch().contains(tag)) {
+				response.setStatus(Status.REDIRECTION_NOT_MODIFIED);
+				return;
+			}
+			final StringRepresentation entity = new StringRepresentation(m_content, MediaType.TEXT_PLAIN);
+			entity.setTag(tag);
+			response.setEntity(entity);
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m_origin = new Origin();
+		m_filter = new CacheFilter(new Context(), new MemoryCacheStore(1024));
+		m_filter.setNext(m_origin);
+		m_directory = new File(getContext().getCacheDir(), "CacheFilterTest");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		final File[] files = m_directory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		m_directory.delete();
+		super.tearDown();
+	}
+
+	public void testFresh() throws Exception {
+		m_origin.m_directives.add(CacheDirective.maxAge(60));
+		assertEquals("v1", get(m_filter, URI).getEntity().getText());
+		m_origin.m_content = "v2";
+
+		final Response response = get(m_filter, URI);
+		assertEquals(Status.SUCCESS_OK, response.getStatus());
+		assertEquals("v1", response.getEntity().getText());
+		assertEquals(1, m_origin.m_requests.size());
+		assertEquals(1, m_filter.getHits());
+		assertEquals(1, m_filter.getMisses());
+		assertEquals(2L, m_filter.getBytesSaved());
+
+		// other URIs and requests with "no-cache" go to the server
+		assertEquals("v2", get(m_filter, URI + "?limit=10").getEntity().getText());
+		final Request request = new Request(Method.GET, URI);
+		request.getCacheDirectives().add(CacheDirective.noCache());
+		final Response reloaded = handle(m_filter, request);
+		assertEquals("v2", reloaded.getEntity().getText());
+		assertEquals(3, m_origin.m_requests.size());
+	}
+
+	public void testRevalidate() throws Exception {
+		assertEquals("v1", get(m_filter, URI).getEntity().getText());
+
+		// not fresh, but it has a tag: a 304 gives back the cached entity
+		final Response response = get(m_filter, URI);
+		assertEquals(2, m_origin.m_requests.size());
+		assertTrue(m_origin.m_requests.get(1).getConditions().getNoneMatch().contains(new Tag("v1")));
+		assertEquals(Status.SUCCESS_OK, response.getStatus());
+		assertEquals("v1", response.getEntity().getText());
+		assertEquals(new Tag("v1"), response.getEntity().getTag());
+		assertEquals(1, m_filter.getRevalidations());
+		assertEquals(0, m_filter.getHits());
+
+		// a changed entity replaces the cached one
+		m_origin.m_content = "v2";
+		assertEquals("v2", get(m_filter, URI).getEntity().getText());
+		assertEquals("v2", get(m_filter, URI).getEntity().getText());
+		assertEquals(4, m_origin.m_requests.size());
+		assertEquals(2, m_filter.getRevalidations());
+
+		// requests with their own conditions are left alone
+		final Request request = new Request(Method.GET, URI);
+		request.getConditions().getNoneMatch().add(new Tag("v1"));
+		assertEquals("v2", handle(m_filter, request).getEntity().getText());
+		assertEquals(1, m_origin.m_requests.get(4).getConditions().getNoneMatch().size());
+		assertEquals(2, m_filter.getRevalidations());
+	}
+
+	public void testNoStore() throws Exception {
+		m_origin.m_directives.add(CacheDirective.maxAge(60));
+		m_origin.m_directives.add(CacheDirective.noStore());
+		assertEquals("v1", get(m_filter, URI).getEntity().getText());
+		assertEquals("v1", get(m_filter, URI).getEntity().getText());
+		assertEquals(2, m_origin.m_requests.size());
+		assertFalse(m_origin.m_requests.get(1).getConditions().hasSome());
+		assertEquals(0, m_filter.getHits());
+
+		// nor does a request with "no-store" use or fill the cache
+		m_origin.m_directives.clear();
+		m_origin.m_directives.add(CacheDirective.maxAge(60));
+		final Request request = new Request(Method.GET, URI);
+		request.getCacheDirectives().add(CacheDirective.noStore());
+		assertEquals("v1", handle(m_filter, request).getEntity().getText());
+		assertEquals("v1", get(m_filter, URI).getEntity().getText());
+		assertEquals(4, m_origin.m_requests.size());
+
+		// a "no-store" response drops what was cached before
+		assertEquals("v1", get(m_filter, URI).getEntity().getText());
+		assertEquals(4, m_origin.m_requests.size());
+		m_origin.m_directives.add(CacheDirective.noStore());
+		final Request reload = new Request(Method.GET, URI);
+		reload.getCacheDirectives().add(CacheDirective.noCache());
+		handle(m_filter, reload).getEntity().getText();
+		assertEquals("v1", get(m_filter, URI).getEntity().getText());
+		assertEquals(6, m_origin.m_requests.size());
+	}
+
+	public void testUnsafeMethods() throws Exception {
+		m_origin.m_directives.add(CacheDirective.maxAge(60));
+		for (final Method method : new Method[] { Method.PUT, Method.POST, Method.DELETE }) {
+			get(m_filter, URI).getEntity().getText();
+			get(m_filter, URI).getEntity().getText();
+			final int requests = m_origin.m_requests.size();
+
+			handle(m_filter, new Request(method, URI));
+			assertEquals("v1", get(m_filter, URI).getEntity().getText());
+			assertEquals(method.getName(), requests + 2, m_origin.m_requests.size());
+		}
+
+		// HEAD is safe
+		get(m_filter, URI).getEntity().getText();
+		handle(m_filter, new Request(Method.HEAD, URI));
+		final int requests = m_origin.m_requests.size();
+		get(m_filter, URI).getEntity().getText();
+		assertEquals(requests, m_origin.m_requests.size());
+	}
+
+	public void testAsynchronous() throws Exception {
+		// the origin answers through the callback, as a pipelining client does
+		final Status[] failure = new Status[1];
+		m_filter.setNext(new Restlet() {
+			@Override
+			public void handle(final Request request, final Response response) {
+				if (failure[0] != null) {
+					response.setStatus(failure[0]);
+				} else {
+					m_origin.handle(request, response);
+				}
+				request.getOnResponse().handle(request, response);
+			}
+		});
+		assertEquals("v1", getAsynchronously(URI));
+		assertEquals(1, m_origin.m_requests.size());
+
+		// revalidated, the callback gets the cached entity
+		assertEquals("v1", getAsynchronously(URI));
+		assertEquals(2, m_origin.m_requests.size());
+		assertEquals(1, m_filter.getRevalidations());
+
+		// a connector error does not drop the entry
+		failure[0] = Status.CONNECTOR_ERROR_COMMUNICATION;
+		assertEquals(null, getAsynchronously(URI));
+		failure[0] = null;
+		assertEquals("v1", getAsynchronously(URI));
+		assertEquals(2, m_filter.getRevalidations());
+
+		// a fresh entry is given to the callback without calling the origin
+		m_origin.m_directives.add(CacheDirective.maxAge(60));
+		m_origin.m_content = "v2";
+		assertEquals("v2", getAsynchronously(URI));
+		final int requests = m_origin.m_requests.size();
+		assertEquals("v2", getAsynchronously(URI));
+		assertEquals(requests, m_origin.m_requests.size());
+		assertEquals(1, m_filter.getHits());
+	}
+
+	public void testMemoryLimit() throws Exception {
+		final MemoryCacheStore store = new MemoryCacheStore(10);
+		store.put(entry("a", "aaaa"));
+		store.put(entry("b", "bbbb"));
+		assertEquals(8, store.getSize());
+
+		// using "a" makes "b" the least recently used
+		assertEquals(4, store.get("a").getSize());
+		store.put(entry("c", "cccc"));
+		assertEquals(8, store.getSize());
+		assertEquals(null, store.get("b"));
+		assertTrue(store.get("a") != null);
+		assertTrue(store.get("c") != null);
+
+		// replacing an entry does not count it twice, and too large entries are not kept
+		store.put(entry("a", "aa"));
+		assertEquals(6, store.getSize());
+		store.put(entry("d", "ddddddddddd"));
+		assertEquals(null, store.get("d"));
+		assertEquals(6, store.getSize());
+
+		store.remove("a");
+		assertEquals(4, store.getSize());
+		store.clear();
+		assertEquals(0, store.getSize());
+		assertEquals(null, store.get("c"));
+	}
+
+	public void testDiskLimit() throws Exception {
+		final int size = fileSize("aaaa");
+		FileCacheStore store = new FileCacheStore(m_directory, 2 * size + size / 2);
+		store.put(entry("a", "aaaa"));
+		store.put(entry("b", "bbbb"));
+		assertEquals(2 * size, store.getSize());
+
+		// files are used least recently first, by modification time
+		final long then = System.currentTimeMillis() - 60000L;
+		for (final File file : m_directory.listFiles()) {
+			file.setLastModified(then);
+		}
+		assertEquals("aaaa", store.get("a").createRepresentation().getText());
+		store.put(entry("c", "cccc"));
+		assertEquals(2 * size, store.getSize());
+		assertEquals(null, store.get("b"));
+		assertTrue(store.get("a") != null);
+		assertTrue(store.get("c") != null);
+
+		// the size is picked up again from the directory
+		store = new FileCacheStore(m_directory, 2 * size + size / 2);
+		assertEquals(2 * size, store.getSize());
+		store.remove("a");
+		assertEquals(size, store.getSize());
+		store.clear();
+		assertEquals(0, store.getSize());
+		assertEquals(0, m_directory.listFiles().length);
+	}
+
+	public void testDiskStore() throws Exception {
+		m_origin.m_directives.add(CacheDirective.maxAge(60));
+		final FileCacheStore disk = new FileCacheStore(m_directory, 1024);
+		m_filter = new CacheFilter(new Context(), new MemoryCacheStore(1024), disk);
+		m_filter.setNext(m_origin);
+		assertEquals("v1", get(m_filter, URI).getEntity().getText());
+
+		// a new filter, as after a restart, finds the entry on disk
+		final CacheFilter restarted = new CacheFilter(new Context(), new MemoryCacheStore(1024), disk);
+		restarted.setNext(m_origin);
+		final Response response = get(restarted, URI);
+		assertEquals("v1", response.getEntity().getText());
+		assertEquals(new Tag("v1"), response.getEntity().getTag());
+		assertEquals(MediaType.TEXT_PLAIN, response.getEntity().getMediaType());
+		assertEquals(1, m_origin.m_requests.size());
+		assertEquals(1, restarted.getHits());
+
+		// and an unsafe method removes it from both stores
+		handle(restarted, new Request(Method.DELETE, URI));
+		assertEquals(0, disk.getSize());
+		assertEquals("v1", get(restarted, URI).getEntity().getText());
+		assertEquals(3, m_origin.m_requests.size());
+	}
+
+	private static Response get(final CacheFilter filter, final String uri) {
+		return handle(filter, new Request(Method.GET, uri));
+	}
+
+	private static Response handle(final CacheFilter filter, final Request request) {
+		final Response response = new Response(request);
+		filter.handle(request, response);
+		return response;
+	}
+
+	/**
+	 * @return the text of the entity given to the callback, or null if there was none
+	 */
+	private String getAsynchronously(final String uri) throws Exception {
+		final Request request = new Request(Method.GET, uri);
+		final String[] text = new String[1];
+		request.setOnResponse(new Uniform() {
+			public void handle(final Request request, final Response response) {
+				try {
+					text[0] = response.isEntityAvailable()? response.getEntity().getText() : null;
+				} catch (final Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		m_filter.handle(request, new Response(request));
+		return text[0];
+	}
+
+	private static CacheEntry entry(final String key, final String content) throws Exception {
+		return new CacheEntry(key, new StringRepresentation(content), content.getBytes("UTF-8"), Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return the size on disk of an entry with the given content and a one character key
+	 */
+	private int fileSize(final String content) throws Exception {
+		final File directory = new File(m_directory, "size");
+		final FileCacheStore store = new FileCacheStore(directory, 1024);
+		store.put(entry("x", content));
+		final int size = (int) store.getSize();
+		store.clear();
+		directory.delete();
+		return size;
+	}
+}
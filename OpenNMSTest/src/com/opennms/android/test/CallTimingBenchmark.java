@@ -0,0 +1,169 @@
+package com.opennms.android.test;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.engine.http.timing.CallTimer;
+import org.restlet.engine.http.timing.LatencyHistogram;
+import org.restlet.engine.http.timing.LatencyRecorder;
+import org.restlet.engine.http.timing.Phase;
+import org.restlet.resource.ClientResource;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import android.util.Log;
+
+import com.opennms.android.outages.OutageParseHandler;
+
+/**
+ * Measures what timing client calls costs, fetching and parsing outages
+ * from a local server through ClientResource with the
+ * {@link LatencyRecorder} disabled and enabled, and checks that each phase
+ * of the calls was recorded.  Results and the recorded timings go to the log
+ * under the "CallTimingBenchmark" tag.
+ */
+public class CallTimingBenchmark extends TestCase {
+	private static final String TAG = "CallTimingBenchmark";
+	private static final int OUTAGES = 50;
+	private static final int CALLS = 200;
+	private static final int CHECKS = 1000000;
+
+	private final LatencyRecorder m_recorder = LatencyRecorder.getInstance();
+	private String m_document;
+	private Server m_server;
+	private Client m_client;
+	private String m_url;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m_document = OutageParseBenchmark.createDocument(OUTAGES);
+		final Context serverContext = new Context();
+		serverContext.getParameters().add("controllerSelecting", "true");
+		m_server = new Server(serverContext, Protocol.HTTP, 0, new Restlet() {
+			@Override
+			public void handle(final Request request, final Response response) {
+				response.setEntity(m_document, MediaType.APPLICATION_XML);
+			}
+		});
+		m_server.start();
+		final Context clientContext = new Context();
+		clientContext.getParameters().add("controllerSelecting", "true");
+		m_client = new Client(clientContext, Protocol.HTTP);
+		m_client.start();
+		m_url = "http://localhost:" + m_server.getEphemeralPort() + "/opennms/rest/outages";
+		m_recorder.setEnabled(false);
+		m_recorder.reset();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		m_recorder.setEnabled(false);
+		m_recorder.reset();
+		m_client.stop();
+		m_server.stop();
+		super.tearDown();
+	}
+
+	public void testPhases() throws Exception {
+		m_recorder.setEnabled(true);
+		for (int i = 0; i < CALLS; i++) {
+			fetch(i);
+		}
+
+		assertEquals(1, m_recorder.getEndpoints().size());
+		assertEquals(m_url, m_recorder.getEndpoints().iterator().next());
+		for (final Phase phase : new Phase[] { Phase.DNS, Phase.SEND, Phase.FIRST_BYTE, Phase.BODY, Phase.PARSE, Phase.RESPONSE }) {
+			assertEquals(phase.name(), CALLS, m_recorder.getHistogram(m_url, phase).getCount());
+		}
+		final long connects = m_recorder.getHistogram(m_url, Phase.CONNECT).getCount();
+		assertTrue(connects >= 1 && connects < CALLS);
+		assertEquals(0, m_recorder.getHistogram(m_url, Phase.TLS).getCount());
+
+		final LatencyHistogram response = m_recorder.getHistogram(m_url, Phase.RESPONSE);
+		assertTrue(response.getPercentile(0.5) <= response.getPercentile(0.99));
+		assertTrue(response.getPercentile(0.99) <= response.getMax());
+
+		for (final String line : m_recorder.dump().split("\n")) {
+			Log.i(TAG, line);
+		}
+	}
+
+	public void testOverhead() throws Exception {
+		// warm up
+		for (int i = 0; i < CALLS; i++) {
+			fetch(i);
+		}
+
+		m_recorder.setEnabled(false);
+		long start = System.nanoTime();
+		for (int i = 0; i < CALLS; i++) {
+			fetch(i);
+		}
+		final long disabled = System.nanoTime() - start;
+		assertTrue(m_recorder.getEndpoints().isEmpty());
+
+		m_recorder.setEnabled(true);
+		start = System.nanoTime();
+		for (int i = 0; i < CALLS; i++) {
+			fetch(i);
+		}
+		final long enabled = System.nanoTime() - start;
+		assertEquals(CALLS, m_recorder.getHistogram(m_url, Phase.RESPONSE).getCount());
+
+		// what each hook costs a call when timing is disabled
+		m_recorder.setEnabled(false);
+		final Request request = new Request(Method.GET, m_url);
+		int timers = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < CHECKS; i++) {
+			if (CallTimer.get(request) != null) {
+				timers++;
+			}
+		}
+		final long check = System.nanoTime() - start;
+		assertEquals(0, timers);
+
+		final LatencyHistogram histogram = new LatencyHistogram();
+		start = System.nanoTime();
+		for (int i = 0; i < CHECKS; i++) {
+			histogram.record(i);
+		}
+		final long record = System.nanoTime() - start;
+
+		Log.i(TAG, String.format("disabled: %dus/call", disabled / 1000L / CALLS));
+		Log.i(TAG, String.format("enabled:  %dus/call", enabled / 1000L / CALLS));
+		Log.i(TAG, String.format("hook when disabled: %.1fns, recording a duration: %.1fns", (double) check / CHECKS, (double) record / CHECKS));
+	}
+
+	/**
+	 * Get and parse the outages as OutageSync does.
+	 */
+	private void fetch(final int i) throws Exception {
+		final ClientResource resource = new ClientResource(m_url + "?limit=" + OUTAGES + "&offset=" + i);
+		resource.setNext(m_client);
+		resource.get();
+		assertTrue(resource.getStatus().isSuccess());
+
+		final CallTimer timer = CallTimer.get(resource.getResponse().getRequest());
+		final long start = System.nanoTime();
+		final OutageParseHandler handler = new OutageParseHandler();
+		final XMLReader xr = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+		xr.setContentHandler(handler);
+		xr.parse(new InputSource(resource.getResponseEntity().getReader()));
+		if (timer != null) {
+			timer.record(Phase.PARSE, System.nanoTime() - start);
+		}
+		assertEquals(OUTAGES, handler.getOutages().size());
+	}
+}
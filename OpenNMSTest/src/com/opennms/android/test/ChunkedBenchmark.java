@@ -0,0 +1,318 @@
+package com.opennms.android.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.restlet.engine.http.io.ChunkedInputStream;
+import org.restlet.engine.http.io.ChunkedOutputStream;
+import org.restlet.engine.http.io.InboundStream;
+import org.restlet.engine.http.io.ReadableEntityChannel;
+
+import android.util.Log;
+
+/**
+ * Compares the chunked transfer coding of the internal connector against the
+ * way it used to read the chunk size lines one byte at a time and write the
+ * chunks one byte at a time.  The entity is an outage listing sent in small
+ * and large chunks, read through the connection's buffered inbound stream.
+ * Results go to the log under the "ChunkedBenchmark" tag.
+ */
+public class ChunkedBenchmark extends TestCase {
+	private static final String TAG = "ChunkedBenchmark";
+	private static final int ENTITY_SIZE = 256 * 1024;
+	private static final int ITERATIONS = 20;
+	private static final int[] CHUNK_SIZES = { 64, 8192 };
+
+	public void testCompatibility() throws Exception {
+		final byte[] entity = createEntity();
+		for (final int chunkSize : CHUNK_SIZES) {
+			// arrays larger than a chunk are now written as chunks of their own
+			final byte[] chunked = encode(entity, chunkSize, true);
+			assertTrue(Arrays.equals(entity, decode(chunked, false)));
+			assertTrue(Arrays.equals(entity, decode(encode(entity, chunkSize, false), true)));
+		}
+
+		// leading CRLF, extensions, white space, upper case and trailers
+		final String chunked = "\r\n5;name=value\r\nhello\r\n  A \r\n, world!!!\r\n0\r\nExpires: 0\r\n\r\n";
+		assertEquals("hello, world!!!", new String(decode(chunked.getBytes("US-ASCII"), false), "US-ASCII"));
+
+		// the next pipelined message is left in the inbound stream
+		final InputStream inbound = new InboundStream(new ByteArrayInputStream("3\r\nabc\r\n0\r\n\r\nHTTP/1.1".getBytes("US-ASCII")));
+		final InputStream stream = new ChunkedInputStream(null, inbound);
+		assertEquals('a', stream.read());
+		assertEquals(2, stream.skip(10));
+		assertEquals(-1, stream.read());
+		assertEquals('H', inbound.read());
+
+		// a read goes on with the next chunk only once its size line is buffered
+		final byte[] buffer = new byte[16];
+		assertEquals(5, new ChunkedInputStream(null, createBufferedOnly("5\r\nhello\r\n3")).read(buffer, 0, buffer.length));
+		assertEquals(8, new ChunkedInputStream(null, createBufferedOnly("5\r\nhello\r\n3\r\nabc")).read(buffer, 0, buffer.length));
+		assertEquals("helloabc", new String(buffer, 0, 8, "US-ASCII"));
+
+		try {
+			decode("zz\r\nabc\r\n0\r\n\r\n".getBytes("US-ASCII"), false);
+			fail("invalid chunk size accepted");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// the remaining bytes are copied up to the entity size and the destination
+		final Pipe pipe = Pipe.open();
+		try {
+			final ReadableEntityChannel channel = new ReadableEntityChannel(ByteBuffer.wrap("0123456789".getBytes("US-ASCII")), pipe.source(), 6);
+			final ByteBuffer dst = ByteBuffer.allocate(4);
+			assertEquals(4, channel.read(dst));
+			dst.clear();
+			assertEquals(2, channel.read(dst));
+			assertEquals('4', dst.get(0));
+			assertEquals(-1, channel.read(dst));
+		} finally {
+			pipe.source().close();
+			pipe.sink().close();
+		}
+	}
+
+	public void testThroughput() throws Exception {
+		final byte[] entity = createEntity();
+		for (final int chunkSize : CHUNK_SIZES) {
+			final byte[] chunked = encode(entity, chunkSize, true);
+			// warm up
+			run(entity, chunked, chunkSize, true);
+			run(entity, chunked, chunkSize, false);
+
+			final long[] legacy = run(entity, chunked, chunkSize, true);
+			final long[] current = run(entity, chunked, chunkSize, false);
+			Log.i(TAG, String.format("%d-byte chunks, legacy:  decode %dKB/ms, encode %dKB/ms", chunkSize, legacy[0], legacy[1]));
+			Log.i(TAG, String.format("%d-byte chunks, current: decode %dKB/ms, encode %dKB/ms", chunkSize, current[0], current[1]));
+		}
+	}
+
+	/**
+	 * @return decoded and encoded kilobytes per millisecond
+	 */
+	private static long[] run(final byte[] entity, final byte[] chunked, final int chunkSize, final boolean legacy) throws Exception {
+		System.gc();
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			decode(chunked, legacy);
+		}
+		final long decoding = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			encode(entity, chunkSize, legacy);
+		}
+		final long encoding = System.nanoTime() - start;
+		final long kilobytes = (long) ITERATIONS * entity.length / 1024;
+		return new long[] { kilobytes * 1000000L / decoding, kilobytes * 1000000L / encoding };
+	}
+
+	private static byte[] createEntity() {
+		final StringBuilder sb = new StringBuilder(ENTITY_SIZE + 256);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><outages count=\"1000\">");
+		for (int i = 0; sb.length() < ENTITY_SIZE - 32; i++) {
+			sb.append("<outage id=\"").append(i).append("\"><ifLostService>2010-10-18T14:").append(i % 60)
+				.append(":00-04:00</ifLostService><ipAddress>192.168.").append(i % 256).append('.').append(i / 256 % 256)
+				.append("</ipAddress><serviceLostEvent id=\"").append(i * 7).append("\" severity=\"MAJOR\"/></outage>");
+		}
+		sb.setLength(ENTITY_SIZE - 10);
+		sb.append("</outages>");
+		try {
+			return sb.toString().getBytes("UTF-8");
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * An inbound stream failing the test when asked for more than the given bytes.
+	 */
+	private static InputStream createBufferedOnly(final String bytes) throws IOException {
+		return new InboundStream(new ByteArrayInputStream(bytes.getBytes("US-ASCII")) {
+			@Override
+			public synchronized int read(final byte[] b, final int off, final int len) {
+				final int count = super.read(b, off, len);
+				if (count == -1) {
+					fail("blocked waiting for more bytes");
+				}
+				return count;
+			}
+		});
+	}
+
+	private static byte[] decode(final byte[] chunked, final boolean legacy) throws IOException {
+		final InputStream inbound = new InboundStream(new ByteArrayInputStream(chunked));
+		final InputStream stream = legacy ? new LegacyChunkedInputStream(inbound) : new ChunkedInputStream(null, inbound);
+		final ByteArrayOutputStream result = new ByteArrayOutputStream(ENTITY_SIZE);
+		final byte[] buffer = new byte[4096];
+		int count;
+		while ((count = stream.read(buffer)) != -1) {
+			result.write(buffer, 0, count);
+		}
+		return result.toByteArray();
+	}
+
+	private static byte[] encode(final byte[] entity, final int chunkSize, final boolean legacy) throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream(ENTITY_SIZE + ENTITY_SIZE / 8);
+		final OutputStream stream = legacy ? new LegacyChunkedOutputStream(result, chunkSize) : new ChunkedOutputStream(result, chunkSize);
+		// the way representations are written, in buffers of their own
+		for (int off = 0; off < entity.length; off += 1024) {
+			stream.write(entity, off, Math.min(1024, entity.length - off));
+		}
+		stream.close();
+		return result.toByteArray();
+	}
+
+	/**
+	 * ChunkedInputStream as it used to be, without the connection notification.
+	 */
+	private static class LegacyChunkedInputStream extends InputStream {
+		private final PushbackInputStream source;
+		private boolean initialized;
+		private boolean endReached;
+		private long chunkSize;
+		private long position;
+
+		LegacyChunkedInputStream(final InputStream source) {
+			this.source = new PushbackInputStream(source, 2);
+		}
+
+		private boolean canRead() throws IOException {
+			if (!initialized) {
+				checkCRLF();
+				initialized = true;
+			}
+			if (!endReached && position >= chunkSize) {
+				chunkSize = readChunkSize();
+				position = 0;
+				if (chunkSize == 0) {
+					endReached = true;
+					checkCRLF();
+				}
+			}
+			return !endReached;
+		}
+
+		private void checkCRLF() throws IOException {
+			final int cr = source.read();
+			final int lf = source.read();
+			if ((cr != '\r') && (lf != '\n')) {
+				source.unread(lf);
+				source.unread(cr);
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			int result = -1;
+			if (canRead()) {
+				result = source.read();
+				position++;
+				if (result == -1) {
+					endReached = true;
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			int result = -1;
+			if (canRead()) {
+				result = source.read(b, off, Math.min(len, (int) (chunkSize - position)));
+				position += result;
+				if (len - result > 0) {
+					final int nextResult = read(b, off + result, len - result);
+					if (nextResult > 0) {
+						result += nextResult;
+					}
+				}
+				if (result == -1) {
+					endReached = true;
+				}
+			}
+			return result;
+		}
+
+		private long readChunkSize() throws IOException {
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			checkCRLF();
+			for (;;) {
+				final int b = source.read();
+				if (b == -1) {
+					throw new IOException("Invalid chunk size specified. End of stream reached");
+				}
+				if (b == '\r') {
+					if (source.read() == '\n') {
+						break;
+					}
+					throw new IOException("Invalid chunk size specified.  Expected crlf, only saw cr");
+				}
+				buffer.write(b);
+			}
+			String line = new String(buffer.toByteArray());
+			final int index = line.indexOf(';');
+			line = index == -1 ? line : line.substring(0, index);
+			try {
+				return Long.parseLong(line.trim(), 16);
+			} catch (NumberFormatException ex) {
+				throw new IOException("<" + line + "> is an invalid chunk size");
+			}
+		}
+	}
+
+	/**
+	 * ChunkedOutputStream as it used to be, writing arrays one byte at a time.
+	 */
+	private static class LegacyChunkedOutputStream extends OutputStream {
+		private final OutputStream destination;
+		private final byte[] buffer;
+		private int bytesWritten;
+
+		LegacyChunkedOutputStream(final OutputStream destination, final int chunkSize) {
+			this.destination = destination;
+			this.buffer = new byte[chunkSize];
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			if (bytesWritten == buffer.length) {
+				writeChunk();
+			}
+			buffer[bytesWritten++] = (byte) b;
+		}
+
+		@Override
+		public void close() throws IOException {
+			writeChunk();
+			destination.write('0');
+			writeCRLF();
+			writeCRLF();
+			destination.flush();
+		}
+
+		private void writeChunk() throws IOException {
+			if (bytesWritten > 0) {
+				destination.write(Integer.toHexString(bytesWritten).getBytes("US-ASCII"));
+				writeCRLF();
+				destination.write(buffer, 0, bytesWritten);
+				writeCRLF();
+				bytesWritten = 0;
+			}
+		}
+
+		private void writeCRLF() throws IOException {
+			destination.write(13);
+			destination.write(10);
+		}
+	}
+}
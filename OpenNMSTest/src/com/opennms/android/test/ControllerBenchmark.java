@@ -0,0 +1,88 @@
+package com.opennms.android.test;
+
+import junit.framework.TestCase;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.engine.http.connector.BaseHelper;
+import org.restlet.engine.http.connector.HttpClientHelper;
+import org.restlet.engine.http.connector.HttpServerHelper;
+
+import android.util.Log;
+
+/**
+ * Compares the sleeping and selecting modes of the internal connector's
+ * controller: round-trip latency of small requests to a local server, and how
+ * often an idle client controller wakes up.  Results go to the log under the
+ * "ControllerBenchmark" tag.
+ */
+public class ControllerBenchmark extends TestCase {
+	private static final String TAG = "ControllerBenchmark";
+	private static final int REQUESTS = 50;
+	private static final long IDLE_TIME = 2000L;
+
+	public void testControllerModes() throws Exception {
+		// warm up the code paths once so the first mode is not penalized
+		run(false, 5);
+
+		final long[] sleeping = run(false, REQUESTS);
+		final long[] selecting = run(true, REQUESTS);
+		Log.i(TAG, String.format("sleeping:  %dus/request, %d controls while idle for %dms", sleeping[0], sleeping[1], IDLE_TIME));
+		Log.i(TAG, String.format("selecting: %dus/request, %d controls while idle for %dms", selecting[0], selecting[1], IDLE_TIME));
+		assertTrue(selecting[1] < sleeping[1]);
+	}
+
+	/**
+	 * @return average microseconds per request and client controls during the idle period
+	 */
+	private long[] run(final boolean selecting, final int requests) throws Exception {
+		final Server server = new Server(createContext(selecting), Protocol.HTTP, 0, new Restlet() {
+			@Override
+			public void handle(final Request request, final Response response) {
+				response.setEntity("ok", MediaType.TEXT_PLAIN);
+			}
+		});
+		final Client client = new Client(createContext(selecting), Protocol.HTTP);
+		final HttpServerHelper serverHelper = new HttpServerHelper(server);
+		final HttpClientHelper clientHelper = new HttpClientHelper(client);
+		try {
+			serverHelper.start();
+			clientHelper.start();
+			final String uri = "http://localhost:" + serverHelper.getAttributes().get("ephemeralPort") + "/";
+
+			final long start = System.nanoTime();
+			for (int i = 0; i < requests; i++) {
+				final Request request = new Request(Method.GET, uri);
+				final Response response = new Response(request);
+				clientHelper.handle(request, response);
+				assertTrue(response.getStatus().toString(), response.getStatus().isSuccess());
+				response.getEntity().exhaust();
+			}
+			final long elapsed = System.nanoTime() - start;
+
+			final long controls = controls(clientHelper);
+			Thread.sleep(IDLE_TIME);
+			return new long[] { elapsed / 1000L / requests, controls(clientHelper) - controls };
+		} finally {
+			clientHelper.stop();
+			serverHelper.stop();
+		}
+	}
+
+	private static Context createContext(final boolean selecting) {
+		final Context context = new Context();
+		context.getParameters().add("controllerSelecting", Boolean.toString(selecting));
+		return context;
+	}
+
+	private static long controls(final BaseHelper<?> helper) {
+		return helper.getController().getControlCount();
+	}
+}
@@ -0,0 +1,164 @@
+package com.opennms.android.test;
+
+import java.io.InputStream;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.restlet.data.Form;
+import org.restlet.data.Language;
+import org.restlet.data.MediaType;
+import org.restlet.engine.Engine;
+import org.restlet.engine.converter.ConverterHelper;
+import org.restlet.engine.converter.ConverterUtils;
+import org.restlet.engine.converter.DefaultConverter;
+import org.restlet.ext.atom.AtomConverter;
+import org.restlet.ext.jackson.JacksonConverter;
+import org.restlet.ext.json.JsonConverter;
+import org.restlet.ext.rdf.Graph;
+import org.restlet.ext.rdf.RdfConverter;
+import org.restlet.ext.xml.XmlConverter;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.representation.Variant;
+
+import android.util.Log;
+
+/**
+ * Compares scoring every registered converter, as each conversion used to,
+ * against the selections memoized by {@link ConverterUtils}, on the
+ * conversions made when reading and posting REST resources.  The XML, Atom,
+ * JSON, Jackson and RDF converters are registered as they would be with
+ * their extensions installed.  Results go to the log under the
+ * "ConverterBenchmark" tag.
+ */
+public class ConverterBenchmark extends TestCase {
+	private static final String TAG = "ConverterBenchmark";
+	private static final int ITERATIONS = 20000;
+
+	private Object[] m_objects;
+	private Variant[] m_variants;
+	private Representation[] m_representations;
+	private Class<?>[] m_classes;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		final List<ConverterHelper> converters = Engine.getInstance().getRegisteredConverters();
+		for (final ConverterHelper converter : new ConverterHelper[] { new XmlConverter(), new AtomConverter(), new JsonConverter(), new JacksonConverter(), new RdfConverter() }) {
+			if (!contains(converters, converter.getClass())) {
+				converters.add(converter);
+			}
+		}
+
+		final Form form = new Form();
+		form.add("severity", "MAJOR");
+		final Variant french = new Variant(MediaType.TEXT_PLAIN);
+		french.getLanguages().add(Language.FRENCH);
+		m_objects = new Object[] { "ack", form, Integer.valueOf(12), new Graph(), "ack" };
+		m_variants = new Variant[] { new Variant(MediaType.TEXT_PLAIN), new Variant(MediaType.APPLICATION_WWW_FORM), new Variant(MediaType.APPLICATION_JAVA_OBJECT), new Variant(MediaType.TEXT_RDF_N3), french };
+
+		m_representations = new Representation[] {
+			new StringRepresentation("<outages/>", MediaType.APPLICATION_XML),
+			new StringRepresentation("severity=MAJOR", MediaType.APPLICATION_WWW_FORM),
+			new StringRepresentation("<outages/>", MediaType.APPLICATION_XML),
+			new StringRepresentation("<a> <b> <c> .", MediaType.TEXT_RDF_NTRIPLES)
+		};
+		m_classes = new Class<?>[] { String.class, Form.class, InputStream.class, Graph.class };
+	}
+
+	public void testSelection() throws Exception {
+		for (int i = 0; i < m_objects.length; i++) {
+			assertSame(legacyHelper(m_objects[i], m_variants[i]), ConverterUtils.getBestHelper(m_objects[i], m_variants[i], null));
+		}
+		for (int i = 0; i < m_representations.length; i++) {
+			assertSame(legacyHelper(m_representations[i], m_classes[i]), ConverterUtils.getBestHelper(m_representations[i], m_classes[i], null));
+		}
+
+		long start = System.nanoTime();
+		for (int n = 0; n < ITERATIONS; n++) {
+			for (int i = 0; i < m_objects.length; i++) {
+				legacyHelper(m_objects[i], m_variants[i]);
+			}
+			for (int i = 0; i < m_representations.length; i++) {
+				legacyHelper(m_representations[i], m_classes[i]);
+			}
+		}
+		final long legacyElapsed = System.nanoTime() - start;
+
+		final long hits = ConverterUtils.getCacheHits();
+		start = System.nanoTime();
+		for (int n = 0; n < ITERATIONS; n++) {
+			for (int i = 0; i < m_objects.length; i++) {
+				ConverterUtils.getBestHelper(m_objects[i], m_variants[i], null);
+			}
+			for (int i = 0; i < m_representations.length; i++) {
+				ConverterUtils.getBestHelper(m_representations[i], m_classes[i], null);
+			}
+		}
+		final long elapsed = System.nanoTime() - start;
+		final long selections = (long) ITERATIONS * (m_objects.length + m_representations.length);
+		assertEquals(selections, ConverterUtils.getCacheHits() - hits);
+
+		final int converters = Engine.getInstance().getRegisteredConverters().size();
+		Log.i(TAG, String.format("legacy:  %dns/selection over %d converters", legacyElapsed / selections, converters));
+		Log.i(TAG, String.format("current: %dns/selection over %d converters, hit ratio %.3f", elapsed / selections, converters, ConverterUtils.getCacheHitRatio()));
+	}
+
+	public void testRegistration() throws Exception {
+		final List<ConverterHelper> converters = Engine.getInstance().getRegisteredConverters();
+		final Representation source = new StringRepresentation("<outages/>", MediaType.APPLICATION_XML);
+		final ConverterHelper before = ConverterUtils.getBestHelper(source, String.class, null);
+
+		// a converter registered first wins the ties, so it must be selected
+		final DefaultConverter registered = new DefaultConverter();
+		converters.add(0, registered);
+		try {
+			final long misses = ConverterUtils.getCacheMisses();
+			assertSame(registered, ConverterUtils.getBestHelper(source, String.class, null));
+			assertEquals(misses + 1, ConverterUtils.getCacheMisses());
+		} finally {
+			converters.remove(registered);
+		}
+		assertSame(before, ConverterUtils.getBestHelper(source, String.class, null));
+	}
+
+	private static boolean contains(final List<ConverterHelper> converters, final Class<?> converterClass) {
+		for (final ConverterHelper converter : converters) {
+			if (converterClass.isInstance(converter)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Score every registered converter, as {@link ConverterUtils} did for
+	 * each conversion.
+	 */
+	private static ConverterHelper legacyHelper(final Object source, final Variant target) {
+		ConverterHelper result = null;
+		float bestScore = -1.0F;
+		for (final ConverterHelper ch : Engine.getInstance().getRegisteredConverters()) {
+			final float score = ch.score(source, target, null);
+			if (score > bestScore) {
+				bestScore = score;
+				result = ch;
+			}
+		}
+		return result;
+	}
+
+	private static ConverterHelper legacyHelper(final Representation source, final Class<?> target) {
+		ConverterHelper result = null;
+		float bestScore = -1.0F;
+		for (final ConverterHelper ch : Engine.getInstance().getRegisteredConverters()) {
+			final float score = ch.score(source, target, null);
+			if (score > bestScore) {
+				bestScore = score;
+				result = ch;
+			}
+		}
+		return result;
+	}
+}
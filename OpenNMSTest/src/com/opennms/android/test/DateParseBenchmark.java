@@ -0,0 +1,176 @@
+package com.opennms.android.test;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import org.restlet.engine.util.DateUtils;
+import org.restlet.engine.util.HttpDateFormat;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Compares {@link DateUtils} against the way it used to parse and format
+ * dates, with a new SimpleDateFormat for every format tried.  The dates are
+ * those of the response headers of a poll of the OpenNMS REST API: a "Date"
+ * that changes every second, a "Last-Modified" among a few resources, and an
+ * "Expires: 0"; each response also formats a "Date".  Results go to the log
+ * under the "DateParseBenchmark" tag.
+ */
+public class DateParseBenchmark extends TestCase {
+	private static final String TAG = "DateParseBenchmark";
+	private static final int RESPONSES = 2000;
+	private static final int ITERATIONS = 5;
+	private static final long START = 1287410531000L;
+
+	private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+	public void testCompatibility() throws Exception {
+		final Random random = new Random(42);
+		final List<List<String>> formats = new ArrayList<List<String>>();
+		formats.add(DateUtils.FORMAT_RFC_1123);
+		formats.add(DateUtils.FORMAT_RFC_1036);
+		formats.add(DateUtils.FORMAT_ASC_TIME);
+		for (int i = 0; i < 5000; i++) {
+			// from 1900 to 2100, with the odd millisecond
+			final Date date = new Date(-2208988800000L + (long) (random.nextDouble() * 6311433600000L));
+			for (final List<String> format : formats) {
+				final String formatted = legacyFormat(date, format.get(0));
+				assertEquals(formatted, DateUtils.format(date, format.get(0)));
+				assertEquals(legacyParse(formatted, format), DateUtils.parse(formatted, format));
+			}
+		}
+
+		final String[] dates = {
+			"Sun, 06 Nov 1994 08:49:37 GMT", "sun, 06 nov 1994 08:49:37 utc", "Sunday, 06 Nov 1994 08:49:37 GMT",
+			"Sun, 6 Nov 1994 08:49:37 GMT", "Sun, 06 Nov 1994 08:49:37 EST", "Sun, 06 Nov 1994 08:49:37 GMT junk",
+			"Sun, 31 Feb 1994 08:49:37 GMT", "Sun, 06 Nov 94 08:49:37 GMT", "Sunday, 06-Nov-94 08:49:37 GMT",
+			"Sun, 06-Nov-40 08:49:37 GMT", "Sunday, 06-Nov-94 08:49:37 +0100", "Sun Nov  6 08:49:37 1994",
+			"Sun Nov 06 08:49:37 1994", "Sun Nov 06 25:49:37 1994", "Thu, 01 Jan 1970 00:00:00 GMT",
+			"0", "-1", "", "Sun, 06 Nov 1994",
+		};
+		for (final String date : dates) {
+			for (final List<String> format : formats) {
+				// twice, the second from the cache
+				assertEquals(date, legacyParse(date, format), DateUtils.parse(date, format));
+				assertEquals(date, legacyParse(date, format), DateUtils.parse(date, format));
+			}
+		}
+		assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", DateUtils.format(new Date(0)));
+		assertEquals("Wed, 31 Dec 1969 23:59:59 GMT", DateUtils.format(new Date(-1)));
+		assertEquals(legacyFormat(new Date(-62135769600000L), DateUtils.FORMAT_RFC_1123.get(0)), DateUtils.format(new Date(-62135769600000L)));
+	}
+
+	public void testParse() throws Exception {
+		final List<String[]> headers = createHeaders();
+		// warm up
+		run(true, headers);
+		run(false, headers);
+
+		final long[] legacy = run(true, headers);
+		final long[] current = run(false, headers);
+		Log.i(TAG, String.format("legacy:  %dus/response, %d allocations, %d bytes", legacy[0], legacy[1], legacy[2]));
+		Log.i(TAG, String.format("current: %dus/response, %d allocations, %d bytes", current[0], current[1], current[2]));
+
+		// none of the dates seen before, so every one is parsed
+		final Random random = new Random(7);
+		final List<String> cold = new ArrayList<String>();
+		for (int i = 0; i < HttpDateFormat.CACHE_SIZE * 8; i++) {
+			cold.add(legacyFormat(new Date(START + random.nextInt(1000000000) * 1000L), DateUtils.FORMAT_RFC_1123.get(0)));
+		}
+		long start = System.nanoTime();
+		for (final String date : cold) {
+			legacyParse(date, DateUtils.FORMAT_RFC_1123);
+		}
+		final long legacyCold = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (final String date : cold) {
+			DateUtils.parse(date, DateUtils.FORMAT_RFC_1123);
+		}
+		final long currentCold = System.nanoTime() - start;
+		Log.i(TAG, String.format("uncached: legacy %dns/date, current %dns/date", legacyCold / cold.size(), currentCold / cold.size()));
+	}
+
+	/**
+	 * @return the "Date", "Last-Modified" and "Expires" headers of each response
+	 */
+	private static List<String[]> createHeaders() {
+		final List<String[]> headers = new ArrayList<String[]>(RESPONSES);
+		for (int i = 0; i < RESPONSES; i++) {
+			headers.add(new String[] {
+				legacyFormat(new Date(START + (i / 4) * 1000L), DateUtils.FORMAT_RFC_1123.get(0)),
+				legacyFormat(new Date(START - (i % 20) * 3600000L), DateUtils.FORMAT_RFC_1123.get(0)),
+				"0",
+			});
+		}
+		return headers;
+	}
+
+	/**
+	 * @return average microseconds, allocation count and allocated bytes per response
+	 */
+	private static long[] run(final boolean legacy, final List<String[]> headers) {
+		System.gc();
+		Debug.startAllocCounting();
+		Debug.resetThreadAllocCount();
+		final long start = System.nanoTime();
+		for (int n = 0; n < ITERATIONS; n++) {
+			for (int i = 0; i < headers.size(); i++) {
+				final String[] response = headers.get(i);
+				final Date now = new Date(START + (i / 4) * 1000L + (i % 4) * 250L);
+				for (final String date : response) {
+					if (legacy) {
+						legacyParse(date, DateUtils.FORMAT_RFC_1123);
+					} else {
+						DateUtils.parse(date, DateUtils.FORMAT_RFC_1123);
+					}
+				}
+				if (legacy) {
+					legacyFormat(now, DateUtils.FORMAT_RFC_1123.get(0));
+				} else {
+					DateUtils.format(now);
+				}
+			}
+		}
+		final long elapsed = System.nanoTime() - start;
+		final long count = Debug.getThreadAllocCount();
+		final long size = Debug.getThreadAllocSize();
+		Debug.stopAllocCounting();
+		final long responses = (long) ITERATIONS * headers.size();
+		return new long[] { elapsed / 1000L / responses, count / responses, size / responses };
+	}
+
+	/**
+	 * DateUtils.format() as it used to be, for the HTTP formats.
+	 */
+	private static String legacyFormat(final Date date, final String format) {
+		final DateFormat formatter = new SimpleDateFormat(format, Locale.US);
+		formatter.setTimeZone(GMT);
+		return formatter.format(date);
+	}
+
+	/**
+	 * DateUtils.parse() as it used to be, for the HTTP formats.
+	 */
+	private static Date legacyParse(final String date, final List<String> formats) {
+		Date result = null;
+		for (int i = 0; (result == null) && (i < formats.size()); i++) {
+			final DateFormat parser = new SimpleDateFormat(formats.get(i), Locale.US);
+			parser.setTimeZone(GMT);
+			try {
+				result = parser.parse(date);
+			} catch (Exception e) {
+				// Ignores error as the next format may work better
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,224 @@
+package com.opennms.android.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.ChallengeResponse;
+import org.restlet.data.ChallengeScheme;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Reference;
+import org.restlet.data.Status;
+import org.restlet.ext.crypto.DigestAuthenticator;
+import org.restlet.ext.crypto.DigestSessionFilter;
+import org.restlet.security.MapVerifier;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Measures the round-trips saved by {@link DigestSessionFilter}: the same
+ * GETs with Digest credentials are sent through a new filter each time, the
+ * way every request used to be challenged first, then through one filter
+ * reusing the session.  The server is a {@link DigestAuthenticator} reached
+ * through the latency relay of {@link PipelineBenchmark}, and protects the
+ * admin pages with a second realm.  Results go to the log under the
+ * "DigestSessionBenchmark" tag.
+ */
+public class DigestSessionBenchmark extends TestCase {
+	private static final String TAG = "DigestSessionBenchmark";
+	private static final String REALM = "OpenNMS Realm";
+	private static final String ADMIN_REALM = "OpenNMS Admin Realm";
+	private static final String USERNAME = "admin";
+	private static final String PASSWORD = "admin";
+	private static final int REQUESTS = 20;
+
+	private final AtomicInteger m_calls = new AtomicInteger();
+	private final MapVerifier m_verifier = new MapVerifier();
+	private DigestAuthenticator m_authenticator;
+	private DigestAuthenticator m_adminAuthenticator;
+	private Server m_server;
+	private Client m_client;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m_verifier.getLocalSecrets().put(USERNAME, PASSWORD.toCharArray());
+		final Restlet resource = new Restlet() {
+			@Override
+			public void handle(final Request request, final Response response) {
+				response.setEntity("<outages count=\"0\" totalCount=\"0\"/>", MediaType.APPLICATION_XML);
+			}
+		};
+		m_authenticator = new DigestAuthenticator(new Context(), REALM, "server key");
+		m_authenticator.setWrappedVerifier(m_verifier);
+		m_authenticator.setNext(resource);
+		m_adminAuthenticator = new DigestAuthenticator(new Context(), ADMIN_REALM, "server key");
+		m_adminAuthenticator.setWrappedVerifier(m_verifier);
+		m_adminAuthenticator.setNext(resource);
+		m_server = new Server(new Context(), Protocol.HTTP, 0, new Restlet() {
+			@Override
+			public void handle(final Request request, final Response response) {
+				m_calls.incrementAndGet();
+				if (request.getResourceRef().getPath().startsWith("/opennms/admin")) {
+					m_adminAuthenticator.handle(request, response);
+				} else {
+					m_authenticator.handle(request, response);
+				}
+			}
+		});
+		m_server.start();
+		m_client = new Client(new Context(), Protocol.HTTP);
+		m_client.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		m_client.stop();
+		m_server.stop();
+		super.tearDown();
+	}
+
+	public void testSessions() throws Exception {
+		final String base = "http://localhost:" + m_server.getEphemeralPort() + "/opennms/rest";
+		final DigestSessionFilter filter = createFilter();
+
+		// the first request is challenged and sent again
+		assertEquals(Status.SUCCESS_OK, get(filter, base + "/outages?limit=1", PASSWORD));
+		assertEquals(2, m_calls.get());
+		assertEquals(1, filter.getChallenges());
+
+		// the next ones reuse the nonce, with the query in the digest URI
+		for (int i = 0; i < REQUESTS; i++) {
+			assertEquals(Status.SUCCESS_OK, get(filter, base + "/outages?limit=" + i, PASSWORD));
+		}
+		assertEquals(2 + REQUESTS, m_calls.get());
+		assertEquals(1, filter.getChallenges());
+		assertEquals((long) REQUESTS, filter.getAuthorizations());
+		assertEquals((long) REQUESTS, filter.getRoundTripsSaved());
+
+		// a stale nonce is challenged again, once
+		m_authenticator.setMaxServerNonceAge(2000);
+		Thread.sleep(2500);
+		m_calls.set(0);
+		assertEquals(Status.SUCCESS_OK, get(filter, base + "/alarms", PASSWORD));
+		assertEquals(2, m_calls.get());
+		assertEquals(1, filter.getStaleNonces());
+		m_authenticator.setMaxServerNonceAge(5 * 60 * 1000L);
+
+		// rejected credentials are not sent again, and drop the session
+		m_calls.set(0);
+		m_verifier.getLocalSecrets().put(USERNAME, "changed".toCharArray());
+		assertEquals(Status.CLIENT_ERROR_UNAUTHORIZED, get(filter, base + "/nodes", PASSWORD));
+		assertEquals(1, m_calls.get());
+		assertFalse(filter.hasSession(new Reference(base)));
+		assertEquals(Status.CLIENT_ERROR_UNAUTHORIZED, get(filter, base + "/nodes", PASSWORD));
+		assertEquals(3, m_calls.get());
+		assertFalse(filter.hasSession(new Reference(base)));
+		m_verifier.getLocalSecrets().put(USERNAME, PASSWORD.toCharArray());
+		assertEquals(Status.SUCCESS_OK, get(filter, base + "/nodes", PASSWORD));
+		assertEquals(5, m_calls.get());
+		assertEquals(6, filter.getChallenges());
+
+		// a pipelined request is authorized from the session without the filter
+		final Request request = createRequest(base + "/nodes", PASSWORD);
+		assertTrue(filter.authorize(request));
+		final Response response = m_client.handle(request);
+		assertEquals(Status.SUCCESS_OK, response.getStatus());
+		response.getEntity().exhaust();
+	}
+
+	public void testRealms() throws Exception {
+		final String base = "http://localhost:" + m_server.getEphemeralPort() + "/opennms";
+		final DigestSessionFilter filter = createFilter();
+		assertEquals(Status.SUCCESS_OK, get(filter, base + "/rest/outages", PASSWORD));
+		assertEquals(2, m_calls.get());
+
+		// a challenge from another realm of the host is not a rejection
+		assertEquals(Status.SUCCESS_OK, get(filter, base + "/admin/users", PASSWORD));
+		assertEquals(4, m_calls.get());
+		assertEquals(2, filter.getChallenges());
+		assertEquals(0, filter.getStaleNonces());
+		assertTrue(filter.hasSession(new Reference(base)));
+
+		// the realm that last challenged is used first
+		assertEquals(Status.SUCCESS_OK, get(filter, base + "/admin/groups", PASSWORD));
+		assertEquals(5, m_calls.get());
+
+		// credentials naming their realm use its session
+		final Request request = createRequest(base + "/rest/alarms", PASSWORD);
+		request.getChallengeResponse().setRealm(REALM);
+		final Response response = new Response(request);
+		filter.handle(request, response);
+		assertEquals(Status.SUCCESS_OK, response.getStatus());
+		response.getEntity().exhaust();
+		assertEquals(6, m_calls.get());
+		assertEquals(2, filter.getChallenges());
+	}
+
+	public void testRoundTrips() throws Exception {
+		final PipelineBenchmark.Relay relay = new PipelineBenchmark.Relay(m_server.getEphemeralPort());
+		relay.start();
+		try {
+			final String base = "http://localhost:" + relay.getPort() + "/opennms/rest";
+			// warm up
+			run(base, null);
+
+			m_calls.set(0);
+			final long challenged = run(base, null);
+			final int challengedCalls = m_calls.getAndSet(0);
+			final DigestSessionFilter filter = createFilter();
+			final long reused = run(base, filter);
+			final int reusedCalls = m_calls.get();
+			Log.i(TAG, String.format("challenged each time: %dms/request, %d calls for %d requests", challenged, challengedCalls, REQUESTS));
+			Log.i(TAG, String.format("session reused:       %dms/request, %d calls for %d requests, %d round-trips saved", reused, reusedCalls, REQUESTS, filter.getRoundTripsSaved()));
+			assertEquals(2 * REQUESTS, challengedCalls);
+			assertEquals(REQUESTS + 1, reusedCalls);
+		} finally {
+			relay.close();
+		}
+	}
+
+	/**
+	 * @param filter the filter of every request, or null for a new one each time
+	 * @return average milliseconds per request
+	 */
+	private long run(final String base, final DigestSessionFilter filter) throws Exception {
+		final long start = SystemClock.uptimeMillis();
+		for (int i = 0; i < REQUESTS; i++) {
+			assertEquals(Status.SUCCESS_OK, get(filter == null? createFilter() : filter, base + "/outages?limit=" + i, PASSWORD));
+		}
+		return (SystemClock.uptimeMillis() - start) / REQUESTS;
+	}
+
+	private DigestSessionFilter createFilter() {
+		final DigestSessionFilter filter = new DigestSessionFilter(new Context());
+		filter.setNext(m_client);
+		return filter;
+	}
+
+	private static Request createRequest(final String url, final String password) {
+		final Request request = new Request(Method.GET, url);
+		request.setChallengeResponse(new ChallengeResponse(ChallengeScheme.HTTP_DIGEST, USERNAME, password));
+		return request;
+	}
+
+	private static Status get(final Restlet filter, final String url, final String password) throws Exception {
+		final Request request = createRequest(url, password);
+		final Response response = new Response(request);
+		filter.handle(request, response);
+		if (response.getEntity() != null) {
+			response.getEntity().exhaust();
+			response.getEntity().release();
+		}
+		return response.getStatus();
+	}
+}
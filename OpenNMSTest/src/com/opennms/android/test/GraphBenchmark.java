@@ -0,0 +1,256 @@
+package com.opennms.android.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import junit.framework.TestCase;
+
+import org.restlet.data.Language;
+import org.restlet.data.MediaType;
+import org.restlet.data.Reference;
+import org.restlet.ext.rdf.Graph;
+import org.restlet.ext.rdf.GraphHandler;
+import org.restlet.ext.rdf.Link;
+import org.restlet.ext.rdf.Literal;
+import org.restlet.ext.rdf.RdfRepresentation;
+import org.restlet.representation.StringRepresentation;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Loads an N-Triples document of 100,000 links describing nodes into a
+ * {@link Graph}, then compares pattern queries through
+ * {@link Graph#find(Object, Reference, Object)} against scanning every link.
+ * Loading into a copy-on-write set, as the graph used to, is only measured on
+ * the first 5,000 links since its cost grows with the square of the size.
+ * Results go to the log under the "GraphBenchmark" tag.
+ */
+public class GraphBenchmark extends TestCase {
+	private static final String TAG = "GraphBenchmark";
+	private static final int LINKS = 100000;
+	private static final int LEGACY_LINKS = 5000;
+	private static final int LINKS_PER_NODE = 10;
+	private static final int CATEGORIES = 20;
+	private static final int QUERIES = 100;
+
+	private static final String NS = "http://www.opennms.org/rdf/ns#";
+	private static final Reference TYPE = new Reference("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+	private static final Reference NODE = new Reference(NS + "Node");
+	private static final Reference LABEL = new Reference(NS + "label");
+	private static final Reference PARENT = new Reference(NS + "parent");
+	private static final Reference CATEGORY = new Reference(NS + "category");
+	private static final Reference INTERFACE = new Reference(NS + "interface");
+
+	private String m_document;
+	private String m_legacyDocument;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m_document = createDocument(LINKS / LINKS_PER_NODE);
+		m_legacyDocument = createDocument(LEGACY_LINKS / LINKS_PER_NODE);
+	}
+
+	public void testLoad() throws Exception {
+		final Graph graph = load(m_legacyDocument);
+		final Set<Link> legacy = loadLegacy(m_legacyDocument);
+		assertEquals(LEGACY_LINKS, graph.size());
+		assertEquals(LEGACY_LINKS, legacy.size());
+		assertTrue(graph.containsAll(legacy));
+
+		System.gc();
+		Debug.startAllocCounting();
+		Debug.resetThreadAllocCount();
+		long start = System.nanoTime();
+		loadLegacy(m_legacyDocument);
+		final long legacyElapsed = System.nanoTime() - start;
+		final long legacyCount = Debug.getThreadAllocCount();
+		Debug.stopAllocCounting();
+
+		System.gc();
+		Debug.startAllocCounting();
+		Debug.resetThreadAllocCount();
+		start = System.nanoTime();
+		assertEquals(LINKS, load(m_document).size());
+		final long elapsed = System.nanoTime() - start;
+		final long count = Debug.getThreadAllocCount();
+		Debug.stopAllocCounting();
+
+		Log.i(TAG, String.format("legacy:  %d links in %dms, %dns/link, %d allocations/link", LEGACY_LINKS, legacyElapsed / 1000000L, legacyElapsed / LEGACY_LINKS, legacyCount / LEGACY_LINKS));
+		Log.i(TAG, String.format("current: %d links in %dms, %dns/link, %d allocations/link", LINKS, elapsed / 1000000L, elapsed / LINKS, count / LINKS));
+	}
+
+	public void testQuery() throws Exception {
+		final Graph graph = load(m_document);
+		final int nodes = LINKS / LINKS_PER_NODE;
+
+		// same patterns for both, and the same answers
+		final Random random = new Random(0);
+		final Object[][] patterns = new Object[QUERIES * 3][];
+		for (int i = 0; i < QUERIES; i++) {
+			patterns[i * 3] = new Object[] { node(random.nextInt(nodes)), null, null };
+			patterns[i * 3 + 1] = new Object[] { null, CATEGORY, category(random.nextInt(CATEGORIES)) };
+			patterns[i * 3 + 2] = new Object[] { null, PARENT, node(random.nextInt(nodes / 10)) };
+		}
+		for (final Object[] pattern : patterns) {
+			assertEquals(scan(graph, pattern), graph.find(pattern[0], (Reference) pattern[1], pattern[2]));
+		}
+
+		long matches = 0;
+		long start = System.nanoTime();
+		for (final Object[] pattern : patterns) {
+			matches += scan(graph, pattern).size();
+		}
+		final long scanElapsed = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (final Object[] pattern : patterns) {
+			matches -= graph.find(pattern[0], (Reference) pattern[1], pattern[2]).size();
+		}
+		final long elapsed = System.nanoTime() - start;
+		assertEquals(0, matches);
+
+		Log.i(TAG, String.format("scan:    %dus/query over %d links", scanElapsed / 1000L / patterns.length, graph.size()));
+		Log.i(TAG, String.format("indexed: %dus/query over %d links", elapsed / 1000L / patterns.length, graph.size()));
+	}
+
+	/**
+	 * What the graph kept from the copy-on-write set: snapshot iterators,
+	 * stable link instances and serialization.
+	 */
+	public void testContract() throws Exception {
+		final Graph graph = load(createDocument(10));
+		final Link first = graph.iterator().next();
+		assertSame(first, graph.iterator().next());
+
+		// iterators neither fail nor see the links added meanwhile
+		int seen = 0;
+		for (final Link link : graph) {
+			graph.add(new Reference(NS + "extra" + seen), LABEL, new Literal("extra"));
+			assertTrue(graph.contains(link));
+			seen++;
+		}
+		assertEquals(100, seen);
+		assertEquals(200, graph.size());
+
+		// removing through an iterator removes from the graph
+		for (final Iterator<Link> i = graph.iterator(); i.hasNext(); ) {
+			if (i.next().getSourceAsReference().toString().startsWith(NS + "extra")) {
+				i.remove();
+			}
+		}
+		assertEquals(100, graph.size());
+		assertTrue(graph.retainAll(graph.find(null, LABEL, null)));
+		assertEquals(10, graph.size());
+
+		final Reference blank = Link.createBlankRef("b1");
+		graph.add(blank, LABEL, new Literal("chien", null, Language.valueOf("fr")));
+		graph.add(blank, TYPE, new Literal("42", new Reference("http://www.w3.org/2001/XMLSchema#int")));
+		graph.setDefaultLink(new Link(NODE, TYPE, blank));
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(graph);
+		out.close();
+		final Graph copy = (Graph) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(graph, copy);
+		assertEquals(new ArrayList<Link>(graph), new ArrayList<Link>(copy));
+		assertEquals(graph.getDefaultLink(), copy.getDefaultLink());
+		assertEquals(1, copy.find(blank, LABEL, new Literal("chien", null, Language.valueOf("fr"))).size());
+	}
+
+	private static Graph load(final String document) throws Exception {
+		return new RdfRepresentation(new StringRepresentation(document, MediaType.TEXT_RDF_NTRIPLES)).getGraph();
+	}
+
+	private static Set<Link> loadLegacy(final String document) throws Exception {
+		final LegacyGraphBuilder builder = new LegacyGraphBuilder();
+		new RdfRepresentation(new StringRepresentation(document, MediaType.TEXT_RDF_NTRIPLES)).parse(builder);
+		return builder.getLinks();
+	}
+
+	/**
+	 * Find the links matching a pattern by looking at each of them, which is
+	 * how the copy-on-write graph had to be queried.
+	 */
+	private static List<Link> scan(final Graph graph, final Object[] pattern) {
+		final List<Link> result = new ArrayList<Link>();
+		for (final Link link : graph) {
+			if ((pattern[0] == null || pattern[0].equals(link.getSource()))
+					&& (pattern[1] == null || pattern[1].equals(link.getTypeRef()))
+					&& (pattern[2] == null || pattern[2].equals(link.getTarget()))) {
+				result.add(link);
+			}
+		}
+		return result;
+	}
+
+	private static Reference node(final int id) {
+		return new Reference("http://demo.opennms.org/opennms/rest/nodes/" + id);
+	}
+
+	private static Reference category(final int id) {
+		return new Reference("http://demo.opennms.org/opennms/rest/categories/" + id);
+	}
+
+	/**
+	 * Build a document of LINKS_PER_NODE links per node: its type, label,
+	 * parent and category, and one link per interface.  Nodes are grouped
+	 * ten to a parent.
+	 */
+	static String createDocument(final int nodes) {
+		final StringBuilder sb = new StringBuilder(nodes * LINKS_PER_NODE * 120);
+		for (int i = 0; i < nodes; i++) {
+			final String node = "<" + node(i) + "> ";
+			sb.append(node).append('<').append(TYPE).append("> <").append(NODE).append("> .\n");
+			sb.append(node).append('<').append(LABEL).append("> \"node").append(i).append(".example.org\" .\n");
+			sb.append(node).append('<').append(PARENT).append("> <").append(node(i / 10)).append("> .\n");
+			sb.append(node).append('<').append(CATEGORY).append("> <").append(category(i % CATEGORIES)).append("> .\n");
+			for (int j = 4; j < LINKS_PER_NODE; j++) {
+				sb.append(node).append('<').append(INTERFACE).append("> <").append(node(i)).append("/ipinterfaces/10.").append(i >> 8 & 0xff).append('.').append(i & 0xff).append('.').append(j).append("> .\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Builds a copy-on-write set of links, as {@link Graph} did before it
+	 * was indexed.
+	 */
+	private static class LegacyGraphBuilder extends GraphHandler {
+		private final Set<Link> m_links = new CopyOnWriteArraySet<Link>();
+
+		public Set<Link> getLinks() {
+			return m_links;
+		}
+
+		@Override
+		public void link(final Graph source, final Reference typeRef, final Literal target) {
+			m_links.add(new Link(source, typeRef, target));
+		}
+
+		@Override
+		public void link(final Graph source, final Reference typeRef, final Reference target) {
+			m_links.add(new Link(source, typeRef, target));
+		}
+
+		@Override
+		public void link(final Reference source, final Reference typeRef, final Literal target) {
+			m_links.add(new Link(source, typeRef, target));
+		}
+
+		@Override
+		public void link(final Reference source, final Reference typeRef, final Reference target) {
+			m_links.add(new Link(source, typeRef, target));
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.opennms.android.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.restlet.data.Parameter;
+import org.restlet.engine.http.header.HeaderParser;
+import org.restlet.engine.http.header.HeaderReader;
+import org.restlet.engine.http.io.InboundStream;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Compares {@link HeaderParser} against {@link HeaderReader#readHeader(InputStream, StringBuilder)}
+ * on the response headers of the OpenNMS REST API, read from a buffered
+ * stream as the internal connector does.  Results go to the log under the
+ * "HeaderParseBenchmark" tag.
+ */
+public class HeaderParseBenchmark extends TestCase {
+	private static final String TAG = "HeaderParseBenchmark";
+	private static final int MESSAGES = 2000;
+	private static final int ITERATIONS = 5;
+
+	private static final String HEADERS =
+		"Date: Mon, 18 Oct 2010 14:02:11 GMT\r\n" +
+		"Server: Jetty(6.1.22)\r\n" +
+		"Set-Cookie: JSESSIONID=1dc9hbnyz8ae0;Path=/opennms\r\n" +
+		"Expires: Thu, 01 Jan 1970 00:00:00 GMT\r\n" +
+		"Cache-Control: no-cache\r\n" +
+		"Content-Type: application/xml\r\n" +
+		"Vary: Accept-Encoding\r\n" +
+		"Content-Encoding: gzip\r\n" +
+		"Last-Modified: Mon, 18 Oct 2010 13:58:40 GMT\r\n" +
+		"ETag: \"1287410320000\"\r\n" +
+		"X-Powered-By: Servlet/2.5\r\n" +
+		"Transfer-Encoding: chunked\r\n" +
+		"\r\n";
+
+	private byte[] m_document;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		final StringBuilder sb = new StringBuilder(HEADERS.length() * MESSAGES);
+		for (int i = 0; i < MESSAGES; i++) {
+			sb.append(HEADERS);
+		}
+		m_document = sb.toString().getBytes("ISO-8859-1");
+	}
+
+	public void testParse() throws Exception {
+		final List<Parameter> legacy = new ArrayList<Parameter>();
+		final List<Parameter> current = new ArrayList<Parameter>();
+		parse(true, legacy);
+		parse(false, current);
+		assertEquals(12 * MESSAGES, legacy.size());
+		assertEquals(legacy.size(), current.size());
+		for (int i = 0; i < legacy.size(); i++) {
+			assertEquals(legacy.get(i).getName(), current.get(i).getName());
+			assertEquals(legacy.get(i).getValue(), current.get(i).getValue());
+		}
+
+		final long[] legacyResult = run(true);
+		final long[] currentResult = run(false);
+		Log.i(TAG, String.format("legacy:  %dus/message, %d allocations, %d bytes", legacyResult[0], legacyResult[1], legacyResult[2]));
+		Log.i(TAG, String.format("current: %dus/message, %d allocations, %d bytes", currentResult[0], currentResult[1], currentResult[2]));
+	}
+
+	/**
+	 * @return average microseconds, allocation count and allocated bytes per message
+	 */
+	private long[] run(final boolean legacy) throws Exception {
+		System.gc();
+		Debug.startAllocCounting();
+		Debug.resetThreadAllocCount();
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			parse(legacy, null);
+		}
+		final long elapsed = System.nanoTime() - start;
+		final long count = Debug.getThreadAllocCount();
+		final long size = Debug.getThreadAllocSize();
+		Debug.stopAllocCounting();
+		final long messages = (long) ITERATIONS * MESSAGES;
+		return new long[] { elapsed / 1000L / messages, count / messages, size / messages };
+	}
+
+	/**
+	 * Read every message, looking at each header name and value as the
+	 * connector does when it copies them into the response.
+	 */
+	private void parse(final boolean legacy, final List<Parameter> headers) throws Exception {
+		final InputStream is = new InboundStream(new ByteArrayInputStream(m_document));
+		final StringBuilder sb = new StringBuilder();
+		final HeaderParser parser = new HeaderParser();
+		for (int i = 0; i < MESSAGES; i++) {
+			Parameter header = legacy? HeaderReader.readHeader(is, sb) : parser.readHeader(is);
+			while (header != null) {
+				if (header.getName().length() + header.getValue().length() == 0) {
+					fail();
+				}
+				if (headers != null) {
+					headers.add(header);
+				}
+				header = legacy? HeaderReader.readHeader(is, sb) : parser.readHeader(is);
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.opennms.android.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import junit.framework.TestCase;
+
+import org.restlet.data.Form;
+import org.restlet.data.Parameter;
+import org.restlet.engine.util.IndexedForm;
+import org.restlet.util.Series;
+
+/**
+ * Applies the same random changes to an {@link IndexedForm} and to a plain
+ * {@link Form}, and checks after each one that every lookup by name returns
+ * the same parameters in the same order.  Names are often repeated and come
+ * in several cases, including letters such as the Kelvin sign and the dotted
+ * capital I whose case folding doesn't round-trip.
+ */
+public class IndexedFormTest extends TestCase {
+	/** Names to add, each matching some others when ignoring the case. */
+	private static final String[] NAMES = { "Accept", "accept", "ACCEPT", "X-Id", "x-id", "Host", "Key", "key", "\u212Aey", "\u0130d", "id", "Stra\u00dfe", "STRA\u00dfE" };
+	/** Names to look up, adding some that are never added. */
+	private static final String[] LOOKUPS = { "Accept", "accept", "ACCEPT", "X-Id", "x-id", "Host", "Key", "key", "\u212Aey", "\u0130d", "id", "Stra\u00dfe", "STRA\u00dfE", "Unused", null };
+	private static final int CHANGES = 5000;
+	private static final long SEED = 20101018L;
+
+	public void testArrayList() throws Exception {
+		compare(new IndexedForm(), new Form(new ArrayList<Parameter>()), new Random(SEED));
+	}
+
+	public void testCopyOnWrite() throws Exception {
+		compare(new IndexedForm(true), new Form(new CopyOnWriteArrayList<Parameter>()), new Random(SEED + 1));
+	}
+
+	private static void compare(final Form indexed, final Form form, final Random random) {
+		for (int change = 0; change < CHANGES; change++) {
+			final String step = "change " + change;
+			final String name = NAMES[random.nextInt(NAMES.length)];
+			final String value = "v" + change;
+			final boolean ignoreCase = random.nextBoolean();
+			// Mostly grow the form, clearing it now and then
+			final int op = (form.size() < 4) ? 0 : random.nextInt(form.size() > 40 ? 9 : 12);
+			final int position = random.nextInt(Math.max(form.size(), 1));
+			assertEquals(step, apply(form, op, name, value, ignoreCase, position), apply(indexed, op, name, value, ignoreCase, position));
+			assertEquals(step, describe(form), describe(indexed));
+			for (final String lookup : LOOKUPS) {
+				for (final boolean ic : new boolean[] { false, true }) {
+					final String query = step + ", " + lookup + (ic ? " ignoring case" : "");
+					assertEquals(query, describe(form.getFirst(lookup, ic)), describe(indexed.getFirst(lookup, ic)));
+					assertEquals(query, form.getValues(lookup, ",", ic), indexed.getValues(lookup, ",", ic));
+					assertEquals(query, describe(form.subList(lookup, ic)), describe(indexed.subList(lookup, ic)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies a change, returning its result or the exception it threw, as
+	 * removing through the iterator of a copy-on-write list does.
+	 */
+	private static String apply(final Form form, final int op, final String name, final String value, final boolean ignoreCase, final int position) {
+		try {
+			switch (op) {
+				case 0: case 1: case 2:
+					return String.valueOf(form.add(name, value));
+				case 3:
+					form.add(position, new Parameter(name, value));
+					return "inserted";
+				case 4:
+					return describe(form.set(name, value, ignoreCase));
+				case 5:
+					return describe(form.set(position, new Parameter(name, value)));
+				case 6:
+					form.get(position).setValue(value);
+					return "changed";
+				case 7:
+					return describe(form.remove(position));
+				case 8:
+					return String.valueOf(form.removeFirst(name, ignoreCase));
+				case 9: case 10:
+					return String.valueOf(form.removeAll(name, ignoreCase));
+				default:
+					form.clear();
+					return "cleared";
+			}
+		} catch (final RuntimeException e) {
+			return e.getClass().getName();
+		}
+	}
+
+	private static String describe(final Parameter parameter) {
+		return (parameter == null) ? null : parameter.getName() + "=" + parameter.getValue();
+	}
+
+	private static String describe(final Series<Parameter> parameters) {
+		final List<String> result = new ArrayList<String>();
+		for (final Parameter parameter : parameters) {
+			result.add(describe(parameter));
+		}
+		return result.toString();
+	}
+}
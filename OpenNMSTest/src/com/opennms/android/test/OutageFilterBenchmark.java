@@ -0,0 +1,144 @@
+package com.opennms.android.test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import android.util.Log;
+
+import com.opennms.android.outages.Outage;
+import com.opennms.android.outages.OutageIndex;
+import com.opennms.android.outages.OutageParseHandler;
+
+/**
+ * Compares filtering 5,000 outages through {@link OutageIndex} against the
+ * default filter of an ArrayAdapter, which lower-cases the string form of
+ * every row on each keystroke.  The filter text is typed one character at a
+ * time, as in the list.  Besides the average, the slowest keystroke and the
+ * keystrokes over a {@link #FRAME}ms frame are logged: the short prefixes
+ * match most of the list and cost far more than the average, which is why
+ * the adapter never filters on the UI thread.  Results go to the log under
+ * the "OutageFilterBenchmark" tag.
+ */
+public class OutageFilterBenchmark extends TestCase {
+	private static final String TAG = "OutageFilterBenchmark";
+	private static final int OUTAGES = 5000;
+	private static final int ITERATIONS = 5;
+	private static final long FRAME = 16;
+
+	private static final String[] QUERIES = { "host1234", "10.0.4.", "icmp node:42", "nodelost severity:major" };
+
+	private List<Outage> m_outages;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		final OutageParseHandler handler = new OutageParseHandler();
+		final XMLReader xr = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+		xr.setContentHandler(handler);
+		xr.parse(new InputSource(new StringReader(OutageParseBenchmark.createDocument(OUTAGES))));
+		m_outages = handler.getOutages();
+	}
+
+	public void testFilter() throws Exception {
+		final OutageIndex index = new OutageIndex();
+		assertEquals(OUTAGES, index.sync(m_outages));
+
+		assertEquals(1 + 10 + 100, index.filter(OutageIndex.Query.parse("host12")).size());
+		assertEquals(256, index.filter(OutageIndex.Query.parse("10.0.4.")).size());
+		assertEquals(1, index.filter(OutageIndex.Query.parse("icmp node:42")).size());
+		assertEquals(OUTAGES, index.filter(OutageIndex.Query.parse("NodeLost severity:Major")).size());
+		assertEquals(0, index.filter(OutageIndex.Query.parse("severity:minor")).size());
+		assertEquals(OUTAGES, index.getSeverityCounts().get("major").intValue());
+
+		long keystrokes = 0;
+		long legacyElapsed = 0;
+		long elapsed = 0;
+		long worst = 0;
+		int slow = 0;
+		for (int n = 0; n < ITERATIONS; n++) {
+			for (final String query : QUERIES) {
+				for (int i = 1; i <= query.length(); i++) {
+					final String typed = query.substring(0, i);
+					long start = System.nanoTime();
+					legacyFilter(typed);
+					legacyElapsed += System.nanoTime() - start;
+
+					start = System.nanoTime();
+					index.filter(OutageIndex.Query.parse(typed));
+					final long time = System.nanoTime() - start;
+					elapsed += time;
+					worst = Math.max(worst, time);
+					if (time > FRAME * 1000000L) {
+						slow++;
+					}
+					keystrokes++;
+				}
+			}
+		}
+
+		Log.i(TAG, String.format("legacy:  %dus/keystroke over %d outages", legacyElapsed / 1000L / keystrokes, OUTAGES));
+		Log.i(TAG, String.format("current: %dus/keystroke over %d outages, worst %dus", elapsed / 1000L / keystrokes, OUTAGES, worst / 1000L));
+		Log.i(TAG, String.format("current: %d of %d keystrokes over a %dms frame", slow, keystrokes, FRAME));
+	}
+
+	public void testSync() throws Exception {
+		final OutageIndex index = new OutageIndex();
+		long start = System.nanoTime();
+		index.sync(m_outages);
+		final long full = System.nanoTime() - start;
+
+		// a poll bringing 10 changed outages, as the list merges them
+		final List<Outage> outages = new ArrayList<Outage>(m_outages);
+		for (int i = 0; i < 10; i++) {
+			final Outage o = outages.get(i * 100);
+			final Outage changed = new Outage();
+			changed.setId(o.getId());
+			changed.setNodeId(o.getNodeId());
+			changed.setHost("changed" + i + ".example.org");
+			changed.setIpAddress(o.getIpAddress());
+			changed.setSeverity("Minor");
+			outages.set(i * 100, changed);
+		}
+		outages.remove(outages.size() - 1);
+		start = System.nanoTime();
+		assertEquals(11, index.sync(outages));
+		final long incremental = System.nanoTime() - start;
+		assertEquals(OUTAGES - 1, index.size());
+		assertEquals(10, index.filter(OutageIndex.Query.parse("severity:minor")).size());
+		assertEquals(1, index.filter(OutageIndex.Query.parse("changed3")).size());
+
+		Log.i(TAG, String.format("full sync:        %dms for %d outages", full / 1000000L, OUTAGES));
+		Log.i(TAG, String.format("incremental sync: %dus for 11 changes", incremental / 1000L));
+	}
+
+	/**
+	 * Filter as ArrayAdapter does: a row matches if its lower-cased string
+	 * starts with the text, or one of its space separated words does.
+	 */
+	private List<Outage> legacyFilter(final String prefix) {
+		final String prefixString = prefix.toLowerCase();
+		final List<Outage> result = new ArrayList<Outage>();
+		for (final Outage o : m_outages) {
+			final String valueText = o.toString().toLowerCase();
+			if (valueText.startsWith(prefixString)) {
+				result.add(o);
+			} else {
+				for (final String word : valueText.split(" ")) {
+					if (word.startsWith(prefixString)) {
+						result.add(o);
+						break;
+					}
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,152 @@
+package com.opennms.android.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import android.os.Debug;
+import android.util.Log;
+
+import com.opennms.android.outages.Outage;
+import com.opennms.android.outages.OutageJsonParser;
+import com.opennms.android.outages.OutageParseHandler;
+
+/**
+ * Compares {@link OutageJsonParser} against {@link OutageParseHandler} on the
+ * same 10,000 outages, as JSON and as XML: bytes on the wire (plain and
+ * gzipped), parse time and allocations.  Both are parsed from bytes, the way
+ * the sync reads a response.  Results go to the log under the
+ * "OutageJsonBenchmark" tag.
+ */
+public class OutageJsonBenchmark extends TestCase {
+	private static final String TAG = "OutageJsonBenchmark";
+	private static final int OUTAGES = 10000;
+	private static final int ITERATIONS = 5;
+
+	private byte[] m_xml;
+	private byte[] m_json;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m_xml = OutageParseBenchmark.createDocument(OUTAGES).getBytes("UTF-8");
+		m_json = createDocument(OUTAGES).getBytes("UTF-8");
+	}
+
+	public void testParse() throws Exception {
+		final List<Outage> xml = parseXml();
+		final List<Outage> json = parseJson();
+		assertEquals(OUTAGES, xml.size());
+		assertEquals(OUTAGES, json.size());
+		OutageParseBenchmark.assertSameOutages(xml, json);
+
+		// a list of one outage comes as an object, numbers may come as numbers
+		final OutageJsonParser parser = new OutageJsonParser();
+		parser.parse(new ByteArrayInputStream("{\"outage\":{\"id\":7,\"serviceLostEvent\":{\"severity\":\"Major\",\"nodeId\":3}}}".getBytes("UTF-8")));
+		assertEquals(1, parser.getOutages().size());
+		assertEquals(7, parser.getOutages().get(0).getId());
+		assertEquals(3, parser.getOutages().get(0).getNodeId());
+		assertEquals("Major", parser.getOutages().get(0).getSeverity());
+
+		Log.i(TAG, String.format("xml:  %d bytes, %d gzipped", m_xml.length, gzippedSize(m_xml)));
+		Log.i(TAG, String.format("json: %d bytes, %d gzipped", m_json.length, gzippedSize(m_json)));
+
+		// warm up
+		run(false);
+		run(true);
+		final long[] xmlResult = run(false);
+		final long[] jsonResult = run(true);
+		Log.i(TAG, String.format("xml:  %dms/parse, %d allocations, %d bytes", xmlResult[0], xmlResult[1], xmlResult[2]));
+		Log.i(TAG, String.format("json: %dms/parse, %d allocations, %d bytes", jsonResult[0], jsonResult[1], jsonResult[2]));
+	}
+
+	/**
+	 * @return average milliseconds, allocation count and allocated bytes per parse
+	 */
+	private long[] run(final boolean json) throws Exception {
+		System.gc();
+		Debug.startAllocCounting();
+		Debug.resetThreadAllocCount();
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			if (json) {
+				parseJson();
+			} else {
+				parseXml();
+			}
+		}
+		final long elapsed = System.nanoTime() - start;
+		final long count = Debug.getThreadAllocCount();
+		final long size = Debug.getThreadAllocSize();
+		Debug.stopAllocCounting();
+		return new long[] { elapsed / 1000000L / ITERATIONS, count / ITERATIONS, size / ITERATIONS };
+	}
+
+	private List<Outage> parseXml() throws Exception {
+		final OutageParseHandler handler = new OutageParseHandler();
+		final XMLReader xr = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+		xr.setContentHandler(handler);
+		xr.parse(new InputSource(new InputStreamReader(new ByteArrayInputStream(m_xml), "UTF-8")));
+		return handler.getOutages();
+	}
+
+	private List<Outage> parseJson() throws Exception {
+		final OutageJsonParser parser = new OutageJsonParser();
+		parser.parse(new ByteArrayInputStream(m_json));
+		return parser.getOutages();
+	}
+
+	private static int gzippedSize(final byte[] document) throws Exception {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(document.length / 4);
+		final GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+		gzip.write(document);
+		gzip.close();
+		return bytes.size();
+	}
+
+	/**
+	 * Build the outage list of {@link OutageParseBenchmark#createDocument(int)}
+	 * as /rest/outages returns it in JSON, with the attributes prefixed by '@'
+	 * and every value as a string.
+	 */
+	static String createDocument(final int count) {
+		final StringBuilder sb = new StringBuilder(count * 900);
+		sb.append("{\"@count\":\"").append(count).append("\",\"@totalCount\":\"").append(count).append("\",\"outage\":[");
+		for (int i = 1; i <= count; i++) {
+			final int nodeId = i;
+			final String ip = "10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+			final String lost = String.format("2010-09-%02dT%02d:%02d:00-04:00", 1 + (i / 1440) % 28, (i / 60) % 24, (i / 4) % 60);
+			if (i > 1) {
+				sb.append(',');
+			}
+			sb.append("{\"@id\":\"").append(i).append("\",");
+			sb.append("\"ifLostService\":\"").append(lost).append("\",");
+			sb.append("\"ipAddress\":\"").append(ip).append("\",");
+			sb.append("\"monitoredService\":{\"@down\":\"true\",\"@id\":\"").append(i).append("\",\"@status\":\"A\",\"@statusLong\":\"Managed\",");
+			sb.append("\"ipInterface\":{\"@isManaged\":\"M\",\"@snmpPrimary\":\"P\",\"@id\":\"").append(i).append("\",");
+			sb.append("\"ipAddress\":\"").append(ip).append("\",");
+			sb.append("\"nodeId\":\"").append(nodeId).append("\"},");
+			sb.append("\"serviceType\":{\"@id\":\"1\",\"name\":\"ICMP\"}},");
+			sb.append("\"serviceLostEvent\":{\"@id\":\"").append(100000 + i).append("\",\"@log\":\"Y\",\"@display\":\"Y\",\"@severity\":\"Major\",");
+			sb.append("\"createTime\":\"").append(lost).append("\",");
+			sb.append("\"description\":\"<p>A ICMP outage was identified on interface ").append(ip).append(".</p> <p>A new Outage record has been created and service level availability calculations will be impacted until this outage is resolved.</p>\",");
+			sb.append("\"host\":\"host").append(nodeId).append(".example.org\",");
+			sb.append("\"logMessage\":\"ICMP outage identified on interface ").append(ip).append(".\",");
+			sb.append("\"nodeId\":\"").append(nodeId).append("\",");
+			sb.append("\"source\":\"OpenNMS.Poller.DefaultPollContext\",");
+			sb.append("\"time\":\"").append(lost).append("\",");
+			sb.append("\"uei\":\"uei.opennms.org/nodes/nodeLostService\"}}");
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+}
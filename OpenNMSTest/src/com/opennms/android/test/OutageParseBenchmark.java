@@ -0,0 +1,132 @@
+package com.opennms.android.test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import android.os.Debug;
+import android.util.Log;
+
+import com.opennms.android.outages.Outage;
+import com.opennms.android.outages.OutageParseHandler;
+
+/**
+ * Compares {@link OutageParseHandler} against {@link LegacyOutageParseHandler}
+ * on a synthetic document of 10,000 outages.  Results go to the log under
+ * the "OutageParseBenchmark" tag.
+ */
+public class OutageParseBenchmark extends TestCase {
+	private static final String TAG = "OutageParseBenchmark";
+	private static final int OUTAGES = 10000;
+	private static final int ITERATIONS = 5;
+
+	private String m_document;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m_document = createDocument(OUTAGES);
+	}
+
+	public void testParse() throws Exception {
+		final LegacyOutageParseHandler legacy = new LegacyOutageParseHandler();
+		final OutageParseHandler current = new OutageParseHandler();
+		parse(legacy);
+		parse(current);
+		assertEquals(OUTAGES, legacy.getOutages().size());
+		assertEquals(OUTAGES, current.getOutages().size());
+		assertSameOutages(legacy.getOutages(), current.getOutages());
+
+		final long[] legacyResult = run(true);
+		final long[] currentResult = run(false);
+		Log.i(TAG, String.format("legacy:  %dms/parse, %d allocations, %d bytes", legacyResult[0], legacyResult[1], legacyResult[2]));
+		Log.i(TAG, String.format("current: %dms/parse, %d allocations, %d bytes", currentResult[0], currentResult[1], currentResult[2]));
+	}
+
+	/**
+	 * @return average milliseconds, allocation count and allocated bytes per parse
+	 */
+	private long[] run(final boolean legacy) throws Exception {
+		System.gc();
+		Debug.startAllocCounting();
+		Debug.resetThreadAllocCount();
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			parse(legacy? new LegacyOutageParseHandler() : new OutageParseHandler());
+		}
+		final long elapsed = System.nanoTime() - start;
+		final long count = Debug.getThreadAllocCount();
+		final long size = Debug.getThreadAllocSize();
+		Debug.stopAllocCounting();
+		return new long[] { elapsed / 1000000L / ITERATIONS, count / ITERATIONS, size / ITERATIONS };
+	}
+
+	private void parse(final ContentHandler handler) throws Exception {
+		final XMLReader xr = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+		xr.setContentHandler(handler);
+		xr.parse(new InputSource(new StringReader(m_document)));
+	}
+
+	static void assertSameOutages(final List<Outage> expected, final List<Outage> actual) {
+		for (int i = 0; i < expected.size(); i++) {
+			final Outage e = expected.get(i);
+			final Outage a = actual.get(i);
+			assertEquals(e.getId(), a.getId());
+			assertEquals(e.getNodeId(), a.getNodeId());
+			assertEquals(e.getIpAddress(), a.getIpAddress());
+			assertEquals(e.getServiceName(), a.getServiceName());
+			assertEquals(e.getIfLostService(), a.getIfLostService());
+			assertEquals(e.getIfRegainedService(), a.getIfRegainedService());
+			assertEquals(e.getDescription(), a.getDescription());
+			assertEquals(e.getHost(), a.getHost());
+			assertEquals(e.getUei(), a.getUei());
+			assertEquals(e.getSeverity(), a.getSeverity());
+		}
+	}
+
+	/**
+	 * Build an outage list shaped like the one returned by /rest/outages,
+	 * which is not indented.  Timestamps repeat in runs, as they do when many
+	 * services go down at the same poll.
+	 */
+	static String createDocument(final int count) {
+		final StringBuilder sb = new StringBuilder(count * 900);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+		sb.append("<outages count=\"").append(count).append("\" totalCount=\"").append(count).append("\">");
+		for (int i = 1; i <= count; i++) {
+			final int nodeId = i;
+			final String ip = "10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+			final String lost = String.format("2010-09-%02dT%02d:%02d:00-04:00", 1 + (i / 1440) % 28, (i / 60) % 24, (i / 4) % 60);
+			sb.append("<outage id=\"").append(i).append("\">");
+			sb.append("<ifLostService>").append(lost).append("</ifLostService>");
+			sb.append("<ipAddress>").append(ip).append("</ipAddress>");
+			sb.append("<monitoredService down=\"true\" id=\"").append(i).append("\" status=\"A\" statusLong=\"Managed\">");
+			sb.append("<ipInterface isManaged=\"M\" snmpPrimary=\"P\" id=\"").append(i).append("\">");
+			sb.append("<ipAddress>").append(ip).append("</ipAddress>");
+			sb.append("<nodeId>").append(nodeId).append("</nodeId>");
+			sb.append("</ipInterface>");
+			sb.append("<serviceType id=\"1\"><name>ICMP</name></serviceType>");
+			sb.append("</monitoredService>");
+			sb.append("<serviceLostEvent id=\"").append(100000 + i).append("\" log=\"Y\" display=\"Y\" severity=\"Major\">");
+			sb.append("<createTime>").append(lost).append("</createTime>");
+			sb.append("<description>&lt;p&gt;A ICMP outage was identified on interface ").append(ip).append(".&lt;/p&gt; &lt;p&gt;A new Outage record has been created and service level availability calculations will be impacted until this outage is resolved.&lt;/p&gt;</description>");
+			sb.append("<host>host").append(nodeId).append(".example.org</host>");
+			sb.append("<logMessage>ICMP outage identified on interface ").append(ip).append(".</logMessage>");
+			sb.append("<nodeId>").append(nodeId).append("</nodeId>");
+			sb.append("<source>OpenNMS.Poller.DefaultPollContext</source>");
+			sb.append("<time>").append(lost).append("</time>");
+			sb.append("<uei>uei.opennms.org/nodes/nodeLostService</uei>");
+			sb.append("</serviceLostEvent>");
+			sb.append("</outage>");
+		}
+		sb.append("</outages>");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,107 @@
+package com.opennms.android.test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import android.text.Html;
+import android.util.Log;
+
+import com.opennms.android.outages.Outage;
+import com.opennms.android.outages.OutageParseHandler;
+import com.opennms.android.outages.OutageRenderer;
+
+/**
+ * Compares binding the rows of a fast scroll through 2,000 outages as
+ * OutageAdapter used to, rendering each description on the UI thread,
+ * against binding them from an {@link OutageRenderer}.  Frames are paced at
+ * 60 per second with {@link #ROWS_PER_FRAME} rows bound in each; a frame is
+ * dropped for each frame period its binding runs over.  Results go to the
+ * log under the "OutageScrollBenchmark" tag.
+ */
+public class OutageScrollBenchmark extends TestCase {
+	private static final String TAG = "OutageScrollBenchmark";
+	private static final int OUTAGES = 2000;
+	private static final int ROWS = 600;
+	private static final int ROWS_PER_FRAME = 2;
+	private static final long FRAME = 1000000000L / 60L;
+
+	private List<Outage> m_outages;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		final OutageParseHandler handler = new OutageParseHandler();
+		final XMLReader xr = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+		xr.setContentHandler(handler);
+		xr.parse(new InputSource(new StringReader(OutageParseBenchmark.createDocument(OUTAGES))));
+		m_outages = handler.getOutages();
+	}
+
+	public void testScroll() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			final Outage o = m_outages.get(i * 100);
+			final OutageRenderer.Row row = OutageRenderer.render(o);
+			assertEquals(o.getHost(), row.getTitle());
+			assertEquals(legacyBind(o).toString().trim(), row.getDescription().toString().trim());
+		}
+
+		final long[] legacy = run(null);
+		final OutageRenderer renderer = new OutageRenderer();
+		// as the refresh does before handing the list to the UI thread
+		renderer.prepare(m_outages, OutageRenderer.PREFETCH);
+		final long[] current = run(renderer);
+
+		Log.i(TAG, String.format("legacy:  %d of %d frames dropped, %dus/frame binding, worst %dus", legacy[0], legacy[1], legacy[2] / 1000L, legacy[3] / 1000L));
+		Log.i(TAG, String.format("current: %d of %d frames dropped, %dus/frame binding, worst %dus, hit ratio %.3f", current[0], current[1], current[2] / 1000L, current[3] / 1000L, renderer.getHitRatio()));
+	}
+
+	/**
+	 * @return dropped frames, frames, average and worst nanoseconds of binding per frame
+	 */
+	private long[] run(final OutageRenderer renderer) throws Exception {
+		long dropped = 0;
+		long frames = 0;
+		long total = 0;
+		long worst = 0;
+		int position = 0;
+		while (position < ROWS) {
+			final long start = System.nanoTime();
+			for (int i = 0; i < ROWS_PER_FRAME; i++, position++) {
+				if (renderer == null) {
+					legacyBind(m_outages.get(position));
+				} else {
+					renderer.bind(m_outages, position);
+				}
+			}
+			final long elapsed = System.nanoTime() - start;
+			frames++;
+			dropped += elapsed / FRAME;
+			total += elapsed;
+			worst = Math.max(worst, elapsed);
+
+			// wait for the next frame, leaving the rest to the background threads
+			final long remaining = FRAME - (elapsed % FRAME);
+			Thread.sleep(remaining / 1000000L, (int) (remaining % 1000000L));
+		}
+		return new long[] { dropped, frames, total / frames, worst };
+	}
+
+	/**
+	 * The text work OutageAdapter.getView() used to do for each row.
+	 */
+	private static CharSequence legacyBind(final Outage o) {
+		String host = o.getHost();
+		if (host == null) {
+			host = o.getIpAddress();
+		}
+		final String description = o.getDescription().replaceAll("<p>", "").replaceAll("</p>", "<br />").replace("<br />$", "");
+		return Html.fromHtml(description);
+	}
+}
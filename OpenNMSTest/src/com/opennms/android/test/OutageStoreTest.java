@@ -0,0 +1,202 @@
+package com.opennms.android.test;
+
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import com.opennms.android.outages.Outage;
+import com.opennms.android.outages.OutageStore;
+
+/**
+ * Checks {@link OutageStore}: saving and loading, full and incremental
+ * updates, the watermark, and that outages sent again are not counted as
+ * changes.  The store file lives in the test package's own files directory.
+ */
+public class OutageStoreTest extends AndroidTestCase {
+	private static final String FILENAME = "outages.dat";
+	private static final String BASE = "http://demo.opennms.org/opennms/rest";
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		getContext().deleteFile(FILENAME);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		getContext().deleteFile(FILENAME);
+		super.tearDown();
+	}
+
+	public void testSaveAndLoad() throws Exception {
+		final OutageStore store = newStore();
+		store.reset(BASE);
+		final Outage outage = outage(1, 10, 1000, null);
+		outage.setIpAddress("192.168.1.1");
+		outage.setServiceName("ICMP");
+		outage.setDescription("node down");
+		outage.setUei("uei.opennms.org/nodes/nodeDown");
+		outage.setSeverity("Major");
+		final Date lastModified = new Date(5000);
+		store.replaceAll(Arrays.asList(outage, outage(2, 0, 2000, null)), "\"abc\"", lastModified);
+		store.save();
+
+		final OutageStore loaded = newStore();
+		loaded.load();
+		assertEquals(BASE, loaded.getBase());
+		assertEquals("\"abc\"", loaded.getEtag());
+		assertEquals(lastModified, loaded.getLastModified());
+		assertEquals(new Date(2000), loaded.getWatermark());
+		assertEquals(store.getLastFullSync(), loaded.getLastFullSync());
+
+		final List<Outage> outages = loaded.getOutages(true);
+		assertEquals(2, outages.size());
+		assertEquals(2, outages.get(0).getId());
+		assertEquals(0, outages.get(0).getNodeId());
+		assertEquals(null, outages.get(0).getUei());
+		final Outage read = outages.get(1);
+		assertEquals(1, read.getId());
+		assertEquals(10, read.getNodeId());
+		assertEquals("192.168.1.1", read.getIpAddress());
+		assertEquals("ICMP", read.getServiceName());
+		assertEquals("node down", read.getDescription());
+		assertEquals("uei.opennms.org/nodes/nodeDown", read.getUei());
+		assertEquals("Major", read.getSeverity());
+		assertEquals(new Date(1000), read.getIfLostService());
+		assertEquals(null, read.getIfRegainedService());
+
+		// a store written by another version is ignored, not misread
+		final DataOutputStream out = new DataOutputStream(getContext().openFileOutput(FILENAME, Context.MODE_PRIVATE));
+		out.writeInt(-1);
+		out.writeUTF(BASE);
+		out.close();
+		final OutageStore other = newStore();
+		other.load();
+		assertTrue(other.isEmpty());
+		assertEquals(null, other.getBase());
+		assertEquals(null, other.getWatermark());
+	}
+
+	public void testReplaceAll() throws Exception {
+		final OutageStore store = newStore();
+		store.reset(BASE);
+		assertTrue(store.replaceAll(Arrays.asList(outage(1, 10, 1000, null), outage(2, 20, 2000, null)), null, null));
+		assertFalse(store.replaceAll(Arrays.asList(outage(2, 20, 2000, null), outage(1, 10, 1000, null)), null, null));
+		assertTrue(store.replaceAll(Arrays.asList(outage(1, 10, 1000, null)), null, null));
+		assertEquals(1, store.getOutages(true).size());
+		assertEquals(new Date(1000), store.getWatermark());
+
+		// the same outages with different details are a change too
+		final Outage changed = outage(1, 10, 1000, null);
+		changed.setSeverity("Critical");
+		assertTrue(store.replaceAll(Arrays.asList(changed), null, null));
+		assertEquals("Critical", store.getOutages(true).get(0).getSeverity());
+		assertFalse(store.replaceAll(Arrays.asList(changed), null, null));
+
+		// outages without an ID are skipped
+		assertTrue(store.replaceAll(Arrays.asList(outage(0, 10, 3000, null), outage(3, 30, 2000, null)), null, null));
+		assertEquals(1, store.getOutages(true).size());
+		assertEquals(new Date(2000), store.getWatermark());
+
+		assertTrue(store.replaceAll(Collections.<Outage>emptyList(), null, null));
+		assertTrue(store.isEmpty());
+		assertEquals(null, store.getWatermark());
+	}
+
+	public void testMarkFullSync() throws Exception {
+		final OutageStore store = newStore();
+		store.reset(BASE);
+		store.replaceAll(Arrays.asList(outage(1, 10, 1000, null)), "\"abc\"", null);
+		final long synced = store.getLastFullSync();
+		Thread.sleep(5);
+		store.markFullSync();
+		assertTrue(store.getLastFullSync() > synced);
+		assertEquals("\"abc\"", store.getEtag());
+		assertEquals(1, store.getOutages(true).size());
+	}
+
+	public void testApply() throws Exception {
+		final OutageStore store = newStore();
+		store.reset(BASE);
+		store.replaceAll(Arrays.asList(outage(1, 10, 1000, null), outage(2, 20, 2000, null)), null, null);
+
+		// a new outage and one regained
+		assertTrue(store.apply(Arrays.asList(outage(3, 30, 3000, null), outage(1, 10, 1000, 4000L))));
+		List<Outage> outages = store.getOutages(true);
+		assertEquals(2, outages.size());
+		assertEquals(3, outages.get(0).getId());
+		assertEquals(2, outages.get(1).getId());
+		assertEquals(new Date(4000), store.getWatermark());
+
+		// regaining an outage that is not stored changes nothing but the watermark
+		assertFalse(store.apply(Arrays.asList(outage(9, 90, 500, 5000L))));
+		assertEquals(new Date(5000), store.getWatermark());
+
+		// an older change does not move the watermark back
+		assertTrue(store.apply(Arrays.asList(outage(4, 40, 1500, null))));
+		assertEquals(new Date(5000), store.getWatermark());
+	}
+
+	public void testApplyDuplicates() throws Exception {
+		final OutageStore store = newStore();
+		store.reset(BASE);
+		store.replaceAll(Arrays.asList(outage(1, 10, 1000, null), outage(2, 20, 2000, null)), null, null);
+
+		// the delta asks for changes at or after the watermark, so the
+		// outage at the watermark comes back on every poll
+		assertFalse(store.apply(Arrays.asList(outage(2, 20, 2000, null))));
+		assertFalse(store.apply(Arrays.asList(outage(2, 20, 2000, null), outage(2, 20, 2000, null))));
+		assertEquals(2, store.getOutages(true).size());
+		assertEquals(new Date(2000), store.getWatermark());
+
+		// the same outage with different details is a change, and is kept once
+		final Outage changed = outage(2, 20, 2000, null);
+		changed.setSeverity("Critical");
+		assertTrue(store.apply(Arrays.asList(changed)));
+		final List<Outage> outages = store.getOutages(true);
+		assertEquals(2, outages.size());
+		assertEquals("Critical", outages.get(0).getSeverity());
+	}
+
+	public void testNewestPerNode() throws Exception {
+		final OutageStore store = newStore();
+		store.reset(BASE);
+		store.replaceAll(Arrays.asList(outage(1, 10, 1000, null), outage(2, 10, 3000, null), outage(3, 0, 500, null), outage(4, 0, 2000, null), outage(5, 20, 1500, null)), null, null);
+
+		final List<Outage> all = store.getOutages(true);
+		assertEquals(5, all.size());
+		assertEquals(2, all.get(0).getId());
+		assertEquals(4, all.get(1).getId());
+		assertEquals(5, all.get(2).getId());
+		assertEquals(1, all.get(3).getId());
+		assertEquals(3, all.get(4).getId());
+
+		// outages without a node are all kept
+		final List<Outage> newest = store.getOutages(false);
+		assertEquals(4, newest.size());
+		assertEquals(2, newest.get(0).getId());
+		assertEquals(4, newest.get(1).getId());
+		assertEquals(5, newest.get(2).getId());
+		assertEquals(3, newest.get(3).getId());
+	}
+
+	private OutageStore newStore() {
+		return new OutageStore(getContext()) {};
+	}
+
+	private static Outage outage(final int id, final int nodeId, final long lost, final Long regained) {
+		final Outage outage = new Outage();
+		outage.setId(id);
+		outage.setNodeId(nodeId);
+		outage.setIfLostService(new Date(lost));
+		if (regained != null) {
+			outage.setIfRegainedService(new Date(regained));
+		}
+		return outage;
+	}
+}
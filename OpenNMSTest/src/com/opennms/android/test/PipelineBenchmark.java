@@ -0,0 +1,262 @@
+package com.opennms.android.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.MediaType;
+import org.restlet.data.Protocol;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.opennms.android.BatchRefresh;
+import com.opennms.android.ServerSettings;
+import com.opennms.android.outages.OutageParseHandler;
+
+/**
+ * Compares refreshing outages, alarms and nodes one request at a time, as
+ * separate ClientResource calls would, against one pipelined
+ * {@link BatchRefresh}.  The server is reached through a relay delaying
+ * everything by {@link #LATENCY} milliseconds each way, standing for a
+ * mobile network.  Results go to the log under the "PipelineBenchmark" tag.
+ */
+public class PipelineBenchmark extends TestCase {
+	private static final String TAG = "PipelineBenchmark";
+	private static final long LATENCY = 50;
+	private static final int OUTAGES = 50;
+	private static final int ITERATIONS = 10;
+
+	private static final String[] ENDPOINTS = { "/outages", "/alarms", "/nodes" };
+
+	private final ServerSettings m_settings = ServerSettings.getInstance();
+	private String m_host;
+	private int m_port;
+	private String m_document;
+	private Client m_client;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m_host = m_settings.getHost();
+		m_port = m_settings.getPort();
+		m_document = OutageParseBenchmark.createDocument(OUTAGES);
+		final Context context = new Context();
+		context.getParameters().add("controllerSelecting", "true");
+		m_client = new Client(context, Protocol.HTTP);
+		m_client.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		m_client.stop();
+		m_settings.setHost(m_host);
+		m_settings.setPort(m_port);
+		super.tearDown();
+	}
+
+	public void testRefresh() throws Exception {
+		final Server server = startServer(true);
+		final Relay relay = new Relay(server.getEphemeralPort());
+		relay.start();
+		try {
+			m_settings.setHost("localhost");
+			m_settings.setPort(relay.getPort());
+			final BatchRefresh batch = new BatchRefresh(m_client) {};
+
+			batch.setPipelining(false);
+			final long sequential = run(batch);
+			batch.setPipelining(true);
+			final long pipelined = run(batch);
+			assertEquals(2, relay.getConnections());
+
+			Log.i(TAG, String.format("one at a time: %dms/refresh of %d endpoints, %dms latency", sequential, ENDPOINTS.length, LATENCY * 2));
+			Log.i(TAG, String.format("pipelined:     %dms/refresh of %d endpoints, %dms latency", pipelined, ENDPOINTS.length, LATENCY * 2));
+		} finally {
+			relay.close();
+			server.stop();
+		}
+	}
+
+	/**
+	 * A server closing the connection after each response must still get
+	 * every request, the unanswered ones being sent again.
+	 */
+	public void testFallback() throws Exception {
+		final Server server = startServer(false);
+		try {
+			m_settings.setHost("localhost");
+			m_settings.setPort(server.getEphemeralPort());
+			final BatchRefresh batch = new BatchRefresh(m_client) {};
+			assertTrue(batch.isPipelining());
+			run(batch);
+			run(batch);
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * @return average milliseconds per refresh
+	 */
+	private long run(final BatchRefresh batch) throws Exception {
+		final long start = SystemClock.uptimeMillis();
+		for (int i = 0; i < ITERATIONS; i++) {
+			final OutageParseHandler outages = new OutageParseHandler();
+			final int[] handled = new int[1];
+			batch.add(ENDPOINTS[0], new BatchRefresh.Handler() {
+				public void handle(final Response response) throws Exception {
+					assertTrue(response.getStatus().isSuccess());
+					final XMLReader xr = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+					xr.setContentHandler(outages);
+					xr.parse(new InputSource(response.getEntity().getReader()));
+					handled[0]++;
+				}
+			});
+			for (int j = 1; j < ENDPOINTS.length; j++) {
+				final String endpoint = ENDPOINTS[j];
+				batch.add(endpoint, new BatchRefresh.Handler() {
+					public void handle(final Response response) throws Exception {
+						assertTrue(response.getStatus().isSuccess());
+						assertTrue(response.getEntity().getText().contains(endpoint.substring(1)));
+						handled[0]++;
+					}
+				});
+			}
+			batch.execute();
+			assertEquals(ENDPOINTS.length, handled[0]);
+			assertEquals(OUTAGES, outages.getOutages().size());
+		}
+		return (SystemClock.uptimeMillis() - start) / ITERATIONS;
+	}
+
+	private Server startServer(final boolean persistent) throws Exception {
+		final Context context = new Context();
+		context.getParameters().add("persistingConnections", Boolean.toString(persistent));
+		context.getParameters().add("controllerSelecting", "true");
+		final Server server = new Server(context, Protocol.HTTP, 0, new Restlet() {
+			@Override
+			public void handle(final Request request, final Response response) {
+				final String path = request.getResourceRef().getPath();
+				if (path.endsWith(ENDPOINTS[0])) {
+					response.setEntity(m_document, MediaType.APPLICATION_XML);
+				} else {
+					final String name = path.substring(path.lastIndexOf('/') + 1);
+					response.setEntity("<" + name + " count=\"0\" totalCount=\"0\"/>", MediaType.APPLICATION_XML);
+				}
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	/**
+	 * Forwards connections to the server, delaying everything sent either
+	 * way by {@link #LATENCY} milliseconds.  Opening a connection takes a
+	 * round-trip too.
+	 */
+	static class Relay extends Thread {
+		private final ServerSocket m_socket;
+		private final int m_target;
+		private volatile int m_connections = 0;
+
+		public Relay(final int target) throws IOException {
+			super("Relay");
+			setDaemon(true);
+			m_socket = new ServerSocket(0);
+			m_target = target;
+		}
+
+		public int getPort() {
+			return m_socket.getLocalPort();
+		}
+
+		public int getConnections() {
+			return m_connections;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final Socket client = m_socket.accept();
+					m_connections++;
+					Thread.sleep(LATENCY * 2);
+					final Socket server = new Socket("localhost", m_target);
+					forward(client, server);
+					forward(server, client);
+				}
+			} catch (final Exception e) {
+				// closed
+			}
+		}
+
+		public void close() throws IOException {
+			m_socket.close();
+		}
+
+		/**
+		 * Copy from one socket to the other, each read being written
+		 * {@link #LATENCY} milliseconds after it arrived.
+		 */
+		private static void forward(final Socket from, final Socket to) throws IOException {
+			final InputStream in = from.getInputStream();
+			final OutputStream out = to.getOutputStream();
+			final BlockingQueue<Object[]> queue = new LinkedBlockingQueue<Object[]>();
+			final Thread reader = new Thread("Relay reader") {
+				@Override
+				public void run() {
+					try {
+						final byte[] buffer = new byte[8192];
+						for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+							final byte[] chunk = new byte[n];
+							System.arraycopy(buffer, 0, chunk, 0, n);
+							queue.put(new Object[] { SystemClock.uptimeMillis() + LATENCY, chunk });
+						}
+					} catch (final Exception e) {
+						// closed
+					}
+					queue.add(new Object[] { SystemClock.uptimeMillis() + LATENCY, null });
+				}
+			};
+			final Thread writer = new Thread("Relay writer") {
+				@Override
+				public void run() {
+					try {
+						for (Object[] chunk = queue.take(); chunk[1] != null; chunk = queue.take()) {
+							final long delay = (Long) chunk[0] - SystemClock.uptimeMillis();
+							if (delay > 0) {
+								Thread.sleep(delay);
+							}
+							out.write((byte[]) chunk[1]);
+							out.flush();
+						}
+						to.shutdownOutput();
+					} catch (final Exception e) {
+						// closed
+					}
+				}
+			};
+			reader.setDaemon(true);
+			writer.setDaemon(true);
+			reader.start();
+			writer.start();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.opennms.android.test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Reference;
+import org.restlet.ext.rdf.Graph;
+import org.restlet.ext.rdf.Link;
+import org.restlet.ext.rdf.Literal;
+import org.restlet.ext.rdf.RdfRepresentation;
+import org.restlet.representation.ReaderRepresentation;
+import org.restlet.representation.StringRepresentation;
+
+/**
+ * Reads N-Triples and Turtle documents larger than the 4KB halves of the
+ * reader's buffer, with tokens crossing from one half to the other at every
+ * offset, from a reader returning whole documents and from one returning a
+ * few characters at a time.  Turtle URI references must not keep their '<'.
+ */
+public class RdfReaderTest extends TestCase {
+	private static final String NS = "http://www.opennms.org/rdf/ns#";
+	private static final Reference LABEL = new Reference(NS + "label");
+	private static final Reference PARENT = new Reference(NS + "parent");
+	private static final int NODES = 200;
+	/** Longer than the tokens, so that each of their characters lands on a half boundary. */
+	private static final int PADDINGS = 120;
+
+	public void testNTriples() throws Exception {
+		for (int padding = 0; padding < PADDINGS; padding++) {
+			final String document = createDocument(padding);
+			final List<Link> expected = createLinks(padding);
+			assertEquals("padding " + padding, expected, read(new StringReader(document)));
+			assertEquals("padding " + padding + ", short reads", expected, read(new ShortReader(document)));
+		}
+	}
+
+	public void testTurtleUris() throws Exception {
+		final String document = "<" + NS + "a> <" + NS + "parent> <" + NS + "b> .\n"
+			+ "<" + NS + "c> <" + NS + "parent> [ <" + NS + "label> \"blank\" ] .\n";
+		final Graph graph = new RdfRepresentation(new StringRepresentation(document, MediaType.APPLICATION_RDF_TURTLE)).getGraph();
+		assertEquals(1, graph.find(new Reference(NS + "a"), PARENT, new Reference(NS + "b")).size());
+		assertEquals(1, graph.find(new Reference(NS + "c"), PARENT, null).size());
+		assertEquals(1, graph.find(null, LABEL, new Literal("blank")).size());
+		for (final Link link : graph) {
+			assertFalse(link.toString(), link.getTypeRef().toString().startsWith("<"));
+			if (link.hasReferenceSource()) {
+				assertFalse(link.toString(), link.getSourceAsReference().toString().startsWith("<"));
+			}
+		}
+	}
+
+	private static List<Link> read(final Reader reader) throws Exception {
+		return new ArrayList<Link>(new RdfRepresentation(new ReaderRepresentation(reader, MediaType.TEXT_RDF_NTRIPLES)).getGraph());
+	}
+
+	private static String createDocument(final int padding) {
+		final StringBuilder sb = new StringBuilder();
+		for (final Link link : createLinks(padding)) {
+			sb.append('<').append(link.getSourceAsReference()).append("> <").append(link.getTypeRef()).append("> ");
+			if (link.hasLiteralTarget()) {
+				sb.append('"').append(link.getTargetAsLiteral().getValue()).append('"');
+			} else {
+				sb.append('<').append(link.getTargetAsReference()).append('>');
+			}
+			sb.append(" .\n");
+		}
+		return sb.toString();
+	}
+
+	private static List<Link> createLinks(final int padding) {
+		final List<Link> links = new ArrayList<Link>();
+		final StringBuilder pad = new StringBuilder();
+		for (int i = 0; i < padding; i++) {
+			pad.append('x');
+		}
+		links.add(new Link(node(0), LABEL, new Literal(pad.toString())));
+		for (int i = 1; i < NODES; i++) {
+			links.add(new Link(node(i), LABEL, new Literal("node" + i + ".example.org")));
+			links.add(new Link(node(i), PARENT, node(i / 10)));
+		}
+		return links;
+	}
+
+	private static Reference node(final int i) {
+		return new Reference("http://demo.opennms.org/opennms/rest/nodes/" + i);
+	}
+
+	/**
+	 * Returns at most 7 characters per read, as a slow connection would.
+	 */
+	private static class ShortReader extends FilterReader {
+		public ShortReader(final String document) {
+			super(new StringReader(document));
+		}
+
+		@Override
+		public int read(final char[] cbuf, final int off, final int len) throws IOException {
+			return super.read(cbuf, off, Math.min(len, 7));
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.opennms.android.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.data.Method;
+import org.restlet.routing.Router;
+
+import android.util.Log;
+
+/**
+ * Compares selecting routes by scoring each of them against selecting them
+ * through the route index, on a router with 500 routes shaped like the
+ * OpenNMS REST API.  Both must select the same route for every request.
+ * Results go to the log under the "RouterBenchmark" tag.
+ */
+public class RouterBenchmark extends TestCase {
+	private static final String TAG = "RouterBenchmark";
+	private static final int RESOURCES = 100;
+	private static final int REQUESTS = 2000;
+	private static final int ITERATIONS = 5;
+
+	private static final String[] SUFFIXES = {
+		"",
+		"/{id}",
+		"/{id}/ipinterfaces",
+		"/{id}/ipinterfaces/{ipAddress}",
+		"/{id}/ipinterfaces/{ipAddress}/services/{service}"
+	};
+
+	private Router m_router;
+	private Request[] m_requests;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		m_router = new Router();
+		for (int i = 0; i < RESOURCES; i++) {
+			for (final String suffix : SUFFIXES) {
+				m_router.attach("/resource" + i + suffix, new Restlet() {});
+			}
+		}
+
+		final Random random = new Random(0);
+		m_requests = new Request[REQUESTS];
+		for (int i = 0; i < REQUESTS; i++) {
+			final StringBuilder path = new StringBuilder("/resource").append(random.nextInt(RESOURCES + 10));
+			final int depth = random.nextInt(SUFFIXES.length);
+			if (depth > 0) {
+				path.append('/').append(random.nextInt(1000));
+			}
+			if (depth > 1) {
+				path.append("/ipinterfaces");
+			}
+			if (depth > 2) {
+				path.append("/10.0.0.").append(random.nextInt(255));
+			}
+			if (depth > 3) {
+				path.append("/services/ICMP");
+			}
+			m_requests[i] = new Request(Method.GET, "http://localhost/opennms/rest" + path);
+			m_requests[i].getResourceRef().setBaseRef("http://localhost/opennms/rest");
+		}
+	}
+
+	public void testFirstMatch() throws Exception {
+		run(Router.MODE_FIRST_MATCH, "first");
+	}
+
+	public void testBestMatch() throws Exception {
+		run(Router.MODE_BEST_MATCH, "best");
+	}
+
+	private void run(final int mode, final String name) throws Exception {
+		m_router.setRoutingMode(mode);
+
+		// the same route for each request, or none for the same requests
+		int matches = 0;
+		for (final Request request : m_requests) {
+			m_router.setIndexingRoutes(false);
+			final Restlet expected = m_router.getNext(request, new Response(request));
+			m_router.setIndexingRoutes(true);
+			assertSame(expected, m_router.getNext(request, new Response(request)));
+			if (expected != null) {
+				matches++;
+			}
+		}
+		assertTrue(matches > 0 && matches < REQUESTS);
+
+		final long linear = time(false);
+		final long indexed = time(true);
+		Log.i(TAG, String.format("%s match, linear:  %dus/request over %d routes", name, linear, m_router.getRoutes().size()));
+		Log.i(TAG, String.format("%s match, indexed: %dus/request over %d routes", name, indexed, m_router.getRoutes().size()));
+	}
+
+	/**
+	 * @return average microseconds per request
+	 */
+	private long time(final boolean indexing) {
+		m_router.setIndexingRoutes(indexing);
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			for (final Request request : m_requests) {
+				m_router.getNext(request, new Response(request));
+			}
+		}
+		return (System.nanoTime() - start) / 1000L / ((long) ITERATIONS * REQUESTS);
+	}
+}